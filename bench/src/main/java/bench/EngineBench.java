@@ -0,0 +1,121 @@
+package bench;
+
+import chess.engine.Fen;
+import chess.engine.ParallelSearch;
+import chess.engine.SearchLimits;
+import chess.engine.SearchResult;
+import chess.engine.TranspositionTable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Time-to-depth for the engine's Lazy SMP search. Every thread count searches the same
+ * positions to the same depth with a fresh transposition table, and the speedup is
+ * the total time against the first thread count's.
+ * <pre>
+ *   mvn package -DskipTests
+ *   java -jar bench/target/bench-jar-with-dependencies.jar threads=1,2,4,8,16,32 depth=9
+ * </pre>
+ * Arguments are key=value: threads (comma separated), depth, hash (table size in MB)
+ * and rounds (how many times to run the whole suite per thread count, the best round
+ * counts). Only thread counts up to the number of cores mean much.
+ */
+public class EngineBench {
+
+    // middlegames mostly, plus an endgame, in the order they're reported
+    private static final List<String> SUITE = List.of(
+            Fen.START,
+            "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w - - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w - - 0 1",
+            "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w - - 0 1",
+            "r2q1rk1/1p1nbppp/p2pbn2/4p3/4P3/1NN1BP2/PPPQ2PP/2KR1B1R w - - 0 1",
+            "2rq1rk1/pp1bppbp/3p1np1/4n3/3NP3/1BN1BP2/PPPQ2PP/2KR3R w - - 0 1",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1");
+
+    public record Options(int[] threads, int depth, int hashMb, int rounds) {
+
+        private static final Set<String> KEYS = Set.of("threads", "depth", "hash", "rounds");
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("expected key=value but got " + arg);
+                }
+                String key = arg.substring(0, eq);
+                if (!KEYS.contains(key)) {
+                    throw new IllegalArgumentException("unknown option " + key);
+                }
+                values.put(key, arg.substring(eq + 1));
+            }
+            var options = new Options(
+                    Arrays.stream(values.getOrDefault("threads", "1,2,4,8,16,32").split(","))
+                            .mapToInt(t -> Integer.parseInt(t.trim())).toArray(),
+                    Integer.parseInt(values.getOrDefault("depth", "9")),
+                    Integer.parseInt(values.getOrDefault("hash", "64")),
+                    Integer.parseInt(values.getOrDefault("rounds", "1")));
+            if (Arrays.stream(options.threads()).anyMatch(t -> t < 1) || options.rounds() < 1) {
+                throw new IllegalArgumentException("threads and rounds have to be at least 1");
+            }
+            return options;
+        }
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) { // NumberFormatException too
+            System.out.println("Error: " + e.getMessage());
+            System.out.println("usage: threads=N,N,... depth=N hash=MB rounds=N");
+            return;
+        }
+
+        System.out.printf("%d positions to depth %d, %d MB hash, %d cores%n%n", SUITE.size(), options.depth(),
+                options.hashMb(), Runtime.getRuntime().availableProcessors());
+        System.out.printf("%7s %10s %8s %12s %10s%n", "threads", "time (ms)", "speedup", "nodes", "knps");
+
+        // one throwaway run so the JIT has compiled the search before anything is timed
+        run(1, SearchLimits.depth(Math.min(options.depth(), 6)), options.hashMb());
+
+        long baseline = 0;
+        for (int threads : options.threads()) {
+            long[] best = null;
+            for (int round = 0; round < options.rounds(); round++) {
+                long[] result = run(threads, SearchLimits.depth(options.depth()), options.hashMb());
+                if (best == null || result[0] < best[0]) {
+                    best = result;
+                }
+            }
+            long nanos = best[0];
+            long nodes = best[1];
+            if (baseline == 0) {
+                baseline = nanos;
+            }
+            System.out.printf("%7d %10.0f %8.2f %12d %10.0f%n", threads, nanos / 1e6, (double) baseline / nanos,
+                    nodes, nodes / (nanos / 1e6));
+        }
+    }
+
+    // {total nanos, total nodes} for the whole suite
+    private static long[] run(int threads, SearchLimits limits, int hashMb) {
+        var table = new TranspositionTable(hashMb);
+        long nanos = 0;
+        long nodes = 0;
+        for (String fen : SUITE) {
+            // wall clock around the whole thing, so waiting for the helpers to stop counts too
+            long start = System.nanoTime();
+            SearchResult result = new ParallelSearch(Fen.parse(fen), table, threads, new AtomicBoolean()).run(limits);
+            nanos += System.nanoTime() - start;
+            nodes += result.nodes();
+        }
+        return new long[]{nanos, nodes};
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import chess.engine.Evaluator;
+import chess.engine.Fen;
+import chess.engine.Position;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The incremental evaluation against scanning the whole board, the way the search
+ * uses it: make a move, evaluate, unmake, for every legal move of a few positions.
+ * The eval* benchmarks leave the moves out, to see the evaluation on its own.
+ * <pre>
+ *   mvn package -DskipTests
+ *   java -cp bench/target/bench-jar-with-dependencies.jar org.openjdk.jmh.Main EvaluatorBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluatorBenchmark {
+
+    @Param({
+            Fen.START,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w - - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"})
+    public String fen;
+
+    private Position pos;
+    private int[] moves;
+    private int count;
+
+    @Setup
+    public void setup() {
+        pos = Fen.parse(fen);
+        moves = new int[Position.MAX_MOVES];
+        count = pos.legalMoves(moves);
+    }
+
+    @Benchmark
+    public int evalIncremental() {
+        return Evaluator.evaluate(pos);
+    }
+
+    @Benchmark
+    public int evalRescan() {
+        return Evaluator.rescan(pos);
+    }
+
+    @Benchmark
+    public void movesIncremental(Blackhole blackhole) {
+        for (int i = 0; i < count; i++) {
+            pos.makeMove(moves[i]);
+            blackhole.consume(Evaluator.evaluate(pos));
+            pos.unmakeMove(moves[i]);
+        }
+    }
+
+    @Benchmark
+    public void movesRescan(Blackhole blackhole) {
+        for (int i = 0; i < count; i++) {
+            pos.makeMove(moves[i]);
+            blackhole.consume(Evaluator.rescan(pos));
+            pos.unmakeMove(moves[i]);
+        }
+    }
+}
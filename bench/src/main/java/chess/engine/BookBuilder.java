@@ -0,0 +1,193 @@
+package chess.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Makes an OpeningBook file out of PGN games, offline:
+ * <pre>
+ *   java -cp bench/target/bench-jar-with-dependencies.jar chess.engine.BookBuilder book.bin games.pgn [more.pgn ...] [plies=24]
+ * </pre>
+ * Every move of the first plies plies of every game is an entry, weighted 2 if the
+ * side that played it went on to win, 1 for a draw (or no result) and 0 for a loss.
+ * Entries for the same position and move are added up, and moves that only ever lost
+ * are left out. The games are replayed in parallel and the entries put in key order
+ * with a parallel sort, so a big corpus uses all the cores.
+ * <p>
+ * A game stops counting at its first move that isn't legal or doesn't parse.
+ */
+public final class BookBuilder {
+
+    public static final int DEFAULT_PLIES = 24;
+
+    private static final Pattern TAG = Pattern.compile("^\\[(\\w+)\\s+\"(.*)\"\\]\\s*$");
+    private static final Pattern COMMENT = Pattern.compile("\\{[^}]*}|;[^\\n]*");
+    // NAGs, move numbers and results
+    private static final Pattern NOISE = Pattern.compile("\\$\\d+|\\d+\\.+|1-0|0-1|1/2-1/2|\\*");
+
+    record Game(String result, String moves) {
+    }
+
+    record Entry(long key, int move, int weight) {
+    }
+
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int byKey = Long.compareUnsigned(a.key(), b.key());
+        return byKey != 0 ? byKey : Integer.compare(a.move(), b.move());
+    };
+
+    private BookBuilder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Path> pgns = new ArrayList<>();
+        int plies = DEFAULT_PLIES;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("plies=")) {
+                plies = Integer.parseInt(args[i].substring("plies=".length()));
+            } else {
+                pgns.add(Path.of(args[i]));
+            }
+        }
+        if (pgns.isEmpty() || plies < 1) {
+            System.out.println("usage: book.bin games.pgn [more.pgn ...] [plies=N]");
+            return;
+        }
+        long start = System.nanoTime();
+        int entries = build(pgns, Path.of(args[0]), plies);
+        System.out.printf("%d entries written to %s in %.1f s%n", entries, args[0], (System.nanoTime() - start) / 1e9);
+    }
+
+    /** Writes the book for the games in pgns to book and returns how many entries it has. */
+    public static int build(List<Path> pgns, Path book, int plies) throws IOException {
+        List<Game> games = new ArrayList<>();
+        for (Path pgn : pgns) {
+            try (BufferedReader reader = Files.newBufferedReader(pgn)) {
+                games.addAll(read(reader));
+            }
+        }
+        Entry[] entries = games.parallelStream()
+                .flatMap(game -> entries(game, plies).stream())
+                .toArray(Entry[]::new);
+        Arrays.parallelSort(entries, ORDER);
+        List<Entry> merged = merge(entries);
+        try (OutputStream out = Files.newOutputStream(book)) {
+            write(merged, out);
+        }
+        return merged.size();
+    }
+
+    /** The games in a PGN file, tags dropped except for the result. */
+    static List<Game> read(BufferedReader reader) throws IOException {
+        List<Game> games = new ArrayList<>();
+        String result = "*";
+        StringBuilder moves = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            Matcher tag = TAG.matcher(line);
+            if (tag.matches()) {
+                // tags after moves are the next game's
+                if (!moves.isEmpty()) {
+                    games.add(new Game(result, moves.toString()));
+                    moves.setLength(0);
+                    result = "*";
+                }
+                if (tag.group(1).equals("Result")) {
+                    result = tag.group(2);
+                }
+            } else if (!line.isBlank() && !line.startsWith("%")) {
+                moves.append(line).append('\n');
+            }
+        }
+        if (!moves.isEmpty()) {
+            games.add(new Game(result, moves.toString()));
+        }
+        return games;
+    }
+
+    static List<Entry> entries(Game game, int plies) {
+        List<Entry> entries = new ArrayList<>();
+        Position pos = Position.start();
+        for (String san : sanMoves(game.moves())) {
+            if (entries.size() == plies) {
+                break;
+            }
+            int move = San.parse(pos, san);
+            if (move == 0) {
+                break;
+            }
+            entries.add(new Entry(BookKey.of(pos), BookKey.encode(move), weight(game.result(), pos.side)));
+            pos.makeMove(move);
+        }
+        return entries;
+    }
+
+    private static List<String> sanMoves(String movetext) {
+        // comments first, they could have anything in them, then variations innermost out
+        // since a regex can't match nested parentheses
+        String text = COMMENT.matcher(movetext).replaceAll(" ");
+        String before;
+        do {
+            before = text;
+            text = text.replaceAll("\\([^()]*\\)", " ");
+        } while (!text.equals(before));
+        text = NOISE.matcher(text).replaceAll(" ").trim();
+        return text.isEmpty() ? List.of() : List.of(text.split("\\s+"));
+    }
+
+    private static int weight(String result, int side) {
+        return switch (result) {
+            case "1-0" -> side == Position.WHITE ? 2 : 0;
+            case "0-1" -> side == Position.BLACK ? 2 : 0;
+            default -> 1;
+        };
+    }
+
+    // entries are sorted, so the same key and move are next to each other
+    private static List<Entry> merge(Entry[] entries) {
+        List<Entry> merged = new ArrayList<>();
+        long max = 0;
+        long[] totals = new long[entries.length];
+        for (int i = 0; i < entries.length; ) {
+            int j = i;
+            long total = 0;
+            while (j < entries.length && ORDER.compare(entries[i], entries[j]) == 0) {
+                total += entries[j++].weight();
+            }
+            if (total > 0) {
+                totals[merged.size()] = total;
+                merged.add(entries[i]);
+                max = Math.max(max, total);
+            }
+            i = j;
+        }
+        // weights are 16 bits in the file, scale them all down together if the corpus is big enough to need it
+        for (int i = 0; i < merged.size(); i++) {
+            long weight = max > 0xFFFF ? Math.max(1, totals[i] * 0xFFFF / max) : totals[i];
+            merged.set(i, new Entry(merged.get(i).key(), merged.get(i).move(), (int) weight));
+        }
+        return merged;
+    }
+
+    private static void write(List<Entry> entries, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        for (Entry entry : entries) {
+            data.writeLong(entry.key());
+            data.writeShort(entry.move());
+            data.writeShort(entry.weight());
+            data.writeInt(0);
+        }
+        data.flush();
+    }
+}
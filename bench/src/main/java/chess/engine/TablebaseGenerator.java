@@ -0,0 +1,439 @@
+package chess.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the Tablebase files by retrograde analysis, offline:
+ * <pre>
+ *   java -cp bench/target/bench-jar-with-dependencies.jar chess.engine.TablebaseGenerator tablebase pieces=4
+ * </pre>
+ * Tables that are already in the directory are kept, so a run that was stopped can
+ * carry on.
+ * <p>
+ * A table is worked out a ply at a time. Mates are the positions lost in 0. Then for
+ * each n, the positions that might be decided in n plies are the ones a move away
+ * from something decided in n - 1 (found by moving pieces backwards), and each of
+ * those is looked at properly: it's won in n if a move reaches a position lost in
+ * n - 1, and lost in n if every move reaches a win for the other side, the slowest in
+ * n - 1. Captures and promotions leave the table, they're looked up in the smaller
+ * tables made before it. Whatever is still undecided when nothing changes is a draw.
+ * <p>
+ * Every step goes over the whole table in index ranges on a fork-join pool, each
+ * index being one arrangement of the pieces. A step only writes the entries in its
+ * own range, and only ever reads entries from earlier plies, so the ranges don't need
+ * any locking between them.
+ */
+public final class TablebaseGenerator {
+
+    public static final int MAX_PIECES = 4;
+
+    // index ranges smaller than this aren't split any further
+    private static final int CHUNK = 1 << 13;
+    private static final int[] TYPES = {Position.QUEEN, Position.ROOK, Position.BISHOP, Position.KNIGHT, Position.PAWN};
+
+    private TablebaseGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int pieces = MAX_PIECES;
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("usage: dir [pieces=3|4]");
+            return;
+        }
+        if (args.length == 2) {
+            if (!args[1].startsWith("pieces=")) {
+                System.out.println("usage: dir [pieces=3|4]");
+                return;
+            }
+            pieces = Integer.parseInt(args[1].substring("pieces=".length()));
+        }
+        Path dir = Path.of(args[0]);
+        Files.createDirectories(dir);
+        generate(dir, pieces, ForkJoinPool.commonPool(), true);
+    }
+
+    /** Every table with up to maxPieces pieces, each after the tables its captures and promotions lead to. */
+    public static List<String> names(int maxPieces) {
+        if (maxPieces < 3 || maxPieces > MAX_PIECES) {
+            throw new IllegalArgumentException("tables are for 3 to " + MAX_PIECES + " pieces");
+        }
+        List<int[]> all = new ArrayList<>();
+        for (int a = 0; a < TYPES.length; a++) {
+            all.add(new int[]{Position.WHITE | TYPES[a]});
+            if (maxPieces < 4) {
+                continue;
+            }
+            for (int b = a; b < TYPES.length; b++) {
+                all.add(new int[]{Position.WHITE | TYPES[a], Position.WHITE | TYPES[b]});
+                // the stronger piece is white's, see Tablebase
+                all.add(new int[]{Position.WHITE | TYPES[a], Position.BLACK | TYPES[b]});
+            }
+        }
+        // fewer pieces first, then fewer pawns, since a promotion is one pawn fewer
+        all.sort(Comparator.<int[]>comparingInt(p -> p.length).thenComparingInt(TablebaseGenerator::pawns));
+        return all.stream().map(EndgameTable::name).toList();
+    }
+
+    private static int pawns(int[] pieces) {
+        int pawns = 0;
+        for (int piece : pieces) {
+            if ((piece & Position.TYPE) == Position.PAWN) {
+                pawns++;
+            }
+        }
+        return pawns;
+    }
+
+    /** Writes every table up to maxPieces that isn't in dir yet, and returns the whole tablebase. */
+    public static Tablebase generate(Path dir, int maxPieces, ForkJoinPool pool, boolean verbose) throws IOException {
+        List<EndgameTable> done = new ArrayList<>();
+        for (String name : names(maxPieces)) {
+            Path file = dir.resolve(name + Tablebase.SUFFIX);
+            if (Files.exists(file)) {
+                done.add(Tablebase.map(file));
+                continue;
+            }
+            long start = System.nanoTime();
+            Generator generator = new Generator(EndgameTable.parse(name), new Tablebase(done), pool);
+            byte[] values = generator.run();
+            write(file, values);
+            done.add(Tablebase.map(file));
+            if (verbose) {
+                System.out.printf("%-7s %,12d positions, longest mate %3d plies, %6.1f s%n", name, values.length,
+                        generator.longest, (System.nanoTime() - start) / 1e9);
+            }
+        }
+        return new Tablebase(done);
+    }
+
+    /** One table worked out in memory, for tests and tools that don't want files. */
+    static EndgameTable generate(String name, Tablebase smaller, ForkJoinPool pool) {
+        byte[] values = new Generator(EndgameTable.parse(name), smaller, pool).run();
+        return new EndgameTable(EndgameTable.parse(name), ByteBuffer.wrap(values));
+    }
+
+    private static void write(Path file, byte[] values) throws IOException {
+        // written next to it and moved into place, so a stopped run never leaves half a table behind
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial)))) {
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(values.length);
+            out.write(values);
+        }
+        Files.move(partial, file);
+    }
+
+    private static final class Generator {
+
+        private final EndgameTable table;
+        private final Tablebase smaller;
+        private final ForkJoinPool pool;
+        private final byte[] values;
+        // the ply at which a capture or promotion could decide a position, 0 if none can
+        private final byte[] wake;
+        // positions a move away from one decided in the last ply
+        private final byte[] candidate;
+        private int latestWake;
+        int longest;
+
+        Generator(int[] pieces, Tablebase smaller, ForkJoinPool pool) {
+            this.table = new EndgameTable(pieces, null);
+            this.smaller = smaller;
+            this.pool = pool;
+            this.values = new byte[table.size];
+            this.wake = new byte[table.size];
+            this.candidate = new byte[table.size];
+        }
+
+        byte[] run() {
+            AtomicInteger latest = new AtomicInteger();
+            forEach((scratch, from, to) -> {
+                int most = 0;
+                for (int i = from; i < to; i++) {
+                    most = Math.max(most, init(scratch, i));
+                }
+                latest.accumulateAndGet(most, Math::max);
+            });
+            latestWake = latest.get();
+
+            for (int n = 1; n < EndgameTable.ILLEGAL - 1; n++) {
+                int ply = n;
+                forEach((scratch, from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        if ((values[i] & 0xFF) == ply) {
+                            markParents(scratch, i);
+                        }
+                    }
+                });
+                AtomicInteger decided = new AtomicInteger();
+                forEach((scratch, from, to) -> {
+                    int count = 0;
+                    for (int i = from; i < to; i++) {
+                        if (values[i] == EndgameTable.DRAW && (candidate[i] != 0 || (wake[i] & 0xFF) == ply)
+                                && decide(scratch, i, ply)) {
+                            count++;
+                        }
+                        candidate[i] = 0;
+                    }
+                    decided.addAndGet(count);
+                });
+                if (decided.get() > 0) {
+                    longest = n;
+                } else if (n >= latestWake) {
+                    return values;
+                }
+            }
+            throw new IllegalStateException(table.name + " has mates longer than a table byte can hold");
+        }
+
+        // per worker, so nothing is allocated per position
+        private static final class Scratch {
+            final Position pos = new Position();
+            final int[] moves = new int[Position.MAX_MOVES];
+            final int[] squares = new int[5];
+            final int[] other = new int[5];
+        }
+
+        private interface Range {
+            void run(Scratch scratch, int from, int to);
+        }
+
+        private void forEach(Range range) {
+            pool.invoke(new Split(range, 0, table.size));
+        }
+
+        private static final class Split extends RecursiveAction {
+            private final Range range;
+            private final int from;
+            private final int to;
+
+            Split(Range range, int from, int to) {
+                this.range = range;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= CHUNK) {
+                    range.run(new Scratch(), from, to);
+                    return;
+                }
+                int mid = (from + to) >>> 1;
+                invokeAll(new Split(range, from, mid), new Split(range, mid, to));
+            }
+        }
+
+        // marks illegal and duplicate indexes, mates, and when captures and promotions could decide the rest
+        private int init(Scratch scratch, int i) {
+            int[] s = scratch.squares;
+            table.decode(i, s);
+            if (!setUp(scratch.pos, s) || table.index(s[0], s[1], s[2], s[3], s[4]) != i
+                    || scratch.pos.leftKingInCheck()) {
+                values[i] = (byte) EndgameTable.ILLEGAL;
+                return 0;
+            }
+            Position pos = scratch.pos;
+            int count = pos.legalMoves(scratch.moves);
+            if (count == 0) {
+                // stalemate is the draw that's already there
+                if (pos.inCheck()) {
+                    values[i] = 1;
+                }
+                return 0;
+            }
+            int fastestWin = Integer.MAX_VALUE;
+            int slowestLoss = 0;
+            boolean allLose = true;
+            for (int m = 0; m < count; m++) {
+                int move = scratch.moves[m];
+                if (Position.isQuiet(move)) {
+                    continue;
+                }
+                int value = exitValue(pos, move);
+                if (value == EndgameTable.DRAW) {
+                    allLose = false;
+                } else if (value % 2 == 1) {
+                    // lost for the other side in value - 1 plies, so won here in value
+                    fastestWin = Math.min(fastestWin, value);
+                } else {
+                    slowestLoss = Math.max(slowestLoss, value);
+                }
+            }
+            int at = fastestWin != Integer.MAX_VALUE ? fastestWin : allLose ? slowestLoss : 0;
+            wake[i] = (byte) at;
+            return at;
+        }
+
+        // the smaller table's value after a capture or promotion
+        private int exitValue(Position pos, int move) {
+            pos.makeMove(move);
+            int value = smaller.probeValue(pos);
+            pos.unmakeMove(move);
+            if (value < 0) {
+                throw new IllegalStateException(table.name + " needs a table for " + pos + " after " + Position.toUci(move));
+            }
+            return value;
+        }
+
+        private boolean decide(Scratch scratch, int i, int n) {
+            int[] s = scratch.squares;
+            table.decode(i, s);
+            Position pos = scratch.pos;
+            setUp(pos, s);
+            int count = pos.legalMoves(scratch.moves);
+            if (count == 0) {
+                return false;
+            }
+            boolean allLose = true;
+            for (int m = 0; m < count; m++) {
+                int move = scratch.moves[m];
+                int value;
+                if (Position.isQuiet(move)) {
+                    int[] child = scratch.other;
+                    System.arraycopy(s, 0, child, 0, s.length);
+                    child[0] ^= 1;
+                    int from = EndgameTable.to64(Position.from(move));
+                    int to = EndgameTable.to64(Position.to(move));
+                    for (int k = 1; k < child.length; k++) {
+                        if (child[k] == from) {
+                            child[k] = to;
+                        }
+                    }
+                    value = values[table.index(child[0], child[1], child[2], child[3], child[4])] & 0xFF;
+                } else {
+                    value = exitValue(pos, move);
+                }
+                // only what was decided before this ply counts, this ply's entries are being written right now
+                boolean decided = value != EndgameTable.DRAW && value <= n;
+                if (decided && value % 2 == 1) {
+                    values[i] = (byte) (n + 1);
+                    return true;
+                }
+                if (!decided) {
+                    allLose = false;
+                }
+            }
+            if (allLose) {
+                values[i] = (byte) (n + 1);
+                return true;
+            }
+            return false;
+        }
+
+        // everything that could have moved into position i: the side that isn't to move, moving a piece backwards
+        private void markParents(Scratch scratch, int i) {
+            int[] s = scratch.squares;
+            table.decode(i, s);
+            int mover = s[0] ^ 1;
+            unmoveKing(scratch, s, mover == 0 ? 1 : 2);
+            for (int k = 0; k < table.pieces.length; k++) {
+                int piece = table.pieces[k];
+                if ((piece & Position.COLOR) >> 3 == mover) {
+                    unmovePiece(scratch, s, 3 + k, piece);
+                }
+            }
+        }
+
+        private void unmoveKing(Scratch scratch, int[] s, int slot) {
+            for (int step : Position.KING_STEPS) {
+                tryParent(scratch, s, slot, EndgameTable.to88(s[slot]) + step);
+            }
+        }
+
+        private void unmovePiece(Scratch scratch, int[] s, int slot, int piece) {
+            int from = EndgameTable.to88(s[slot]);
+            switch (piece & Position.TYPE) {
+                case Position.PAWN -> {
+                    boolean white = (piece & Position.COLOR) == Position.WHITE;
+                    int back = white ? -16 : 16;
+                    int one = from + back;
+                    // a pawn never stood on its first rank, and only jumps two from its second
+                    if ((white ? one >> 4 >= 1 : one >> 4 <= 6) && isEmpty(s, one)) {
+                        tryParent(scratch, s, slot, one);
+                        if (from >> 4 == (white ? 3 : 4)) {
+                            tryParent(scratch, s, slot, one + back);
+                        }
+                    }
+                }
+                case Position.KNIGHT -> {
+                    for (int step : Position.KNIGHT_STEPS) {
+                        tryParent(scratch, s, slot, from + step);
+                    }
+                }
+                default -> {
+                    int type = piece & Position.TYPE;
+                    if (type == Position.BISHOP || type == Position.QUEEN) {
+                        slide(scratch, s, slot, from, Position.BISHOP_STEPS);
+                    }
+                    if (type == Position.ROOK || type == Position.QUEEN) {
+                        slide(scratch, s, slot, from, Position.ROOK_STEPS);
+                    }
+                }
+            }
+        }
+
+        private void slide(Scratch scratch, int[] s, int slot, int from, int[] steps) {
+            for (int step : steps) {
+                for (int to = from + step; (to & 0x88) == 0 && isEmpty(s, to); to += step) {
+                    tryParent(scratch, s, slot, to);
+                }
+            }
+        }
+
+        private void tryParent(Scratch scratch, int[] s, int slot, int square88) {
+            if ((square88 & 0x88) != 0 || !isEmpty(s, square88)) {
+                return;
+            }
+            int[] parent = scratch.other;
+            System.arraycopy(s, 0, parent, 0, s.length);
+            parent[0] ^= 1;
+            parent[slot] = EndgameTable.to64(square88);
+            int index = table.index(parent[0], parent[1], parent[2], parent[3], parent[4]);
+            if (index >= 0) {
+                candidate[index] = 1;
+            }
+        }
+
+        private boolean isEmpty(int[] s, int square88) {
+            int square = EndgameTable.to64(square88);
+            for (int k = 1; k < 3 + table.pieces.length; k++) {
+                if (s[k] == square) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // false if two pieces are on the same square
+        private boolean setUp(Position pos, int[] s) {
+            int used = 3 + table.pieces.length;
+            for (int a = 1; a < used; a++) {
+                for (int b = a + 1; b < used; b++) {
+                    if (s[a] == s[b]) {
+                        return false;
+                    }
+                }
+            }
+            pos.clear();
+            pos.put(EndgameTable.to88(s[1]), Position.WHITE | Position.KING);
+            pos.put(EndgameTable.to88(s[2]), Position.BLACK | Position.KING);
+            for (int k = 0; k < table.pieces.length; k++) {
+                pos.put(EndgameTable.to88(s[3 + k]), table.pieces[k]);
+            }
+            pos.setSide(s[0] == 0 ? Position.WHITE : Position.BLACK);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package chess.engine;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BookBuilderTests {
+
+    private static final String PGN = """
+            [Event "one"]
+            [Result "1-0"]
+
+            1. e4 e5 2. Nf3 {the usual} Nc6 3. Bb5 a6 (3... Nf6 4. O-O (4. d3)) 4. Ba4 1-0
+
+            [Event "two"]
+            [Result "0-1"]
+
+            1. e4 c5 2. Nf3 d6 $1 3. d4 cxd4 0-1
+
+            [Event "three"]
+            [Result "1/2-1/2"]
+
+            1. d4 d5 2. c4 e6 1/2-1/2
+            """;
+
+    @TempDir
+    Path dir;
+
+    private OpeningBook build(String pgn, int plies) throws IOException {
+        Path games = dir.resolve("games.pgn");
+        Files.writeString(games, pgn);
+        Path book = dir.resolve("book.bin");
+        BookBuilder.build(List.of(games), book, plies);
+        return OpeningBook.open(book);
+    }
+
+    private static String uci(List<OpeningBook.BookMove> moves) {
+        return String.join(" ", moves.stream().map(m -> Position.toUci(m.move()) + ":" + m.weight()).toList());
+    }
+
+    @Test
+    void bookPositive() throws IOException {
+        OpeningBook book = build(PGN, BookBuilder.DEFAULT_PLIES);
+        // e4 won once and lost once, d4 drew
+        assertEquals("e2e4:2 d2d4:1", uci(book.moves(Position.start())));
+
+        Position pos = Position.start();
+        pos.makeMove(San.parse(pos, "e4"));
+        // black's c5 won and e5 lost, so only c5 is in the book
+        assertEquals("c7c5:2", uci(book.moves(pos)));
+        assertEquals("c7c5", Position.toUci(book.pick(pos, new SplittableRandom(1))));
+
+        // past the comment and the variations, 4. Ba4 is in for white, who won
+        pos = Fen.parse("r1bqkbnr/1ppp1ppp/p1n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 0 1");
+        assertEquals("b5a4:2", uci(book.moves(pos)));
+        // and nothing for the variation's 3... Nf6
+        pos = Fen.parse("r1bqkb1r/pppp1ppp/2n2n2/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 0 1");
+        assertTrue(book.moves(pos).isEmpty());
+    }
+
+    @Test
+    void pliesPositive() throws IOException {
+        OpeningBook book = build(PGN, 1);
+        assertEquals(2, book.size());
+        Position pos = Position.start();
+        pos.makeMove(San.parse(pos, "d4"));
+        assertTrue(book.moves(pos).isEmpty());
+    }
+
+    @Test
+    void pickPositive() throws IOException {
+        OpeningBook book = build(PGN, BookBuilder.DEFAULT_PLIES);
+        // e4 has twice d4's weight, so it's picked about twice as often
+        var random = new SplittableRandom(7);
+        int e4 = 0;
+        for (int i = 0; i < 3000; i++) {
+            if (Position.toUci(book.pick(Position.start(), random)).equals("e2e4")) {
+                e4++;
+            }
+        }
+        assertTrue(e4 > 1800 && e4 < 2200, "e4 picked " + e4 + " times");
+        assertEquals(0, OpeningBook.EMPTY.pick(Position.start(), random));
+    }
+}
@@ -0,0 +1,112 @@
+package chess.engine;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TablebaseTests {
+
+    @TempDir
+    static Path dir;
+    private static Tablebase tablebase;
+
+    @BeforeAll
+    static void generate() throws IOException {
+        tablebase = TablebaseGenerator.generate(dir, 3, ForkJoinPool.commonPool(), false);
+    }
+
+    private static Tablebase.Result probe(String fen) {
+        return tablebase.probe(Fen.parse(fen));
+    }
+
+    // the longest win for white to move in a table, in plies
+    private static int longestWin(String name) {
+        EndgameTable table = TablebaseGenerator.generate(name, tablebase, ForkJoinPool.commonPool());
+        int longest = 0;
+        for (int i = 0; i < table.size / 2; i++) {
+            int value = table.get(i);
+            if (value != EndgameTable.ILLEGAL && value != EndgameTable.DRAW && value % 2 == 0) {
+                longest = Math.max(longest, value - 1);
+            }
+        }
+        return longest;
+    }
+
+    @Test
+    void generatePositive() {
+        assertEquals(java.util.Set.of("KQvK", "KRvK", "KBvK", "KNvK", "KPvK"), tablebase.tables());
+        assertEquals(3, tablebase.maxPieces());
+        // the well known longest mates: 10 moves with a queen, 16 with a rook
+        assertEquals(19, longestWin("KQvK"));
+        assertEquals(31, longestWin("KRvK"));
+        // and a lone minor piece never mates
+        assertEquals(0, longestWin("KBvK"));
+        assertEquals(0, longestWin("KNvK"));
+    }
+
+    @Test
+    void probePositive() {
+        // already mated
+        assertEquals(new Tablebase.Result(Tablebase.Outcome.LOSS, 0), probe("k7/1Q6/1K6/8/8/8/8/8 b - - 0 1"));
+        // mate in one
+        assertEquals(new Tablebase.Result(Tablebase.Outcome.WIN, 1), probe("k7/8/1K6/8/8/8/8/6Q1 w - - 0 1"));
+        // the same with the colors the other way round
+        assertEquals(new Tablebase.Result(Tablebase.Outcome.WIN, 1), probe("6q1/8/8/8/8/1k6/8/K7 b - - 0 1"));
+        assertEquals(new Tablebase.Result(Tablebase.Outcome.LOSS, 0), probe("8/8/8/8/8/1k6/1q6/K7 w - - 0 1"));
+        // opposition: white to move can't make progress, black to move has to give way
+        assertEquals(Tablebase.Outcome.DRAW, probe("8/4k3/8/4K3/4P3/8/8/8 w - - 0 1").outcome());
+        assertEquals(Tablebase.Outcome.LOSS, probe("8/4k3/8/4K3/4P3/8/8/8 b - - 0 1").outcome());
+        // a rook pawn with the king in front of it is a draw whoever is to move
+        assertEquals(Tablebase.Outcome.DRAW, probe("k7/8/K7/P7/8/8/8/8 w - - 0 1").outcome());
+        // nothing can catch this one
+        Tablebase.Result runner = probe("8/P7/8/8/8/8/8/k6K w - - 0 1");
+        assertEquals(Tablebase.Outcome.WIN, runner.outcome());
+        assertTrue(runner.mateIn() > 1);
+        assertEquals(Tablebase.Outcome.DRAW, probe("4k3/8/8/8/8/8/8/4K3 w - - 0 1").outcome());
+    }
+
+    @Test
+    void filesPositive() throws IOException {
+        // what was written is what's read back
+        Tablebase opened = Tablebase.open(dir);
+        assertEquals(tablebase.tables(), opened.tables());
+        for (String fen : new String[]{"8/8/2k5/8/8/8/4R3/4K3 b - - 0 1", "8/8/8/3k4/8/2P5/8/4K3 w - - 0 1"}) {
+            assertEquals(tablebase.probe(Fen.parse(fen)), opened.probe(Fen.parse(fen)));
+        }
+    }
+
+    @Test
+    void searchPositive() {
+        // a shallow search already sees the whole way to mate through the tablebase
+        Position pos = Fen.parse("8/8/3k4/8/8/8/8/R3K3 w - - 0 1");
+        Tablebase.Result result = tablebase.probe(pos);
+        assertEquals(Tablebase.Outcome.WIN, result.outcome());
+        SearchResult found = new Search(pos, new TranspositionTable(1), tablebase, new AtomicBoolean())
+                .run(SearchLimits.depth(1));
+        assertEquals(Search.MATE - result.plies(), found.score());
+
+        // and the tablebase's own move keeps the mate exactly one ply closer
+        int best = tablebase.bestMove(pos);
+        pos.makeMove(best);
+        assertEquals(new Tablebase.Result(Tablebase.Outcome.LOSS, result.plies() - 1), tablebase.probe(pos));
+    }
+
+    @Test
+    void probeNegative() throws IOException {
+        // no four piece tables, and nothing at all in an empty tablebase
+        assertNull(probe("4k3/8/8/8/8/8/8/2RRK3 w - - 0 1"));
+        assertNull(Tablebase.EMPTY.probe(Fen.parse("k7/8/1K6/8/8/8/8/6Q1 w - - 0 1")));
+        assertNull(probe(Fen.START));
+
+        Path broken = Files.createDirectories(dir.resolve("broken"));
+        Files.write(broken.resolve("KQvK.tb"), new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> Tablebase.open(broken));
+    }
+}
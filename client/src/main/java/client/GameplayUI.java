@@ -1,13 +1,17 @@
 package client;
 
 import chess.*;
+import chess.engine.SearchResult;
 import com.google.gson.Gson;
+import websocket.commands.AnalyzeCommand;
 import websocket.commands.MakeMoveCommand;
 import websocket.commands.UserGameCommand;
+import websocket.messages.AnalysisMessage;
 import websocket.messages.ErrorMessage;
 import websocket.messages.LoadGameMessage;
 import websocket.messages.NotificationMessage;
 import websocket.messages.ServerMessage;
+import ui.BoardDrawer;
 
 import java.util.Collection;
 import java.util.Scanner;
@@ -19,6 +23,7 @@ public class GameplayUI implements WebSocketCommunicator.ServerMessageObserver {
     private final int gameID;
     private final String playerColor;
     private final Gson gson = new Gson();
+    private final BoardDrawer drawer = new BoardDrawer(System.out);
     private ChessGame currentGame;
     private boolean inGame = true;
     private String currentTurn;
@@ -32,6 +37,17 @@ public class GameplayUI implements WebSocketCommunicator.ServerMessageObserver {
         ws.sendMessage(gson.toJson(connect));
     }
 
+    @Override
+    public void onReconnect() {
+        // the server dropped our session, join again so we keep getting updates
+        try {
+            UserGameCommand connect = new UserGameCommand(UserGameCommand.CommandType.CONNECT, authToken, gameID);
+            ws.sendMessage(gson.toJson(connect));
+        } catch (Exception e) {
+            System.out.println("\nError: Could not rejoin the game.");
+        }
+    }
+
     @Override
     public void onMessage(ServerMessage message) {
         switch (message.getServerMessageType()) {
@@ -39,26 +55,19 @@ public class GameplayUI implements WebSocketCommunicator.ServerMessageObserver {
                 currentGame = ((LoadGameMessage) message).getGame().game();
                 currentTurn = currentGame.getTeamTurn().name();
                 boolean whiteBottom = !"BLACK".equals(playerColor);
-                ui.BoardDrawer.drawBoard(currentGame.getBoard(), whiteBottom, null);
+                // only the squares that changed get repainted
+                drawer.draw(currentGame.getBoard(), whiteBottom, null, null);
                 System.out.println("It is " + currentTurn + "'s turn.");
                 System.out.print("[game] >>> ");
             }
             case NOTIFICATION -> {
+                // the board itself comes with the LOAD_GAME, no need to draw it again here
                 String note = ((NotificationMessage) message).getMessage();
                 System.out.println("\n[NOTIFICATION] " + note);
-
-                if (message instanceof LoadGameMessage loadMsg) {
-                    currentGame = loadMsg.getGame().game();
-                    currentTurn = currentGame.getTeamTurn().name();
-                    boolean whiteBottom = !"BLACK".equals(playerColor);
-                    ui.BoardDrawer.drawBoard(currentGame.getBoard(), whiteBottom, null);
-                } else if (currentGame != null) {
-                    currentTurn = currentGame.getTeamTurn().name();
-                    boolean whiteBottom = !"BLACK".equals(playerColor);
-                    ui.BoardDrawer.drawBoard(currentGame.getBoard(), whiteBottom, null);
-                }
-
-                System.out.println("It is " + currentTurn + "'s turn.");
+                System.out.print("[game] >>> ");
+            }
+            case ANALYSIS -> {
+                System.out.println("\n[ANALYSIS] " + describe((AnalysisMessage) message));
                 System.out.print("[game] >>> ");
             }
             case ERROR -> {
@@ -93,6 +102,7 @@ public class GameplayUI implements WebSocketCommunicator.ServerMessageObserver {
             case "move" -> makeMove(tokens);
             case "resign" -> resign(scanner);
             case "highlight" -> highlight(tokens);
+            case "analyze" -> analyze(tokens);
             default -> "Unknown command. Type 'help' for options.";
         };
     }
@@ -105,13 +115,14 @@ public class GameplayUI implements WebSocketCommunicator.ServerMessageObserver {
                 - move <FROM> <TO> (e.g. move e2 e4)
                 - resign
                 - highlight <SQUARE> (e.g. highlight e2)
+                - analyze [DEPTH] (the engine's best move here, e.g. analyze 12)
                 """;
     }
 
     private String redraw() {
         if (currentGame == null) return "No game loaded yet.";
         boolean whiteBottom = !"BLACK".equals(playerColor);
-        ui.BoardDrawer.drawBoard(currentGame.getBoard(), whiteBottom, null);
+        drawer.redraw(currentGame.getBoard(), whiteBottom, null, null);
         return null;
     }
 
@@ -126,6 +137,7 @@ public class GameplayUI implements WebSocketCommunicator.ServerMessageObserver {
                 System.out.println("Warning: " + e.getMessage());
             }
         }
+        drawer.release();
         inGame = false;
         return "You left the game.";
     }
@@ -172,13 +184,75 @@ public class GameplayUI implements WebSocketCommunicator.ServerMessageObserver {
             ChessPosition pos = parsePosition(tokens[1]);
             Collection<ChessMove> moves = currentGame.validMoves(pos);
             boolean whiteBottom = !"BLACK".equals(playerColor);
-            ui.BoardDrawer.drawBoard(currentGame.getBoard(), whiteBottom, moves, pos);
+            drawer.draw(currentGame.getBoard(), whiteBottom, moves, pos);
             return null;
         } catch (Exception e) {
             return "Error: " + e.getMessage();
         }
     }
 
+    private String analyze(String[] tokens) {
+        Integer depth = null;
+        if (tokens.length >= 2) {
+            try {
+                depth = Integer.parseInt(tokens[1]);
+            } catch (NumberFormatException e) {
+                return "Usage: analyze [DEPTH] (e.g. analyze 12)";
+            }
+        }
+        try {
+            ws.sendMessage(gson.toJson(new AnalyzeCommand(authToken, gameID, depth)));
+            return "Analyzing...";
+        } catch (Exception e) {
+            return "Error: Could not send analysis request.";
+        }
+    }
+
+    // e.g. "depth 10, white is up 0.35: e2e4 e7e5 g1f3"
+    private String describe(AnalysisMessage message) {
+        SearchResult result = message.getAnalysis();
+        if (result.move() == null) {
+            return "No moves to analyze, the game is over.";
+        }
+        // the score is for whoever was to move when it was asked for, every move since flips that
+        ChessGame.TeamColor side = ChessGame.TeamColor.WHITE;
+        boolean movedOn = currentGame != null && currentGame.getMoveCount() != message.getMoveCount();
+        if (currentGame != null) {
+            side = currentGame.getTeamTurn();
+            if ((currentGame.getMoveCount() - message.getMoveCount()) % 2 != 0) {
+                side = side == ChessGame.TeamColor.WHITE ? ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE;
+            }
+        }
+        String score;
+        if (result.isMate()) {
+            int mateIn = result.mateIn();
+            score = side.name().toLowerCase() + (mateIn > 0 ? " mates in " + mateIn : " gets mated in " + -mateIn);
+        } else {
+            score = String.format("%s is %s %.2f", side.name().toLowerCase(), result.score() >= 0 ? "up" : "down",
+                    Math.abs(result.score()) / 100.0);
+        }
+        StringBuilder line = new StringBuilder();
+        for (ChessMove move : result.pv()) {
+            line.append(' ').append(moveName(move));
+        }
+        return "depth " + result.depth() + ", " + score + ":" + line + (movedOn ? " (the game has moved on since)" : "");
+    }
+
+    private String moveName(ChessMove move) {
+        String name = squareName(move.getStartPosition()) + squareName(move.getEndPosition());
+        return move.getPromotionPiece() == null ? name
+                : name + switch (move.getPromotionPiece()) {
+                    case QUEEN -> "q";
+                    case ROOK -> "r";
+                    case BISHOP -> "b";
+                    default -> "n";
+                };
+    }
+
+    private String squareName(ChessPosition pos) {
+        return (char) ('a' + pos.getColumn() - 1) + Integer.toString(pos.getRow());
+    }
+
     private ChessPosition parsePosition(String s) {
         if (s.length() != 2 || s.charAt(0) < 'a' || s.charAt(0) > 'h'
                 || !Character.isDigit(s.charAt(1))) throw new IllegalArgumentException("Invalid position: " + s);
@@ -22,6 +22,7 @@ public class PostloginUI {
             case "list" -> listGames();
             case "play" -> playGame(tokens);
             case "observe" -> observeGame(tokens);
+            case "bot" -> addBot(tokens);
             default -> "Unknown command. Type 'help' for options.";
         };
     }
@@ -32,6 +33,7 @@ public class PostloginUI {
                 - list - games
                 - play <ID> <WHITE|BLACK> - a game
                 - observe <ID> - a game
+                - bot <ID> <WHITE|BLACK> [blitz|rapid|analysis] - seat a computer player
                 - logout - when you are done
                 - help - with possible commands
                 """;
@@ -115,6 +117,31 @@ public class PostloginUI {
         }
     }
 
+    private String addBot(String[] tokens) {
+        if (tokens.length < 3) {
+            return "Usage: bot <ID> <WHITE|BLACK> [blitz|rapid|analysis]";
+        }
+        try {
+            if (lastGames == null) {
+                lastGames = facade.listGames(authToken);
+            }
+            int gameNumber = Integer.parseInt(tokens[1]);
+            if (gameNumber < 1 || gameNumber > lastGames.length) {
+                return "Invalid game number.";
+            }
+            int gameID = lastGames[gameNumber - 1].gameID();
+            String color = tokens[2].toUpperCase();
+            String strength = tokens.length > 3 ? tokens[3].toLowerCase() : "blitz";
+            facade.addBot(authToken, gameID, color, strength);
+            lastGames = null;
+            return "A " + strength + " bot is playing " + color + ".";
+        } catch (NumberFormatException e) {
+            return "Please enter a valid game number.";
+        } catch (Exception e) {
+            return "Error: Could not add a bot.";
+        }
+    }
+
     public boolean isLoggedOut() {
         return loggedOut;
     }
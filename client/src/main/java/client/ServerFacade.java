@@ -1,80 +1,210 @@
 package client;
 
+import chess.engine.SearchResult;
 import com.google.gson.Gson;
 import java.io.*;
 import java.net.*;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 public class ServerFacade {
 
+    // one client shared by every facade in the process, so keep-alive connections get
+    // reused instead of opening a new socket for each call
+    private static final HttpClient SHARED_CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
     private final String serverUrl;
+    private final HttpClient client;
     private final Gson gson = new Gson();
+    // last game list we got and its ETag, so polling an unchanged list is just a 304
+    private volatile CachedGames cachedGames;
+    private record CachedGames(String etag, GameData[] games) {}
 
     public ServerFacade(int port) {
-        this.serverUrl = "http://localhost:" + port;
+        this("http://localhost:" + port, SHARED_CLIENT);
+    }
+
+    public ServerFacade(String serverUrl, HttpClient client) {
+        this.serverUrl = serverUrl;
+        this.client = client;
     }
-    private <T> T makeRequest(String method, String path, String authToken, Object body, Class<T> responseClass) throws Exception {
-        URL url = new URI(serverUrl + path).toURL();
-        HttpURLConnection http = (HttpURLConnection) url.openConnection();
-        http.setRequestMethod(method);
-        http.setRequestProperty("Content-Type", "application/json");
+
+    private CompletableFuture<HttpResponse<InputStream>> send(String method, String path, String authToken,
+                                                              Object body, String ifNoneMatch) {
+        var builder = HttpRequest.newBuilder(URI.create(serverUrl + path))
+                .header("Content-Type", "application/json")
+                .header("Accept-Encoding", "gzip, deflate")
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(gson.toJson(body), StandardCharsets.UTF_8));
         if (authToken != null) {
-            http.setRequestProperty("authorization", authToken);
+            builder.header("authorization", authToken);
+        }
+        if (ifNoneMatch != null) {
+            builder.header("If-None-Match", ifNoneMatch);
         }
-        if (body != null) {
-            http.setDoOutput(true);
-            try (var out = http.getOutputStream()) {
-                out.write(gson.toJson(body).getBytes());
+        return client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    private <T> CompletableFuture<T> makeRequestAsync(String method, String path, String authToken, Object body,
+                                                      Class<T> responseClass) {
+        return send(method, path, authToken, body, null).thenApply(response -> readResponse(response, responseClass));
+    }
+
+    // decodes the body straight off the (possibly compressed) stream; always closes it so
+    // the connection goes back to the pool
+    private <T> T readResponse(HttpResponse<InputStream> response, Class<T> responseClass) {
+        try (var in = decompress(response)) {
+            if (response.statusCode() >= 300) {
+                throw new Exception("Error: " + new String(in.readAllBytes(), StandardCharsets.UTF_8));
             }
+            if (responseClass == null) {
+                in.transferTo(OutputStream.nullOutputStream());
+                return null;
+            }
+            return gson.fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), responseClass);
+        } catch (Exception e) {
+            throw new CompletionException(e);
         }
-        http.connect();
-        if (http.getResponseCode() >= 300) {
-            throw new Exception("Error: " + readBody(http.getErrorStream()));
+    }
+
+    private InputStream decompress(HttpResponse<InputStream> response) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if ("gzip".equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(response.body());
         }
-        if (responseClass == null){
-            return null;
+        if ("deflate".equalsIgnoreCase(encoding)) {
+            return new InflaterInputStream(response.body());
         }
-        return gson.fromJson(readBody(http.getInputStream()), responseClass);
+        return response.body();
     }
 
-    private String readBody(InputStream stream) throws IOException {
-        if (stream == null){
-            return "";
+    // waits for an async call and hands back the original exception instead of a CompletionException
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
         }
-        return new String(stream.readAllBytes());
     }
+
     public void clear() throws Exception {
-        makeRequest("DELETE", "/db", null, null, null);
+        await(clearAsync());
+    }
+    public CompletableFuture<Void> clearAsync() {
+        return makeRequestAsync("DELETE", "/db", null, null, null);
     }
     public record AuthData(String authToken, String username) {}
 
     public AuthData register(String username, String password, String email) throws Exception {
+        return await(registerAsync(username, password, email));
+    }
+    public CompletableFuture<AuthData> registerAsync(String username, String password, String email) {
         var body = Map.of("username", username, "password", password, "email", email);
-        return makeRequest("POST", "/user", null, body, AuthData.class);
+        return makeRequestAsync("POST", "/user", null, body, AuthData.class);
     }
     public AuthData login(String username, String password) throws Exception {
+        return await(loginAsync(username, password));
+    }
+    public CompletableFuture<AuthData> loginAsync(String username, String password) {
         var body = Map.of("username", username, "password", password);
-        return makeRequest("POST", "/session", null, body, AuthData.class);
+        return makeRequestAsync("POST", "/session", null, body, AuthData.class);
     }
     public void logout(String authToken) throws Exception {
-        makeRequest("DELETE", "/session", authToken, null, null);
+        await(logoutAsync(authToken));
     }
-    public void createGame(String authToken, String gameName) throws Exception {
+    public CompletableFuture<Void> logoutAsync(String authToken) {
+        return makeRequestAsync("DELETE", "/session", authToken, null, null);
+    }
+    private record CreateGameResponse(int gameID) {}
+
+    public int createGame(String authToken, String gameName) throws Exception {
+        return await(createGameAsync(authToken, gameName));
+    }
+    public CompletableFuture<Integer> createGameAsync(String authToken, String gameName) {
         var body = Map.of("gameName", gameName);
-        makeRequest("POST", "/game", authToken, body, null);
+        return makeRequestAsync("POST", "/game", authToken, body, CreateGameResponse.class)
+                .thenApply(CreateGameResponse::gameID);
     }
     public record GameData(int gameID, String whiteUsername, String blackUsername, String gameName) {}
     private record GamesResponse(GameData[] games) {}
 
     public GameData[] listGames(String authToken) throws Exception {
-        var response = makeRequest("GET", "/game", authToken, null, GamesResponse.class);
-        return response.games();
+        return await(listGamesAsync(authToken));
+    }
+    public CompletableFuture<GameData[]> listGamesAsync(String authToken) {
+        CachedGames cached = cachedGames;
+        return send("GET", "/game", authToken, null, cached != null ? cached.etag() : null).thenApply(response -> {
+            if (response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                try (var in = response.body()) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+                return cached.games().clone();
+            }
+            var games = readResponse(response, GamesResponse.class).games();
+            cachedGames = response.headers().firstValue("ETag").map(etag -> new CachedGames(etag, games)).orElse(null);
+            return games.clone();
+        });
     }
     public void joinGame(String authToken, int gameID, String playerColor) throws Exception {
+        await(joinGameAsync(authToken, gameID, playerColor));
+    }
+    public CompletableFuture<Void> joinGameAsync(String authToken, int gameID, String playerColor) {
         var body = Map.of("gameID", gameID, "playerColor", playerColor);
-        makeRequest("PUT", "/game", authToken, body, null);
+        return makeRequestAsync("PUT", "/game", authToken, body, null);
+    }
+    public void addBot(String authToken, int gameID, String playerColor, String strength) throws Exception {
+        await(addBotAsync(authToken, gameID, playerColor, strength));
+    }
+    public CompletableFuture<Void> addBotAsync(String authToken, int gameID, String playerColor, String strength) {
+        var body = Map.of("gameID", gameID, "playerColor", playerColor, "strength", strength);
+        return makeRequestAsync("PUT", "/game/bot", authToken, body, null);
+    }
+    public record BatchOperation(String op, String gameName, Integer gameID, String playerColor) {
+        public static BatchOperation create(String gameName) {
+            return new BatchOperation("create", gameName, null, null);
+        }
+
+        public static BatchOperation join(int gameID, String playerColor) {
+            return new BatchOperation("join", null, gameID, playerColor);
+        }
+    }
+    // message is null when the operation worked
+    public record BatchResult(Integer gameID, String message) {}
+    private record BatchRequest(List<BatchOperation> operations) {}
+    private record BatchResponse(BatchResult[] results) {}
+
+    public BatchResult[] batch(String authToken, List<BatchOperation> operations) throws Exception {
+        return await(batchAsync(authToken, operations));
+    }
+    public CompletableFuture<BatchResult[]> batchAsync(String authToken, List<BatchOperation> operations) {
+        return makeRequestAsync("POST", "/batch", authToken, new BatchRequest(operations), BatchResponse.class)
+                .thenApply(BatchResponse::results);
+    }
+    public SearchResult analyze(String authToken, int gameID, int depth) throws Exception {
+        return await(analyzeAsync(authToken, gameID, depth));
+    }
+    public CompletableFuture<SearchResult> analyzeAsync(String authToken, int gameID, int depth) {
+        return makeRequestAsync("GET", "/game/analysis?gameID=" + gameID + "&depth=" + depth, authToken, null,
+                SearchResult.class);
     }
     public String getServerUrl() {
         return serverUrl;// localhost8080
     }
-}
\ No newline at end of file
+}
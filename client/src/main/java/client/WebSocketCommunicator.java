@@ -1,6 +1,7 @@
 package client;
 
 import com.google.gson.Gson;
+import websocket.messages.AnalysisMessage;
 import websocket.messages.ServerMessage;
 import websocket.messages.LoadGameMessage;
 import websocket.messages.ErrorMessage;
@@ -8,35 +9,73 @@ import websocket.messages.NotificationMessage;
 
 import jakarta.websocket.*;
 import java.net.URI;
+import java.util.concurrent.*;
 
 @ClientEndpoint
 public class WebSocketCommunicator {
 
-    private Session session;
+    // every communicator shares one container (and its threads) unless told otherwise
+    private static final WebSocketContainer SHARED_CONTAINER = ContainerProvider.getWebSocketContainer();
+    private static final ScheduledExecutorService RECONNECTS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ws-reconnect");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final long CONNECT_TIMEOUT_MS = 5000;
+    private static final long FIRST_RETRY_MS = 100;
+    private static final long MAX_RETRY_MS = 5000;
+    private static final int MAX_RETRIES = 8;
+
+    private final URI uri;
+    private final WebSocketContainer container;
     private final ServerMessageObserver observer;
     private final Gson gson = new Gson();
+    private volatile Session session;
+    // completed from onOpen, replaced each time we (re)connect
+    private volatile CompletableFuture<Session> opened = new CompletableFuture<>();
+    private volatile boolean closedByUser = false;
+    private int retries = 0;
 
     public interface ServerMessageObserver {
         void onMessage(ServerMessage message);
+
+        // the connection dropped and came back; the server has forgotten us by now
+        default void onReconnect() {
+        }
     }
     public WebSocketCommunicator(String serverUrl, ServerMessageObserver observer) throws Exception {
-        this.observer = observer;
-        URI uri = new URI(serverUrl.replace("http", "ws") + "/ws");
-        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
-        container.connectToServer(this, uri);
-        int attempts = 0;
-        while (session == null && attempts < 10) {
-            Thread.sleep(100);
-            attempts++;
+        this(serverUrl, observer, SHARED_CONTAINER);
+        try {
+            connect().get(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new Exception("Could not establish WebSocket connection", e);
         }
-        if (session == null) {
-            throw new Exception("Could not establish WebSocket connection");
+    }
+
+    // doesn't connect yet, call connect() when ready
+    public WebSocketCommunicator(String serverUrl, ServerMessageObserver observer, WebSocketContainer container)
+            throws Exception {
+        this.observer = observer;
+        this.container = container;
+        this.uri = new URI(serverUrl.replace("http", "ws") + "/ws");
+    }
+
+    public CompletableFuture<Session> connect() {
+        CompletableFuture<Session> future = opened.isDone() ? new CompletableFuture<>() : opened;
+        opened = future;
+        try {
+            container.connectToServer(this, uri);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
         }
+        return future;
     }
 
     @OnOpen
     public void onOpen(Session session) {
         this.session = session;
+        opened.complete(session);
     }
 
     @OnMessage
@@ -46,6 +85,7 @@ public class WebSocketCommunicator {
             case LOAD_GAME -> gson.fromJson(message, LoadGameMessage.class);
             case ERROR -> gson.fromJson(message, ErrorMessage.class);
             case NOTIFICATION -> gson.fromJson(message, NotificationMessage.class);
+            case ANALYSIS -> gson.fromJson(message, AnalysisMessage.class);
         };
         observer.onMessage(typed);
     }
@@ -53,6 +93,10 @@ public class WebSocketCommunicator {
     @OnClose
     public void onClose(Session session, CloseReason reason) {
         this.session = null;
+        if (!closedByUser && reason.getCloseCode() != CloseReason.CloseCodes.NORMAL_CLOSURE) {
+            opened = new CompletableFuture<>();
+            scheduleReconnect();
+        }
     }
 
     @OnError
@@ -60,13 +104,51 @@ public class WebSocketCommunicator {
         System.out.println("WS error: " + throwable.getMessage());
     }
 
+    // backs off 100ms, 200ms, 400ms ... up to 5s between tries, then gives up
+    private synchronized void scheduleReconnect() {
+        if (retries >= MAX_RETRIES) {
+            opened.completeExceptionally(new Exception("WebSocket connection lost"));
+            return;
+        }
+        long delay = Math.min(MAX_RETRY_MS, FIRST_RETRY_MS << retries);
+        delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+        retries++;
+        RECONNECTS.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect() {
+        if (closedByUser) {
+            return;
+        }
+        try {
+            container.connectToServer(this, uri);
+            synchronized (this) {
+                retries = 0;
+            }
+            observer.onReconnect();
+        } catch (Exception e) {
+            scheduleReconnect();
+        }
+    }
+
     public void sendMessage(String message) throws Exception {
-        session.getBasicRemote().sendText(message);
+        // if we're in the middle of reconnecting this waits for it instead of failing
+        Session current;
+        try {
+            current = opened.get(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new Exception("WebSocket is not connected", e);
+        }
+        synchronized (current) {
+            current.getBasicRemote().sendText(message);
+        }
     }
 
     public void close() throws Exception {
-        if (session != null && session.isOpen()) {
-            session.close();
+        closedByUser = true;
+        Session current = session;
+        if (current != null && current.isOpen()) {
+            current.close();
         }
     }
-}
\ No newline at end of file
+}
@@ -1,63 +1,162 @@
 package ui;
 
 import chess.*;
+import java.io.PrintStream;
 import java.util.Collection;
 import java.util.HashSet;
 
+/**
+ * Renders the board into one buffer and writes it out in a single print.
+ * <p>
+ * The static drawBoard methods print the whole board inline like before. An instance
+ * pins the board to the top of the screen (everything else scrolls underneath it) and
+ * after the first frame only repaints the squares that changed, which keeps fast games
+ * from flickering over slow connections.
+ */
 public class BoardDrawer {
 
+    private static final String[] COLS = {"a", "b", "c", "d", "e", "f", "g", "h"};
+    // header line, 8 ranks, header line, then a blank line before the scrolling area
+    private static final int BOARD_LINES = 10;
+    private static final int SCROLL_TOP = BOARD_LINES + 2;
+    // " 8 " in front of each rank, then 3 columns per square
+    private static final int FIRST_SQUARE_COLUMN = 4;
+    private static final int SQUARE_WIDTH = 3;
+
+    private static final StringBuilder SHARED_BUFFER = new StringBuilder(4096);
+
+    private final PrintStream out;
+    private final StringBuilder buffer = new StringBuilder(4096);
+    // what we last put in each on-screen cell, [line][column] from the top left
+    private String[][] lastFrame;
+    private boolean lastWhitePerspective;
+
+    public BoardDrawer(PrintStream out) {
+        this.out = out;
+    }
+
     public static void drawBoard(ChessBoard board, boolean isWhitePerspective, Collection<ChessMove> legalMoves) {
         drawBoard(board, isWhitePerspective, legalMoves, null);
     }
 
     public static void drawBoard(ChessBoard board, boolean isWhitePerspective,
                                  Collection<ChessMove> legalMoves, ChessPosition selectedPos) {
-        HashSet<ChessPosition> highlightedSquares = new HashSet<>();
-        if (legalMoves != null) {
-            for (ChessMove move : legalMoves) {
-                highlightedSquares.add(move.getEndPosition());
+        String[][] frame = renderSquares(board, isWhitePerspective, legalMoves, selectedPos);
+        synchronized (SHARED_BUFFER) {
+            SHARED_BUFFER.setLength(0);
+            SHARED_BUFFER.append('\n');
+            appendBoard(SHARED_BUFFER, frame, isWhitePerspective);
+            System.out.print(SHARED_BUFFER);
+            System.out.flush();
+        }
+    }
+
+    /**
+     * Draws the board, repainting only the squares that differ from the last frame.
+     * Falls back to a full redraw the first time or when the perspective flips.
+     */
+    public synchronized void draw(ChessBoard board, boolean isWhitePerspective,
+                                  Collection<ChessMove> legalMoves, ChessPosition selectedPos) {
+        String[][] frame = renderSquares(board, isWhitePerspective, legalMoves, selectedPos);
+        if (lastFrame == null || lastWhitePerspective != isWhitePerspective) {
+            drawFull(frame, isWhitePerspective);
+            return;
+        }
+
+        buffer.setLength(0);
+        for (int line = 0; line < 8; line++) {
+            for (int col = 0; col < 8; col++) {
+                if (!frame[line][col].equals(lastFrame[line][col])) {
+                    buffer.append(EscapeSequences.moveCursorToLocation(
+                            FIRST_SQUARE_COLUMN + col * SQUARE_WIDTH, line + 2));
+                    buffer.append(frame[line][col]);
+                }
             }
         }
+        if (!buffer.isEmpty()) {
+            // hop up to the board and back so whatever the user is typing isn't disturbed
+            buffer.insert(0, EscapeSequences.SAVE_CURSOR);
+            buffer.append(EscapeSequences.RESTORE_CURSOR);
+            out.print(buffer);
+            out.flush();
+        }
+        lastFrame = frame;
+    }
 
-        String[] cols = {"a", "b", "c", "d", "e", "f", "g", "h"};
+    /** Clears the screen and paints everything again, e.g. for the redraw command. */
+    public synchronized void redraw(ChessBoard board, boolean isWhitePerspective,
+                                    Collection<ChessMove> legalMoves, ChessPosition selectedPos) {
+        drawFull(renderSquares(board, isWhitePerspective, legalMoves, selectedPos), isWhitePerspective);
+    }
 
-        int rowStart = isWhitePerspective ? 8 : 1;
-        int rowEnd = isWhitePerspective ? 0 : 9;
-        int rowStep = isWhitePerspective ? -1 : 1;
+    /** Hands the whole screen back to normal scrolling. */
+    public synchronized void release() {
+        if (lastFrame != null) {
+            out.print(EscapeSequences.RESET_SCROLL_REGION + EscapeSequences.moveCursorToLocation(1, 999) + "\n");
+            out.flush();
+            lastFrame = null;
+        }
+    }
 
-        int colStart = isWhitePerspective ? 1 : 8;
-        int colEnd = isWhitePerspective ? 9 : 0;
-        int colStep = isWhitePerspective ? 1 : -1;
+    private void drawFull(String[][] frame, boolean isWhitePerspective) {
+        buffer.setLength(0);
+        buffer.append(EscapeSequences.RESET_SCROLL_REGION).append(EscapeSequences.ERASE_SCREEN);
+        appendBoard(buffer, frame, isWhitePerspective);
+        // keep the board where it is and let messages scroll below it
+        buffer.append(EscapeSequences.setScrollRegionFrom(SCROLL_TOP));
+        buffer.append(EscapeSequences.moveCursorToLocation(1, SCROLL_TOP));
+        out.print(buffer);
+        out.flush();
+        lastFrame = frame;
+        lastWhitePerspective = isWhitePerspective;
+    }
 
-        System.out.println();
-        printColumnHeaders(cols, colStart, colEnd, colStep);
+    // one string per square in screen order, top left first
+    private static String[][] renderSquares(ChessBoard board, boolean isWhitePerspective,
+                                            Collection<ChessMove> legalMoves, ChessPosition selectedPos) {
+        HashSet<ChessPosition> highlightedSquares = new HashSet<>();
+        if (legalMoves != null) {
+            for (ChessMove move : legalMoves) {
+                highlightedSquares.add(move.getEndPosition());
+            }
+        }
 
-        for (int r = rowStart; r != rowEnd; r += rowStep) {
-            System.out.print(" " + r + " ");
-            for (int c = colStart; c != colEnd; c += colStep) {
+        String[][] frame = new String[8][8];
+        for (int line = 0; line < 8; line++) {
+            int r = isWhitePerspective ? 8 - line : line + 1;
+            for (int col = 0; col < 8; col++) {
+                int c = isWhitePerspective ? col + 1 : 8 - col;
                 ChessPosition pos = new ChessPosition(r, c);
                 ChessPiece piece = board.getPiece(pos);
                 boolean isSelected = selectedPos != null && selectedPos.equals(pos);
                 boolean isHighlighted = highlightedSquares.contains(pos);
 
-                String bg = getSquareColor(r, c, isHighlighted, isSelected);
-                String pieceStr = getPieceString(piece);
-                String pieceColor = getPieceColor(piece);
-
-                System.out.print(bg + pieceColor + " " + pieceStr + " " + "\u001b[0m");
+                frame[line][col] = getSquareColor(r, c, isHighlighted, isSelected) + getPieceColor(piece)
+                        + " " + getPieceString(piece) + " " + EscapeSequences.RESET_ALL;
             }
-            System.out.println(" " + r);
         }
+        return frame;
+    }
 
-        printColumnHeaders(cols, colStart, colEnd, colStep);
+    private static void appendBoard(StringBuilder sb, String[][] frame, boolean isWhitePerspective) {
+        appendColumnHeaders(sb, isWhitePerspective);
+        for (int line = 0; line < 8; line++) {
+            int r = isWhitePerspective ? 8 - line : line + 1;
+            sb.append(' ').append(r).append(' ');
+            for (String square : frame[line]) {
+                sb.append(square);
+            }
+            sb.append(' ').append(r).append('\n');
+        }
+        appendColumnHeaders(sb, isWhitePerspective);
     }
 
-    private static void printColumnHeaders(String[] cols, int start, int end, int step) {
-        System.out.print("   ");
-        for (int c = start; c != end; c += step) {
-            System.out.print(" " + cols[c - 1] + " ");
+    private static void appendColumnHeaders(StringBuilder sb, boolean isWhitePerspective) {
+        sb.append("   ");
+        for (int i = 0; i < 8; i++) {
+            sb.append(' ').append(COLS[isWhitePerspective ? i : 7 - i]).append(' ');
         }
-        System.out.println();
+        sb.append('\n');
     }
 
     private static String getSquareColor(int r, int c, boolean isHighlighted, boolean isSelected) {
@@ -92,4 +191,4 @@ public class BoardDrawer {
         //dark blue so it is visible through the green
         return piece.getTeamColor() == ChessGame.TeamColor.WHITE ? "\u001b[31m" : "\u001b[1;34m";
     }
-}
\ No newline at end of file
+}
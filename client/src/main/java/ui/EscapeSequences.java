@@ -10,6 +10,11 @@ public class EscapeSequences {
 
     public static final String ERASE_SCREEN = UNICODE_ESCAPE + "[H" + UNICODE_ESCAPE + "[2J";
     public static final String ERASE_LINE = UNICODE_ESCAPE + "[2K";
+    public static final String RESET_ALL = UNICODE_ESCAPE + "[0m";
+
+    public static final String SAVE_CURSOR = UNICODE_ESCAPE + "7";
+    public static final String RESTORE_CURSOR = UNICODE_ESCAPE + "8";
+    public static final String RESET_SCROLL_REGION = UNICODE_ESCAPE + "[r";
 
     public static final String SET_TEXT_BOLD = UNICODE_ESCAPE + "[1m";
     public static final String SET_TEXT_FAINT = UNICODE_ESCAPE + "[2m";
@@ -62,4 +67,7 @@ public class EscapeSequences {
     public static final String EMPTY = " \u2003 ";
 
     public static String moveCursorToLocation(int x, int y) { return UNICODE_ESCAPE + "[" + y + ";" + x + "H"; }
+
+    // only lines from top down to the bottom of the terminal scroll, anything above stays put
+    public static String setScrollRegionFrom(int top) { return UNICODE_ESCAPE + "[" + top + "r"; }
 }
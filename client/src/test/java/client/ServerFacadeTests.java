@@ -2,6 +2,8 @@ package client;
 
 import org.junit.jupiter.api.*;
 import server.Server;
+
+import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ServerFacadeTests {
@@ -66,7 +68,8 @@ public class ServerFacadeTests {
     @Test
     void createGamePositive() throws Exception {
         var authData = facade.register("player1", "password", "p1@email.com");
-        facade.createGame(authData.authToken(), "mygame");
+        int gameID = facade.createGame(authData.authToken(), "mygame");
+        assertEquals(gameID, facade.listGames(authData.authToken())[0].gameID());
     }
 
     @Test
@@ -99,4 +102,61 @@ public class ServerFacadeTests {
     void joinGameNegative() throws Exception {
         assertThrows(Exception.class, () -> facade.joinGame("invalidtoken", 9999, "WHITE"));
     }
+
+    @Test
+    void addBotPositive() throws Exception {
+        var authData = facade.register("player1", "password", "p1@email.com");
+        int gameID = facade.createGame(authData.authToken(), "mygame");
+        facade.addBot(authData.authToken(), gameID, "BLACK", "blitz");
+        assertEquals("bot:blitz", facade.listGames(authData.authToken())[0].blackUsername());
+    }
+
+    @Test
+    void addBotNegative() throws Exception {
+        var authData = facade.register("player1", "password", "p1@email.com");
+        int gameID = facade.createGame(authData.authToken(), "mygame");
+        assertThrows(Exception.class, () -> facade.addBot(authData.authToken(), gameID, "BLACK", "grandmaster"));
+        assertThrows(Exception.class, () -> facade.register("bot:blitz", "password", "bot@email.com"));
+    }
+
+    @Test
+    void batchPositive() throws Exception {
+        var authData = facade.register("player1", "password", "p1@email.com");
+        var created = facade.batch(authData.authToken(), List.of(
+                ServerFacade.BatchOperation.create("game1"),
+                ServerFacade.BatchOperation.create("game2")));
+        var joined = facade.batch(authData.authToken(), List.of(
+                ServerFacade.BatchOperation.join(created[0].gameID(), "WHITE"),
+                ServerFacade.BatchOperation.join(created[1].gameID(), "BLACK"),
+                ServerFacade.BatchOperation.join(created[1].gameID(), "BLACK")));
+        assertNull(joined[0].message());
+        assertNull(joined[1].message());
+        assertNotNull(joined[2].message());
+        assertEquals(2, facade.listGames(authData.authToken()).length);
+    }
+
+    @Test
+    void batchNegative() throws Exception {
+        assertThrows(Exception.class, () ->
+                facade.batch("invalidtoken", List.of(ServerFacade.BatchOperation.create("game1"))));
+    }
+
+    @Test
+    void analyzePositive() throws Exception {
+        var authData = facade.register("player1", "password", "p1@email.com");
+        int gameID = facade.createGame(authData.authToken(), "mygame");
+        var result = facade.analyze(authData.authToken(), gameID, 3);
+        assertNotNull(result.move());
+        assertEquals(3, result.depth());
+        assertFalse(result.pv().isEmpty());
+    }
+
+    @Test
+    void analyzeNegative() throws Exception {
+        var authData = facade.register("player1", "password", "p1@email.com");
+        int gameID = facade.createGame(authData.authToken(), "mygame");
+        assertThrows(Exception.class, () -> facade.analyze("invalidtoken", gameID, 3));
+        assertThrows(Exception.class, () -> facade.analyze(authData.authToken(), gameID + 1, 3));
+        assertThrows(Exception.class, () -> facade.analyze(authData.authToken(), gameID, 0));
+    }
 }
@@ -0,0 +1,50 @@
+package loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Collects raw latency samples for one kind of operation so we can report exact
+ * percentiles at the end. A few million longs is nothing next to what the
+ * simulated players allocate, so there's no need for anything fancier.
+ */
+public class LatencyRecorder {
+
+    private final String name;
+    private long[] samples = new long[1024];
+    private int count = 0;
+    private int errors = 0;
+
+    public record Summary(String name, int count, int errors, long p50, long p90, long p99, long p999, long max) {
+    }
+
+    public LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    public synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    public synchronized void recordError() {
+        errors++;
+    }
+
+    public synchronized Summary summarize() {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return new Summary(name, count, errors, percentile(sorted, 0.50), percentile(sorted, 0.90),
+                percentile(sorted, 0.99), percentile(sorted, 0.999), count == 0 ? 0 : sorted[count - 1]);
+    }
+
+    // nearest-rank, so p99 of 100 samples is the 99th smallest
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
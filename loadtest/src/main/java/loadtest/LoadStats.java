@@ -0,0 +1,64 @@
+package loadtest;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Everything the simulated games report back: latencies by operation name plus a few
+ * counters for how the games ended.
+ */
+public class LoadStats {
+
+    private static final int MAX_ERRORS_SHOWN = 10;
+
+    // sorted so the report comes out in the same order every run
+    private final Map<String, LatencyRecorder> recorders = new ConcurrentSkipListMap<>();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder gamesFinished = new LongAdder();
+    private final LongAdder gamesFailed = new LongAdder();
+    private final Map<String, LongAdder> failures = new ConcurrentSkipListMap<>();
+
+    public LatencyRecorder recorder(String name) {
+        return recorders.computeIfAbsent(name, LatencyRecorder::new);
+    }
+
+    public void moveMade() {
+        moves.increment();
+    }
+
+    public void gameFinished() {
+        gamesFinished.increment();
+    }
+
+    public void gameFailed(Throwable error) {
+        gamesFailed.increment();
+        String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        failures.computeIfAbsent(message, k -> new LongAdder()).increment();
+    }
+
+    public void print(PrintStream out, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%ngames finished: %d, failed: %d, moves: %d in %.1fs (%.1f moves/s)%n%n",
+                gamesFinished.sum(), gamesFailed.sum(), moves.sum(), seconds, moves.sum() / seconds);
+
+        out.printf("%-16s %8s %6s %9s %9s %9s %9s %9s%n", "operation (ms)", "count", "errors",
+                "p50", "p90", "p99", "p99.9", "max");
+        for (LatencyRecorder recorder : recorders.values()) {
+            var s = recorder.summarize();
+            out.printf("%-16s %8d %6d %9.2f %9.2f %9.2f %9.2f %9.2f%n", s.name(), s.count(), s.errors(),
+                    millis(s.p50()), millis(s.p90()), millis(s.p99()), millis(s.p999()), millis(s.max()));
+        }
+
+        if (!failures.isEmpty()) {
+            out.println("\nfailures:");
+            failures.entrySet().stream().limit(MAX_ERRORS_SHOWN)
+                    .forEach(e -> out.printf("  %5d x %s%n", e.getValue().sum(), e.getKey()));
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,118 @@
+package loadtest;
+
+import client.ServerFacade;
+import dataaccess.CachingDataAccess;
+import dataaccess.FileDataAccess;
+import dataaccess.MemoryDataAccess;
+import server.Server;
+
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+/**
+ * Headless load generator. Plays lots of random games at once, one virtual thread per
+ * game, and prints latency percentiles for every REST call and for moves.
+ * <pre>
+ *   mvn package -DskipTests
+ *   java -jar loadtest/target/loadtest-jar-with-dependencies.jar games=500 spectators=2 embedded=memory
+ * </pre>
+ * Arguments are key=value: games, spectators, plies, think (max ms between moves),
+ * ramp (ms between game starts), timeout (seconds to wait on the server), seed, and
+ * either server=http://host:port or embedded=memory|sql|file to start a server in-process
+ * (file keeps its data in a temp directory).
+ */
+public class LoadTestMain {
+
+    public record Options(int games, int spectators, int maxPlies, int thinkMillis, int rampMillis,
+                          int timeoutSeconds, long seed, String serverUrl, String embedded) {
+
+        private static final Set<String> KEYS = Set.of("games", "spectators", "plies", "think", "ramp",
+                "timeout", "seed", "server", "embedded");
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("expected key=value but got " + arg);
+                }
+                String key = arg.substring(0, eq);
+                if (!KEYS.contains(key)) {
+                    throw new IllegalArgumentException("unknown option " + key);
+                }
+                values.put(key, arg.substring(eq + 1));
+            }
+            var options = new Options(
+                    Integer.parseInt(values.getOrDefault("games", "100")),
+                    Integer.parseInt(values.getOrDefault("spectators", "1")),
+                    Integer.parseInt(values.getOrDefault("plies", "60")),
+                    Integer.parseInt(values.getOrDefault("think", "0")),
+                    Integer.parseInt(values.getOrDefault("ramp", "2")),
+                    Integer.parseInt(values.getOrDefault("timeout", "30")),
+                    Long.parseLong(values.getOrDefault("seed", "240")),
+                    values.getOrDefault("server", "http://localhost:8080"),
+                    values.get("embedded"));
+            if (options.embedded() != null && !options.embedded().matches("memory|sql|file")) {
+                throw new IllegalArgumentException("embedded must be memory, sql or file");
+            }
+            return options;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) { // NumberFormatException too
+            System.out.println("Error: " + e.getMessage());
+            System.out.println("usage: games=N spectators=N plies=N think=MS ramp=MS timeout=S seed=N "
+                    + "[server=URL | embedded=memory|sql|file]");
+            return;
+        }
+
+        Server embedded = null;
+        String serverUrl = options.serverUrl();
+        if (options.embedded() != null) {
+            embedded = switch (options.embedded()) {
+                case "memory" -> new Server(new CachingDataAccess(new MemoryDataAccess()));
+                case "file" -> new Server(new CachingDataAccess(
+                        new FileDataAccess(Files.createTempDirectory("chess-loadtest"))));
+                default -> new Server();
+            };
+            serverUrl = "http://localhost:" + embedded.run(0);
+        }
+
+        // one client for every simulated user, like a real deployment sitting behind a proxy
+        var httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(options.timeoutSeconds()))
+                .build();
+        var facade = new ServerFacade(serverUrl, httpClient);
+        var stats = new LoadStats();
+        // keeps usernames from clashing with an earlier run against the same server
+        String runID = Long.toString(System.currentTimeMillis(), 36);
+
+        System.out.printf("playing %d games (%d spectators each, up to %d plies) against %s%n",
+                options.games(), options.spectators(), options.maxPlies(), serverUrl);
+        long start = System.nanoTime();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < options.games(); i++) {
+                executor.submit(new SimulatedGame(i, runID, options, serverUrl, facade, stats));
+                if (options.rampMillis() > 0) {
+                    Thread.sleep(options.rampMillis());
+                }
+            }
+        }
+        stats.print(System.out, System.nanoTime() - start);
+
+        if (embedded != null) {
+            embedded.stop();
+        }
+        System.exit(0);
+    }
+}
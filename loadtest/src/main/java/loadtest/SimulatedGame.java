@@ -0,0 +1,199 @@
+package loadtest;
+
+import chess.*;
+import client.ServerFacade;
+import websocket.commands.MakeMoveCommand;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays one whole game against the server: registers two players and some spectators,
+ * creates and joins the game, connects everyone over WebSocket and then plays random
+ * legal moves until the game ends or we hit the ply limit.
+ * <p>
+ * Only one move is in flight at a time. After sending it we wait until every
+ * participant has the new board, so each LOAD_GAME can be timed against the move
+ * that caused it.
+ */
+public class SimulatedGame implements Runnable {
+
+    private static final long MAX_REGISTER_BACKOFF_MS = 1000;
+
+    private final int index;
+    private final String prefix;
+    private final LoadTestMain.Options options;
+    private final String serverUrl;
+    private final ServerFacade facade;
+    private final LoadStats stats;
+    private final Random random;
+    private final List<SimulatedPlayer> everyone = new ArrayList<>();
+
+    // counts down once per participant as their first LOAD_GAME arrives
+    private volatile CountDownLatch connected;
+    // the move we're waiting on, null while connecting
+    private volatile PendingMove pending;
+    private volatile String serverError;
+
+    private record PendingMove(long sentAt, SimulatedPlayer mover, CountDownLatch seen) {
+    }
+
+    public SimulatedGame(int index, String runID, LoadTestMain.Options options, String serverUrl,
+                         ServerFacade facade, LoadStats stats) {
+        this.index = index;
+        this.prefix = "lt" + runID + "g" + index;
+        this.options = options;
+        this.serverUrl = serverUrl;
+        this.facade = facade;
+        this.stats = stats;
+        this.random = new Random(options.seed() + index);
+    }
+
+    @Override
+    public void run() {
+        try {
+            play();
+            stats.gameFinished();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stats.gameFailed(e);
+        } catch (Exception e) {
+            stats.gameFailed(e);
+        } finally {
+            everyone.forEach(SimulatedPlayer::close);
+        }
+    }
+
+    private void play() throws Exception {
+        SimulatedPlayer white = register(prefix + "w");
+        SimulatedPlayer black = register(prefix + "b");
+        for (int i = 0; i < options.spectators(); i++) {
+            register(prefix + "s" + i);
+        }
+
+        int gameID = timed("createGame", () -> facade.createGame(white.getAuthToken(), "load " + index));
+        timed("joinGame", () -> {
+            facade.joinGame(white.getAuthToken(), gameID, "WHITE");
+            return null;
+        });
+        timed("joinGame", () -> {
+            facade.joinGame(black.getAuthToken(), gameID, "BLACK");
+            return null;
+        });
+        timed("listGames", () -> facade.listGames(white.getAuthToken()));
+
+        connected = new CountDownLatch(everyone.size());
+        for (SimulatedPlayer player : everyone) {
+            timed("wsConnect", () -> {
+                player.connect(serverUrl, gameID);
+                return null;
+            });
+        }
+        await(connected, "everyone to connect");
+
+        ChessGame state = white.getLastGame();
+        for (int ply = 0; ply < options.maxPlies(); ply++) {
+            ChessMove move = randomMove(state);
+            if (move == null) {
+                break; // checkmate or stalemate
+            }
+            SimulatedPlayer mover = state.getTeamTurn() == ChessGame.TeamColor.WHITE ? white : black;
+
+            var inFlight = new PendingMove(System.nanoTime(), mover, new CountDownLatch(everyone.size()));
+            pending = inFlight;
+            mover.send(new MakeMoveCommand(mover.getAuthToken(), gameID, move));
+            await(inFlight.seen(), "the move to be broadcast");
+            pending = null;
+
+            stats.moveMade();
+            state = mover.getLastGame();
+            if (options.thinkMillis() > 0) {
+                Thread.sleep(random.nextInt(options.thinkMillis() + 1));
+            }
+        }
+    }
+
+    private SimulatedPlayer register(String username) throws Exception {
+        // the server sheds password hashing when it's swamped, back off and try again
+        // like a real client would instead of giving up on the whole game
+        long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.timeoutSeconds());
+        ServerFacade.AuthData auth = null;
+        for (int attempt = 0; auth == null; attempt++) {
+            try {
+                auth = timed("register", () -> facade.register(username, "password", username + "@load.test"));
+            } catch (Exception e) {
+                if (System.nanoTime() > giveUpAt || !e.getMessage().contains("service unavailable")) {
+                    throw e;
+                }
+                Thread.sleep(Math.min(MAX_REGISTER_BACKOFF_MS, 50L << Math.min(attempt, 5)) + random.nextInt(50));
+            }
+        }
+        var player = new SimulatedPlayer(username, auth.authToken(), this);
+        everyone.add(player);
+        return player;
+    }
+
+    void loadReceived(SimulatedPlayer player) {
+        PendingMove current = pending;
+        if (current == null) {
+            connected.countDown();
+            return;
+        }
+        long elapsed = System.nanoTime() - current.sentAt();
+        // the mover's own copy is the full round trip, everyone else's is the fan-out
+        stats.recorder(player == current.mover() ? "moveRoundTrip" : "moveBroadcast").record(elapsed);
+        current.seen().countDown();
+    }
+
+    void errorReceived(SimulatedPlayer player, String message) {
+        serverError = player.getUsername() + ": " + message;
+        // wake up whoever is waiting, they'll see the error
+        CountDownLatch latch = pending != null ? pending.seen() : connected;
+        if (latch != null) {
+            while (latch.getCount() > 0) {
+                latch.countDown();
+            }
+        }
+    }
+
+    private void await(CountDownLatch latch, String what) throws Exception {
+        if (!latch.await(options.timeoutSeconds(), TimeUnit.SECONDS)) {
+            throw new Exception("timed out waiting for " + what);
+        }
+        if (serverError != null) {
+            throw new Exception("server error: " + serverError);
+        }
+    }
+
+    private ChessMove randomMove(ChessGame game) {
+        List<ChessMove> moves = new ArrayList<>();
+        ChessBoard board = game.getBoard();
+        for (int row = 1; row <= 8; row++) {
+            for (int col = 1; col <= 8; col++) {
+                ChessPosition pos = new ChessPosition(row, col);
+                ChessPiece piece = board.getPiece(pos);
+                if (piece != null && piece.getTeamColor() == game.getTeamTurn()) {
+                    moves.addAll(game.validMoves(pos));
+                }
+            }
+        }
+        return moves.isEmpty() ? null : moves.get(random.nextInt(moves.size()));
+    }
+
+    private <T> T timed(String name, Callable<T> call) throws Exception {
+        LatencyRecorder recorder = stats.recorder(name);
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            recorder.record(System.nanoTime() - start);
+            return result;
+        } catch (Exception e) {
+            recorder.recordError();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package loadtest;
+
+import chess.ChessGame;
+import client.WebSocketCommunicator;
+import com.google.gson.Gson;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.ServerMessage;
+
+/**
+ * One user in a simulated game, either one of the two players or a spectator.
+ * It just keeps the latest board the server sent and tells its game about every
+ * LOAD_GAME or ERROR that shows up.
+ */
+public class SimulatedPlayer implements WebSocketCommunicator.ServerMessageObserver {
+
+    private final String username;
+    private final String authToken;
+    private final SimulatedGame game;
+    private final Gson gson = new Gson();
+    private WebSocketCommunicator ws;
+    private volatile ChessGame lastGame;
+
+    public SimulatedPlayer(String username, String authToken, SimulatedGame game) {
+        this.username = username;
+        this.authToken = authToken;
+        this.game = game;
+    }
+
+    public void connect(String serverUrl, int gameID) throws Exception {
+        ws = new WebSocketCommunicator(serverUrl, this);
+        send(new UserGameCommand(UserGameCommand.CommandType.CONNECT, authToken, gameID));
+    }
+
+    public void send(UserGameCommand command) throws Exception {
+        ws.sendMessage(gson.toJson(command));
+    }
+
+    public void close() {
+        try {
+            if (ws != null) {
+                ws.close();
+            }
+        } catch (Exception ignored) {
+            // we're done with it either way
+        }
+    }
+
+    @Override
+    public void onMessage(ServerMessage message) {
+        switch (message.getServerMessageType()) {
+            case LOAD_GAME -> {
+                lastGame = ((LoadGameMessage) message).getGame().game();
+                game.loadReceived(this);
+            }
+            case ERROR -> game.errorReceived(this, ((ErrorMessage) message).getErrorMessage());
+            case NOTIFICATION -> {
+                // nothing to check, the board is what we care about
+            }
+        }
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getAuthToken() {
+        return authToken;
+    }
+
+    public ChessGame getLastGame() {
+        return lastGame;
+    }
+}
@@ -0,0 +1,66 @@
+package dataaccess;
+
+import chess.ChessMove;
+import model.AuthData;
+import model.BatchOperation;
+import model.BatchResult;
+import model.GameData;
+import model.UserData;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * DataAccess, but every call hands back a future instead of blocking, so a caller can
+ * start several lookups at once (auth and game for a move, say) and wait for them
+ * together. Failures complete the future with the DataAccessException.
+ */
+public interface AsyncDataAccess {
+
+    CompletableFuture<Void> clear();
+
+    CompletableFuture<Void> createUser(UserData user);
+    CompletableFuture<UserData> getUser(String username);
+
+    CompletableFuture<Void> createAuth(AuthData auth);
+    CompletableFuture<AuthData> getAuth(String authToken);
+    CompletableFuture<Void> deleteAuth(String authToken);
+    CompletableFuture<Void> deleteAllAuthForUser(String username);
+
+    CompletableFuture<Integer> createGame(String gameName);
+    CompletableFuture<GameData> getGame(int gameID);
+    CompletableFuture<Collection<GameData>> listGames();
+    CompletableFuture<Collection<GameData>> listGamesForUser(String username);
+    CompletableFuture<Void> updateGame(GameData game);
+    CompletableFuture<Void> recordMove(GameData game, ChessMove move);
+
+    CompletableFuture<List<BatchResult>> applyBatch(String username, List<BatchOperation> operations);
+
+    /** Runs every call on executor, for stores that block on I/O. */
+    static AsyncDataAccess onExecutor(DataAccess dataAccess, Executor executor) {
+        return new ExecutorAsyncDataAccess(dataAccess, executor);
+    }
+
+    /** Runs every call right away on the caller's thread, for stores that never block. */
+    static AsyncDataAccess inline(DataAccess dataAccess) {
+        return new ExecutorAsyncDataAccess(dataAccess, Runnable::run);
+    }
+
+    /** Waits for a future from here and hands back its value or its DataAccessException. */
+    static <T> T await(CompletableFuture<T> future) throws DataAccessException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof DataAccessException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
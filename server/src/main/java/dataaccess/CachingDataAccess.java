@@ -0,0 +1,137 @@
+package dataaccess;
+
+import chess.ChessMove;
+import model.AuthData;
+import model.BatchOperation;
+import model.BatchResult;
+import model.GameData;
+import model.UserData;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps another DataAccess and keeps a versioned snapshot of the game list.
+ * Every write that can change a game (create, join, update, batch, clear) bumps the
+ * version, so GET /game can answer "not modified" without touching the database and
+ * repeated listings reuse the same snapshot until something changes.
+ */
+public class CachingDataAccess implements DataAccess {
+
+    private final DataAccess delegate;
+    private final AtomicLong gameListVersion = new AtomicLong();
+    private volatile GameListSnapshot snapshot;
+
+    private record GameListSnapshot(long version, List<GameData> games) {
+    }
+
+    public CachingDataAccess(DataAccess delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public long getGameListVersion() {
+        return gameListVersion.get();
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        try {
+            delegate.clear();
+        } finally {
+            gameListVersion.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void createUser(UserData user) throws DataAccessException {
+        delegate.createUser(user);
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        return delegate.getUser(username);
+    }
+
+    @Override
+    public void createAuth(AuthData auth) throws DataAccessException {
+        delegate.createAuth(auth);
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        return delegate.getAuth(authToken);
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        delegate.deleteAuth(authToken);
+    }
+
+    @Override
+    public void deleteAllAuthForUser(String username) throws DataAccessException {
+        delegate.deleteAllAuthForUser(username);
+    }
+
+    @Override
+    public int createGame(String gameName) throws DataAccessException {
+        try {
+            return delegate.createGame(gameName);
+        } finally {
+            gameListVersion.incrementAndGet();
+        }
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        return delegate.getGame(gameID);
+    }
+
+    @Override
+    public Collection<GameData> listGames() throws DataAccessException {
+        // read the version first: if a write sneaks in while we load, the snapshot is
+        // tagged with the older version and gets replaced on the next call
+        long version = gameListVersion.get();
+        GameListSnapshot current = snapshot;
+        if (current != null && current.version() == version) {
+            return current.games();
+        }
+        List<GameData> games = List.copyOf(delegate.listGames());
+        snapshot = new GameListSnapshot(version, games);
+        return games;
+    }
+
+    // not worth caching per user, the player indexes make it cheap
+    @Override
+    public Collection<GameData> listGamesForUser(String username) throws DataAccessException {
+        return delegate.listGamesForUser(username);
+    }
+
+    @Override
+    public void updateGame(GameData game) throws DataAccessException {
+        try {
+            delegate.updateGame(game);
+        } finally {
+            gameListVersion.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void recordMove(GameData game, ChessMove move) throws DataAccessException {
+        try {
+            delegate.recordMove(game, move);
+        } finally {
+            gameListVersion.incrementAndGet();
+        }
+    }
+
+    @Override
+    public List<BatchResult> applyBatch(String username, List<BatchOperation> operations) throws DataAccessException {
+        try {
+            return delegate.applyBatch(username, operations);
+        } finally {
+            gameListVersion.incrementAndGet();
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package dataaccess;
 
+import chess.ChessMove;
 import model.AuthData;
+import model.BatchOperation;
+import model.BatchResult;
 import model.UserData;
 import model.GameData;
 import java.util.Collection;
+import java.util.List;
 
 public interface DataAccess {
 
@@ -17,11 +21,30 @@ public interface DataAccess {
     void createAuth(AuthData auth) throws DataAccessException;
     AuthData getAuth(String authToken) throws DataAccessException;
     void deleteAuth(String authToken) throws DataAccessException;
+    // every session the user has open, e.g. to log them out everywhere
+    void deleteAllAuthForUser(String username) throws DataAccessException;
 
     // List games
     int createGame(String gameName) throws DataAccessException;
     GameData getGame(int gameID) throws DataAccessException;
     Collection<GameData> listGames() throws DataAccessException;
+    // games the user is playing either side of, by gameID
+    Collection<GameData> listGamesForUser(String username) throws DataAccessException;
     void updateGame(GameData game) throws DataAccessException;
 
+    // Saves a game that just had move made on it. Implementations that keep a move log
+    // can write only the move instead of the whole game.
+    default void recordMove(GameData game, ChessMove move) throws DataAccessException {
+        updateGame(game);
+    }
+
+    // Batch of already validated create/join operations for one user, all or nothing.
+    // Returns one result per operation, in order.
+    List<BatchResult> applyBatch(String username, List<BatchOperation> operations) throws DataAccessException;
+
+    // Goes up every time the game list changes. -1 means this implementation doesn't keep track.
+    default long getGameListVersion() {
+        return -1;
+    }
+
 }
\ No newline at end of file
@@ -1,7 +1,14 @@
 package dataaccess;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.*;
 import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class DatabaseManager {
     private static String databaseName;
@@ -9,6 +16,21 @@ public class DatabaseManager {
     private static String dbPassword;
     private static String connectionUrl;
 
+    // connections are pooled so the statements the driver caches on them get reused
+    static final int POOL_SIZE = Integer.getInteger("chess.dbPoolSize", 10);
+    private static final long POOL_WAIT_MS = 5000;
+    // a connection that's been idle this long gets checked before it's handed out
+    private static final long VALIDATE_AFTER_MS = 30_000;
+    private static final Semaphore checkouts = new Semaphore(POOL_SIZE);
+    // most recently used first, its statement cache is the warmest
+    private static final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+
+    // bumped when the properties change, connections from an older generation are dropped
+    private static volatile int poolGeneration;
+
+    private record IdleConnection(Connection conn, int generation, long since) {
+    }
+
     /*
      * Load the database information for the db.properties file.
      */
@@ -40,10 +62,55 @@ public class DatabaseManager {
                 blackUsername VARCHAR(255),
                 gameName VARCHAR(255) NOT NULL,
                 game TEXT NOT NULL,
+                snapshotPly INT NOT NULL DEFAULT 0,
                 PRIMARY KEY (gameID)
              )
             """
+            ,
+            //MOVE TABLE, one row per move made after the game's snapshot
+            """
+            CREATE TABLE IF NOT EXISTS move (
+                gameID INT NOT NULL,
+                ply INT NOT NULL,
+                move VARCHAR(5) NOT NULL,
+                PRIMARY KEY (gameID, ply)
+            )
+            """
+
+    };
 
+    // which migrations have run, one row per version
+    private static final String CREATE_SCHEMA_VERSION = """
+            CREATE TABLE IF NOT EXISTS schema_version (
+                version INT NOT NULL,
+                description VARCHAR(255) NOT NULL,
+                appliedAt TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                PRIMARY KEY (version)
+            )
+            """;
+
+    private interface MigrationStep {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private record Migration(int version, String description, MigrationStep step) {
+    }
+
+    // changes on top of CREATE_STATMENTS, in order. Each one runs once per database, and
+    // has to cope with a database that got there some other way (tables created fresh
+    // already have the snapshotPly column, say). Only ever add to the end.
+    private static final Migration[] MIGRATIONS = {
+            new Migration(1, "game.snapshotPly for the move log",
+                    conn -> addColumnIfMissing(conn, "game", "snapshotPly", "INT NOT NULL DEFAULT 0")),
+            // InnoDB secondary indexes carry the primary key, so these cover looking up
+            // a user's tokens / game IDs without touching the rows
+            new Migration(2, "index auth by username",
+                    conn -> addIndexIfMissing(conn, "auth", "auth_username", "username")),
+            new Migration(3, "index games by player",
+                    conn -> {
+                        addIndexIfMissing(conn, "game", "game_white", "whiteUsername");
+                        addIndexIfMissing(conn, "game", "game_black", "blackUsername");
+                    }),
     };
 
 
@@ -66,10 +133,11 @@ public class DatabaseManager {
     }
 
     /**
-     * Create a connection to the database and sets the catalog based upon the
-     * properties specified in db.properties. Connections to the database should
-     * be short-lived, and you must close the connection when you are done with it.
-     * The easiest way to do that is with a try-with-resource block.
+     * Hands out a pooled connection to the database, with the catalog set based upon
+     * the properties specified in db.properties. Connections to the database should
+     * be short-lived, and you must close the connection when you are done with it,
+     * which puts it back in the pool. The easiest way to do that is with a
+     * try-with-resource block.
      * <br/>
      * <code>
      * try (var conn = DatabaseManager.getConnection()) {
@@ -79,16 +147,118 @@ public class DatabaseManager {
      */
     static Connection getConnection() throws DataAccessException {
         try {
-            //do not wrap the following line with a try-with-resources
-            var conn = DriverManager.getConnection(connectionUrl, dbUsername, dbPassword);
-            conn.setCatalog(databaseName);
-            return conn;
+            if (!checkouts.tryAcquire(POOL_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                throw new DataAccessException("failed to get connection: all " + POOL_SIZE + " are in use");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("failed to get connection", ex);
+        }
+        try {
+            int generation = poolGeneration;
+            Connection conn = takeIdle(generation);
+            if (conn == null) {
+                //do not wrap the following line with a try-with-resources
+                conn = DriverManager.getConnection(connectionUrl, dbUsername, dbPassword);
+                conn.setCatalog(databaseName);
+                SqlStatement.warmUp(conn);
+            }
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new PooledConnection(conn, generation));
         } catch (SQLException ex) {
+            checkouts.release();
             throw new DataAccessException("failed to get connection", ex);
         }
     }
 
-    private static void loadPropertiesFromResources() {
+    private static Connection takeIdle(int generation) {
+        IdleConnection next;
+        while ((next = idle.pollFirst()) != null) {
+            try {
+                if (next.generation() != generation) {
+                    closeQuietly(next.conn());
+                    continue;
+                }
+                if (System.currentTimeMillis() - next.since() < VALIDATE_AFTER_MS || next.conn().isValid(2)) {
+                    return next.conn();
+                }
+            } catch (SQLException ex) {
+                // fall through and drop it
+            }
+            closeQuietly(next.conn());
+        }
+        return null;
+    }
+
+    private static void release(Connection conn, int generation) {
+        try {
+            // whoever had it might have bailed out halfway through a transaction
+            if (!conn.isClosed() && !conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            if (generation != poolGeneration) {
+                conn.close();
+                return;
+            }
+            if (!conn.isClosed()) {
+                idle.offerFirst(new IdleConnection(conn, generation, System.currentTimeMillis()));
+            }
+        } catch (SQLException ex) {
+            closeQuietly(conn);
+        } finally {
+            checkouts.release();
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException ex) {
+            // it's going away either way
+        }
+    }
+
+    // what getConnection hands out: close() goes back to the pool, everything else to the real connection
+    private static class PooledConnection implements InvocationHandler {
+        private final Connection conn;
+        private final int generation;
+        private boolean closed;
+
+        PooledConnection(Connection conn, int generation) {
+            this.conn = conn;
+            this.generation = generation;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!closed) {
+                        closed = true;
+                        release(conn, generation);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed || conn.isClosed();
+                }
+                default -> {
+                    if (closed) {
+                        throw new SQLException("connection has been returned to the pool");
+                    }
+                }
+            }
+            try {
+                return method.invoke(conn, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    // package-private so tests can reload the same settings and see the pool start over
+    static void loadPropertiesFromResources() {
         try (var propStream = Thread.currentThread().getContextClassLoader().getResourceAsStream("db.properties")) {
             if (propStream == null) {
                 throw new Exception("Unable to load db.properties");
@@ -108,7 +278,15 @@ public class DatabaseManager {
 
         var host = props.getProperty("db.host");
         var port = Integer.parseInt(props.getProperty("db.port"));
-        connectionUrl = String.format("jdbc:mysql://%s:%d", host, port);
+        // server-side prepared statements, cached per connection by the driver (see SqlStatement)
+        connectionUrl = String.format("jdbc:mysql://%s:%d?useServerPrepStmts=true&cachePrepStmts=true"
+                + "&prepStmtCacheSize=64&prepStmtCacheSqlLimit=2048", host, port);
+        // pooled connections were made with the old settings
+        poolGeneration++;
+        IdleConnection stale;
+        while ((stale = idle.pollFirst()) != null) {
+            closeQuietly(stale.conn());
+        }
     }
 
     // configureDatabase
@@ -120,8 +298,83 @@ public class DatabaseManager {
                     preparedStatement.executeUpdate();
                 }
             }
+            migrate(conn);
         } catch (SQLException ex) {
             throw new DataAccessException(String.format("Unable to configure database: %s", ex.getMessage()));
         }
     }
+
+    /** The newest migration that has been applied, 0 for none. */
+    static int getSchemaVersion() throws DataAccessException {
+        try (var conn = getConnection()) {
+            return schemaVersion(conn);
+        } catch (SQLException ex) {
+            throw new DataAccessException(String.format("Unable to read schema version: %s", ex.getMessage()));
+        }
+    }
+
+    private static int schemaVersion(Connection conn) throws SQLException {
+        try (var ps = conn.prepareStatement("SELECT COALESCE(MAX(version), 0) FROM schema_version");
+             var rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void migrate(Connection conn) throws SQLException {
+        try (var ps = conn.prepareStatement(CREATE_SCHEMA_VERSION)) {
+            ps.executeUpdate();
+        }
+        int current = schemaVersion(conn);
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version() <= current) {
+                continue;
+            }
+            // DDL commits on its own in MySQL, so a failure part way through a step is
+            // why every step checks before it changes anything
+            migration.step().apply(conn);
+            try (var ps = conn.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                ps.setInt(1, migration.version());
+                ps.setString(2, migration.description());
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    // CREATE TABLE IF NOT EXISTS leaves older tables alone, so bring them up to date here
+    private static void addColumnIfMissing(Connection conn, String table, String column, String definition)
+            throws SQLException {
+        var query = "SELECT COUNT(*) FROM information_schema.COLUMNS WHERE TABLE_SCHEMA=? AND TABLE_NAME=? AND COLUMN_NAME=?";
+        try (var ps = conn.prepareStatement(query)) {
+            ps.setString(1, databaseName);
+            ps.setString(2, table);
+            ps.setString(3, column);
+            try (var rs = ps.executeQuery()) {
+                if (rs.next() && rs.getInt(1) > 0) {
+                    return;
+                }
+            }
+        }
+        try (var ps = conn.prepareStatement("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition)) {
+            ps.executeUpdate();
+        }
+    }
+
+    // MySQL has no CREATE INDEX IF NOT EXISTS
+    private static void addIndexIfMissing(Connection conn, String table, String index, String columns)
+            throws SQLException {
+        var query = "SELECT COUNT(*) FROM information_schema.STATISTICS WHERE TABLE_SCHEMA=? AND TABLE_NAME=? AND INDEX_NAME=?";
+        try (var ps = conn.prepareStatement(query)) {
+            ps.setString(1, databaseName);
+            ps.setString(2, table);
+            ps.setString(3, index);
+            try (var rs = ps.executeQuery()) {
+                if (rs.next() && rs.getInt(1) > 0) {
+                    return;
+                }
+            }
+        }
+        try (var ps = conn.prepareStatement("CREATE INDEX " + index + " ON " + table + " (" + columns + ")")) {
+            ps.executeUpdate();
+        }
+    }
 }
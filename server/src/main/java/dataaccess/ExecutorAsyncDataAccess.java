@@ -0,0 +1,131 @@
+package dataaccess;
+
+import chess.ChessMove;
+import model.AuthData;
+import model.BatchOperation;
+import model.BatchResult;
+import model.GameData;
+import model.UserData;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * AsyncDataAccess over a plain DataAccess, each call is one task on the executor.
+ * See AsyncDataAccess.onExecutor and AsyncDataAccess.inline.
+ */
+class ExecutorAsyncDataAccess implements AsyncDataAccess {
+
+    private final DataAccess delegate;
+    private final Executor executor;
+
+    private interface Call<T> {
+        T call() throws DataAccessException;
+    }
+
+    private interface VoidCall {
+        void call() throws DataAccessException;
+    }
+
+    ExecutorAsyncDataAccess(DataAccess delegate, Executor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    private <T> CompletableFuture<T> submit(Call<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(call.call());
+                } catch (DataAccessException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            future.completeExceptionally(new DataAccessException("Error: service unavailable", e));
+        }
+        return future;
+    }
+
+    private CompletableFuture<Void> run(VoidCall call) {
+        return submit(() -> {
+            call.call();
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> clear() {
+        return run(delegate::clear);
+    }
+
+    @Override
+    public CompletableFuture<Void> createUser(UserData user) {
+        return run(() -> delegate.createUser(user));
+    }
+
+    @Override
+    public CompletableFuture<UserData> getUser(String username) {
+        return submit(() -> delegate.getUser(username));
+    }
+
+    @Override
+    public CompletableFuture<Void> createAuth(AuthData auth) {
+        return run(() -> delegate.createAuth(auth));
+    }
+
+    @Override
+    public CompletableFuture<AuthData> getAuth(String authToken) {
+        return submit(() -> delegate.getAuth(authToken));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAuth(String authToken) {
+        return run(() -> delegate.deleteAuth(authToken));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAllAuthForUser(String username) {
+        return run(() -> delegate.deleteAllAuthForUser(username));
+    }
+
+    @Override
+    public CompletableFuture<Integer> createGame(String gameName) {
+        return submit(() -> delegate.createGame(gameName));
+    }
+
+    @Override
+    public CompletableFuture<GameData> getGame(int gameID) {
+        return submit(() -> delegate.getGame(gameID));
+    }
+
+    @Override
+    public CompletableFuture<Collection<GameData>> listGames() {
+        return submit(delegate::listGames);
+    }
+
+    @Override
+    public CompletableFuture<Collection<GameData>> listGamesForUser(String username) {
+        return submit(() -> delegate.listGamesForUser(username));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateGame(GameData game) {
+        return run(() -> delegate.updateGame(game));
+    }
+
+    @Override
+    public CompletableFuture<Void> recordMove(GameData game, ChessMove move) {
+        return run(() -> delegate.recordMove(game, move));
+    }
+
+    @Override
+    public CompletableFuture<List<BatchResult>> applyBatch(String username, List<BatchOperation> operations) {
+        return submit(() -> delegate.applyBatch(username, operations));
+    }
+}
@@ -0,0 +1,441 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.InvalidMoveException;
+import com.google.gson.Gson;
+import model.AuthData;
+import model.BatchOperation;
+import model.BatchResult;
+import model.GameData;
+import model.UserData;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Keeps everything in memory like MemoryDataAccess, but survives restarts without a
+ * database. Every change is appended to a WriteAheadLog and a call only returns once
+ * its record is on disk. Every chess.checkpointEvery changes the whole state is written
+ * to a snapshot file in the background and the log segments it covers are deleted.
+ * Starting up loads the snapshot and replays whatever was logged after it.
+ * <p>
+ * Changes are visible to readers a moment before they're durable (while the writer is
+ * still waiting on the fsync), same as a database at read committed would do with
+ * async commit. Nobody gets told a write worked until it's durable though.
+ */
+public class FileDataAccess implements DataAccess, AutoCloseable {
+
+    static final int CHECKPOINT_EVERY = Integer.getInteger("chess.checkpointEvery", 10_000);
+
+    private static final String SNAPSHOT = "snapshot.dat";
+    private static final String SNAPSHOT_TEMP = "snapshot.tmp";
+    private static final int SNAPSHOT_MAGIC = 0x43485353; // "CHSS"
+    // magic, lsn, length, crc
+    private static final int SNAPSHOT_HEADER = Integer.BYTES + Long.BYTES + Integer.BYTES * 2;
+
+    private enum Kind { CLEAR, USER, AUTH, DELETE_AUTH, DELETE_USER_AUTH, GAME, MOVE }
+
+    // one change, as logged. Only the fields its kind needs are set. A MOVE's ply is the
+    // game's move count once it's made, null in logs from before it was added
+    private record LogRecord(Kind kind, UserData user, AuthData auth, String authToken, GameData game,
+                             Integer gameID, ChessMove move, String username, Integer ply) {
+
+        LogRecord(Kind kind, UserData user, AuthData auth, String authToken, GameData game,
+                  Integer gameID, ChessMove move) {
+            this(kind, user, auth, authToken, game, gameID, move, null, null);
+        }
+    }
+
+    private record Snapshot(int nextID, List<UserData> users, List<AuthData> auths, List<GameData> games) {
+    }
+
+    private final Path directory;
+    private final Gson gson = new Gson();
+    private final WriteAheadLog log;
+    private final ExecutorService checkpointer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "chess-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // every change takes this so the log order is the order things happened in memory
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Map<String, UserData> users = new ConcurrentHashMap<>();
+    private final Map<String, AuthData> auths = new ConcurrentHashMap<>();
+    // stored games are never modified, a change puts a new copy in
+    private final Map<Integer, GameData> games = new ConcurrentHashMap<>();
+    private int nextID = 1;
+    private int sinceCheckpoint;
+    private boolean checkpointRunning;
+
+    public FileDataAccess(Path directory) throws DataAccessException {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            long snapshotLsn = loadSnapshot();
+            log = new WriteAheadLog(directory, snapshotLsn, bytes -> replay(decode(bytes)));
+        } catch (IOException | UncheckedIOException e) {
+            throw new DataAccessException("Unable to open " + directory + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        write(new LogRecord(Kind.CLEAR, null, null, null, null, null, null));
+    }
+
+    @Override
+    public void createUser(UserData user) throws DataAccessException {
+        write(new LogRecord(Kind.USER, user, null, null, null, null, null));
+    }
+
+    @Override
+    public UserData getUser(String username) {
+        return users.get(username);
+    }
+
+    @Override
+    public void createAuth(AuthData auth) throws DataAccessException {
+        write(new LogRecord(Kind.AUTH, null, auth, null, null, null, null));
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) {
+        return auths.get(authToken);
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        write(new LogRecord(Kind.DELETE_AUTH, null, null, authToken, null, null, null));
+    }
+
+    @Override
+    public void deleteAllAuthForUser(String username) throws DataAccessException {
+        write(new LogRecord(Kind.DELETE_USER_AUTH, null, null, null, null, null, null, username, null));
+    }
+
+    @Override
+    public int createGame(String gameName) throws DataAccessException {
+        long lsn;
+        int gameID;
+        writeLock.lock();
+        try {
+            gameID = nextID;
+            lsn = append(putGame(new GameData(gameID, null, null, gameName, new ChessGame())));
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(lsn);
+        return gameID;
+    }
+
+    @Override
+    public GameData getGame(int gameID) {
+        GameData game = games.get(gameID);
+        return game == null ? null : copy(game);
+    }
+
+    @Override
+    public Collection<GameData> listGames() {
+        return List.copyOf(games.values());
+    }
+
+    @Override
+    public Collection<GameData> listGamesForUser(String username) {
+        return games.values().stream()
+                .filter(game -> username.equals(game.whiteUsername()) || username.equals(game.blackUsername()))
+                .sorted(Comparator.comparingInt(GameData::gameID))
+                .toList();
+    }
+
+    @Override
+    public void updateGame(GameData game) throws DataAccessException {
+        write(putGame(game));
+    }
+
+    // the move is all that gets logged, replay makes it again on the stored game. Like the
+    // SQL store's primary key, a second move for the same ply is turned away
+    @Override
+    public void recordMove(GameData game, ChessMove move) throws DataAccessException {
+        long lsn;
+        int ply = game.game().getMoveCount();
+        writeLock.lock();
+        try {
+            GameData stored = games.get(game.gameID());
+            if (!isNextMove(stored, ply)) {
+                throw new DataAccessException(stored == null ? "Unable to record move: no game " + game.gameID()
+                        : "Unable to record move: game " + game.gameID() + " is at ply "
+                        + stored.game().getMoveCount() + ", not " + (ply - 1));
+            }
+            lsn = append(new LogRecord(Kind.MOVE, null, null, null, copy(game), game.gameID(), move, null, ply));
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(lsn);
+    }
+
+    @Override
+    public List<BatchResult> applyBatch(String username, List<BatchOperation> operations) throws DataAccessException {
+        List<BatchResult> results = new ArrayList<>();
+        long lsn = 0;
+        writeLock.lock();
+        try {
+            for (BatchOperation op : operations) {
+                if (BatchOperation.CREATE.equals(op.op())) {
+                    int gameID = nextID;
+                    lsn = append(putGame(new GameData(gameID, null, null, op.gameName(), new ChessGame())));
+                    results.add(BatchResult.ok(gameID));
+                    continue;
+                }
+                GameData game = games.get(op.gameID());
+                if (game == null) {
+                    results.add(BatchResult.error("Error: bad request"));
+                } else if ("WHITE".equals(op.playerColor()) && game.whiteUsername() == null) {
+                    lsn = append(putGame(new GameData(game.gameID(), username, game.blackUsername(),
+                            game.gameName(), game.game())));
+                    results.add(BatchResult.ok(game.gameID()));
+                } else if ("BLACK".equals(op.playerColor()) && game.blackUsername() == null) {
+                    lsn = append(putGame(new GameData(game.gameID(), game.whiteUsername(), username,
+                            game.gameName(), game.game())));
+                    results.add(BatchResult.ok(game.gameID()));
+                } else {
+                    results.add(BatchResult.error("Error: already taken"));
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        // one wait covers the lot, the log is in order
+        awaitDurable(lsn);
+        return results;
+    }
+
+    private LogRecord putGame(GameData game) {
+        return new LogRecord(Kind.GAME, null, null, null, copy(game), null, null);
+    }
+
+    private void write(LogRecord record) throws DataAccessException {
+        long lsn;
+        writeLock.lock();
+        try {
+            lsn = append(record);
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(lsn);
+    }
+
+    // logs the change and then applies it, caller holds writeLock
+    private long append(LogRecord record) throws DataAccessException {
+        long lsn;
+        try {
+            lsn = log.append(encode(record));
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to write log: " + e.getMessage(), e);
+        }
+        apply(record);
+        if (++sinceCheckpoint >= CHECKPOINT_EVERY && !checkpointRunning) {
+            checkpointRunning = true;
+            checkpointer.execute(this::checkpointQuietly);
+        }
+        return lsn;
+    }
+
+    private void awaitDurable(long lsn) throws DataAccessException {
+        try {
+            log.awaitDurable(lsn);
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to write log: " + e.getMessage(), e);
+        }
+    }
+
+    private void apply(LogRecord record) {
+        switch (record.kind()) {
+            case CLEAR -> {
+                users.clear();
+                auths.clear();
+                games.clear();
+                nextID = 1;
+            }
+            case USER -> users.put(record.user().username(), record.user());
+            case AUTH -> auths.put(record.auth().authToken(), record.auth());
+            case DELETE_AUTH -> auths.remove(record.authToken());
+            case DELETE_USER_AUTH -> auths.values().removeIf(auth -> auth.username().equals(record.username()));
+            case GAME, MOVE -> {
+                games.put(record.game().gameID(), record.game());
+                nextID = Math.max(nextID, record.game().gameID() + 1);
+            }
+        }
+    }
+
+    // a MOVE comes back from the log without its game, so make the move on what we have
+    private void replay(LogRecord record) {
+        if (record.kind() != Kind.MOVE) {
+            apply(record);
+            return;
+        }
+        GameData stored = games.get(record.gameID());
+        // recordMove turned these away, they can only be in logs from before it did
+        if (record.ply() == null ? stored == null : !isNextMove(stored, record.ply())) {
+            return;
+        }
+        GameData game = copy(stored);
+        try {
+            game.game().makeMove(record.move());
+        } catch (InvalidMoveException e) {
+            throw new UncheckedIOException(new IOException("bad move logged for game " + record.gameID()));
+        }
+        games.put(game.gameID(), game);
+    }
+
+    // the one rule for a move, live and in replay: the game is there and ply comes right after it
+    private static boolean isNextMove(GameData stored, int ply) {
+        return stored != null && stored.game() != null && ply == stored.game().getMoveCount() + 1;
+    }
+
+    private byte[] encode(LogRecord record) {
+        if (record.kind() == Kind.MOVE) {
+            // keep move records small, the game is only there for apply
+            record = new LogRecord(Kind.MOVE, null, null, null, null, record.gameID(), record.move(), null,
+                    record.ply());
+        }
+        return gson.toJson(record).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private LogRecord decode(byte[] bytes) {
+        return gson.fromJson(new String(bytes, StandardCharsets.UTF_8), LogRecord.class);
+    }
+
+    private GameData copy(GameData game) {
+        ChessGame chess = game.game() == null ? null : gson.fromJson(gson.toJson(game.game()), ChessGame.class);
+        return new GameData(game.gameID(), game.whiteUsername(), game.blackUsername(), game.gameName(), chess);
+    }
+
+    /**
+     * Writes a snapshot of everything and deletes the log it makes redundant. Runs on
+     * the checkpoint thread after enough changes, and can be called directly (tests,
+     * shutdown). Writers only wait for the state to be copied, not for the file.
+     */
+    public void checkpoint() throws DataAccessException {
+        Snapshot snapshot;
+        long lsn;
+        writeLock.lock();
+        try {
+            snapshot = new Snapshot(nextID, List.copyOf(users.values()), List.copyOf(auths.values()),
+                    List.copyOf(games.values()));
+            lsn = log.rotate();
+            sinceCheckpoint = 0;
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to checkpoint: " + e.getMessage(), e);
+        } finally {
+            writeLock.unlock();
+        }
+
+        try {
+            writeSnapshot(snapshot, lsn);
+            log.deleteSegmentsBefore(lsn);
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to checkpoint: " + e.getMessage(), e);
+        }
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (DataAccessException e) {
+            // the log still has everything, we'll try again after the next batch of changes
+            System.out.println("Checkpoint failed: " + e.getMessage());
+        } finally {
+            writeLock.lock();
+            try {
+                checkpointRunning = false;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    // written through a mapping of a temp file and renamed over the old one, so a crash
+    // part way leaves the previous snapshot alone. The rename is forced before it returns,
+    // the log segments it covers can't be deleted until it's on disk
+    private void writeSnapshot(Snapshot snapshot, long lsn) throws IOException {
+        byte[] json = gson.toJson(snapshot).getBytes(StandardCharsets.UTF_8);
+        CRC32C crc = new CRC32C();
+        crc.update(json);
+        Path temp = directory.resolve(SNAPSHOT_TEMP);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer map = out.map(FileChannel.MapMode.READ_WRITE, 0, SNAPSHOT_HEADER + json.length);
+            map.putInt(SNAPSHOT_MAGIC).putLong(lsn).putInt(json.length).putInt((int) crc.getValue()).put(json);
+            map.force();
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        WriteAheadLog.forceDirectory(directory);
+    }
+
+    // returns the LSN the snapshot covers, 0 if there isn't one yet
+    private long loadSnapshot() throws IOException {
+        Path file = directory.resolve(SNAPSHOT);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (map.remaining() < SNAPSHOT_HEADER || map.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(SNAPSHOT + " is not a snapshot");
+            }
+            long lsn = map.getLong();
+            int length = map.getInt();
+            int expected = map.getInt();
+            if (length != map.remaining()) {
+                throw new IOException(SNAPSHOT + " is truncated");
+            }
+            ByteBuffer json = map.slice();
+            CRC32C crc = new CRC32C();
+            crc.update(json.duplicate());
+            if ((int) crc.getValue() != expected) {
+                throw new IOException(SNAPSHOT + " is corrupt");
+            }
+            Snapshot snapshot = gson.fromJson(StandardCharsets.UTF_8.decode(json).toString(), Snapshot.class);
+            snapshot.users().forEach(user -> users.put(user.username(), user));
+            snapshot.auths().forEach(auth -> auths.put(auth.authToken(), auth));
+            snapshot.games().forEach(game -> games.put(game.gameID(), game));
+            nextID = snapshot.nextID();
+            return lsn;
+        }
+    }
+
+    @Override
+    public void close() throws DataAccessException {
+        checkpointer.shutdown();
+        try {
+            checkpointer.awaitTermination(10, TimeUnit.SECONDS);
+            log.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to close log: " + e.getMessage(), e);
+        }
+    }
+}
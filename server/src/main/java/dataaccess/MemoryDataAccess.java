@@ -1,26 +1,37 @@
 package dataaccess;
 
 import model.AuthData;
+import model.BatchOperation;
+import model.BatchResult;
 import model.UserData;
 import model.GameData;
 import chess.ChessGame;
+import com.google.gson.Gson;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+// safe to share between request and websocket threads. Games go in and come out as
+// copies (like they would through the database) so nobody can change a stored game
+// while another thread is serializing it
 public class MemoryDataAccess implements DataAccess {
-    private int nextID = 1;
+    private final AtomicInteger nextID = new AtomicInteger(1);
+    private final Gson gson = new Gson();
 
-    private final Map<String, UserData> users = new HashMap<>();
-    private final Map<String, AuthData> auths = new HashMap<>();
-    private final Map<Integer, GameData> games = new HashMap<>();
+    private final Map<String, UserData> users = new ConcurrentHashMap<>();
+    private final Map<String, AuthData> auths = new ConcurrentHashMap<>();
+    private final Map<Integer, GameData> games = new ConcurrentHashMap<>();
 
     @Override
-    public void clear() {
+    public synchronized void clear() {
         users.clear();
         auths.clear();
         games.clear();
-        nextID = 1; // reset
+        nextID.set(1); // reset
     }
 
     @Override
@@ -47,10 +58,15 @@ public class MemoryDataAccess implements DataAccess {
     public void deleteAuth(String authToken) {
         auths.remove(authToken);
     }
+    @Override
+    public void deleteAllAuthForUser(String username) {
+        auths.values().removeIf(auth -> auth.username().equals(username));
+    }
+
     @Override
     public int createGame(String gameName) {
         // your own ID
-        int gameID = nextID++;
+        int gameID = nextID.getAndIncrement();
 
         GameData newGame = new GameData(gameID, null, null, gameName, new ChessGame());
         games.put(gameID, newGame);
@@ -59,15 +75,54 @@ public class MemoryDataAccess implements DataAccess {
 
     @Override
     public GameData getGame(int gameID) {
-        return games.get(gameID);
+        GameData game = games.get(gameID);
+        return game == null ? null : copy(game);
     }
 
     @Override
     public Collection<GameData> listGames(){
-        return games.values();
+        // the stored games are never modified, so handing them out directly is fine
+        return List.copyOf(games.values());
     }
+    @Override
+    public Collection<GameData> listGamesForUser(String username) {
+        return games.values().stream()
+                .filter(game -> username.equals(game.whiteUsername()) || username.equals(game.blackUsername()))
+                .sorted(Comparator.comparingInt(GameData::gameID))
+                .toList();
+    }
+
     @Override
     public void updateGame(GameData game) {
-        games.put(game.gameID(), game);
+        games.put(game.gameID(), copy(game));
+    }
+
+    private GameData copy(GameData game) {
+        ChessGame chess = game.game() == null ? null : gson.fromJson(gson.toJson(game.game()), ChessGame.class);
+        return new GameData(game.gameID(), game.whiteUsername(), game.blackUsername(), game.gameName(), chess);
+    }
+
+    @Override
+    public synchronized List<BatchResult> applyBatch(String username, List<BatchOperation> operations) {
+        List<BatchResult> results = new ArrayList<>();
+        for (BatchOperation op : operations) {
+            if (BatchOperation.CREATE.equals(op.op())) {
+                results.add(BatchResult.ok(createGame(op.gameName())));
+                continue;
+            }
+            GameData game = games.get(op.gameID());
+            if (game == null) {
+                results.add(BatchResult.error("Error: bad request"));
+            } else if ("WHITE".equals(op.playerColor()) && game.whiteUsername() == null) {
+                updateGame(new GameData(game.gameID(), username, game.blackUsername(), game.gameName(), game.game()));
+                results.add(BatchResult.ok(game.gameID()));
+            } else if ("BLACK".equals(op.playerColor()) && game.blackUsername() == null) {
+                updateGame(new GameData(game.gameID(), game.whiteUsername(), username, game.gameName(), game.game()));
+                results.add(BatchResult.ok(game.gameID()));
+            } else {
+                results.add(BatchResult.error("Error: already taken"));
+            }
+        }
+        return results;
     }
-}
\ No newline at end of file
+}
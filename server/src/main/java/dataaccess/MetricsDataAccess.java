@@ -0,0 +1,254 @@
+package dataaccess;
+
+import chess.ChessMove;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import model.AuthData;
+import model.BatchOperation;
+import model.BatchResult;
+import model.GameData;
+import model.UserData;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Wraps another DataAccess and times every call, counting the ones that throw.
+ * Each method is a plain try/finally rather than going through a lambda so timing
+ * a call doesn't allocate anything.
+ */
+public class MetricsDataAccess implements DataAccess {
+
+    private static final String LATENCY = "chess_dao_call_seconds";
+    private static final String ERRORS = "chess_dao_errors_total";
+
+    private final DataAccess delegate;
+    private final Op clear;
+    private final Op createUser;
+    private final Op getUser;
+    private final Op createAuth;
+    private final Op getAuth;
+    private final Op deleteAuth;
+    private final Op deleteAllAuthForUser;
+    private final Op createGame;
+    private final Op getGame;
+    private final Op listGames;
+    private final Op listGamesForUser;
+    private final Op updateGame;
+    private final Op recordMove;
+    private final Op applyBatch;
+
+    private record Op(Histogram latency, Counter errors) {
+    }
+
+    public MetricsDataAccess(DataAccess delegate, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        clear = op(metrics, "clear");
+        createUser = op(metrics, "createUser");
+        getUser = op(metrics, "getUser");
+        createAuth = op(metrics, "createAuth");
+        getAuth = op(metrics, "getAuth");
+        deleteAuth = op(metrics, "deleteAuth");
+        deleteAllAuthForUser = op(metrics, "deleteAllAuthForUser");
+        createGame = op(metrics, "createGame");
+        getGame = op(metrics, "getGame");
+        listGames = op(metrics, "listGames");
+        listGamesForUser = op(metrics, "listGamesForUser");
+        updateGame = op(metrics, "updateGame");
+        recordMove = op(metrics, "recordMove");
+        applyBatch = op(metrics, "applyBatch");
+    }
+
+    private static Op op(MetricsRegistry metrics, String name) {
+        return new Op(metrics.histogram(LATENCY, "Time spent in data access calls", "op", name),
+                metrics.counter(ERRORS, "Data access calls that threw", "op", name));
+    }
+
+    @Override
+    public long getGameListVersion() {
+        return delegate.getGameListVersion();
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.clear();
+        } catch (DataAccessException | RuntimeException e) {
+            clear.errors().increment();
+            throw e;
+        } finally {
+            clear.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public void createUser(UserData user) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.createUser(user);
+        } catch (DataAccessException | RuntimeException e) {
+            createUser.errors().increment();
+            throw e;
+        } finally {
+            createUser.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getUser(username);
+        } catch (DataAccessException | RuntimeException e) {
+            getUser.errors().increment();
+            throw e;
+        } finally {
+            getUser.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public void createAuth(AuthData auth) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.createAuth(auth);
+        } catch (DataAccessException | RuntimeException e) {
+            createAuth.errors().increment();
+            throw e;
+        } finally {
+            createAuth.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAuth(authToken);
+        } catch (DataAccessException | RuntimeException e) {
+            getAuth.errors().increment();
+            throw e;
+        } finally {
+            getAuth.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.deleteAuth(authToken);
+        } catch (DataAccessException | RuntimeException e) {
+            deleteAuth.errors().increment();
+            throw e;
+        } finally {
+            deleteAuth.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public void deleteAllAuthForUser(String username) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.deleteAllAuthForUser(username);
+        } catch (DataAccessException | RuntimeException e) {
+            deleteAllAuthForUser.errors().increment();
+            throw e;
+        } finally {
+            deleteAllAuthForUser.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public int createGame(String gameName) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.createGame(gameName);
+        } catch (DataAccessException | RuntimeException e) {
+            createGame.errors().increment();
+            throw e;
+        } finally {
+            createGame.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getGame(gameID);
+        } catch (DataAccessException | RuntimeException e) {
+            getGame.errors().increment();
+            throw e;
+        } finally {
+            getGame.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public Collection<GameData> listGames() throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.listGames();
+        } catch (DataAccessException | RuntimeException e) {
+            listGames.errors().increment();
+            throw e;
+        } finally {
+            listGames.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public Collection<GameData> listGamesForUser(String username) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.listGamesForUser(username);
+        } catch (DataAccessException | RuntimeException e) {
+            listGamesForUser.errors().increment();
+            throw e;
+        } finally {
+            listGamesForUser.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public void updateGame(GameData game) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.updateGame(game);
+        } catch (DataAccessException | RuntimeException e) {
+            updateGame.errors().increment();
+            throw e;
+        } finally {
+            updateGame.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public void recordMove(GameData game, ChessMove move) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            delegate.recordMove(game, move);
+        } catch (DataAccessException | RuntimeException e) {
+            recordMove.errors().increment();
+            throw e;
+        } finally {
+            recordMove.latency().recordSince(start);
+        }
+    }
+
+    @Override
+    public List<BatchResult> applyBatch(String username, List<BatchOperation> operations) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return delegate.applyBatch(username, operations);
+        } catch (DataAccessException | RuntimeException e) {
+            applyBatch.errors().increment();
+            throw e;
+        } finally {
+            applyBatch.latency().recordSince(start);
+        }
+    }
+}
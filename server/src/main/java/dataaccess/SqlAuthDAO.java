@@ -17,9 +17,8 @@ public class SqlAuthDAO{
     }
 
     public void createAuth(AuthData auth) throws DataAccessException {
-        var statement = "INSERT INTO auth (authToken, username) VALUES (?, ?)";
         try (var conn = DatabaseManager.getConnection()) {
-            try (var ps = conn.prepareStatement(statement)) {
+            try (var ps = SqlStatement.CREATE_AUTH.prepare(conn)) {
                 ps.setString(1, auth.authToken());
                 ps.setString(2, auth.username());
                 ps.executeUpdate();
@@ -30,9 +29,8 @@ public class SqlAuthDAO{
     }
 
     public AuthData getAuth(String authToken) throws DataAccessException {
-        var statement = "SELECT authToken, username FROM auth WHERE authToken=?";
         try (var conn = DatabaseManager.getConnection()) {
-            try (var ps = conn.prepareStatement(statement)) {
+            try (var ps = SqlStatement.GET_AUTH.prepare(conn)) {
                 ps.setString(1, authToken);
                 try (var rs = ps.executeQuery()) {
                     if (rs.next()) {
@@ -47,9 +45,8 @@ public class SqlAuthDAO{
     }
 
     public void deleteAuth(String authToken) throws DataAccessException {
-        var statement = "DELETE FROM auth WHERE authToken=?";
         try (var conn = DatabaseManager.getConnection()) {
-            try (var ps = conn.prepareStatement(statement)) {
+            try (var ps = SqlStatement.DELETE_AUTH.prepare(conn)) {
                 ps.setString(1, authToken);
                 ps.executeUpdate();
             }
@@ -57,4 +54,15 @@ public class SqlAuthDAO{
             throw new DataAccessException(String.format("Unable to delete auth: %s", e.getMessage()));
         }
     }
+
+    public void deleteAllAuthForUser(String username) throws DataAccessException {
+        try (var conn = DatabaseManager.getConnection()) {
+            try (var ps = SqlStatement.DELETE_AUTH_FOR_USER.prepare(conn)) {
+                ps.setString(1, username);
+                ps.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(String.format("Unable to delete auth: %s", e.getMessage()));
+        }
+    }
 }
@@ -1,7 +1,9 @@
 package dataaccess;
 
+import chess.ChessMove;
 import model.*;
 import java.util.Collection;
+import java.util.List;
 
 public class SqlDataAccess implements DataAccess {
     // similar to MemoryDataAccess but for my SQL DAO's
@@ -43,6 +45,11 @@ public class SqlDataAccess implements DataAccess {
         authDAO.deleteAuth(authToken);
     }
 
+    @Override
+    public void deleteAllAuthForUser(String username) throws DataAccessException {
+        authDAO.deleteAllAuthForUser(username);
+    }
+
     // go to SqlGameDAO
     @Override
     public int createGame(String gameName) throws DataAccessException {
@@ -59,8 +66,23 @@ public class SqlDataAccess implements DataAccess {
         return gameDAO.listGames();
     }
 
+    @Override
+    public Collection<GameData> listGamesForUser(String username) throws DataAccessException {
+        return gameDAO.listGamesForUser(username);
+    }
+
     @Override
     public void updateGame(GameData game) throws DataAccessException {
         gameDAO.updateGame(game);
     }
-}
\ No newline at end of file
+
+    @Override
+    public void recordMove(GameData game, ChessMove move) throws DataAccessException {
+        gameDAO.recordMove(game, move);
+    }
+
+    @Override
+    public List<BatchResult> applyBatch(String username, List<BatchOperation> operations) throws DataAccessException {
+        return gameDAO.applyBatch(username, operations);
+    }
+}
@@ -1,20 +1,36 @@
 package dataaccess;
 
 import com.google.gson.Gson;
+import metrics.GameLoadedEvent;
+import metrics.GamePersistedEvent;
+import model.BatchOperation;
+import model.BatchResult;
 import model.GameData;
 import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPosition;
+import chess.InvalidMoveException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 public class SqlGameDAO {
 
+    // plies between full snapshots of a game, everything in between is just the move log
+    static final int SNAPSHOT_INTERVAL = Integer.getInteger("chess.snapshotInterval", 20);
+
     public void clear() throws DataAccessException {
-        var statement = "TRUNCATE TABLE game";
         try (var conn = DatabaseManager.getConnection()) {
-            try (var ps = conn.prepareStatement(statement)) {
-                ps.executeUpdate();
+            for (var statement : new String[]{"TRUNCATE TABLE game", "TRUNCATE TABLE move"}) {
+                try (var ps = conn.prepareStatement(statement)) {
+                    ps.executeUpdate();
+                }
             }
         } catch (java.sql.SQLException e) {
             throw new DataAccessException(String.format("Unable to clear game table: %s", e.getMessage()));
@@ -24,12 +40,11 @@ public class SqlGameDAO {
     private final Gson gson = new Gson();
 
     public int createGame(String gameName) throws DataAccessException {
-        var statement = "INSERT INTO game (gameName, game) VALUES (?, ?)";
         // new game state
         String jsonGame = gson.toJson(new ChessGame());
 
         try (var conn = DatabaseManager.getConnection()) {
-            try (var ps = conn.prepareStatement(statement, Statement.RETURN_GENERATED_KEYS)) {
+            try (var ps = SqlStatement.CREATE_GAME.prepare(conn)) {
                 ps.setString(1, gameName);
                 ps.setString(2, jsonGame);
                 ps.executeUpdate();
@@ -46,63 +61,314 @@ public class SqlGameDAO {
     }
 
     public GameData getGame(int gameID) throws DataAccessException {
-        var statement = "SELECT gameID, whiteUsername, blackUsername, gameName, game FROM game WHERE gameID=?";
+        var event = new GameLoadedEvent();
+        event.begin();
         try (var conn = DatabaseManager.getConnection()) {
-            try (var ps = conn.prepareStatement(statement)) {
+            try (var ps = SqlStatement.GET_GAME.prepare(conn)) {
                 ps.setInt(1, gameID);
                 try (var rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        return new GameData(
-                                rs.getInt("gameID"),
-                                rs.getString("whiteUsername"),
-                                rs.getString("blackUsername"),
-                                rs.getString("gameName"),
-                                gson.fromJson(rs.getString("game"), ChessGame.class)
-                        );
+                    GameData game = null;
+                    while (rs.next()) {
+                        if (game == null) {
+                            String json = rs.getString("game");
+                            long parseStart = System.nanoTime();
+                            game = readGame(rs);
+                            event.parseTime = System.nanoTime() - parseStart;
+                            event.payloadSize = json.length();
+                            event.found = true;
+                        }
+                        replay(game, rs.getString("move"));
                     }
+                    return game;
                 }
             }
         } catch (SQLException e) {
             throw new DataAccessException("Unable to read game: " + e.getMessage());
+        } finally {
+            event.gameID = gameID;
+            event.commit();
         }
-        return null;
     }
 
     public Collection<GameData> listGames() throws DataAccessException {
-        var games = new ArrayList<GameData>();
-        var statement = "SELECT * FROM game";
         try (var conn = DatabaseManager.getConnection()) {
-            try (var ps = conn.prepareStatement(statement)) {
-                try (var rs = ps.executeQuery()) {
-                    while (rs.next()) {
-                        games.add(new GameData(
-                                rs.getInt("gameID"),
-                                rs.getString("whiteUsername"),
-                                rs.getString("blackUsername"),
-                                rs.getString("gameName"),
-                                gson.fromJson(rs.getString("game"), ChessGame.class)
-                        ));
-                    }
-                }
+            try (var ps = SqlStatement.LIST_GAMES.prepare(conn)) {
+                return readGames(ps);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to list games: " + e.getMessage());
+        }
+    }
+
+    public Collection<GameData> listGamesForUser(String username) throws DataAccessException {
+        try (var conn = DatabaseManager.getConnection()) {
+            try (var ps = SqlStatement.LIST_GAMES_FOR_USER.prepare(conn)) {
+                ps.setString(1, username);
+                ps.setString(2, username);
+                return readGames(ps);
             }
         } catch (SQLException e) {
             throw new DataAccessException("Unable to list games: " + e.getMessage());
         }
+    }
+
+    // rows come ordered by game then ply, one per move after the snapshot
+    private List<GameData> readGames(PreparedStatement ps) throws SQLException, DataAccessException {
+        var games = new ArrayList<GameData>();
+        try (var rs = ps.executeQuery()) {
+            GameData current = null;
+            while (rs.next()) {
+                if (current == null || current.gameID() != rs.getInt("gameID")) {
+                    current = readGame(rs);
+                    games.add(current);
+                }
+                replay(current, rs.getString("move"));
+            }
+        }
         return games;
     }
 
+    private GameData readGame(java.sql.ResultSet rs) throws SQLException {
+        return new GameData(
+                rs.getInt("gameID"),
+                rs.getString("whiteUsername"),
+                rs.getString("blackUsername"),
+                rs.getString("gameName"),
+                gson.fromJson(rs.getString("game"), ChessGame.class)
+        );
+    }
+
+    // move is null for the LEFT JOIN row of a game with nothing after its snapshot
+    private void replay(GameData game, String move) throws DataAccessException {
+        if (move == null) {
+            return;
+        }
+        try {
+            game.game().makeMove(decodeMove(move));
+        } catch (InvalidMoveException | IllegalArgumentException e) {
+            throw new DataAccessException("Unable to read game: bad move " + move + " in game " + game.gameID());
+        }
+    }
+
+    // saves the whole game as a fresh snapshot, so any logged moves before it stop mattering
     public void updateGame(GameData game) throws DataAccessException {
-        var statement = "UPDATE game SET whiteUsername=?, blackUsername=?, game=? WHERE gameID=?";
+        int ply = game.game() == null ? 0 : game.game().getMoveCount();
+        var event = new GamePersistedEvent();
+        event.begin();
         try (var conn = DatabaseManager.getConnection()) {
-            try (var ps = conn.prepareStatement(statement)) {
+            try (var ps = SqlStatement.UPDATE_GAME.prepare(conn)) {
+                long serializeStart = System.nanoTime();
+                String json = gson.toJson(game.game());
+                event.serializeTime = System.nanoTime() - serializeStart;
+                event.payloadSize = json.length();
+                event.snapshot = true;
                 ps.setString(1, game.whiteUsername());
                 ps.setString(2, game.blackUsername());
-                ps.setString(3, gson.toJson(game.game()));
-                ps.setInt(4, game.gameID());
+                ps.setString(3, json);
+                ps.setInt(4, ply);
+                ps.setInt(5, game.gameID());
                 ps.executeUpdate();
             }
         } catch (SQLException e) {
             throw new DataAccessException("Unable to update game: " + e.getMessage());
+        } finally {
+            event.gameID = game.gameID();
+            event.ply = ply;
+            event.commit();
+        }
+    }
+
+    /**
+     * Saves a game right after move was made on it. Normally that's one small INSERT into
+     * the move log; every SNAPSHOT_INTERVAL plies the whole game is rewritten too so
+     * loading never has to replay more than that many moves.
+     * A second move for the same ply fails on the primary key instead of forking the game.
+     */
+    public void recordMove(GameData game, ChessMove move) throws DataAccessException {
+        int ply = game.game().getMoveCount();
+        boolean snapshot = ply % SNAPSHOT_INTERVAL == 0;
+        var event = new GamePersistedEvent();
+        event.begin();
+        try (var conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(!snapshot);
+            try {
+                String encoded = encodeMove(move);
+                try (var ps = SqlStatement.INSERT_MOVE.prepare(conn)) {
+                    ps.setInt(1, game.gameID());
+                    ps.setInt(2, ply);
+                    ps.setString(3, encoded);
+                    ps.executeUpdate();
+                }
+                event.payloadSize = encoded.length();
+                if (snapshot) {
+                    long serializeStart = System.nanoTime();
+                    String json = gson.toJson(game.game());
+                    event.serializeTime = System.nanoTime() - serializeStart;
+                    event.payloadSize += json.length();
+                    event.snapshot = true;
+                    try (var ps = SqlStatement.SNAPSHOT_GAME.prepare(conn)) {
+                        ps.setString(1, json);
+                        ps.setInt(2, ply);
+                        ps.setInt(3, game.gameID());
+                        ps.executeUpdate();
+                    }
+                    conn.commit();
+                }
+            } catch (SQLException e) {
+                if (snapshot) {
+                    conn.rollback();
+                }
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to record move: " + e.getMessage());
+        } finally {
+            event.gameID = game.gameID();
+            event.ply = ply;
+            event.commit();
+        }
+    }
+
+    // long algebraic like "e2e4" or "e7e8q"
+    static String encodeMove(ChessMove move) {
+        var sb = new StringBuilder(5);
+        appendSquare(sb, move.getStartPosition());
+        appendSquare(sb, move.getEndPosition());
+        if (move.getPromotionPiece() != null) {
+            sb.append(switch (move.getPromotionPiece()) {
+                case QUEEN -> 'q';
+                case ROOK -> 'r';
+                case BISHOP -> 'b';
+                case KNIGHT -> 'n';
+                default -> throw new IllegalArgumentException("can't promote to " + move.getPromotionPiece());
+            });
+        }
+        return sb.toString();
+    }
+
+    static ChessMove decodeMove(String text) {
+        if (text.length() != 4 && text.length() != 5) {
+            throw new IllegalArgumentException("bad move " + text);
+        }
+        ChessPiece.PieceType promotion = text.length() == 4 ? null : switch (text.charAt(4)) {
+            case 'q' -> ChessPiece.PieceType.QUEEN;
+            case 'r' -> ChessPiece.PieceType.ROOK;
+            case 'b' -> ChessPiece.PieceType.BISHOP;
+            case 'n' -> ChessPiece.PieceType.KNIGHT;
+            default -> throw new IllegalArgumentException("bad promotion in " + text);
+        };
+        return new ChessMove(readSquare(text, 0), readSquare(text, 2), promotion);
+    }
+
+    private static void appendSquare(StringBuilder sb, ChessPosition pos) {
+        sb.append((char) ('a' + pos.getColumn() - 1)).append((char) ('0' + pos.getRow()));
+    }
+
+    private static ChessPosition readSquare(String text, int at) {
+        int col = text.charAt(at) - 'a' + 1;
+        int row = text.charAt(at + 1) - '0';
+        if (col < 1 || col > 8 || row < 1 || row > 8) {
+            throw new IllegalArgumentException("bad square in " + text);
+        }
+        return new ChessPosition(row, col);
+    }
+
+    /**
+     * Runs a list of create/join operations in one transaction. Runs of the same kind of
+     * operation are sent together with JDBC batching, and the runs are flushed in order so a
+     * join can refer to a game created earlier in the same batch.
+     */
+    public List<BatchResult> applyBatch(String username, List<BatchOperation> operations) throws DataAccessException {
+        BatchResult[] results = new BatchResult[operations.size()];
+        String jsonGame = gson.toJson(new ChessGame());
+
+        try (var conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (var create = SqlStatement.CREATE_GAME.prepare(conn);
+                 var joinWhite = SqlStatement.JOIN_WHITE.prepare(conn);
+                 var joinBlack = SqlStatement.JOIN_BLACK.prepare(conn)) {
+
+                var creates = new ArrayList<Integer>();
+                var whiteJoins = new ArrayList<Integer>();
+                var blackJoins = new ArrayList<Integer>();
+
+                for (int i = 0; i < operations.size(); i++) {
+                    BatchOperation op = operations.get(i);
+                    if (BatchOperation.CREATE.equals(op.op())) {
+                        // joins queued so far have to run first
+                        flushJoins(conn, joinWhite, whiteJoins, joinBlack, blackJoins, operations, results);
+                        create.setString(1, op.gameName());
+                        create.setString(2, jsonGame);
+                        create.addBatch();
+                        creates.add(i);
+                    } else {
+                        flushCreates(create, creates, results);
+                        var ps = "WHITE".equals(op.playerColor()) ? joinWhite : joinBlack;
+                        ps.setString(1, username);
+                        ps.setInt(2, op.gameID());
+                        ps.addBatch();
+                        ("WHITE".equals(op.playerColor()) ? whiteJoins : blackJoins).add(i);
+                    }
+                }
+                flushCreates(create, creates, results);
+                flushJoins(conn, joinWhite, whiteJoins, joinBlack, blackJoins, operations, results);
+
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to run batch: " + e.getMessage());
+        }
+        return Arrays.asList(results);
+    }
+
+    private void flushCreates(PreparedStatement create, List<Integer> pending, BatchResult[] results) throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        create.executeBatch();
+        try (var rs = create.getGeneratedKeys()) {
+            for (int index : pending) {
+                results[index] = rs.next() ? BatchResult.ok(rs.getInt(1)) : BatchResult.error("Error: game not created");
+            }
+        }
+        pending.clear();
+    }
+
+    private void flushJoins(Connection conn, PreparedStatement joinWhite, List<Integer> whiteJoins,
+                            PreparedStatement joinBlack, List<Integer> blackJoins,
+                            List<BatchOperation> operations, BatchResult[] results) throws SQLException {
+        flushJoin(conn, joinWhite, whiteJoins, operations, results);
+        flushJoin(conn, joinBlack, blackJoins, operations, results);
+    }
+
+    private void flushJoin(Connection conn, PreparedStatement ps, List<Integer> pending,
+                           List<BatchOperation> operations, BatchResult[] results) throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int[] counts = ps.executeBatch();
+        for (int i = 0; i < pending.size(); i++) {
+            int index = pending.get(i);
+            int gameID = operations.get(index).gameID();
+            if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                results[index] = BatchResult.ok(gameID);
+            } else {
+                // nothing updated: either the seat was taken or the game isn't there
+                results[index] = BatchResult.error(gameExists(conn, gameID) ? "Error: already taken" : "Error: bad request");
+            }
+        }
+        pending.clear();
+    }
+
+    private boolean gameExists(Connection conn, int gameID) throws SQLException {
+        try (var ps = SqlStatement.GAME_EXISTS.prepare(conn)) {
+            ps.setInt(1, gameID);
+            try (var rs = ps.executeQuery()) {
+                return rs.next();
+            }
         }
     }
-}
\ No newline at end of file
+}
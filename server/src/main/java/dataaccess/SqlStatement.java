@@ -0,0 +1,83 @@
+package dataaccess;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Every query the DAOs run on the hot path, in one place. Pooled connections prepare
+ * all of these as soon as they're opened and the driver keeps the server-side
+ * statements cached per connection, so after warm-up prepare() is a cache hit instead
+ * of a parse on the server.
+ * <p>
+ * The SQL text is the cache key, so always go through here rather than building the
+ * same query inline somewhere else.
+ */
+enum SqlStatement {
+    CREATE_USER("INSERT INTO user (username, password, email) VALUES (?, ?, ?)"),
+    GET_USER("SELECT username, password, email FROM user WHERE username=?"),
+
+    CREATE_AUTH("INSERT INTO auth (authToken, username) VALUES (?, ?)"),
+    GET_AUTH("SELECT authToken, username FROM auth WHERE authToken=?"),
+    DELETE_AUTH("DELETE FROM auth WHERE authToken=?"),
+    DELETE_AUTH_FOR_USER("DELETE FROM auth WHERE username=?"),
+
+    CREATE_GAME("INSERT INTO game (gameName, game) VALUES (?, ?)", true),
+    GAME_EXISTS("SELECT gameID FROM game WHERE gameID=?"),
+    // the stored game is a snapshot at snapshotPly, the moves after it come along in the same query
+    GET_GAME("""
+            SELECT g.gameID, g.whiteUsername, g.blackUsername, g.gameName, g.game, m.move
+            FROM game g LEFT JOIN move m ON m.gameID = g.gameID AND m.ply > g.snapshotPly
+            WHERE g.gameID=? ORDER BY m.ply"""),
+    LIST_GAMES("""
+            SELECT g.gameID, g.whiteUsername, g.blackUsername, g.gameName, g.game, m.move
+            FROM game g LEFT JOIN move m ON m.gameID = g.gameID AND m.ply > g.snapshotPly
+            ORDER BY g.gameID, m.ply"""),
+    // a UNION rather than OR so each half is a plain lookup on its own player index
+    LIST_GAMES_FOR_USER("""
+            SELECT g.gameID, g.whiteUsername, g.blackUsername, g.gameName, g.game, m.move
+            FROM (SELECT gameID FROM game WHERE whiteUsername=?
+                  UNION SELECT gameID FROM game WHERE blackUsername=?) mine
+            JOIN game g ON g.gameID = mine.gameID
+            LEFT JOIN move m ON m.gameID = g.gameID AND m.ply > g.snapshotPly
+            ORDER BY g.gameID, m.ply"""),
+    UPDATE_GAME("UPDATE game SET whiteUsername=?, blackUsername=?, game=?, snapshotPly=? WHERE gameID=?"),
+    SNAPSHOT_GAME("UPDATE game SET game=?, snapshotPly=? WHERE gameID=?"),
+    JOIN_WHITE("UPDATE game SET whiteUsername=? WHERE gameID=? AND whiteUsername IS NULL"),
+    JOIN_BLACK("UPDATE game SET blackUsername=? WHERE gameID=? AND blackUsername IS NULL"),
+    INSERT_MOVE("INSERT INTO move (gameID, ply, move) VALUES (?, ?, ?)");
+
+    private final String sql;
+    private final boolean returnsKeys;
+
+    SqlStatement(String sql) {
+        this(sql, false);
+    }
+
+    SqlStatement(String sql, boolean returnsKeys) {
+        this.sql = sql;
+        this.returnsKeys = returnsKeys;
+    }
+
+    PreparedStatement prepare(Connection conn) throws SQLException {
+        return returnsKeys
+                ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : conn.prepareStatement(sql);
+    }
+
+    /**
+     * Prepares (and closes, which hands them to the driver's cache) every statement.
+     * One that fails, e.g. because configureDatabase hasn't made its table yet, just
+     * gets prepared the first time it's used instead.
+     */
+    static void warmUp(Connection conn) {
+        for (SqlStatement statement : values()) {
+            try {
+                statement.prepare(conn).close();
+            } catch (SQLException e) {
+                // skip it
+            }
+        }
+    }
+}
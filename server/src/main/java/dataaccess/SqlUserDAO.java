@@ -17,9 +17,8 @@ public class SqlUserDAO {
     }
 
     public void createUser(UserData user) throws DataAccessException {
-        var statement = "INSERT INTO user (username, password, email) VALUES (?, ?, ?)";
         try (var conn = DatabaseManager.getConnection()) {
-            try (var ps = conn.prepareStatement(statement)) {
+            try (var ps = SqlStatement.CREATE_USER.prepare(conn)) {
                 ps.setString(1, user.username());
                 ps.setString(2, user.password()); // already hashed by UserService
                 ps.setString(3, user.email());
@@ -31,9 +30,8 @@ public class SqlUserDAO {
     }
 
     public UserData getUser(String username) throws DataAccessException {
-        var statement = "SELECT username, password, email FROM user WHERE username=?";
         try (var conn = DatabaseManager.getConnection()) {
-            try (var ps = conn.prepareStatement(statement)) {
+            try (var ps = SqlStatement.GET_USER.prepare(conn)) {
                 ps.setString(1, username);
                 try (var rs = ps.executeQuery()) {
                     if (rs.next()) {
@@ -0,0 +1,284 @@
+package dataaccess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of byte records for FileDataAccess, split into segment files named
+ * after the first sequence number (LSN) they hold.
+ * <p>
+ * Appending only writes to the file. A single flusher thread calls force() for
+ * everything written since its last force, so when many writers are waiting at once
+ * they all share one fsync (group commit). Writers block in awaitDurable until their
+ * record is covered.
+ * <p>
+ * Each record on disk is [length][crc][lsn][payload]. A crash can leave a half written
+ * record at the end of the newest segment, replay stops there and cuts it off.
+ * <p>
+ * A new segment's directory entry is forced before anything in it counts as durable,
+ * otherwise a power cut could lose the whole file even though its records were forced.
+ */
+class WriteAheadLog implements AutoCloseable {
+
+    private static final int HEADER_BYTES = Integer.BYTES * 2 + Long.BYTES;
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    private final Thread flusher;
+
+    // all guarded by lock
+    private FileChannel channel;
+    private long lastLsn;
+    private long durableLsn;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * Replays every record after afterLsn (the snapshot's) into apply, oldest first,
+     * then opens a fresh segment for new records.
+     */
+    WriteAheadLog(Path directory, long afterLsn, Consumer<byte[]> apply) throws IOException {
+        this.directory = directory;
+        lastLsn = afterLsn;
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            replay(segments.get(i), i == segments.size() - 1, apply);
+        }
+        durableLsn = lastLsn;
+        openSegment();
+
+        flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Writes one record and returns its LSN. Callers that care about ordering (all of
+     * them) have to hold their own lock around this and the change it describes.
+     */
+    long append(byte[] payload) throws IOException {
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            long lsn = lastLsn + 1;
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+            buffer.putInt(payload.length).putInt(0).putLong(lsn).put(payload);
+            buffer.putInt(Integer.BYTES, checksum(buffer.array(), Integer.BYTES * 2, Long.BYTES + payload.length));
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            lastLsn = lsn;
+            written.signal();
+            return lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Blocks until the record with this LSN has been forced to disk. */
+    void awaitDurable(long lsn) throws IOException {
+        lock.lock();
+        try {
+            while (durableLsn < lsn && failure == null) {
+                durable.awaitUninterruptibly();
+            }
+            if (durableLsn < lsn) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces the current segment and starts a new one. Everything up to the returned
+     * LSN is in the older segments, so once a snapshot covering it is safely on disk
+     * those can go (see deleteSegmentsBefore). Same locking rule as append.
+     */
+    long rotate() throws IOException {
+        lock.lock();
+        try {
+            FileChannel old = channel;
+            old.force(false);
+            durableLsn = lastLsn;
+            durable.signalAll();
+            openSegment();
+            // the flusher might be halfway through forcing it, it copes with the close
+            old.close();
+            return lastLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Deletes every segment that only holds records up to lsn. */
+    void deleteSegmentsBefore(long lsn) throws IOException {
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            // a segment ends right before the next one starts
+            boolean covered = i + 1 < segments.size() && startOf(segments.get(i + 1)) <= lsn + 1;
+            if (covered) {
+                Files.delete(segments.get(i));
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            FileChannel target;
+            long upTo;
+            lock.lock();
+            try {
+                while (!closed && durableLsn == lastLsn) {
+                    written.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+                target = channel;
+                upTo = lastLsn;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                target.force(false);
+            } catch (ClosedChannelException e) {
+                // rotated (or closed) under us, whoever did it already forced it
+                continue;
+            } catch (IOException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    // nothing after this point can be trusted to be on disk
+                    failure = error;
+                } else if (upTo > durableLsn) {
+                    durableLsn = upTo;
+                }
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void replay(Path segment, boolean newest, Consumer<byte[]> apply) throws IOException {
+        try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer data = ByteBuffer.allocate((int) in.size());
+            while (data.hasRemaining() && in.read(data) >= 0) {
+                // keep reading
+            }
+            data.flip();
+            while (data.remaining() >= HEADER_BYTES) {
+                int start = data.position();
+                int length = data.getInt();
+                int crc = data.getInt();
+                if (length < 0 || length > data.remaining() - Long.BYTES
+                        || crc != checksum(data.array(), start + Integer.BYTES * 2, Long.BYTES + length)) {
+                    data.position(start);
+                    break;
+                }
+                long lsn = data.getLong();
+                byte[] payload = new byte[length];
+                data.get(payload);
+                if (lsn > lastLsn) {
+                    apply.accept(payload);
+                    lastLsn = lsn;
+                }
+            }
+            if (data.hasRemaining()) {
+                if (!newest) {
+                    throw new IOException("corrupt record in " + segment.getFileName() + " at " + data.position());
+                }
+                // torn write from a crash, drop it so the next segment starts clean
+                in.truncate(data.position());
+                in.force(false);
+            }
+        }
+    }
+
+    // nothing gets appended to it until this returns, so nobody waits on it before the
+    // directory knows about it
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(directory.resolve(String.format("%s%020d%s", PREFIX, lastLsn + 1, SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        forceDirectory(directory);
+    }
+
+    /**
+     * Forces directory's entries (files created, renamed or deleted in it) to disk.
+     * Windows can't open a directory for this, and doesn't need to, NTFS journals them.
+     */
+    static void forceDirectory(Path directory) throws IOException {
+        if (System.getProperty("os.name", "").startsWith("Windows")) {
+            return;
+        }
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = new ArrayList<>(files
+                    .filter(p -> p.getFileName().toString().startsWith(PREFIX)
+                            && p.getFileName().toString().endsWith(SUFFIX))
+                    .toList());
+            // names are zero padded so this is LSN order
+            segments.sort(null);
+            return segments;
+        }
+    }
+
+    private static long startOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            written.signal();
+            channel.force(false);
+            durableLsn = lastLsn;
+            durable.signalAll();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Sending one server message to the sessions in a game. The event's duration covers
+ * serializing and every socket write, serializeTime is just the Gson part.
+ */
+@Name("chess.Broadcast")
+@Label("Broadcast")
+@Category({"Chess", "WebSocket"})
+@Description("A server message sent to the sessions in a game")
+@StackTrace(false)
+public class BroadcastEvent extends Event {
+
+    @Label("Game ID")
+    public int gameID;
+
+    @Label("Message Type")
+    public String messageType;
+
+    @Label("Recipients")
+    public int recipients;
+
+    @Label("Payload Size")
+    @Description("Length of the message JSON, sent once per recipient")
+    @DataAmount
+    public long payloadSize;
+
+    @Label("Serialize Time")
+    @Timespan
+    public long serializeTime;
+}
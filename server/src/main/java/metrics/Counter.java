@@ -0,0 +1,24 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A number that only goes up. Backed by a LongAdder so lots of threads can bump it
+ * without fighting over one cache line.
+ */
+public class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
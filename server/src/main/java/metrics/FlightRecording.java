@@ -0,0 +1,56 @@
+package metrics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Starts a flight recording with the JDK's default settings plus the chess events
+ * from chess.jfc, when the chess.jfr system property names a file to write it to.
+ * The recording is written out when the JVM exits.
+ */
+public class FlightRecording {
+
+    private FlightRecording() {
+    }
+
+    public static Recording startIfRequested() {
+        String destination = System.getProperty("chess.jfr");
+        if (destination == null || destination.isBlank()) {
+            return null;
+        }
+        try {
+            Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+            settings.putAll(chessSettings().getSettings());
+
+            Recording recording = new Recording(settings);
+            recording.setName("chess");
+            recording.setToDisk(true);
+            recording.setDumpOnExit(true);
+            recording.setDestination(Path.of(destination));
+            recording.start();
+            System.out.println("Flight recording to " + destination);
+            return recording;
+        } catch (IOException | ParseException | RuntimeException e) {
+            System.out.println("Error: could not start flight recording: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static Configuration chessSettings() throws IOException, ParseException {
+        var in = FlightRecording.class.getResourceAsStream("/chess.jfc");
+        if (in == null) {
+            throw new IOException("chess.jfc is missing from the classpath");
+        }
+        try (var reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return Configuration.create(reader);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Reading one game out of the database. The event's duration is the whole call,
+ * parseTime is the part of it spent in Gson.
+ */
+@Name("chess.GameLoaded")
+@Label("Game Loaded")
+@Category({"Chess", "Database"})
+@Description("A game read from the database and parsed")
+@StackTrace(false)
+public class GameLoadedEvent extends Event {
+
+    @Label("Game ID")
+    public int gameID;
+
+    @Label("Found")
+    public boolean found;
+
+    @Label("Payload Size")
+    @Description("Length of the stored game JSON")
+    @DataAmount
+    public long payloadSize;
+
+    @Label("Parse Time")
+    @Timespan
+    public long parseTime;
+}
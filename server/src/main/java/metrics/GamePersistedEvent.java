@@ -0,0 +1,42 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Writing a game to the database, either one move to the move log or a full snapshot
+ * (or both). The event's duration is the whole call, serializeTime is the part of it
+ * spent in Gson.
+ */
+@Name("chess.GamePersisted")
+@Label("Game Persisted")
+@Category({"Chess", "Database"})
+@Description("A game serialized and written to the database")
+@StackTrace(false)
+public class GamePersistedEvent extends Event {
+
+    @Label("Game ID")
+    public int gameID;
+
+    @Label("Ply")
+    public int ply;
+
+    @Label("Snapshot")
+    @Description("Whether the whole game was rewritten rather than just the move")
+    public boolean snapshot;
+
+    @Label("Payload Size")
+    @Description("Length of the move and game JSON written")
+    @DataAmount
+    public long payloadSize;
+
+    @Label("Serialize Time")
+    @Timespan
+    public long serializeTime;
+}
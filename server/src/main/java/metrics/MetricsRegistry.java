@@ -0,0 +1,153 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Holds every counter, gauge and histogram the server keeps and writes them out in
+ * the Prometheus text format for GET /metrics.
+ * <p>
+ * Metrics are created once up front and kept in fields by whoever records them, so
+ * the hot path never looks anything up by name. Labels are given as name/value pairs,
+ * e.g. {@code histogram("chess_http_request_seconds", "...", "route", "GET /game")}.
+ */
+public class MetricsRegistry {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private enum Type { COUNTER, GAUGE, SUMMARY }
+
+    private record Series(String labels, Object metric) {
+    }
+
+    private static class Family {
+        final String help;
+        final Type type;
+        final List<Series> series = new ArrayList<>();
+
+        Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    // sorted so the output comes out in the same order every scrape
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help, String... labels) {
+        return register(name, help, Type.COUNTER, labels, new Counter());
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return register(name, help, Type.SUMMARY, labels, new Histogram());
+    }
+
+    /** Registers a histogram someone else already owns. */
+    public Histogram histogram(String name, String help, Histogram histogram, String... labels) {
+        return register(name, help, Type.SUMMARY, labels, histogram);
+    }
+
+    /** A gauge that is read when scraped, e.g. the size of a queue. */
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        register(name, help, Type.GAUGE, labels, value);
+    }
+
+    /** Like counter, but for a total some other class already keeps. */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        register(name, help, Type.COUNTER, labels, value);
+    }
+
+    /**
+     * A gauge with one series per key, worked out fresh on every scrape. Good for
+     * things that come and go, like sessions per game.
+     */
+    public void gaugeFamily(String name, String help, String labelName, Supplier<Map<String, ? extends Number>> values) {
+        register(name, help, Type.GAUGE, new String[0], new GaugeFamily(labelName, values));
+    }
+
+    private record GaugeFamily(String labelName, Supplier<Map<String, ? extends Number>> values) {
+    }
+
+    private <T> T register(String name, String help, Type type, String[] labels, T metric) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels must come in name/value pairs");
+        }
+        Family family = families.computeIfAbsent(name, k -> new Family(help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+        synchronized (family) {
+            family.series.add(new Series(formatLabels(labels), metric));
+        }
+        return metric;
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        families.forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type.name().toLowerCase()).append('\n');
+            List<Series> series;
+            synchronized (family) {
+                series = List.copyOf(family.series);
+            }
+            for (Series s : series) {
+                writeSeries(out, name, s);
+            }
+        });
+        return out.toString();
+    }
+
+    private void writeSeries(StringBuilder out, String name, Series s) {
+        switch (s.metric()) {
+            case Counter counter -> sample(out, name, s.labels(), counter.get());
+            case LongSupplier supplier -> sample(out, name, s.labels(), supplier.getAsLong());
+            case Histogram histogram -> {
+                for (double q : QUANTILES) {
+                    String labels = joinLabels(s.labels(), "quantile=\"" + q + "\"");
+                    sample(out, name, labels, seconds(histogram.valueAtQuantile(q)));
+                }
+                sample(out, name + "_sum", s.labels(), seconds(histogram.getSum()));
+                sample(out, name + "_count", s.labels(), histogram.getCount());
+            }
+            case GaugeFamily family -> family.values().get().forEach((key, value) ->
+                    sample(out, name, "{" + family.labelName() + "=\"" + escape(key) + "\"}", value));
+            default -> throw new IllegalStateException("unknown metric " + s.metric());
+        }
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Object value) {
+        out.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    // Prometheus wants base units, so latencies go out as seconds
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String joinLabels(String labels, String extra) {
+        return labels.isEmpty() ? "{" + extra + "}" : labels.substring(0, labels.length() - 1) + "," + extra + "}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
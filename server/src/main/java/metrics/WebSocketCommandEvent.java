@@ -0,0 +1,33 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Handling one command from a client. The move, database and broadcast events it
+ * causes happen on the same thread inside this one, which is how a chess.MoveValidated
+ * (which doesn't know its game) can be matched up with a gameID.
+ */
+@Name("chess.WebSocketCommand")
+@Label("WebSocket Command")
+@Category({"Chess", "WebSocket"})
+@Description("A command received from a client and handled")
+@StackTrace(false)
+public class WebSocketCommandEvent extends Event {
+
+    @Label("Game ID")
+    public int gameID;
+
+    @Label("Command")
+    public String command;
+
+    @Label("Payload Size")
+    @Description("Length of the command JSON")
+    @DataAmount
+    public long payloadSize;
+}
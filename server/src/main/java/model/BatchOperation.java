@@ -0,0 +1,9 @@
+package model;
+
+/**
+ * One entry of a POST /batch request. "create" uses gameName, "join" uses gameID and playerColor.
+ */
+public record BatchOperation(String op, String gameName, Integer gameID, String playerColor) {
+    public static final String CREATE = "create";
+    public static final String JOIN = "join";
+}
@@ -0,0 +1,14 @@
+package model;
+
+/**
+ * Outcome of one batch operation. message is null when it worked.
+ */
+public record BatchResult(Integer gameID, String message) {
+    public static BatchResult ok(int gameID) {
+        return new BatchResult(gameID, null);
+    }
+
+    public static BatchResult error(String message) {
+        return new BatchResult(null, message);
+    }
+}
@@ -1,12 +1,35 @@
 package server;
 
+import chess.engine.SearchResult;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import dataaccess.AsyncDataAccess;
+import dataaccess.CachingDataAccess;
+import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
 import dataaccess.DatabaseManager;
+import dataaccess.MetricsDataAccess;
+import dataaccess.SqlDataAccess;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
 import service.*;
 import io.javalin.Javalin;
+import io.javalin.http.Handler;
 import model.*;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class Server {
 
@@ -14,29 +37,54 @@ public class Server {
     private final ClearService clearService;
     private final UserService userService;
     private final GameService gameService;
+    private final PasswordHasher passwordHasher;
+    private final BotScheduler botScheduler;
+    private final AnalysisService analysisService;
+    // where SQL lookups run when callers want a few at once, null for stores that don't block
+    private final ExecutorService dbExecutor;
+    private final MetricsRegistry metrics = new MetricsRegistry();
     private record JoinRequest(String playerColor, int gameID) {}
+    private record BotRequest(String playerColor, int gameID, String strength) {}
+    private record BatchRequest(List<BatchOperation> operations) {}
 
     private final Gson gson = new Gson();
+    // ETags look like "<start time>-<version>" so tags from an earlier run never match
+    private final String etagPrefix = Long.toString(System.currentTimeMillis(), 36) + "-";
 
     public Server() {
+        // the connection pool caps how many actually talk to MySQL at once, so a
+        // virtual thread per call is plenty
+        this(sqlDataAccess(), Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chess-db-", 0).factory()));
+    }
 
-        try {
-            DatabaseManager.configureDatabase();
-        } catch (DataAccessException e) {
-            System.out.printf("ERROR: Database initialization failed: %s%n", e.getMessage());
-        }
-
+    // lets tests and the load generator run on something other than MySQL
+    public Server(DataAccess dataAccess) {
+        this(dataAccess, null);
+    }
 
-        dataaccess.SqlDataAccess dataAccess = new dataaccess.SqlDataAccess();
+    private Server(DataAccess dataAccess, ExecutorService dbExecutor) {
+        dataAccess = new MetricsDataAccess(dataAccess, metrics);
+        this.dbExecutor = dbExecutor;
+        AsyncDataAccess asyncData = dbExecutor == null
+                ? AsyncDataAccess.inline(dataAccess)
+                : AsyncDataAccess.onExecutor(dataAccess, dbExecutor);
         clearService = new ClearService(dataAccess);
-        userService = new UserService(dataAccess);
-        gameService = new GameService(dataAccess);
+        passwordHasher = new PasswordHasher();
+        passwordHasher.registerMetrics(metrics);
+        userService = new UserService(dataAccess, passwordHasher);
+        GameLocks gameLocks = new GameLocks();
+        gameService = new GameService(dataAccess, asyncData, gameLocks);
+        botScheduler = new BotScheduler();
+        botScheduler.registerMetrics(metrics);
+        analysisService = new AnalysisService(botScheduler.tablebase());
+        analysisService.registerMetrics(metrics);
 
         // start javalin
         javalin = Javalin.create(config -> config.staticFiles.add("web"));
 
         //wire to websocket
-        WebSocketHandler wsHandler = new WebSocketHandler(dataAccess);
+        WebSocketHandler wsHandler = new WebSocketHandler(dataAccess, asyncData, metrics, botScheduler,
+                analysisService, gameLocks);
         javalin.ws("/ws", ws -> {
             ws.onMessage(ctx -> {
                 try {
@@ -53,13 +101,53 @@ public class Server {
         });
 
         // Register endpoints here
-        javalin.delete("/db", this::clear);
-        javalin.post("/user", this::register);
-        javalin.post("/session", this::login);
-        javalin.delete("/session", this::logout);
-        javalin.get("/game", this::listGames);
-        javalin.post("/game", this::createGame);
-        javalin.put("/game", this::joinGame);
+        javalin.delete("/db", timed("DELETE /db", this::clear));
+        javalin.post("/user", timed("POST /user", this::register));
+        javalin.post("/session", timed("POST /session", this::login));
+        javalin.delete("/session", timed("DELETE /session", this::logout));
+        javalin.get("/game", timed("GET /game", this::listGames));
+        javalin.post("/game", timed("POST /game", this::createGame));
+        javalin.put("/game", timed("PUT /game", this::joinGame));
+        javalin.put("/game/bot", timed("PUT /game/bot", this::addBot));
+        javalin.get("/game/analysis", timed("GET /game/analysis", this::analyze));
+        javalin.post("/batch", timed("POST /batch", this::batch));
+        javalin.get("/metrics", ctx -> ctx.contentType("text/plain; version=0.0.4; charset=utf-8")
+                .result(metrics.scrape()));
+    }
+
+    // times a route and counts its responses by status class (2xx, 4xx, ...)
+    private Handler timed(String route, Handler handler) {
+        Histogram latency = metrics.histogram("chess_http_request_seconds", "Time to handle a REST request",
+                "route", route);
+        Counter[] responses = new Counter[6];
+        for (int i = 1; i < responses.length; i++) {
+            responses[i] = metrics.counter("chess_http_responses_total", "REST responses by status class",
+                    "route", route, "status", i + "xx");
+        }
+        return ctx -> {
+            long start = System.nanoTime();
+            boolean threw = true;
+            try {
+                handler.handle(ctx);
+                threw = false;
+            } finally {
+                latency.recordSince(start);
+                // javalin turns anything thrown into a 500 after we're gone
+                int statusClass = threw ? 5 : ctx.statusCode() / 100;
+                if (statusClass >= 1 && statusClass <= 5) {
+                    responses[statusClass].increment();
+                }
+            }
+        };
+    }
+
+    private static DataAccess sqlDataAccess() {
+        try {
+            DatabaseManager.configureDatabase();
+        } catch (DataAccessException e) {
+            System.out.printf("ERROR: Database initialization failed: %s%n", e.getMessage());
+        }
+        return new CachingDataAccess(new SqlDataAccess());
     }
 
     private void clear(io.javalin.http.Context ctx) {
@@ -90,7 +178,12 @@ public class Server {
     }
     private void logout(io.javalin.http.Context ctx) {
         try {
-            userService.logout(ctx.header("Authorization"));
+            // ?all=true signs the user out on every device, not just this one
+            if ("true".equals(ctx.queryParam("all"))) {
+                userService.logoutEverywhere(ctx.header("Authorization"));
+            } else {
+                userService.logout(ctx.header("Authorization"));
+            }
             ctx.status(200).result("{}");
         } catch (DataAccessException e) {
             handleException(ctx, e);
@@ -98,12 +191,82 @@ public class Server {
     }
     private void listGames(io.javalin.http.Context ctx) {
         try {
-            var games = gameService.listGames(ctx.header("Authorization"));
-            ctx.status(200).result(gson.toJson(Map.of("games", games)));
+            // ?mine=true is only the caller's games, small enough to skip the ETag for
+            if ("true".equals(ctx.queryParam("mine"))) {
+                writeGames(ctx, gameService.listMyGames(ctx.header("Authorization")));
+                return;
+            }
+            var list = gameService.listGames(ctx.header("Authorization"), parseETag(ctx.header("If-None-Match")));
+            if (list.version() >= 0) {
+                ctx.header("ETag", "\"" + etagPrefix + list.version() + "\"");
+            }
+            if (list.games() == null) {
+                ctx.status(304);
+                return;
+            }
+            writeGames(ctx, list.games());
         } catch (DataAccessException e) {
             handleException(ctx, e);
         }
     }
+    // streams {"games":[...]} straight to the response one game at a time instead of
+    // building the whole string first, compressed if the client asked for it
+    private void writeGames(io.javalin.http.Context ctx, Collection<GameData> games) {
+        ctx.status(200);
+        ctx.contentType("application/json");
+        ctx.header("Vary", "Accept-Encoding");
+        try (OutputStream out = compressedStream(ctx);
+             JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))) {
+            writer.beginObject().name("games").beginArray();
+            for (GameData game : games) {
+                gson.toJson(game, GameData.class, writer);
+            }
+            writer.endArray().endObject();
+        } catch (IOException e) {
+            // client went away part way through, nothing left to send it
+            System.out.println("Error writing game list: " + e.getMessage());
+        }
+    }
+    private OutputStream compressedStream(io.javalin.http.Context ctx) throws IOException {
+        OutputStream raw = ctx.res().getOutputStream();
+        String encoding = pickEncoding(ctx.header("Accept-Encoding"));
+        if (encoding == null) {
+            return raw;
+        }
+        ctx.header("Content-Encoding", encoding);
+        return encoding.equals("gzip") ? new GZIPOutputStream(raw, 8192) : new DeflaterOutputStream(raw);
+    }
+    // gzip if allowed, then deflate, otherwise send it plain
+    private String pickEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] pieces = part.trim().split(";");
+            String name = pieces[0].trim().toLowerCase();
+            boolean refused = pieces.length > 1 && pieces[1].trim().matches("q=0(\\.0*)?");
+            if (refused) {
+                continue;
+            }
+            if (name.equals("gzip")) {
+                return "gzip";
+            }
+            deflate |= name.equals("deflate");
+        }
+        return deflate ? "deflate" : null;
+    }
+    // version from an ETag we handed out, or -1 if it isn't one of ours
+    private long parseETag(String etag) {
+        if (etag == null || !etag.startsWith("\"" + etagPrefix) || !etag.endsWith("\"")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(etag.substring(etagPrefix.length() + 1, etag.length() - 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
     private void createGame(io.javalin.http.Context ctx) {
         try {
             String token = ctx.header("Authorization");
@@ -129,6 +292,55 @@ public class Server {
             handleException(ctx, e);
         }
     }
+    private void addBot(io.javalin.http.Context ctx) {
+        try {
+            BotRequest req = gson.fromJson(ctx.body(), BotRequest.class);
+            if (req == null) {
+                throw new DataAccessException("Error: bad request");
+            }
+            gameService.addBot(ctx.header("Authorization"), req.gameID(), req.playerColor(), req.strength());
+            ctx.status(200).result("{}");
+        } catch (DataAccessException e) {
+            handleException(ctx, e);
+        }
+    }
+    // GET /game/analysis?gameID=1&depth=12, depth is optional
+    private void analyze(io.javalin.http.Context ctx) {
+        try {
+            int gameID = intParam(ctx, "gameID", -1);
+            int depth = intParam(ctx, "depth", AnalysisService.DEFAULT_DEPTH);
+            GameData game = gameService.getGame(ctx.header("Authorization"), gameID);
+            // the search runs on the analysis threads, and Jetty's thread goes back to the pool
+            // instead of waiting for it
+            CompletableFuture<SearchResult> search = analysisService.analyze(game.game(), depth);
+            ctx.future(() -> search.thenAccept(result -> ctx.status(200).result(gson.toJson(result))));
+        } catch (DataAccessException e) {
+            handleException(ctx, e);
+        }
+    }
+    private int intParam(io.javalin.http.Context ctx, String name, int missing) throws DataAccessException {
+        String value = ctx.queryParam(name);
+        if (value == null) {
+            return missing;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new DataAccessException("Error: bad request");
+        }
+    }
+    private void batch(io.javalin.http.Context ctx) {
+        try {
+            BatchRequest req = gson.fromJson(ctx.body(), BatchRequest.class);
+            if (req == null) {
+                throw new DataAccessException("Error: bad request");
+            }
+            var results = gameService.batch(ctx.header("Authorization"), req.operations());
+            ctx.status(200).result(gson.toJson(Map.of("results", results)));
+        } catch (DataAccessException e) {
+            handleException(ctx, e);
+        }
+    }
     private void handleException(io.javalin.http.Context ctx, DataAccessException e) {
         String msg = e.getMessage();
 
@@ -145,6 +357,8 @@ public class Server {
             status = 401;
         } else if (msg.contains("already taken")) {
             status = 403;
+        } else if (msg.contains("service unavailable")) {
+            status = 503;
         }
 
         ctx.status(status).result(gson.toJson(Map.of("message", msg)));
@@ -157,6 +371,12 @@ public class Server {
 
     public void stop() {
         javalin.stop();
+        passwordHasher.shutdown();
+        botScheduler.shutdown();
+        analysisService.shutdown();
+        if (dbExecutor != null) {
+            dbExecutor.shutdown();
+        }
     }
 
     private record ErrorResponse(String message) {}
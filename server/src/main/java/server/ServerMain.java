@@ -1,10 +1,41 @@
 package server;
 
+import dataaccess.CachingDataAccess;
+import dataaccess.DataAccessException;
+import dataaccess.FileDataAccess;
+import dataaccess.MemoryDataAccess;
+
+import java.nio.file.Path;
+
 public class ServerMain {
-    public static void main(String[] args) {
-        Server server = new Server();
+    public static void main(String[] args) throws DataAccessException {
+        metrics.FlightRecording.startIfRequested();
+        // -Dchess.storage=sql (default), file (under -Dchess.dataDir) or memory
+        String storage = System.getProperty("chess.storage", "sql");
+        Server server = switch (storage) {
+            case "sql" -> new Server();
+            case "file" -> new Server(new CachingDataAccess(openFileStorage()));
+            case "memory" -> new Server(new CachingDataAccess(new MemoryDataAccess()));
+            default -> throw new IllegalArgumentException("unknown chess.storage " + storage);
+        };
         server.run(8080);
 
         System.out.println("♕ 240 Chess Server");
     }
-}
\ No newline at end of file
+
+    private static FileDataAccess openFileStorage() throws DataAccessException {
+        Path directory = Path.of(System.getProperty("chess.dataDir", "data"));
+        FileDataAccess files = new FileDataAccess(directory);
+        // leave a fresh snapshot behind so the next start has nothing to replay
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                files.checkpoint();
+                files.close();
+            } catch (DataAccessException e) {
+                System.out.println("Error closing " + directory + ": " + e.getMessage());
+            }
+        }));
+        System.out.println("Storing data in " + directory.toAbsolutePath());
+        return files;
+    }
+}
@@ -2,30 +2,119 @@ package server;
 
 import chess.ChessGame;
 import chess.ChessMove;
+import chess.engine.SearchResult;
+import chess.engine.Tablebase;
 import com.google.gson.Gson;
+import dataaccess.AsyncDataAccess;
 import dataaccess.DataAccessException;
+import metrics.BroadcastEvent;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import metrics.WebSocketCommandEvent;
+import model.AuthData;
 import model.GameData;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.annotations.*;
+import service.AnalysisService;
+import service.BotScheduler;
+import service.BotStrength;
+import service.GameLocks;
+import websocket.commands.AnalyzeCommand;
 import websocket.commands.MakeMoveCommand;
 import websocket.commands.UserGameCommand;
+import websocket.messages.AnalysisMessage;
 import websocket.messages.ErrorMessage;
 import websocket.messages.LoadGameMessage;
 import websocket.messages.NotificationMessage;
 
 import java.io.IOException;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @WebSocket
 public class WebSocketHandler {
 
     private final dataaccess.DataAccess dataAccess;
+    // for the lookups every command starts with, so auth and game load side by side
+    private final AsyncDataAccess asyncData;
     private final Gson gson = new Gson();
     private final Map<Integer, Map<String, Session>> gameSessions = new ConcurrentHashMap<>();
+    private final BotScheduler bots;
+    private final AnalysisService analysis;
+    // bot moves get played here rather than on a search worker, playing one means database calls
+    private final ExecutorService botMoves = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("chess-bot-move-", 0).factory());
+    // held while a game is read, moved in and written back, so a bot move can't land in the
+    // middle of a player's move, resign or leave (or of another bot move)
+    private final GameLocks gameLocks;
+    // the move count a game's bot has a play waiting for, so reconnects and observers
+    // joining don't start another one for the same move. Gone once the play is done
+    private final Map<Integer, Integer> botPlays = new ConcurrentHashMap<>();
+    // and analysis answers get sent from here, not from the search thread
+    private final ExecutorService analysisReplies = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("chess-analysis-reply-", 0).factory());
+
+    // looked up by enum on every message, so no strings or boxing on the hot path
+    private final Map<UserGameCommand.CommandType, Histogram> commandLatency =
+            new EnumMap<>(UserGameCommand.CommandType.class);
+    private final Histogram broadcastLatency;
+    private final Counter messagesSent;
 
     public WebSocketHandler(dataaccess.DataAccess dataAccess) {
+        this(dataAccess, new MetricsRegistry());
+    }
+
+    public WebSocketHandler(dataaccess.DataAccess dataAccess, MetricsRegistry metrics) {
+        this(dataAccess, AsyncDataAccess.inline(dataAccess), metrics);
+    }
+
+    public WebSocketHandler(dataaccess.DataAccess dataAccess, AsyncDataAccess asyncData, MetricsRegistry metrics) {
+        this(dataAccess, asyncData, metrics, new BotScheduler());
+    }
+
+    public WebSocketHandler(dataaccess.DataAccess dataAccess, AsyncDataAccess asyncData, MetricsRegistry metrics,
+                            BotScheduler bots) {
+        this(dataAccess, asyncData, metrics, bots, new AnalysisService(bots.tablebase()));
+    }
+
+    public WebSocketHandler(dataaccess.DataAccess dataAccess, AsyncDataAccess asyncData, MetricsRegistry metrics,
+                            BotScheduler bots, AnalysisService analysis) {
+        this(dataAccess, asyncData, metrics, bots, analysis, new GameLocks());
+    }
+
+    public WebSocketHandler(dataaccess.DataAccess dataAccess, AsyncDataAccess asyncData, MetricsRegistry metrics,
+                            BotScheduler bots, AnalysisService analysis, GameLocks gameLocks) {
         this.dataAccess = dataAccess;
+        this.gameLocks = gameLocks;
+        this.asyncData = asyncData;
+        this.bots = bots;
+        this.analysis = analysis;
+        for (UserGameCommand.CommandType type : UserGameCommand.CommandType.values()) {
+            commandLatency.put(type, metrics.histogram("chess_ws_command_seconds",
+                    "Time to handle a WebSocket command", "command", type.name()));
+        }
+        broadcastLatency = metrics.histogram("chess_ws_broadcast_seconds",
+                "Time to send one message to everyone in a game");
+        messagesSent = metrics.counter("chess_ws_messages_sent_total", "WebSocket messages sent to clients");
+        metrics.gauge("chess_ws_sessions", "Open sessions across all games",
+                () -> gameSessions.values().stream().mapToLong(Map::size).sum());
+        metrics.gaugeFamily("chess_ws_game_sessions", "Open sessions per game", "game", this::sessionsPerGame);
+    }
+
+    private Map<String, Integer> sessionsPerGame() {
+        Map<String, Integer> counts = new TreeMap<>();
+        gameSessions.forEach((gameID, sessions) -> {
+            if (!sessions.isEmpty()) {
+                counts.put(gameID.toString(), sessions.size());
+            }
+        });
+        return counts;
     }
 
     @OnWebSocketMessage
@@ -33,14 +122,29 @@ public class WebSocketHandler {
         // making sure JSON is straightforward
         UserGameCommand baseCommand = gson.fromJson(message, UserGameCommand.class);
 
-        switch (baseCommand.getCommandType()) {
-            case CONNECT -> handleConnect(session, baseCommand);
-            case LEAVE -> handleLeave(session, baseCommand);
-            case RESIGN -> handleResign(session, baseCommand);
-            case MAKE_MOVE -> {
-                // need the move field
-                MakeMoveCommand moveCommand = gson.fromJson(message, MakeMoveCommand.class);
-                handleMakeMove(session, moveCommand);
+        var event = new WebSocketCommandEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            switch (baseCommand.getCommandType()) {
+                case CONNECT -> handleConnect(session, baseCommand);
+                case LEAVE -> handleLeave(session, baseCommand);
+                case RESIGN -> handleResign(session, baseCommand);
+                case MAKE_MOVE -> {
+                    // need the move field
+                    MakeMoveCommand moveCommand = gson.fromJson(message, MakeMoveCommand.class);
+                    handleMakeMove(session, moveCommand);
+                }
+                case ANALYZE -> handleAnalyze(session, gson.fromJson(message, AnalyzeCommand.class));
+            }
+        } finally {
+            commandLatency.get(baseCommand.getCommandType()).recordSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.command = baseCommand.getCommandType().name();
+                event.gameID = baseCommand.getGameID() == null ? 0 : baseCommand.getGameID();
+                event.payloadSize = message.length();
+                event.commit();
             }
         }
     }
@@ -51,12 +155,14 @@ public class WebSocketHandler {
     }
 
     private void handleConnect(Session session, UserGameCommand command) throws Exception {
-        String username = getUsernameOrError(session, command.getAuthToken());
+        var auth = asyncData.getAuth(command.getAuthToken());
+        var lookup = asyncData.getGame(command.getGameID());
+        String username = getUsernameOrError(session, auth);
         if (username == null) {
             return;
         }
 
-        GameData game = getGameOrError(session, command.getGameID());
+        GameData game = getGameOrError(session, lookup);
         if (game == null) {
             return;
         }
@@ -67,15 +173,30 @@ public class WebSocketHandler {
         String color = getPlayerColor(game, username);
         String note = color != null ? username + " joined as " + color : username + " is observing";
         broadcastExcept(command.getGameID(), username, new NotificationMessage(note));
+
+        // e.g. a bot playing white has been waiting for someone to show up
+        startBotIfItsTurn(game);
     }
 
     private void handleMakeMove(Session session, MakeMoveCommand command) throws Exception {
-        String username = getUsernameOrError(session, command.getAuthToken());
+        int gameID = lockID(command.getGameID());
+        gameLocks.lock(gameID);
+        try {
+            makeMove(session, command);
+        } finally {
+            gameLocks.unlock(gameID);
+        }
+    }
+
+    private void makeMove(Session session, MakeMoveCommand command) throws Exception {
+        var auth = asyncData.getAuth(command.getAuthToken());
+        var lookup = asyncData.getGame(command.getGameID());
+        String username = getUsernameOrError(session, auth);
         if (username == null) {
             return;
         }
 
-        GameData game = getGameOrError(session, command.getGameID());
+        GameData game = getGameOrError(session, lookup);
         if (game == null) {
             return;
         }
@@ -106,11 +227,19 @@ public class WebSocketHandler {
             return;
         }
 
-        dataAccess.updateGame(game);
-        broadcastAll(command.getGameID(), new LoadGameMessage(game));
+        dataAccess.recordMove(game, move);
+        announceMove(game, username, move, turn);
+        startBotIfItsTurn(game);
+    }
+
+    // everyone gets the new board, everyone else hears about the move, then check/mate news
+    private void announceMove(GameData game, String username, ChessMove move, ChessGame.TeamColor turn)
+            throws IOException, DataAccessException {
+        int gameID = game.gameID();
+        broadcastAll(gameID, new LoadGameMessage(game));
 
         String moveDesc = move.getStartPosition().toString() + " -> " + move.getEndPosition().toString();
-        broadcastExcept(command.getGameID(), username, new NotificationMessage(username + " moved " + moveDesc));
+        broadcastExcept(gameID, username, new NotificationMessage(username + " moved " + moveDesc));
 
         ChessGame.TeamColor opponent = turn == ChessGame.TeamColor.WHITE
                 ? ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE;
@@ -118,21 +247,114 @@ public class WebSocketHandler {
                 ? game.whiteUsername() : game.blackUsername();
 
         if (game.game().isInCheckmate(opponent)) {
-            broadcastAll(command.getGameID(), new NotificationMessage(opponentName + " is in checkmate!"));
+            broadcastAll(gameID, new NotificationMessage(opponentName + " is in checkmate!"));
+            endGame(gameID);
         } else if (game.game().isInStalemate(opponent)) {
-            broadcastAll(command.getGameID(), new NotificationMessage("Stalemate! Game over."));
+            broadcastAll(gameID, new NotificationMessage("Stalemate! Game over."));
+            endGame(gameID);
+        } else if (game.game().isDrawByRepetition()) {
+            broadcastAll(gameID, new NotificationMessage("Draw by threefold repetition. Game over."));
+            endGame(gameID);
+        } else if (game.game().isDrawByFiftyMoves()) {
+            broadcastAll(gameID, new NotificationMessage("Draw by the fifty-move rule. Game over."));
+            endGame(gameID);
+        } else if (isTablebaseDraw(game.game())) {
+            game.game().setDrawn(true);
+            dataAccess.updateGame(game);
+            broadcastAll(gameID, new NotificationMessage(
+                    "Draw by tablebase: the position is a theoretical draw. Game over."));
+            endGame(gameID);
         } else if (game.game().isInCheck(opponent)) {
-            broadcastAll(command.getGameID(), new NotificationMessage(opponentName + " is in check!"));
+            broadcastAll(gameID, new NotificationMessage(opponentName + " is in check!"));
         }
     }
 
+    // queues a think if a bot is to move, it plays the move itself once it has one
+    private void startBotIfItsTurn(GameData game) {
+        ChessGame chess = game.game();
+        if (chess == null || isGameOver(game)) {
+            return;
+        }
+        ChessGame.TeamColor turn = chess.getTeamTurn();
+        String botName = turn == ChessGame.TeamColor.WHITE ? game.whiteUsername() : game.blackUsername();
+        BotStrength strength = BotStrength.fromUsername(botName);
+        if (strength == null) {
+            return;
+        }
+        int gameID = game.gameID();
+        int moveCount = chess.getMoveCount();
+        Integer started = botPlays.put(gameID, moveCount);
+        if (started != null && started == moveCount) {
+            // think would hand back the same move, or for a book move maybe a different one
+            return;
+        }
+        bots.think(gameID, strength, chess).whenCompleteAsync((move, failure) -> {
+            if (failure != null) {
+                // e.g. cancelled, the next connect or move can try again
+                botPlays.remove(gameID, moveCount);
+            } else {
+                playBotMove(gameID, botName, moveCount, move);
+            }
+        }, botMoves);
+    }
+
+    private void playBotMove(int gameID, String botName, int moveCount, ChessMove move) {
+        gameLocks.lock(gameID);
+        try {
+            GameData game = dataAccess.getGame(gameID);
+            // anything could have happened while it was thinking
+            if (move == null || game == null || game.game().getMoveCount() != moveCount || isGameOver(game)) {
+                return;
+            }
+            ChessGame.TeamColor turn = game.game().getTeamTurn();
+            String toMove = turn == ChessGame.TeamColor.WHITE ? game.whiteUsername() : game.blackUsername();
+            if (!botName.equals(toMove)) {
+                return;
+            }
+            game.game().makeMove(move);
+            dataAccess.recordMove(game, move);
+            announceMove(game, botName, move, turn);
+            // bot against bot keeps going by itself
+            startBotIfItsTurn(game);
+        } catch (DataAccessException | chess.InvalidMoveException | IOException e) {
+            System.out.println("Error playing bot move: " + e.getMessage());
+        } finally {
+            gameLocks.unlock(gameID);
+            // a bot against bot game has already put the next move count in
+            botPlays.remove(gameID, moveCount);
+        }
+    }
+
+    // games are numbered from 1, so a command without one gets a lock nobody else uses
+    private static int lockID(Integer gameID) {
+        return gameID == null ? 0 : gameID;
+    }
+
+    // nothing more for a bot to do in it
+    private void endGame(int gameID) {
+        bots.cancel(gameID);
+        botPlays.remove(gameID);
+    }
+
     private void handleLeave(Session session, UserGameCommand command) throws Exception {
-        String username = getUsernameOrError(session, command.getAuthToken());
+        int gameID = lockID(command.getGameID());
+        gameLocks.lock(gameID);
+        try {
+            leave(session, command);
+        } finally {
+            gameLocks.unlock(gameID);
+        }
+    }
+
+    private void leave(Session session, UserGameCommand command) throws Exception {
+        var auth = asyncData.getAuth(command.getAuthToken());
+        var lookup = asyncData.getGame(command.getGameID());
+        String username = getUsernameOrError(session, auth);
         if (username == null) {
             return;
         }
 
-        GameData game = getGameOrError(session, command.getGameID());
+        GameData game = getGameOrError(session, lookup);
         if (game == null) {
             return;
         }
@@ -148,12 +370,24 @@ public class WebSocketHandler {
     }
 
     private void handleResign(Session session, UserGameCommand command) throws Exception {
-        String username = getUsernameOrError(session, command.getAuthToken());
+        int gameID = lockID(command.getGameID());
+        gameLocks.lock(gameID);
+        try {
+            resign(session, command);
+        } finally {
+            gameLocks.unlock(gameID);
+        }
+    }
+
+    private void resign(Session session, UserGameCommand command) throws Exception {
+        var auth = asyncData.getAuth(command.getAuthToken());
+        var lookup = asyncData.getGame(command.getGameID());
+        String username = getUsernameOrError(session, auth);
         if (username == null) {
             return;
         }
 
-        GameData game = getGameOrError(session, command.getGameID());
+        GameData game = getGameOrError(session, lookup);
         if (game == null) {
             return;
         }
@@ -170,21 +404,66 @@ public class WebSocketHandler {
 
         game.game().setResigned(true);
         dataAccess.updateGame(game);
+        endGame(game.gameID());
         broadcastAll(command.getGameID(), new NotificationMessage(username + " resigned. Game over."));
     }
 
+    // anyone who can see the game can ask, the answer goes back to them alone when the search is done
+    private void handleAnalyze(Session session, AnalyzeCommand command) throws Exception {
+        var auth = asyncData.getAuth(command.getAuthToken());
+        var lookup = asyncData.getGame(command.getGameID());
+        String username = getUsernameOrError(session, auth);
+        if (username == null) {
+            return;
+        }
+
+        GameData game = getGameOrError(session, lookup);
+        if (game == null) {
+            return;
+        }
+
+        int depth = command.getDepth() == null ? AnalysisService.DEFAULT_DEPTH : command.getDepth();
+        int moveCount = game.game().getMoveCount();
+        CompletableFuture<SearchResult> result;
+        try {
+            result = analysis.analyze(game.game(), depth);
+        } catch (DataAccessException e) {
+            sendMessage(session, gson.toJson(new ErrorMessage(e.getMessage())));
+            return;
+        }
+        result.whenCompleteAsync((found, failure) -> {
+            try {
+                if (failure != null) {
+                    sendMessage(session, gson.toJson(new ErrorMessage("Error: analysis failed")));
+                } else {
+                    sendMessage(session, gson.toJson(new AnalysisMessage(moveCount, found)));
+                }
+            } catch (IOException e) {
+                System.out.println("Error sending analysis: " + e.getMessage());
+            }
+        }, analysisReplies);
+    }
+
+    // the tablebase says it's a draw with best play, bare kings included even without any tables.
+    // That's more than a dead position, KRvKR can still be lost, so it's called a theoretical draw
+    private boolean isTablebaseDraw(ChessGame game) {
+        Tablebase.Result result = bots.tablebase().probe(game);
+        return result != null && result.outcome() == Tablebase.Outcome.DRAW;
+    }
+
     private boolean isGameOver(GameData game) {
         ChessGame g = game.game();
-        return g.isResigned() ||
+        return g.isResigned() || g.isDrawn() || g.isDrawByRepetition() || g.isDrawByFiftyMoves() ||
                 g.isInCheckmate(ChessGame.TeamColor.WHITE) ||
                 g.isInCheckmate(ChessGame.TeamColor.BLACK) ||
                 g.isInStalemate(ChessGame.TeamColor.WHITE) ||
                 g.isInStalemate(ChessGame.TeamColor.BLACK);
     }
 
-    private String getUsernameOrError(Session session, String authToken) throws IOException {
+    // the auth error wins if both lookups failed, same as when they ran one after the other
+    private String getUsernameOrError(Session session, CompletableFuture<AuthData> lookup) throws IOException {
         try {
-            model.AuthData auth = dataAccess.getAuth(authToken);
+            AuthData auth = AsyncDataAccess.await(lookup);
             if (auth == null) {
                 sendMessage(session, gson.toJson(new ErrorMessage("Error: unauthorized")));
                 return null;
@@ -196,9 +475,9 @@ public class WebSocketHandler {
         }
     }
 
-    private GameData getGameOrError(Session session, Integer gameID) throws IOException {
+    private GameData getGameOrError(Session session, CompletableFuture<GameData> lookup) throws IOException {
         try {
-            GameData game = dataAccess.getGame(gameID);
+            GameData game = AsyncDataAccess.await(lookup);
             if (game == null) {
                 sendMessage(session, gson.toJson(new ErrorMessage("Error: game not found")));
                 return null;
@@ -234,21 +513,38 @@ public class WebSocketHandler {
     private void sendMessage(Session session, String message) throws IOException {
         if (session.isOpen()) {
             session.getRemote().sendString(message);
+            messagesSent.increment();
         }
     }
 
     private void broadcastAll(int gameID, websocket.messages.ServerMessage msg) throws IOException {
-        String json = gson.toJson(msg);
-        for (Session s : gameSessions.getOrDefault(gameID, Map.of()).values()) {
-            sendMessage(s, json);
-        }
+        broadcastExcept(gameID, null, msg);
     }
 
     private void broadcastExcept(int gameID, String excludeUsername, websocket.messages.ServerMessage msg) throws IOException {
+        var event = new BroadcastEvent();
+        event.begin();
+        long serializeStart = System.nanoTime();
         String json = gson.toJson(msg);
-        for (var entry : gameSessions.getOrDefault(gameID, Map.of()).entrySet()) {
-            if (!entry.getKey().equals(excludeUsername)) {
-                sendMessage(entry.getValue(), json);
+        long start = System.nanoTime();
+        int recipients = 0;
+        try {
+            for (var entry : gameSessions.getOrDefault(gameID, Map.of()).entrySet()) {
+                if (!entry.getKey().equals(excludeUsername)) {
+                    sendMessage(entry.getValue(), json);
+                    recipients++;
+                }
+            }
+        } finally {
+            broadcastLatency.recordSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.gameID = gameID;
+                event.messageType = msg.getServerMessageType().name();
+                event.recipients = recipients;
+                event.payloadSize = json.length();
+                event.serializeTime = start - serializeStart;
+                event.commit();
             }
         }
     }
@@ -0,0 +1,194 @@
+package service;
+
+import chess.ChessGame;
+import chess.engine.Position;
+import chess.engine.Search;
+import chess.engine.SearchLimits;
+import chess.engine.SearchResult;
+import chess.engine.Tablebase;
+import chess.engine.TranspositionTable;
+import dataaccess.DataAccessException;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * "Analyze this position" for players and watchers, run on a few search threads of
+ * its own so requests never search on a request thread or take workers from the bots.
+ * <p>
+ * Requests wait in a bounded queue, once it's full new ones are turned away with a
+ * "service unavailable" error instead of piling up. A request for a position (by
+ * Zobrist key) and depth that's already being searched joins that search, and
+ * finished results go in an LRU cache under the same key, so when everyone watching
+ * a game asks about the same move it only gets searched once.
+ * <p>
+ * Each search stops at its depth or after maxMillis, whichever comes first, so a
+ * result can be shallower than asked for (see SearchResult.depth). A shallower one is
+ * cached under the depth it reached, not the one asked for.
+ * <p>
+ * Settings come from system properties (chess.analysis.threads, chess.analysis.queue,
+ * chess.analysis.cache, chess.analysis.millis) when the no-arg constructor is used.
+ */
+public class AnalysisService {
+
+    public static final int DEFAULT_DEPTH = 10;
+    public static final int MAX_DEPTH = 30;
+
+    private record Key(long hash, int depth) {
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final TranspositionTable table;
+    private final Tablebase tablebase;
+    private final long maxMillis;
+    // set on shutdown so searches that are running or queued finish straight away
+    private final AtomicBoolean stop = new AtomicBoolean();
+
+    // both guarded by this
+    private final Map<Key, CompletableFuture<SearchResult>> running = new HashMap<>();
+    private final LinkedHashMap<Key, SearchResult> cache;
+
+    private final Histogram searchTime = new Histogram();
+    private final Histogram queueWait = new Histogram();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public AnalysisService(Tablebase tablebase) {
+        this(Integer.getInteger("chess.analysis.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 4)),
+                Integer.getInteger("chess.analysis.queue", 32),
+                Integer.getInteger("chess.analysis.cache", 4096),
+                Long.getLong("chess.analysis.millis", 3000), TranspositionTable.fromConfig(), tablebase);
+    }
+
+    public AnalysisService(int threads, int queueDepth, int cacheSize, long maxMillis, TranspositionTable table,
+                           Tablebase tablebase) {
+        if (threads < 1 || cacheSize < 0 || maxMillis < 1) {
+            throw new IllegalArgumentException("need at least one thread, a cache size and a time limit");
+        }
+        this.table = table;
+        this.tablebase = tablebase;
+        this.maxMillis = maxMillis;
+        // access order, so the eldest entry is the least recently used one
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, SearchResult> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        BlockingQueue<Runnable> queue = queueDepth > 0 ? new ArrayBlockingQueue<>(queueDepth) : new SynchronousQueue<>();
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, queue, r -> {
+            Thread t = new Thread(r, "chess-analysis-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Searches game's position to depth plies. The future is shared with anyone else
+     * asking about the same thing at the same time, and is already done if the answer
+     * is in the cache.
+     */
+    public CompletableFuture<SearchResult> analyze(ChessGame game, int depth) throws DataAccessException {
+        if (game == null || depth < 1 || depth > MAX_DEPTH) {
+            throw new DataAccessException("Error: bad request");
+        }
+        Position pos = Position.of(game);
+        Key key = new Key(pos.hash(), depth);
+        synchronized (this) {
+            SearchResult cached = cache.get(key);
+            if (cached != null) {
+                cacheHits.increment();
+                return CompletableFuture.completedFuture(cached);
+            }
+            CompletableFuture<SearchResult> existing = running.get(key);
+            if (existing != null) {
+                joined.increment();
+                return existing;
+            }
+            CompletableFuture<SearchResult> result = new CompletableFuture<>();
+            long queuedAt = System.nanoTime();
+            try {
+                executor.execute(() -> search(key, pos, result, queuedAt));
+            } catch (RejectedExecutionException e) {
+                // too much queued up already, fail fast instead of making everyone wait longer
+                rejected.increment();
+                throw new DataAccessException("Error: service unavailable");
+            }
+            // still holding the lock, so the search can't finish and look for this before it's there
+            running.put(key, result);
+            return result;
+        }
+    }
+
+    public int queuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public void registerMetrics(MetricsRegistry metrics) {
+        metrics.histogram("chess_analysis_search_seconds", "Time spent searching a position for analysis", searchTime);
+        metrics.histogram("chess_analysis_queue_wait_seconds", "Time an analysis waited for a search thread", queueWait);
+        metrics.counter("chess_analysis_cache_hits_total", "Analyses answered from the cache", cacheHits::sum);
+        metrics.counter("chess_analysis_joined_total", "Analyses that joined the same search already running",
+                joined::sum);
+        metrics.counter("chess_analysis_rejected_total", "Analyses turned away because the queue was full",
+                rejected::sum);
+        metrics.gauge("chess_analysis_queued", "Analyses waiting for a search thread", this::queuedCount);
+        metrics.gauge("chess_analysis_cached", "Results in the analysis cache", () -> {
+            synchronized (this) {
+                return cache.size();
+            }
+        });
+    }
+
+    public void shutdown() {
+        stop.set(true);
+        executor.shutdown();
+    }
+
+    // one that ran out of time only answers for the depth it got to, otherwise a single
+    // slow moment would pin the shallow answer to the deeper question. A mate is a mate
+    // at any depth though
+    private void cacheLocked(Key key, SearchResult found) {
+        if (found.depth() >= key.depth() || found.isMate()) {
+            cache.put(key, found);
+        } else if (found.depth() > 0) {
+            cache.putIfAbsent(new Key(key.hash(), found.depth()), found);
+        }
+    }
+
+    private void search(Key key, Position pos, CompletableFuture<SearchResult> result, long queuedAt) {
+        long start = System.nanoTime();
+        queueWait.record(start - queuedAt);
+        try {
+            table.newSearch();
+            SearchResult found = new Search(pos, table, tablebase, stop)
+                    .run(new SearchLimits(key.depth(), 0, maxMillis));
+            synchronized (this) {
+                running.remove(key);
+                // a search cut short by shutdown isn't worth keeping
+                if (!stop.get()) {
+                    cacheLocked(key, found);
+                }
+            }
+            result.complete(found);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                running.remove(key);
+            }
+            result.completeExceptionally(e);
+        } finally {
+            searchTime.recordSince(start);
+        }
+    }
+}
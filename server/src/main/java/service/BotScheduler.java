@@ -0,0 +1,411 @@
+package service;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.engine.OpeningBook;
+import chess.engine.Position;
+import chess.engine.Search;
+import chess.engine.SearchLimits;
+import chess.engine.SearchResult;
+import chess.engine.Tablebase;
+import chess.engine.TranspositionTable;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds moves for bots, for any number of games at once, on one bounded pool of
+ * search workers.
+ * <p>
+ * A think request gets a budget from the bot's clock (see BotStrength) and waits in
+ * its strength's queue. It runs in slices: each slice is a normal search that stops
+ * after sliceMillis (doubling every slice, so deep iterations get a chance to finish),
+ * then the request goes to the back of the queue until its budget is used up. The
+ * shared transposition table remembers what earlier slices found, so picking a search
+ * back up costs little. When a request is waiting and every worker is busy, the most
+ * expensive slice that has had at least sliceMillis is stopped early (preempted).
+ * <p>
+ * Strengths take turns at free workers and each one can hold at most its quota of
+ * them, so analysis requests can't crowd out blitz bots.
+ * <p>
+ * A position in the opening book is answered straight away with a book move, and one
+ * in the endgame tablebase with the tablebase's best move, without touching the pool
+ * or the bot's clock. The searches probe the tablebase too.
+ * <p>
+ * Settings come from system properties (chess.bot.threads, chess.bot.sliceMillis)
+ * when the no-arg constructor is used. The table is sized by chess.hashMb, the book
+ * is the file at chess.book and the tablebase the directory at chess.tablebase, if
+ * they're set.
+ */
+public class BotScheduler {
+
+    // a bot plans for this many more moves when it splits up its clock
+    private static final int MOVES_TO_GO = 30;
+    private static final long MIN_BUDGET_MILLIS = 10;
+    // slices stop doubling here, 64x sliceMillis
+    private static final int MAX_SLICE_SHIFT = 6;
+    // table entries count as a search older this often, a slice is far too short for that
+    private static final long AGE_EVERY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // games whose bot clocks are remembered, a game that gets dropped starts on a full clock
+    static final int MAX_CLOCKS = 4096;
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final long sliceMillis;
+    private final TranspositionTable table;
+    private final OpeningBook book;
+    private final Tablebase tablebase;
+
+    // everything from here to the metrics is guarded by this
+    private final Map<BotStrength, ArrayDeque<Think>> queued = new EnumMap<>(BotStrength.class);
+    private final int[] running = new int[BotStrength.values().length];
+    private final List<Think> runningThinks = new ArrayList<>();
+    // at most one request per game, a newer position replaces an older one
+    private final Map<Integer, Think> byGame = new HashMap<>();
+    // what's left on each bot's clock, by game and color. Finished games are dropped by
+    // cancel, abandoned ones fall off the end once there are MAX_CLOCKS newer ones (access
+    // order, so a game that's still being played stays in)
+    private final Map<Integer, long[]> clocks = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, long[]> eldest) {
+            return size() > MAX_CLOCKS;
+        }
+    };
+    private int nextStrength;
+    private long agedAt = System.nanoTime();
+    private boolean shutdown;
+
+    private final Map<BotStrength, Histogram> thinkTime = new EnumMap<>(BotStrength.class);
+    private final LongAdder slices = new LongAdder();
+    private final LongAdder preemptions = new LongAdder();
+    private final LongAdder bookMoves = new LongAdder();
+    private final LongAdder tablebaseMoves = new LongAdder();
+
+    private static final class Think {
+        final int gameID;
+        final BotStrength strength;
+        final ChessGame.TeamColor color;
+        final int moveCount;
+        final Position position;
+        final long submittedAt;
+        final long deadline;
+        final CompletableFuture<ChessMove> result = new CompletableFuture<>();
+        // stops the slice that's running, reset before each one
+        final AtomicBoolean stop = new AtomicBoolean();
+        // these are guarded by the scheduler
+        int slices;
+        long sliceStarted;
+        boolean cancelled;
+        // only touched by whichever worker is running the slice
+        SearchResult best;
+
+        Think(int gameID, BotStrength strength, ChessGame game, long budgetMillis) {
+            this.gameID = gameID;
+            this.strength = strength;
+            this.color = game.getTeamTurn();
+            this.moveCount = game.getMoveCount();
+            this.position = Position.of(game);
+            this.submittedAt = System.nanoTime();
+            this.deadline = submittedAt + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        }
+    }
+
+    public BotScheduler() {
+        this(Integer.getInteger("chess.bot.threads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("chess.bot.sliceMillis", 50), TranspositionTable.fromConfig(),
+                OpeningBook.fromConfig(), Tablebase.fromConfig());
+    }
+
+    public BotScheduler(int threads, long sliceMillis, TranspositionTable table) {
+        this(threads, sliceMillis, table, OpeningBook.EMPTY, Tablebase.EMPTY);
+    }
+
+    public BotScheduler(int threads, long sliceMillis, TranspositionTable table, OpeningBook book,
+                        Tablebase tablebase) {
+        if (threads < 1 || sliceMillis < 1) {
+            throw new IllegalArgumentException("need at least one thread and a slice of at least 1 ms");
+        }
+        this.parallelism = threads;
+        this.sliceMillis = sliceMillis;
+        this.table = table;
+        this.book = book;
+        this.tablebase = tablebase;
+        for (BotStrength strength : BotStrength.values()) {
+            queued.put(strength, new ArrayDeque<>());
+            thinkTime.put(strength, new Histogram());
+        }
+        AtomicInteger count = new AtomicInteger();
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("chess-bot-" + count.incrementAndGet());
+            return t;
+        };
+        // searches never block, so the pool never needs more than threads workers
+        pool = new ForkJoinPool(threads, factory, null, true, 0, threads, 1, null, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts thinking about game for a bot of strength, whose turn it is. The future
+     * gets the move (null if there isn't one) or is cancelled by cancel(). Asking again
+     * about the same game and move gives back the same future.
+     */
+    public CompletableFuture<ChessMove> think(int gameID, BotStrength strength, ChessGame game) {
+        // outside the lock, the lookups can have to page in part of a file
+        ChessMove fromBook = book.pick(game, ThreadLocalRandom.current());
+        ChessMove fromTablebase = fromBook == null ? tablebase.bestMove(game) : null;
+        List<Think> cancelled = new ArrayList<>();
+        Think think;
+        synchronized (this) {
+            if (shutdown) {
+                return CompletableFuture.failedFuture(new IllegalStateException("bot scheduler is shut down"));
+            }
+            Think existing = byGame.get(gameID);
+            if (existing != null) {
+                if (existing.moveCount == game.getMoveCount() && existing.strength == strength) {
+                    return existing.result;
+                }
+                cancelLocked(existing, cancelled);
+            }
+            think = new Think(gameID, strength, game, budgetMillis(gameID, strength, game.getTeamTurn()));
+            int[] moves = new int[Position.MAX_MOVES];
+            int count = think.position.legalMoves(moves);
+            if (count <= 1) {
+                // nothing to think about, and it's free on the clock
+                think.result.complete(count == 0 ? null : Position.toChessMove(moves[0]));
+            } else if (fromBook != null) {
+                bookMoves.increment();
+                think.result.complete(fromBook);
+            } else if (fromTablebase != null) {
+                tablebaseMoves.increment();
+                think.result.complete(fromTablebase);
+            } else {
+                byGame.put(gameID, think);
+                queued.get(strength).addLast(think);
+                dispatch();
+            }
+        }
+        cancelled.forEach(t -> t.result.cancel(false));
+        return think.result;
+    }
+
+    /** Stops thinking about gameID and forgets its clocks, e.g. because the game is over. */
+    public void cancel(int gameID) {
+        List<Think> cancelled = new ArrayList<>();
+        synchronized (this) {
+            Think think = byGame.get(gameID);
+            if (think != null) {
+                cancelLocked(think, cancelled);
+            }
+            clocks.remove(gameID);
+        }
+        cancelled.forEach(t -> t.result.cancel(false));
+    }
+
+    public synchronized int queuedCount() {
+        return queued.values().stream().mapToInt(ArrayDeque::size).sum();
+    }
+
+    /** The tablebase the bots play endgames from, EMPTY if there isn't one. */
+    public Tablebase tablebase() {
+        return tablebase;
+    }
+
+    public void registerMetrics(MetricsRegistry metrics) {
+        thinkTime.forEach((strength, histogram) -> metrics.histogram("chess_bot_think_seconds",
+                "Time from asking a bot for a move to getting it", histogram, "strength", strength.name()));
+        metrics.gaugeFamily("chess_bot_queued", "Bot moves waiting for a search worker", "strength", this::queuedByStrength);
+        metrics.gauge("chess_bot_running", "Bot searches running right now", () -> {
+            synchronized (this) {
+                return runningThinks.size();
+            }
+        });
+        metrics.counter("chess_bot_slices_total", "Search slices run for bots", slices::sum);
+        metrics.counter("chess_bot_preemptions_total", "Bot search slices stopped early for another bot", preemptions::sum);
+        metrics.counter("chess_bot_book_moves_total", "Bot moves played from the opening book", bookMoves::sum);
+        metrics.counter("chess_bot_tablebase_moves_total", "Bot moves played from the endgame tablebase",
+                tablebaseMoves::sum);
+    }
+
+    public void shutdown() {
+        List<Think> cancelled = new ArrayList<>();
+        synchronized (this) {
+            shutdown = true;
+            for (Think think : new ArrayList<>(byGame.values())) {
+                cancelLocked(think, cancelled);
+            }
+        }
+        cancelled.forEach(t -> t.result.cancel(false));
+        pool.shutdown();
+    }
+
+    private synchronized Map<String, Integer> queuedByStrength() {
+        Map<String, Integer> counts = new TreeMap<>();
+        queued.forEach((strength, queue) -> counts.put(strength.name(), queue.size()));
+        return counts;
+    }
+
+    // a slice of the clock that's left, plus most of the increment since it comes back anyway
+    private long budgetMillis(int gameID, BotStrength strength, ChessGame.TeamColor color) {
+        long[] clock = clocks.computeIfAbsent(gameID, id -> new long[]{-1, -1});
+        if (clock[color.ordinal()] < 0) {
+            clock[color.ordinal()] = strength.clockMillis();
+        }
+        long remaining = clock[color.ordinal()];
+        long budget = remaining / MOVES_TO_GO + strength.incrementMillis() * 3 / 4;
+        return Math.max(MIN_BUDGET_MILLIS, Math.min(budget, remaining - MIN_BUDGET_MILLIS));
+    }
+
+    private void cancelLocked(Think think, List<Think> cancelled) {
+        think.cancelled = true;
+        think.stop.set(true);
+        byGame.remove(think.gameID, think);
+        // a running one notices and cleans up after itself when its slice stops
+        if (queued.get(think.strength).remove(think)) {
+            cancelled.add(think);
+        }
+    }
+
+    // hands out free workers, strengths taking turns, then preempts if anyone is still waiting
+    private void dispatch() {
+        if (System.nanoTime() - agedAt > AGE_EVERY_NANOS) {
+            table.newSearch();
+            agedAt = System.nanoTime();
+        }
+        while (runningThinks.size() < parallelism) {
+            Think next = pollNext();
+            if (next == null) {
+                return;
+            }
+            running[next.strength.ordinal()]++;
+            runningThinks.add(next);
+            next.stop.set(false);
+            next.sliceStarted = System.nanoTime();
+            pool.execute(() -> runSlice(next));
+        }
+        preemptIfWaiting();
+    }
+
+    private Think pollNext() {
+        BotStrength[] strengths = BotStrength.values();
+        for (int i = 0; i < strengths.length; i++) {
+            BotStrength strength = strengths[(nextStrength + i) % strengths.length];
+            if (!queued.get(strength).isEmpty() && running[strength.ordinal()] < strength.quota(parallelism)) {
+                nextStrength = (strength.ordinal() + 1) % strengths.length;
+                return queued.get(strength).pollFirst();
+            }
+        }
+        return null;
+    }
+
+    private void preemptIfWaiting() {
+        boolean waiting = false;
+        for (BotStrength strength : BotStrength.values()) {
+            waiting |= !queued.get(strength).isEmpty() && running[strength.ordinal()] < strength.quota(parallelism);
+        }
+        if (!waiting) {
+            return;
+        }
+        long minStart = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(sliceMillis);
+        Think victim = null;
+        for (Think think : runningThinks) {
+            if (think.stop.get() || think.sliceStarted > minStart) {
+                continue;
+            }
+            // the most expensive strength first, then whoever has had the worker longest
+            if (victim == null || think.strength.ordinal() > victim.strength.ordinal()
+                    || think.strength == victim.strength && think.sliceStarted < victim.sliceStarted) {
+                victim = think;
+            }
+        }
+        if (victim != null) {
+            victim.stop.set(true);
+            preemptions.increment();
+        }
+    }
+
+    private void runSlice(Think think) {
+        boolean done;
+        try {
+            done = search(think);
+        } catch (RuntimeException e) {
+            think.result.completeExceptionally(e);
+            done = true;
+        }
+
+        boolean cancelled;
+        synchronized (this) {
+            running[think.strength.ordinal()]--;
+            runningThinks.remove(think);
+            think.slices++;
+            cancelled = think.cancelled;
+            if (cancelled || done) {
+                byGame.remove(think.gameID, think);
+                if (!cancelled) {
+                    chargeClock(think);
+                }
+            } else {
+                // back of the line, if nobody else is waiting it goes straight back out
+                queued.get(think.strength).addLast(think);
+            }
+            if (!shutdown) {
+                dispatch();
+            }
+        }
+        if (cancelled) {
+            think.result.cancel(false);
+        } else if (done) {
+            thinkTime.get(think.strength).recordSince(think.submittedAt);
+            think.result.complete(think.best == null ? null : think.best.move());
+        }
+    }
+
+    // one slice, returns whether the think is finished
+    private boolean search(Think think) {
+        slices.increment();
+        long leftMillis = TimeUnit.NANOSECONDS.toMillis(think.deadline - System.nanoTime());
+        SearchLimits limits;
+        if (leftMillis <= 0) {
+            if (think.best != null) {
+                return true;
+            }
+            // out of time without a move, depth 1 is next to instant
+            limits = SearchLimits.depth(1);
+        } else {
+            long slice = sliceMillis << Math.min(think.slices, MAX_SLICE_SHIFT);
+            limits = new SearchLimits(think.strength.maxDepth(), 0, Math.min(slice, leftMillis));
+        }
+        SearchResult result = new Search(think.position, table, tablebase, think.stop).run(limits);
+        if (think.best == null || result.depth() >= think.best.depth()) {
+            think.best = result;
+        }
+        return leftMillis <= 0 || result.depth() >= think.strength.maxDepth() || result.isMate()
+                || System.nanoTime() >= think.deadline;
+    }
+
+    // guarded by this
+    private void chargeClock(Think think) {
+        long[] clock = clocks.get(think.gameID);
+        if (clock == null) {
+            return;
+        }
+        long used = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - think.submittedAt);
+        int side = think.color.ordinal();
+        clock[side] = Math.max(0, clock[side] - used) + think.strength.incrementMillis();
+    }
+}
@@ -0,0 +1,76 @@
+package service;
+
+import chess.engine.Search;
+
+/**
+ * How hard a bot thinks. A bot sits in a game under the username "bot:" + the
+ * strength in lower case, e.g. "bot:blitz", which is why nobody can register a name
+ * starting with "bot:".
+ * <p>
+ * Each bot has a clock like a real player: clockMillis for the whole game plus
+ * incrementMillis per move, and BotScheduler splits it up into a budget per move.
+ * share is the most of the scheduler's workers this strength may hold at once, so a
+ * pile of analysis requests can't leave blitz bots waiting.
+ */
+public enum BotStrength {
+    BLITZ(6, 3 * 60_000, 2_000, 1.0),
+    RAPID(12, 10 * 60_000, 5_000, 0.5),
+    ANALYSIS(Search.MAX_PLY - 1, 30 * 60_000, 30_000, 0.25);
+
+    public static final String PREFIX = "bot:";
+
+    private final int maxDepth;
+    private final long clockMillis;
+    private final long incrementMillis;
+    private final double share;
+
+    BotStrength(int maxDepth, long clockMillis, long incrementMillis, double share) {
+        this.maxDepth = maxDepth;
+        this.clockMillis = clockMillis;
+        this.incrementMillis = incrementMillis;
+        this.share = share;
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    public long clockMillis() {
+        return clockMillis;
+    }
+
+    public long incrementMillis() {
+        return incrementMillis;
+    }
+
+    /** How many of parallelism workers this strength may use at once, always at least one. */
+    public int quota(int parallelism) {
+        return Math.max(1, (int) (parallelism * share));
+    }
+
+    public String username() {
+        return PREFIX + name().toLowerCase();
+    }
+
+    public static boolean isBot(String username) {
+        return username != null && username.startsWith(PREFIX);
+    }
+
+    /** The strength of the bot with this username, or null if it isn't one. */
+    public static BotStrength fromUsername(String username) {
+        return isBot(username) ? parse(username.substring(PREFIX.length())) : null;
+    }
+
+    /** "blitz", "RAPID" etc., or null if it isn't a strength. */
+    public static BotStrength parse(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (BotStrength strength : values()) {
+            if (strength.name().equalsIgnoreCase(name)) {
+                return strength;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,43 @@
+package service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One lock per game, held while a game is read, changed and written back, so a bot
+ * move, a player's move and someone joining or leaving can't overwrite each other.
+ * Shared by everything that does that (GameService and the WebSocket handler).
+ * <p>
+ * A game only has an entry while someone holds or waits for its lock, so finished and
+ * abandoned games don't pile up.
+ */
+public class GameLocks {
+
+    private static final class Entry {
+        final ReentrantLock lock = new ReentrantLock();
+        // how many threads hold or want the lock, only touched inside compute
+        int users;
+    }
+
+    private final Map<Integer, Entry> locks = new ConcurrentHashMap<>();
+
+    public void lock(int gameID) {
+        Entry entry = locks.compute(gameID, (id, existing) -> {
+            Entry e = existing == null ? new Entry() : existing;
+            e.users++;
+            return e;
+        });
+        entry.lock.lock();
+    }
+
+    public void unlock(int gameID) {
+        locks.get(gameID).lock.unlock();
+        locks.computeIfPresent(gameID, (id, e) -> --e.users == 0 ? null : e);
+    }
+
+    /** How many games have an entry right now, for tests. */
+    int size() {
+        return locks.size();
+    }
+}
@@ -1,15 +1,39 @@
 package service;
 
+import dataaccess.AsyncDataAccess;
 import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
+import model.AuthData;
+import model.BatchOperation;
+import model.BatchResult;
 import model.GameData;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
 
 public class GameService {
     private final DataAccess dataAccess;
+    private final AsyncDataAccess asyncData;
+    // the same ones the WebSocket handler moves under, so taking a seat can't undo a move
+    private final GameLocks gameLocks;
+
+    // games is null when the caller already has this version
+    public record GameList(long version, Collection<GameData> games) {}
 
     public GameService(DataAccess dataAccess) {
+        this(dataAccess, AsyncDataAccess.inline(dataAccess));
+    }
+
+    public GameService(DataAccess dataAccess, AsyncDataAccess asyncData) {
+        this(dataAccess, asyncData, new GameLocks());
+    }
+
+    public GameService(DataAccess dataAccess, AsyncDataAccess asyncData, GameLocks gameLocks) {
         this.dataAccess = dataAccess;
+        this.asyncData = asyncData;
+        this.gameLocks = gameLocks;
     }
 
     // LIST GAMES
@@ -20,6 +44,27 @@ public class GameService {
         return dataAccess.listGames();
     }
 
+    // LIST GAMES, skipping the read when the caller's copy (knownVersion) is still current
+    public GameList listGames(String authToken, long knownVersion) throws DataAccessException {
+        if (dataAccess.getAuth(authToken) == null) {
+            throw new DataAccessException("Error: unauthorized");
+        }
+        long version = dataAccess.getGameListVersion();
+        if (version >= 0 && version == knownVersion) {
+            return new GameList(version, null);
+        }
+        return new GameList(version, dataAccess.listGames());
+    }
+
+    // LIST MY GAMES, the ones the caller is playing white or black in
+    public Collection<GameData> listMyGames(String authToken) throws DataAccessException {
+        AuthData auth = dataAccess.getAuth(authToken);
+        if (auth == null) {
+            throw new DataAccessException("Error: unauthorized");
+        }
+        return dataAccess.listGamesForUser(auth.username());
+    }
+
     // CREATE GAME
     public int createGame(String authToken, String gameName) throws DataAccessException {
         if (dataAccess.getAuth(authToken) == null) {
@@ -31,14 +76,27 @@ public class GameService {
         return dataAccess.createGame(gameName);
     }
     public void joinGame(String authToken, String playerColor, int gameID) throws DataAccessException {
+        gameLocks.lock(gameID);
+        try {
+            join(authToken, playerColor, gameID);
+        } finally {
+            gameLocks.unlock(gameID);
+        }
+    }
+
+    private void join(String authToken, String playerColor, int gameID) throws DataAccessException {
+        // look up the user and the game at the same time
+        var authLookup = asyncData.getAuth(authToken);
+        var gameLookup = asyncData.getGame(gameID);
+
         // 1. Verify the user is logged in
-        model.AuthData auth = dataAccess.getAuth(authToken);
+        model.AuthData auth = AsyncDataAccess.await(authLookup);
         if (auth == null) {
             throw new DataAccessException("Error: unauthorized");
         }
 
         // 2. Find the game they want to join
-        model.GameData game = dataAccess.getGame(gameID);
+        model.GameData game = AsyncDataAccess.await(gameLookup);
         if (game == null) {
             throw new DataAccessException("Error: bad request");
         }
@@ -74,4 +132,113 @@ public class GameService {
 
         dataAccess.updateGame(updatedGame);
     }
+
+    // ADD BOT: sits a bot in an empty seat, any logged in user can do it
+    public void addBot(String authToken, int gameID, String playerColor, String strengthName)
+            throws DataAccessException {
+        gameLocks.lock(gameID);
+        try {
+            seatBot(authToken, gameID, playerColor, strengthName);
+        } finally {
+            gameLocks.unlock(gameID);
+        }
+    }
+
+    private void seatBot(String authToken, int gameID, String playerColor, String strengthName)
+            throws DataAccessException {
+        var authLookup = asyncData.getAuth(authToken);
+        var gameLookup = asyncData.getGame(gameID);
+        if (AsyncDataAccess.await(authLookup) == null) {
+            throw new DataAccessException("Error: unauthorized");
+        }
+        model.GameData game = AsyncDataAccess.await(gameLookup);
+        BotStrength strength = BotStrength.parse(strengthName);
+        if (game == null || strength == null) {
+            throw new DataAccessException("Error: bad request");
+        }
+
+        String whiteUser = game.whiteUsername();
+        String blackUser = game.blackUsername();
+        if ("WHITE".equals(playerColor)) {
+            if (whiteUser != null) {
+                throw new DataAccessException("Error: already taken");
+            }
+            whiteUser = strength.username();
+        } else if ("BLACK".equals(playerColor)) {
+            if (blackUser != null) {
+                throw new DataAccessException("Error: already taken");
+            }
+            blackUser = strength.username();
+        } else {
+            throw new DataAccessException("Error: bad request");
+        }
+        dataAccess.updateGame(new model.GameData(game.gameID(), whiteUser, blackUser, game.gameName(), game.game()));
+    }
+
+    // GET GAME: any logged in user can look at any game, e.g. to have it analysed
+    public model.GameData getGame(String authToken, int gameID) throws DataAccessException {
+        var authLookup = asyncData.getAuth(authToken);
+        var gameLookup = asyncData.getGame(gameID);
+        if (AsyncDataAccess.await(authLookup) == null) {
+            throw new DataAccessException("Error: unauthorized");
+        }
+        model.GameData game = AsyncDataAccess.await(gameLookup);
+        if (game == null || game.game() == null) {
+            throw new DataAccessException("Error: bad request");
+        }
+        return game;
+    }
+
+    // BATCH: authenticate once, then run every create/join together
+    public List<BatchResult> batch(String authToken, List<BatchOperation> operations) throws DataAccessException {
+        model.AuthData auth = dataAccess.getAuth(authToken);
+        if (auth == null) {
+            throw new DataAccessException("Error: unauthorized");
+        }
+        if (operations == null || operations.isEmpty()) {
+            throw new DataAccessException("Error: bad request");
+        }
+
+        // bad operations get an error right away, the rest go to the database in one go
+        BatchResult[] results = new BatchResult[operations.size()];
+        List<BatchOperation> valid = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < operations.size(); i++) {
+            if (isValid(operations.get(i))) {
+                valid.add(operations.get(i));
+                validIndexes.add(i);
+            } else {
+                results[i] = BatchResult.error("Error: bad request");
+            }
+        }
+
+        if (!valid.isEmpty()) {
+            // every game joined is locked, in ID order so two batches can't wait on each other
+            List<Integer> joined = new ArrayList<>(new TreeSet<>(valid.stream()
+                    .filter(op -> BatchOperation.JOIN.equals(op.op())).map(BatchOperation::gameID).toList()));
+            joined.forEach(gameLocks::lock);
+            try {
+                List<BatchResult> applied = dataAccess.applyBatch(auth.username(), valid);
+                for (int i = 0; i < applied.size(); i++) {
+                    results[validIndexes.get(i)] = applied.get(i);
+                }
+            } finally {
+                joined.reversed().forEach(gameLocks::unlock);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private boolean isValid(BatchOperation op) {
+        if (op == null) {
+            return false;
+        }
+        if (BatchOperation.CREATE.equals(op.op())) {
+            return op.gameName() != null && !op.gameName().isEmpty();
+        }
+        if (BatchOperation.JOIN.equals(op.op())) {
+            return op.gameID() != null && ("WHITE".equals(op.playerColor()) || "BLACK".equals(op.playerColor()));
+        }
+        return false;
+    }
 }
@@ -0,0 +1,112 @@
+package service;
+
+import dataaccess.DataAccessException;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs BCrypt hashing on its own small thread pool so a burst of logins can't
+ * tie up every request thread. The queue is bounded; once it is full new work is
+ * rejected right away and the caller gets a "service unavailable" error.
+ * <p>
+ * Settings come from system properties (chess.bcrypt.cost, chess.bcrypt.threads,
+ * chess.bcrypt.queue) when the no-arg constructor is used.
+ */
+public class PasswordHasher {
+
+    private final ThreadPoolExecutor executor;
+    private final int cost;
+
+    // so we can see how long hashing and queueing take
+    private final Histogram hashTime = new Histogram();
+    private final Histogram queueWait = new Histogram();
+    private final LongAdder rejected = new LongAdder();
+
+    public record Stats(long completed, long rejected, long totalHashNanos, long totalQueueWaitNanos, int queued) {
+    }
+
+    public PasswordHasher() {
+        this(Integer.getInteger("chess.bcrypt.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                Integer.getInteger("chess.bcrypt.queue", 64),
+                Integer.getInteger("chess.bcrypt.cost", 10));
+    }
+
+    public PasswordHasher(int threads, int queueDepth, int cost) {
+        if (cost < 4 || cost > 31) {
+            throw new IllegalArgumentException("BCrypt cost must be between 4 and 31");
+        }
+        this.cost = cost;
+
+        BlockingQueue<Runnable> queue = queueDepth > 0 ? new ArrayBlockingQueue<>(queueDepth) : new SynchronousQueue<>();
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, queue, r -> {
+            Thread t = new Thread(r, "bcrypt-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public String hash(String password) throws DataAccessException {
+        return submit(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+    }
+
+    public boolean check(String password, String hashed) throws DataAccessException {
+        return submit(() -> BCrypt.checkpw(password, hashed));
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    public Stats getStats() {
+        return new Stats(hashTime.getCount(), rejected.sum(), hashTime.getSum(), queueWait.getSum(),
+                executor.getQueue().size());
+    }
+
+    public void registerMetrics(MetricsRegistry metrics) {
+        metrics.histogram("chess_bcrypt_hash_seconds", "Time spent hashing or checking a password", hashTime);
+        metrics.histogram("chess_bcrypt_queue_wait_seconds", "Time a password waited for a hashing thread", queueWait);
+        metrics.counter("chess_bcrypt_rejected_total", "Passwords turned away because the queue was full", rejected::sum);
+        metrics.gauge("chess_bcrypt_queued", "Passwords waiting for a hashing thread", () -> executor.getQueue().size());
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    <T> T submit(Callable<T> work) throws DataAccessException {
+        long queuedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                queueWait.record(start - queuedAt);
+                try {
+                    return work.call();
+                } finally {
+                    hashTime.recordSince(start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // too much work queued up, fail fast instead of piling up
+            rejected.increment();
+            throw new DataAccessException("Error: service unavailable");
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new DataAccessException("Error: interrupted while hashing", e);
+        } catch (ExecutionException e) {
+            throw new DataAccessException("Error: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
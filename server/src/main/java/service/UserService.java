@@ -5,13 +5,18 @@ import dataaccess.DataAccessException;
 import model.AuthData;
 import model.UserData;
 import java.util.UUID;
-import org.mindrot.jbcrypt.BCrypt;
 
 public class UserService {
     private final DataAccess dataAccess;
+    private final PasswordHasher hasher;
 
     public UserService(DataAccess dataAccess) {
+        this(dataAccess, new PasswordHasher());
+    }
+
+    public UserService(DataAccess dataAccess, PasswordHasher hasher) {
         this.dataAccess = dataAccess;
+        this.hasher = hasher;
     }
 
     public AuthData register(UserData user) throws DataAccessException {
@@ -19,14 +24,18 @@ public class UserService {
         if (user.username() == null || user.password() == null || user.email() == null) {
             throw new DataAccessException("Error: bad request");
         }
+        // those names belong to the bots
+        if (BotStrength.isBot(user.username())) {
+            throw new DataAccessException("Error: bad request");
+        }
 
         // valid user?
         if (dataAccess.getUser(user.username()) != null) {
             throw new DataAccessException("Error: already taken");
         }
 
-        // hash and then ave
-        String hashedPassword = BCrypt.hashpw(user.password(), BCrypt.gensalt());
+        // hash and then ave (on the hashing pool, not this request thread)
+        String hashedPassword = hasher.hash(user.password());
         UserData hashedUser = new UserData(user.username(), hashedPassword, user.email());
         dataAccess.createUser(hashedUser);
 
@@ -45,7 +54,7 @@ public class UserService {
         UserData confirmedUser = dataAccess.getUser(user.username());
 
         // is user right? is the password right? but make it BCrypt
-        if (confirmedUser == null || !BCrypt.checkpw(user.password(), confirmedUser.password())) {
+        if (confirmedUser == null || !hasher.check(user.password(), confirmedUser.password())) {
             throw new DataAccessException("Error: unauthorized");
         }
 
@@ -65,4 +74,12 @@ public class UserService {
         // delete from database
         dataAccess.deleteAuth(authToken);
     }
-}
\ No newline at end of file
+    // LOGOUT EVERYWHERE, every session the caller's user has, this one included
+    public void logoutEverywhere(String authToken) throws DataAccessException {
+        AuthData auth = authToken == null ? null : dataAccess.getAuth(authToken);
+        if (auth == null) {
+            throw new DataAccessException("Error: unauthorized");
+        }
+        dataAccess.deleteAllAuthForUser(auth.username());
+    }
+}
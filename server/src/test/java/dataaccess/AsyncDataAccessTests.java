@@ -0,0 +1,57 @@
+package dataaccess;
+
+import model.*;
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncDataAccessTests {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setup() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void parallelLookupPositive() throws DataAccessException {
+        var memory = new MemoryDataAccess();
+        memory.createAuth(new AuthData("token", "user"));
+        int gameID = memory.createGame("game");
+        var async = AsyncDataAccess.onExecutor(memory, executor);
+
+        var auth = async.getAuth("token");
+        var game = async.getGame(gameID);
+
+        assertEquals("user", AsyncDataAccess.await(auth).username());
+        assertEquals("game", AsyncDataAccess.await(game).gameName());
+    }
+
+    @Test
+    void parallelLookupNegative() {
+        var broken = new MemoryDataAccess() {
+            @Override
+            public AuthData getAuth(String authToken) {
+                throw new IllegalStateException("no auth today");
+            }
+        };
+        var async = AsyncDataAccess.inline(broken);
+
+        // what the store threw comes back out of await, not a CompletionException
+        var e = assertThrows(IllegalStateException.class, () -> AsyncDataAccess.await(async.getAuth("token")));
+        assertEquals("no auth today", e.getMessage());
+
+        executor.shutdown();
+        var closed = AsyncDataAccess.onExecutor(broken, executor);
+        assertThrows(DataAccessException.class, () -> AsyncDataAccess.await(closed.getGame(1)));
+    }
+}
@@ -0,0 +1,119 @@
+package dataaccess;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DatabaseManagerTests {
+
+    @BeforeAll
+    static void createTables() throws DataAccessException {
+        DatabaseManager.configureDatabase();
+    }
+
+    @BeforeEach
+    void setup() throws DataAccessException {
+        new SqlAuthDAO().clear();
+    }
+
+    private static int countTokens(Connection conn, String token) throws SQLException {
+        try (var ps = conn.prepareStatement("SELECT COUNT(*) FROM auth WHERE authToken=?")) {
+            ps.setString(1, token);
+            try (var rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    @Test
+    void closePositiveReturnsToPool() throws Exception {
+        Connection raw;
+        try (var conn = DatabaseManager.getConnection()) {
+            raw = conn.unwrap(Connection.class);
+        }
+        // the newest idle one is handed out next, and it was never really closed
+        assertFalse(raw.isClosed());
+        try (var conn = DatabaseManager.getConnection()) {
+            assertSame(raw, conn.unwrap(Connection.class));
+        }
+    }
+
+    @Test
+    void closeNegativeUseAfterClose() throws Exception {
+        var conn = DatabaseManager.getConnection();
+        conn.close();
+        assertTrue(conn.isClosed());
+        assertThrows(SQLException.class, () -> conn.prepareStatement("SELECT 1"));
+        // closing twice doesn't hand it back twice
+        assertDoesNotThrow(conn::close);
+    }
+
+    @Test
+    void releasePositiveRollsBack() throws Exception {
+        Connection raw;
+        try (var conn = DatabaseManager.getConnection()) {
+            raw = conn.unwrap(Connection.class);
+            conn.setAutoCommit(false);
+            try (var ps = conn.prepareStatement("INSERT INTO auth (authToken, username) VALUES (?, ?)")) {
+                ps.setString(1, "half-done");
+                ps.setString(2, "user");
+                ps.executeUpdate();
+            }
+            // gone back to the pool without a commit
+        }
+        try (var conn = DatabaseManager.getConnection()) {
+            assertSame(raw, conn.unwrap(Connection.class));
+            assertTrue(conn.getAutoCommit());
+            assertEquals(0, countTokens(conn, "half-done"));
+        }
+    }
+
+    @Test
+    void checkoutNegativeTimeout() throws Exception {
+        List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < DatabaseManager.POOL_SIZE; i++) {
+                held.add(DatabaseManager.getConnection());
+            }
+            var e = assertThrows(DataAccessException.class, DatabaseManager::getConnection);
+            assertTrue(e.getMessage().contains("in use"));
+        } finally {
+            for (Connection conn : held) {
+                conn.close();
+            }
+        }
+        // and there's room again once they're back
+        try (var conn = DatabaseManager.getConnection()) {
+            assertEquals(0, countTokens(conn, "nothing"));
+        }
+    }
+
+    @Test
+    void reloadPositiveDropsStaleConnections() throws Exception {
+        var held = DatabaseManager.getConnection();
+        Connection heldRaw = held.unwrap(Connection.class);
+        Connection idleRaw;
+        try (var conn = DatabaseManager.getConnection()) {
+            idleRaw = conn.unwrap(Connection.class);
+        }
+
+        DatabaseManager.loadPropertiesFromResources();
+        // the idle one goes straight away, the one in use once it comes back
+        assertTrue(idleRaw.isClosed());
+        assertFalse(heldRaw.isClosed());
+        held.close();
+        assertTrue(heldRaw.isClosed());
+
+        try (var conn = DatabaseManager.getConnection()) {
+            Connection fresh = conn.unwrap(Connection.class);
+            assertNotSame(idleRaw, fresh);
+            assertNotSame(heldRaw, fresh);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package dataaccess;
+
+import chess.ChessMove;
+import chess.ChessPosition;
+import model.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileDataAccessTests {
+
+    @TempDir
+    Path directory;
+
+    private static final ChessMove E4 = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+    private static final ChessMove E5 = new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null);
+
+    @Test
+    void reopenPositive() throws Exception {
+        int gameID;
+        try (var files = new FileDataAccess(directory)) {
+            files.createUser(new UserData("user", "hash", "email"));
+            files.createAuth(new AuthData("token", "user"));
+            files.createAuth(new AuthData("gone", "user"));
+            files.deleteAuth("gone");
+            files.createAuth(new AuthData("other1", "other"));
+            files.createAuth(new AuthData("other2", "other"));
+            files.deleteAllAuthForUser("other");
+            gameID = files.createGame("game");
+            files.applyBatch("user", List.of(new BatchOperation(BatchOperation.JOIN, null, gameID, "WHITE")));
+
+            // half before a checkpoint, half only in the log
+            GameData game = files.getGame(gameID);
+            game.game().makeMove(E4);
+            files.recordMove(game, E4);
+            files.checkpoint();
+            game.game().makeMove(E5);
+            files.recordMove(game, E5);
+        }
+
+        try (var files = new FileDataAccess(directory)) {
+            assertEquals("email", files.getUser("user").email());
+            assertNotNull(files.getAuth("token"));
+            assertNull(files.getAuth("gone"));
+            assertNull(files.getAuth("other1"));
+            assertNull(files.getAuth("other2"));
+            GameData game = files.getGame(gameID);
+            assertEquals("user", game.whiteUsername());
+            assertEquals(List.of(game.gameID()),
+                    files.listGamesForUser("user").stream().map(GameData::gameID).toList());
+            assertEquals(2, game.game().getMoveCount());
+            assertNotNull(game.game().getBoard().getPiece(new ChessPosition(5, 5)));
+            // IDs carry on from where they were
+            assertEquals(gameID + 1, files.createGame("next"));
+        }
+    }
+
+    @Test
+    void reopenNegative() throws Exception {
+        try (var files = new FileDataAccess(directory)) {
+            files.createUser(new UserData("user", "hash", "email"));
+        }
+        // what a crash in the middle of a write looks like
+        try (var segments = Files.list(directory)) {
+            Path newest = segments.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted()
+                    .reduce((a, b) -> b).orElseThrow();
+            Files.write(newest, new byte[]{0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+        }
+
+        try (var files = new FileDataAccess(directory)) {
+            assertNotNull(files.getUser("user"));
+            files.createUser(new UserData("after", "hash", "email"));
+        }
+        try (var files = new FileDataAccess(directory)) {
+            assertNotNull(files.getUser("after"));
+        }
+    }
+
+    @Test
+    void duplicateMoveNegative() throws Exception {
+        int gameID;
+        try (var files = new FileDataAccess(directory)) {
+            gameID = files.createGame("game");
+            // two writers that both read the game before either one moved
+            GameData first = files.getGame(gameID);
+            GameData second = files.getGame(gameID);
+            first.game().makeMove(E4);
+            files.recordMove(first, E4);
+            second.game().makeMove(E4);
+            // the first one counts, live the same as after a restart
+            assertThrows(DataAccessException.class, () -> files.recordMove(second, E4));
+            // and a move for a game that isn't there goes nowhere
+            GameData missing = new GameData(gameID + 1, null, null, "gone", second.game());
+            assertThrows(DataAccessException.class, () -> files.recordMove(missing, E4));
+            assertEquals(1, files.getGame(gameID).game().getMoveCount());
+        }
+        try (var files = new FileDataAccess(directory)) {
+            GameData game = files.getGame(gameID);
+            assertEquals(1, game.game().getMoveCount());
+            assertNull(files.getGame(gameID + 1));
+            game.game().makeMove(E5);
+            files.recordMove(game, E5);
+        }
+        try (var files = new FileDataAccess(directory)) {
+            assertEquals(2, files.getGame(gameID).game().getMoveCount());
+        }
+    }
+
+    @Test
+    void checkpointPositive() throws Exception {
+        try (var files = new FileDataAccess(directory)) {
+            for (int i = 0; i < 10; i++) {
+                files.createGame("game " + i);
+            }
+            files.clear();
+            files.createGame("kept");
+            files.checkpoint();
+            assertEquals(1, countSegments());
+        }
+        try (var files = new FileDataAccess(directory)) {
+            assertEquals(1, files.listGames().size());
+            assertEquals("kept", files.getGame(1).gameName());
+        }
+    }
+
+    @Test
+    void checkpointNegative() throws Exception {
+        Files.writeString(directory.resolve("snapshot.dat"), "not a snapshot");
+        assertThrows(DataAccessException.class, () -> new FileDataAccess(directory));
+    }
+
+    private long countSegments() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("wal-")).count();
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package dataaccess;
 
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
 import model.*;
 import org.junit.jupiter.api.*;
+
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class SQLDAOTests {
@@ -10,6 +16,12 @@ public class SQLDAOTests {
     private final SqlAuthDAO authDAO = new SqlAuthDAO();
     private final SqlGameDAO gameDAO = new SqlGameDAO();
 
+    @BeforeAll
+    static void createTables() throws DataAccessException {
+        // makes sure columns added since the tables were first created are there
+        DatabaseManager.configureDatabase();
+    }
+
     @BeforeEach
     void setup() throws DataAccessException {
         // clear everything
@@ -168,4 +180,101 @@ public class SQLDAOTests {
             gameDAO.clear();
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void recordMovePositive() throws Exception {
+        int id = gameDAO.createGame("Shuffle");
+        GameData game = gameDAO.getGame(id);
+        // knights back and forth, long enough to cross a snapshot and leave a tail after it
+        ChessMove[] shuffle = {
+                new ChessMove(new ChessPosition(1, 2), new ChessPosition(3, 3), null),
+                new ChessMove(new ChessPosition(8, 2), new ChessPosition(6, 3), null),
+                new ChessMove(new ChessPosition(3, 3), new ChessPosition(1, 2), null),
+                new ChessMove(new ChessPosition(6, 3), new ChessPosition(8, 2), null),
+        };
+        int plies = SqlGameDAO.SNAPSHOT_INTERVAL + 5;
+        for (int i = 0; i < plies; i++) {
+            ChessMove move = shuffle[i % shuffle.length];
+            game.game().makeMove(move);
+            gameDAO.recordMove(game, move);
+        }
+
+        ChessGame loaded = gameDAO.getGame(id).game();
+        assertEquals(plies, loaded.getMoveCount());
+        assertEquals(game.game().getTeamTurn(), loaded.getTeamTurn());
+        assertEquals(game.game().getBoard(), loaded.getBoard());
+        assertEquals(plies, gameDAO.listGames().iterator().next().game().getMoveCount());
+    }
+
+    @Test
+    void recordMoveNegative() throws Exception {
+        int id = gameDAO.createGame("Fork");
+        GameData game = gameDAO.getGame(id);
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        game.game().makeMove(move);
+        gameDAO.recordMove(game, move);
+
+        // a second move for the same ply is refused instead of forking the game
+        ChessMove other = new ChessMove(new ChessPosition(2, 4), new ChessPosition(4, 4), null);
+        assertThrows(DataAccessException.class, () -> gameDAO.recordMove(game, other));
+        assertEquals(1, gameDAO.getGame(id).game().getMoveCount());
+    }
+
+    @Test
+    void deleteAllAuthForUserPositive() throws DataAccessException {
+        authDAO.createAuth(new AuthData("phone", "user"));
+        authDAO.createAuth(new AuthData("laptop", "user"));
+        authDAO.createAuth(new AuthData("theirs", "other"));
+
+        authDAO.deleteAllAuthForUser("user");
+
+        assertNull(authDAO.getAuth("phone"));
+        assertNull(authDAO.getAuth("laptop"));
+        assertNotNull(authDAO.getAuth("theirs"));
+    }
+
+    @Test
+    void deleteAllAuthForUserNegative() throws DataAccessException {
+        authDAO.createAuth(new AuthData("theirs", "other"));
+        // nobody logged in under that name, nothing changes
+        assertDoesNotThrow(() -> authDAO.deleteAllAuthForUser("user"));
+        assertNotNull(authDAO.getAuth("theirs"));
+    }
+
+    @Test
+    void listGamesForUserPositive() throws Exception {
+        int asWhite = gameDAO.createGame("white");
+        int asBlack = gameDAO.createGame("black");
+        int notMine = gameDAO.createGame("other");
+        gameDAO.updateGame(new GameData(asWhite, "user", "other", "white", new ChessGame()));
+        gameDAO.updateGame(new GameData(asBlack, "other", "user", "black", new ChessGame()));
+        gameDAO.updateGame(new GameData(notMine, "other", null, "other", new ChessGame()));
+
+        // moves after the snapshot come along too
+        GameData game = gameDAO.getGame(asWhite);
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        game.game().makeMove(move);
+        gameDAO.recordMove(game, move);
+
+        var mine = List.copyOf(gameDAO.listGamesForUser("user"));
+        assertEquals(2, mine.size());
+        assertEquals(asWhite, mine.get(0).gameID());
+        assertEquals(asBlack, mine.get(1).gameID());
+        assertEquals(1, mine.get(0).game().getMoveCount());
+    }
+
+    @Test
+    void listGamesForUserNegative() throws DataAccessException {
+        gameDAO.createGame("empty seats");
+        assertTrue(gameDAO.listGamesForUser("user").isEmpty());
+    }
+
+    @Test
+    void schemaVersionPositive() throws DataAccessException {
+        int version = DatabaseManager.getSchemaVersion();
+        assertTrue(version >= 3);
+        // running it again finds nothing left to do
+        DatabaseManager.configureDatabase();
+        assertEquals(version, DatabaseManager.getSchemaVersion());
+    }
+}
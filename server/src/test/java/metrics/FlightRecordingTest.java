@@ -0,0 +1,26 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightRecordingTest {
+
+    @Test
+    void chessSettingsPositive() throws Exception {
+        var settings = FlightRecording.chessSettings().getSettings();
+
+        for (String event : new String[]{"chess.WebSocketCommand", "chess.MoveValidated", "chess.GameLoaded",
+                "chess.GamePersisted", "chess.Broadcast"}) {
+            assertEquals("true", settings.get(event + "#enabled"), event);
+            assertNotNull(settings.get(event + "#threshold"), event);
+        }
+    }
+
+    @Test
+    void startNegativeNotRequested() {
+        System.clearProperty("chess.jfr");
+
+        assertNull(FlightRecording.startIfRequested());
+    }
+}
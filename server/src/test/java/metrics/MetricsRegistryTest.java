@@ -0,0 +1,54 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsRegistryTest {
+
+    @Test
+    void scrapePositive() {
+        var metrics = new MetricsRegistry();
+        Counter counter = metrics.counter("chess_test_total", "A counter", "route", "GET /game");
+        Histogram histogram = metrics.histogram("chess_test_seconds", "A histogram");
+        metrics.gaugeFamily("chess_test_sessions", "Per game", "game", () -> Map.of("7", 3));
+
+        counter.add(2);
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1_000_000L);
+        }
+        String text = metrics.scrape();
+
+        assertTrue(text.contains("# TYPE chess_test_total counter\n"));
+        assertTrue(text.contains("chess_test_total{route=\"GET /game\"} 2\n"));
+        assertTrue(text.contains("chess_test_seconds_count 100\n"));
+        assertTrue(text.contains("chess_test_sessions{game=\"7\"} 3\n"));
+        // buckets are at most 12.5% wide, so p99 of 1..100ms lands between 99 and ~112ms
+        long p99 = histogram.valueAtQuantile(0.99);
+        assertTrue(p99 >= 99_000_000L && p99 <= 112_000_000L, "p99 was " + p99);
+    }
+
+    @Test
+    void registerNegativeWrongType() {
+        var metrics = new MetricsRegistry();
+        metrics.counter("chess_test_total", "A counter");
+
+        assertThrows(IllegalArgumentException.class, () -> metrics.histogram("chess_test_total", "Not a counter"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.counter("chess_other_total", "Odd labels", "route"));
+    }
+
+    @Test
+    void histogramBucketsPositive() {
+        // every value has to fall inside the bucket it's put in
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 1000, 123_456_789L, 1L << 40, Long.MAX_VALUE}) {
+            int bucket = Histogram.bucketFor(value);
+            assertTrue(bucket >= 0 && bucket < Histogram.BUCKET_COUNT);
+            if (bucket < Histogram.BUCKET_COUNT - 1) {
+                assertTrue(value <= Histogram.upperBound(bucket), "value " + value);
+                assertTrue(bucket == 0 || value > Histogram.upperBound(bucket - 1), "value " + value);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package server;
+
+import chess.engine.SearchResult;
+import com.google.gson.Gson;
+import dataaccess.MemoryDataAccess;
+import model.AuthData;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServerTest {
+
+    private static Server server;
+    private static int port;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final Gson gson = new Gson();
+
+    @BeforeAll
+    static void startServer() {
+        server = new Server(new MemoryDataAccess());
+        port = server.run(0);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.stop();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path));
+    }
+
+    private String register(String username) throws Exception {
+        var body = gson.toJson(Map.of("username", username, "password", "pass", "email", "email"));
+        var response = client.send(request("/user").POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        return gson.fromJson(response.body(), AuthData.class).authToken();
+    }
+
+    private int createGame(String authToken) throws Exception {
+        var response = client.send(request("/game").header("Authorization", authToken)
+                        .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(Map.of("gameName", "game")))).build(),
+                HttpResponse.BodyHandlers.ofString());
+        return ((Number) gson.fromJson(response.body(), Map.class).get("gameID")).intValue();
+    }
+
+    @Test
+    void analyzePositive() throws Exception {
+        String token = register("analyst");
+        int gameID = createGame(token);
+        var response = client.send(request("/game/analysis?gameID=" + gameID + "&depth=2")
+                .header("Authorization", token).GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        SearchResult result = gson.fromJson(response.body(), SearchResult.class);
+        assertEquals(2, result.depth());
+        assertNotNull(result.move());
+    }
+
+    @Test
+    void analyzeNegative() throws Exception {
+        var response = client.send(request("/game/analysis?gameID=1&depth=2")
+                .header("Authorization", "bad-token").GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(401, response.statusCode());
+        String token = register("shallow");
+        response = client.send(request("/game/analysis?gameID=" + createGame(token) + "&depth=0")
+                .header("Authorization", token).GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(400, response.statusCode());
+    }
+
+    private HttpResponse<byte[]> listGames(String authToken, String acceptEncoding) throws Exception {
+        var builder = request("/game").header("Authorization", authToken).GET();
+        if (acceptEncoding != null) {
+            builder.header("Accept-Encoding", acceptEncoding);
+        }
+        return client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    // the game names in a GET /game body, undoing whatever encoding the server says it used
+    private List<?> gameNames(HttpResponse<byte[]> response) throws IOException {
+        InputStream body = new ByteArrayInputStream(response.body());
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity");
+        body = switch (encoding) {
+            case "gzip" -> new GZIPInputStream(body);
+            case "deflate" -> new InflaterInputStream(body);
+            default -> body;
+        };
+        String json = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        List<?> games = (List<?>) gson.fromJson(json, Map.class).get("games");
+        return games.stream().map(game -> ((Map<?, ?>) game).get("gameName")).toList();
+    }
+
+    @Test
+    void compressionPositive() throws Exception {
+        String token = register("zipper");
+        createGame(token);
+
+        var gzip = listGames(token, "deflate, gzip");
+        assertEquals(200, gzip.statusCode());
+        assertEquals("gzip", gzip.headers().firstValue("Content-Encoding").orElse(null));
+        assertEquals("Accept-Encoding", gzip.headers().firstValue("Vary").orElse(null));
+        assertTrue(gameNames(gzip).contains("game"));
+
+        var deflate = listGames(token, "deflate");
+        assertEquals("deflate", deflate.headers().firstValue("Content-Encoding").orElse(null));
+        assertEquals(gameNames(gzip), gameNames(deflate));
+
+        // what was sent compressed is the same list as the plain one
+        var plain = listGames(token, null);
+        assertTrue(plain.headers().firstValue("Content-Encoding").isEmpty());
+        assertEquals(gameNames(plain), gameNames(gzip));
+    }
+
+    @Test
+    void compressionNegative() throws Exception {
+        String token = register("unzipped");
+        createGame(token);
+
+        // q=0 means not that one, in any of the ways it can be written
+        var noGzip = listGames(token, "gzip;q=0, deflate");
+        assertEquals("deflate", noGzip.headers().firstValue("Content-Encoding").orElse(null));
+        assertTrue(gameNames(noGzip).contains("game"));
+        for (String refused : new String[]{"gzip;q=0", "gzip; q=0.0, deflate;q=0", "identity", "br"}) {
+            var plain = listGames(token, refused);
+            assertTrue(plain.headers().firstValue("Content-Encoding").isEmpty(), refused);
+            assertTrue(gameNames(plain).contains("game"), refused);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package server;
+
+import chess.engine.BookBuilder;
+import chess.engine.OpeningBook;
+import chess.engine.Tablebase;
+import chess.engine.TranspositionTable;
+import com.google.gson.Gson;
+import dataaccess.AsyncDataAccess;
+import dataaccess.MemoryDataAccess;
+import metrics.MetricsRegistry;
+import model.AuthData;
+import model.GameData;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import service.AnalysisService;
+import service.BotScheduler;
+import service.BotStrength;
+import service.GameLocks;
+import websocket.commands.UserGameCommand;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WebSocketHandlerTest {
+
+    private BotScheduler bots;
+    private AnalysisService analysis;
+
+    @AfterEach
+    void tearDown() {
+        if (bots != null) {
+            bots.shutdown();
+        }
+        if (analysis != null) {
+            analysis.shutdown();
+        }
+    }
+
+    // a session that's always open and keeps whatever is sent to it
+    private static Session session(List<String> sent) {
+        RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(WebSocketHandlerTest.class.getClassLoader(),
+                new Class<?>[]{RemoteEndpoint.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("sendString")) {
+                        sent.add((String) args[0]);
+                    }
+                    return null;
+                });
+        return (Session) Proxy.newProxyInstance(WebSocketHandlerTest.class.getClassLoader(),
+                new Class<?>[]{Session.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "isOpen" -> true;
+                    case "getRemote" -> remote;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+
+    @Test
+    void botMoveOnceNegativeTwoConnects(@TempDir Path dir) throws Exception {
+        // two first moves in the book, so two plays could even pick different ones
+        Path games = dir.resolve("games.pgn");
+        Files.writeString(games, "[Result \"1-0\"]\n\n1. c4 e5 1-0\n\n[Result \"1-0\"]\n\n1. e4 e5 1-0\n");
+        Path book = dir.resolve("book.bin");
+        BookBuilder.build(List.of(games), book, BookBuilder.DEFAULT_PLIES);
+        bots = new BotScheduler(1, 20, new TranspositionTable(1), OpeningBook.open(book), Tablebase.EMPTY);
+        analysis = new AnalysisService(1, 1, 16, 1000, new TranspositionTable(1), Tablebase.EMPTY);
+
+        AtomicInteger recorded = new AtomicInteger();
+        var dao = new MemoryDataAccess() {
+            @Override
+            public GameData getGame(int gameID) {
+                GameData game = super.getGame(gameID);
+                // hold bot moves up after reading, so a second one would read the same game
+                if (Thread.currentThread().getName().startsWith("chess-bot-move-")) {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return game;
+            }
+
+            @Override
+            public void recordMove(GameData game, chess.ChessMove move) {
+                recorded.incrementAndGet();
+                updateGame(game);
+            }
+        };
+        dao.createAuth(new AuthData("token", "trieste"));
+        dao.createAuth(new AuthData("watcher", "sean"));
+        int id = dao.createGame("game1");
+        GameData game = dao.getGame(id);
+        dao.updateGame(new GameData(id, BotStrength.BLITZ.username(), "trieste", "game1", game.game()));
+
+        var handler = new WebSocketHandler(dao, AsyncDataAccess.inline(dao), new MetricsRegistry(), bots, analysis);
+        var gson = new Gson();
+        List<String> sent = new CopyOnWriteArrayList<>();
+        handler.onMessage(session(sent), gson.toJson(new UserGameCommand(UserGameCommand.CommandType.CONNECT, "token", id)));
+        handler.onMessage(session(new CopyOnWriteArrayList<>()),
+                gson.toJson(new UserGameCommand(UserGameCommand.CommandType.CONNECT, "watcher", id)));
+
+        for (int i = 0; i < 100 && dao.getGame(id).game().getMoveCount() == 0; i++) {
+            Thread.sleep(50);
+        }
+        // long enough for a second play to have shown up if there was one
+        Thread.sleep(500);
+        assertEquals(1, recorded.get());
+        assertEquals(1, dao.getGame(id).game().getMoveCount());
+        assertEquals(1, sent.stream().filter(message -> message.contains("bot:blitz moved")).count());
+    }
+
+    @Test
+    void leavePositiveKeepsMove() throws Exception {
+        bots = new BotScheduler(1, 20, new TranspositionTable(1));
+        analysis = new AnalysisService(1, 1, 16, 1000, new TranspositionTable(1), Tablebase.EMPTY);
+        var dao = new MemoryDataAccess();
+        dao.createAuth(new AuthData("token", "trieste"));
+        int id = dao.createGame("game1");
+        dao.updateGame(new GameData(id, "trieste", "sean", "game1", dao.getGame(id).game()));
+        var locks = new GameLocks();
+        var handler = new WebSocketHandler(dao, AsyncDataAccess.inline(dao), new MetricsRegistry(), bots, analysis,
+                locks);
+        String leave = new Gson().toJson(new UserGameCommand(UserGameCommand.CommandType.LEAVE, "token", id));
+
+        // a move is being made when the leave comes in, the leave mustn't write the old board back
+        locks.lock(id);
+        CompletableFuture<Void> left;
+        try {
+            left = CompletableFuture.runAsync(() -> {
+                try {
+                    handler.onMessage(session(new CopyOnWriteArrayList<>()), leave);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(100);
+            assertFalse(left.isDone());
+            GameData game = dao.getGame(id);
+            game.game().makeMove(new chess.ChessMove(new chess.ChessPosition(2, 5), new chess.ChessPosition(4, 5), null));
+            dao.recordMove(game, null);
+        } finally {
+            locks.unlock(id);
+        }
+        left.get(10, TimeUnit.SECONDS);
+
+        GameData game = dao.getGame(id);
+        assertNull(game.whiteUsername());
+        assertEquals("sean", game.blackUsername());
+        assertEquals(1, game.game().getMoveCount());
+    }
+
+    @Test
+    void drawPositiveTablebase() throws Exception {
+        bots = new BotScheduler(1, 20, new TranspositionTable(1));
+        analysis = new AnalysisService(1, 1, 16, 1000, new TranspositionTable(1), Tablebase.EMPTY);
+        var dao = new MemoryDataAccess();
+        dao.createAuth(new AuthData("token", "trieste"));
+        int id = dao.createGame("game1");
+        // white's king takes the last knight, which leaves bare kings
+        var game = new chess.ChessGame();
+        var board = new chess.ChessBoard();
+        board.addPiece(new chess.ChessPosition(1, 1),
+                new chess.ChessPiece(chess.ChessGame.TeamColor.WHITE, chess.ChessPiece.PieceType.KING));
+        board.addPiece(new chess.ChessPosition(2, 2),
+                new chess.ChessPiece(chess.ChessGame.TeamColor.BLACK, chess.ChessPiece.PieceType.KNIGHT));
+        board.addPiece(new chess.ChessPosition(8, 8),
+                new chess.ChessPiece(chess.ChessGame.TeamColor.BLACK, chess.ChessPiece.PieceType.KING));
+        game.setBoard(board);
+        dao.updateGame(new GameData(id, "trieste", "sean", "game1", game));
+        var handler = new WebSocketHandler(dao, AsyncDataAccess.inline(dao), new MetricsRegistry(), bots, analysis);
+        var gson = new Gson();
+        List<String> sent = new CopyOnWriteArrayList<>();
+        Session session = session(sent);
+        handler.onMessage(session, gson.toJson(new UserGameCommand(UserGameCommand.CommandType.CONNECT, "token", id)));
+
+        handler.onMessage(session, gson.toJson(new websocket.commands.MakeMoveCommand("token", id,
+                new chess.ChessMove(new chess.ChessPosition(1, 1), new chess.ChessPosition(2, 2), null))));
+        assertTrue(dao.getGame(id).game().isDrawn());
+        assertTrue(sent.stream().anyMatch(message -> message.contains("Draw by tablebase")));
+    }
+}
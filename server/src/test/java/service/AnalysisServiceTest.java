@@ -0,0 +1,92 @@
+package service;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.engine.SearchResult;
+import chess.engine.Tablebase;
+import chess.engine.TranspositionTable;
+import dataaccess.DataAccessException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnalysisServiceTest {
+
+    private AnalysisService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void analyzePositive() throws Exception {
+        service = new AnalysisService(1, 4, 16, 30_000, new TranspositionTable(1), Tablebase.EMPTY);
+        var game = new ChessGame();
+        SearchResult result = service.analyze(game, 3).get(30, TimeUnit.SECONDS);
+        assertEquals(3, result.depth());
+        assertTrue(game.validMoves(result.move().getStartPosition()).contains(result.move()));
+
+        // the same position again comes straight from the cache, even from a different game
+        CompletableFuture<SearchResult> again = service.analyze(new ChessGame(), 3);
+        assertTrue(again.isDone());
+        assertSame(result, again.get());
+        // a different depth is a different question
+        assertNotSame(result, service.analyze(game, 2).get(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void analyzeNegativeOutOfTime() throws Exception {
+        // nowhere near enough time for the depth asked for
+        service = new AnalysisService(1, 4, 16, 50, new TranspositionTable(1), Tablebase.EMPTY);
+        var game = new ChessGame();
+        SearchResult shallow = service.analyze(game, AnalysisService.MAX_DEPTH).get(30, TimeUnit.SECONDS);
+        assertTrue(shallow.depth() < AnalysisService.MAX_DEPTH);
+        // so asking again searches again instead of getting the shallow answer back
+        assertNotSame(shallow, service.analyze(game, AnalysisService.MAX_DEPTH).get(30, TimeUnit.SECONDS));
+        // it's still good for the depth it did get to
+        CompletableFuture<SearchResult> reached = service.analyze(game, shallow.depth());
+        assertTrue(reached.isDone());
+        assertSame(shallow, reached.get());
+    }
+
+    @Test
+    void joinPositive() throws Exception {
+        // deep enough that it's still going when the second request comes in
+        service = new AnalysisService(1, 4, 16, 30_000, new TranspositionTable(1), Tablebase.EMPTY);
+        var game = new ChessGame();
+        CompletableFuture<SearchResult> first = service.analyze(game, AnalysisService.MAX_DEPTH);
+        assertSame(first, service.analyze(game, AnalysisService.MAX_DEPTH));
+        assertFalse(first.isDone());
+    }
+
+    @Test
+    void analyzeNegativeQueueFull() throws Exception {
+        service = new AnalysisService(1, 1, 16, 30_000, new TranspositionTable(1), Tablebase.EMPTY);
+        var game = new ChessGame();
+        // one running, one waiting, no room for a third
+        service.analyze(game, AnalysisService.MAX_DEPTH);
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        service.analyze(game, AnalysisService.MAX_DEPTH);
+        assertEquals(1, service.queuedCount());
+        game.makeMove(new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null));
+
+        var e = assertThrows(DataAccessException.class, () -> service.analyze(game, AnalysisService.MAX_DEPTH));
+        assertTrue(e.getMessage().contains("service unavailable"));
+    }
+
+    @Test
+    void analyzeNegativeBadDepth() {
+        service = new AnalysisService(1, 1, 16, 1000, new TranspositionTable(1), Tablebase.EMPTY);
+        assertThrows(DataAccessException.class, () -> service.analyze(new ChessGame(), 0));
+        assertThrows(DataAccessException.class, () -> service.analyze(new ChessGame(), AnalysisService.MAX_DEPTH + 1));
+        assertThrows(DataAccessException.class, () -> service.analyze(null, 5));
+    }
+}
@@ -0,0 +1,121 @@
+package service;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPosition;
+import chess.engine.BookBuilder;
+import chess.engine.OpeningBook;
+import chess.engine.Tablebase;
+import chess.engine.TranspositionTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BotSchedulerTest {
+
+    private BotScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void thinkPositive() throws Exception {
+        scheduler = new BotScheduler(2, 20, new TranspositionTable(4));
+        var game = new ChessGame();
+        ChessMove move = scheduler.think(1, BotStrength.BLITZ, game).get(30, TimeUnit.SECONDS);
+        assertNotNull(move);
+        assertTrue(game.validMoves(move.getStartPosition()).contains(move));
+        // asking twice about the same position is the same request
+        var again = new ChessGame();
+        again.makeMove(move);
+        assertSame(scheduler.think(1, BotStrength.BLITZ, again), scheduler.think(1, BotStrength.BLITZ, again));
+    }
+
+    @Test
+    void onlyMovePositive() throws Exception {
+        scheduler = new BotScheduler(1, 20, new TranspositionTable(1));
+        // white king in the corner, the rook has the b file, so a2 is the only move
+        var game = new ChessGame();
+        var board = new ChessBoard();
+        board.addPiece(new ChessPosition(1, 1), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.KING));
+        board.addPiece(new ChessPosition(8, 2), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.ROOK));
+        board.addPiece(new ChessPosition(8, 8), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.KING));
+        game.setBoard(board);
+        CompletableFuture<ChessMove> move = scheduler.think(1, BotStrength.ANALYSIS, game);
+        // no search needed, so it's already done
+        assertTrue(move.isDone());
+        assertEquals(new ChessMove(new ChessPosition(1, 1), new ChessPosition(2, 1), null), move.get());
+    }
+
+    @Test
+    void bookPositive(@TempDir Path dir) throws Exception {
+        Path games = dir.resolve("games.pgn");
+        Files.writeString(games, "[Result \"1-0\"]\n\n1. c4 e5 1-0\n");
+        Path book = dir.resolve("book.bin");
+        BookBuilder.build(List.of(games), book, BookBuilder.DEFAULT_PLIES);
+        scheduler = new BotScheduler(1, 20, new TranspositionTable(1), OpeningBook.open(book), Tablebase.EMPTY);
+        // in the book, so no search
+        CompletableFuture<ChessMove> move = scheduler.think(1, BotStrength.ANALYSIS, new ChessGame());
+        assertTrue(move.isDone());
+        assertEquals(new ChessMove(new ChessPosition(2, 3), new ChessPosition(4, 3), null), move.get());
+    }
+
+    @Test
+    void cancelNegative() {
+        scheduler = new BotScheduler(1, 20, new TranspositionTable(1));
+        var move = scheduler.think(1, BotStrength.ANALYSIS, new ChessGame());
+        scheduler.cancel(1);
+        assertThrows(CancellationException.class, () -> move.get(10, TimeUnit.SECONDS));
+        scheduler.shutdown();
+        assertThrows(Exception.class, () -> scheduler.think(2, BotStrength.BLITZ, new ChessGame()).get());
+    }
+
+    @Test
+    void preemptPositive() throws Exception {
+        // one worker, taken by a long analysis, a blitz bot still gets its move
+        scheduler = new BotScheduler(1, 20, new TranspositionTable(4));
+        var analysis = scheduler.think(1, BotStrength.ANALYSIS, new ChessGame());
+        Thread.sleep(100);
+        var blitz = scheduler.think(2, BotStrength.BLITZ, new ChessGame());
+        assertNotNull(blitz.get(30, TimeUnit.SECONDS));
+        assertFalse(analysis.isDone());
+    }
+
+    @Test
+    void quotaNegative() throws Exception {
+        // analysis gets a quarter of two workers, rounded up to one, so the rest have to wait
+        scheduler = new BotScheduler(2, 20, new TranspositionTable(4));
+        for (int gameID = 1; gameID <= 3; gameID++) {
+            scheduler.think(gameID, BotStrength.ANALYSIS, new ChessGame());
+        }
+        assertTrue(scheduler.queuedCount() >= 2);
+        // while the other worker is free for blitz
+        assertNotNull(scheduler.think(4, BotStrength.BLITZ, new ChessGame()).get(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void strengthNegative() {
+        assertEquals(BotStrength.RAPID, BotStrength.fromUsername("bot:rapid"));
+        assertNull(BotStrength.fromUsername("rapid"));
+        assertNull(BotStrength.fromUsername("bot:grandmaster"));
+        assertNull(BotStrength.parse(null));
+        assertEquals(1, BotStrength.ANALYSIS.quota(2));
+        assertEquals(32, BotStrength.BLITZ.quota(32));
+    }
+}
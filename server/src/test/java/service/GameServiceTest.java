@@ -1,10 +1,21 @@
 package service;
 
+import dataaccess.AsyncDataAccess;
+import dataaccess.CachingDataAccess;
 import dataaccess.MemoryDataAccess;
 import dataaccess.DataAccessException;
 import model.AuthData;
+import model.BatchOperation;
+import model.GameData;
 import org.junit.jupiter.api.Test;
 
+import chess.ChessMove;
+import chess.ChessPosition;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class GameServiceTest {
@@ -32,6 +43,63 @@ public class GameServiceTest {
         );
     }
 
+    @Test
+    void listGamesNotModifiedPositive() throws DataAccessException {
+        var dao = new CachingDataAccess(new MemoryDataAccess());
+        var service = new GameService(dao);
+
+        dao.createAuth(new AuthData("token", "trieste"));
+        dao.createGame("game1");
+
+        var first = service.listGames("token", -1);
+        assertEquals(1, first.games().size());
+        assertNull(service.listGames("token", first.version()).games());
+
+        // any change to the games means a new version
+        service.createGame("token", "game2");
+        var second = service.listGames("token", first.version());
+        assertNotEquals(first.version(), second.version());
+        assertEquals(2, second.games().size());
+    }
+
+    @Test
+    void listGamesNotModifiedNegativeUnauthorized() {
+        var dao = new CachingDataAccess(new MemoryDataAccess());
+        var service = new GameService(dao);
+
+        assertThrows(DataAccessException.class, () ->
+                service.listGames("bad-token", dao.getGameListVersion())
+        );
+    }
+
+    @Test
+    void listMyGamesPositive() throws DataAccessException {
+        var dao = new MemoryDataAccess();
+        var service = new GameService(dao);
+
+        dao.createAuth(new AuthData("token", "trieste"));
+        dao.createAuth(new AuthData("other", "sean"));
+        int mine = service.createGame("token", "game1");
+        int theirs = service.createGame("token", "game2");
+        service.createGame("token", "game3");
+        service.joinGame("token", "BLACK", mine);
+        service.joinGame("other", "WHITE", theirs);
+
+        var games = service.listMyGames("token");
+
+        assertEquals(List.of(mine), games.stream().map(GameData::gameID).toList());
+    }
+
+    @Test
+    void listMyGamesNegativeUnauthorized() {
+        var dao = new MemoryDataAccess();
+        var service = new GameService(dao);
+
+        assertThrows(DataAccessException.class, () ->
+                service.listMyGames("bad-token")
+        );
+    }
+
     @Test
     void createGamePositive() throws DataAccessException {
         var dao = new MemoryDataAccess();
@@ -69,6 +137,42 @@ public class GameServiceTest {
         assertEquals("trieste", dao.getGame(id).whiteUsername());
     }
 
+    @Test
+    void joinGamePositiveWaitsForMove() throws Exception {
+        var dao = new MemoryDataAccess();
+        var locks = new GameLocks();
+        var service = new GameService(dao, AsyncDataAccess.inline(dao), locks);
+
+        dao.createAuth(new AuthData("token", "trieste"));
+        int id = dao.createGame("game1");
+
+        // someone is in the middle of a move, the join has to wait for it and not undo it
+        locks.lock(id);
+        CompletableFuture<Void> join;
+        try {
+            join = CompletableFuture.runAsync(() -> {
+                try {
+                    service.joinGame("token", "BLACK", id);
+                } catch (DataAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(100);
+            assertFalse(join.isDone());
+            var game = dao.getGame(id);
+            game.game().makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+            dao.updateGame(game);
+        } finally {
+            locks.unlock(id);
+        }
+        join.get(10, TimeUnit.SECONDS);
+
+        assertEquals("trieste", dao.getGame(id).blackUsername());
+        assertEquals(1, dao.getGame(id).game().getMoveCount());
+        // and nobody is holding or waiting for it any more, so it's gone
+        assertEquals(0, locks.size());
+    }
+
     @Test
     void joinGameNegativeAlreadyTaken() throws DataAccessException {
         var dao = new MemoryDataAccess();
@@ -85,5 +189,90 @@ public class GameServiceTest {
                 service.joinGame("t2", "WHITE", id)
         );
     }
-}
 
+    @Test
+    void addBotPositive() throws DataAccessException {
+        var dao = new MemoryDataAccess();
+        var service = new GameService(dao);
+
+        dao.createAuth(new AuthData("token", "trieste"));
+        int id = dao.createGame("game1");
+
+        service.joinGame("token", "WHITE", id);
+        service.addBot("token", id, "BLACK", "rapid");
+
+        assertEquals("trieste", dao.getGame(id).whiteUsername());
+        assertEquals("bot:rapid", dao.getGame(id).blackUsername());
+    }
+
+    @Test
+    void addBotNegative() throws DataAccessException {
+        var dao = new MemoryDataAccess();
+        var service = new GameService(dao);
+
+        dao.createAuth(new AuthData("token", "trieste"));
+        int id = dao.createGame("game1");
+        service.joinGame("token", "WHITE", id);
+
+        assertThrows(DataAccessException.class, () -> service.addBot("token", id, "WHITE", "blitz"));
+        assertThrows(DataAccessException.class, () -> service.addBot("token", id, "BLACK", "grandmaster"));
+        assertThrows(DataAccessException.class, () -> service.addBot("bad-token", id, "BLACK", "blitz"));
+        assertNull(dao.getGame(id).blackUsername());
+    }
+
+    @Test
+    void getGamePositive() throws DataAccessException {
+        var dao = new MemoryDataAccess();
+        var service = new GameService(dao);
+
+        dao.createAuth(new AuthData("token", "trieste"));
+        int id = dao.createGame("game1");
+
+        // no need to be playing in it
+        assertEquals("game1", service.getGame("token", id).gameName());
+    }
+
+    @Test
+    void getGameNegative() throws DataAccessException {
+        var dao = new MemoryDataAccess();
+        var service = new GameService(dao);
+
+        dao.createAuth(new AuthData("token", "trieste"));
+        int id = dao.createGame("game1");
+
+        assertThrows(DataAccessException.class, () -> service.getGame("bad-token", id));
+        assertThrows(DataAccessException.class, () -> service.getGame("token", id + 1));
+    }
+
+    @Test
+    void batchPositive() throws DataAccessException {
+        var dao = new MemoryDataAccess();
+        var service = new GameService(dao);
+
+        dao.createAuth(new AuthData("token", "trieste"));
+        int existing = dao.createGame("game1");
+
+        var results = service.batch("token", List.of(
+                new BatchOperation(BatchOperation.CREATE, "game2", null, null),
+                new BatchOperation(BatchOperation.JOIN, null, existing, "BLACK"),
+                new BatchOperation(BatchOperation.JOIN, null, existing, "BLACK"),
+                new BatchOperation(BatchOperation.JOIN, null, existing, "PURPLE")));
+
+        assertEquals(4, results.size());
+        assertEquals(2, results.get(0).gameID());
+        assertNull(results.get(1).message());
+        assertEquals("Error: already taken", results.get(2).message());
+        assertEquals("Error: bad request", results.get(3).message());
+        assertEquals("trieste", dao.getGame(existing).blackUsername());
+    }
+
+    @Test
+    void batchNegativeUnauthorized() {
+        var dao = new MemoryDataAccess();
+        var service = new GameService(dao);
+
+        assertThrows(DataAccessException.class, () ->
+                service.batch("bad-token", List.of(new BatchOperation(BatchOperation.CREATE, "game", null, null)))
+        );
+    }
+}
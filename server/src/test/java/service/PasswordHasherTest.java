@@ -0,0 +1,63 @@
+package service;
+
+import dataaccess.DataAccessException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordHasherTest {
+
+    @Test
+    void hashAndCheckPositive() throws DataAccessException {
+        var hasher = new PasswordHasher(1, 4, 4);
+
+        String hashed = hasher.hash("pass");
+
+        assertTrue(hasher.check("pass", hashed));
+        assertFalse(hasher.check("wrong", hashed));
+        assertEquals(3, hasher.getStats().completed());
+        hasher.shutdown();
+    }
+
+    @Test
+    void hashNegativeQueueFull() throws Exception {
+        var hasher = new PasswordHasher(1, 1, 4);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        // tie up the only worker, then fill the one queue slot
+        Thread busy = new Thread(() -> {
+            try {
+                hasher.submit(() -> {
+                    started.countDown();
+                    release.await();
+                    return null;
+                });
+            } catch (DataAccessException ignored) {
+            }
+        });
+        busy.start();
+        started.await();
+        Thread queued = new Thread(() -> {
+            try {
+                hasher.hash("pass");
+            } catch (DataAccessException ignored) {
+            }
+        });
+        queued.start();
+        while (hasher.getStats().queued() == 0) {
+            Thread.onSpinWait();
+        }
+
+        var e = assertThrows(DataAccessException.class, () -> hasher.hash("pass"));
+        assertTrue(e.getMessage().contains("service unavailable"));
+        assertEquals(1, hasher.getStats().rejected());
+
+        release.countDown();
+        busy.join();
+        queued.join();
+        hasher.shutdown();
+    }
+}
@@ -35,6 +35,17 @@ public class UserServiceTest {
         );
     }
 
+    @Test
+    void registerNegativeBotName() {
+        var dao = new MemoryDataAccess();
+        var service = new UserService(dao);
+
+        assertThrows(DataAccessException.class, () ->
+                service.register(new UserData("bot:blitz", "pass", "email"))
+        );
+        assertNull(dao.getUser("bot:blitz"));
+    }
+
     @Test
     void loginPositive() throws DataAccessException {
         var dao = new MemoryDataAccess();
@@ -80,4 +91,32 @@ public class UserServiceTest {
                 service.logout("fake-token")
         );
     }
+
+    @Test
+    void logoutEverywherePositive() throws DataAccessException {
+        var dao = new MemoryDataAccess();
+        var service = new UserService(dao);
+
+        var first = service.register(new UserData("bob", "pass", "email"));
+        var second = service.login(new UserData("bob", "pass", null));
+        var other = service.register(new UserData("sean", "pass", "email"));
+        service.logoutEverywhere(second.authToken());
+
+        assertNull(dao.getAuth(first.authToken()));
+        assertNull(dao.getAuth(second.authToken()));
+        assertNotNull(dao.getAuth(other.authToken()));
+    }
+
+    @Test
+    void logoutEverywhereNegativeInvalidToken() {
+        var dao = new MemoryDataAccess();
+        var service = new UserService(dao);
+
+        assertThrows(DataAccessException.class, () ->
+                service.logoutEverywhere("fake-token")
+        );
+        assertThrows(DataAccessException.class, () ->
+                service.logoutEverywhere(null)
+        );
+    }
 }
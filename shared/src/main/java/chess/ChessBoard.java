@@ -10,8 +10,24 @@ import java.util.Objects;
  * signature of the existing methods.
  */
 public class ChessBoard {
+
+    // castling rights, one bit each, in the order FEN and Polyglot list them
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+    public static final int ALL_CASTLING = 15;
+
     ChessPiece[][] squares = new ChessPiece[8][8];
 
+    // what the pieces alone can't show. A castling right is lost for good once the king
+    // or that rook moves or the rook is taken, and ChessGame clears it as that happens.
+    // A board set up by hand starts with every right, see getCastlingRights
+    private int castling = ALL_CASTLING;
+    // file (1 to 8) of a pawn that just moved two squares and can be taken en passant
+    // right now, 0 if there isn't one
+    private int enPassantColumn;
+
     public ChessBoard() {
     }
 
@@ -22,6 +38,8 @@ public class ChessBoard {
                 this.squares[row][col] = other.squares[row][col];
             }
         }
+        this.castling = other.castling;
+        this.enPassantColumn = other.enPassantColumn;
     }
 
     /**
@@ -89,8 +107,85 @@ public class ChessBoard {
         addPiece(new ChessPosition(8, 6), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.BISHOP));
         addPiece(new ChessPosition(8, 7), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.KNIGHT));
         addPiece(new ChessPosition(8, 8), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.ROOK));
+        castling = ALL_CASTLING;
+        enPassantColumn = 0;
+    }
+
+    /**
+     * @return the castling rights still held, as WHITE_KINGSIDE etc. or'd together. A
+     * right only counts while the king and that rook are actually on their home squares
+     */
+    public int getCastlingRights() {
+        int rights = castling;
+        if (!isAt(1, 5, ChessGame.TeamColor.WHITE, ChessPiece.PieceType.KING)) {
+            rights &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        }
+        if (!isAt(1, 8, ChessGame.TeamColor.WHITE, ChessPiece.PieceType.ROOK)) {
+            rights &= ~WHITE_KINGSIDE;
+        }
+        if (!isAt(1, 1, ChessGame.TeamColor.WHITE, ChessPiece.PieceType.ROOK)) {
+            rights &= ~WHITE_QUEENSIDE;
+        }
+        if (!isAt(8, 5, ChessGame.TeamColor.BLACK, ChessPiece.PieceType.KING)) {
+            rights &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        }
+        if (!isAt(8, 8, ChessGame.TeamColor.BLACK, ChessPiece.PieceType.ROOK)) {
+            rights &= ~BLACK_KINGSIDE;
+        }
+        if (!isAt(8, 1, ChessGame.TeamColor.BLACK, ChessPiece.PieceType.ROOK)) {
+            rights &= ~BLACK_QUEENSIDE;
+        }
+        return rights;
+    }
+
+    public void setCastlingRights(int rights) {
+        this.castling = rights & ALL_CASTLING;
+    }
+
+    /**
+     * @return the column (1 to 8) a pawn can be taken en passant on this move, 0 if none
+     */
+    public int getEnPassantColumn() {
+        return enPassantColumn;
+    }
+
+    public void setEnPassantColumn(int column) {
+        this.enPassantColumn = column;
+    }
+
+    // a move from from to to: a king or rook leaving its home square, or anything
+    // landing on a rook's, loses those rights
+    void updateCastlingRights(ChessPosition from, ChessPosition to) {
+        castling &= ~(homeRights(from) | homeRights(to));
+    }
+
+    private static int homeRights(ChessPosition position) {
+        int shift = switch (position.getRow()) {
+            case 1 -> 0;
+            case 8 -> 2;
+            default -> -1;
+        };
+        if (shift < 0) {
+            return 0;
+        }
+        return switch (position.getColumn()) {
+            case 1 -> WHITE_QUEENSIDE << shift;
+            case 5 -> (WHITE_KINGSIDE | WHITE_QUEENSIDE) << shift;
+            case 8 -> WHITE_KINGSIDE << shift;
+            default -> 0;
+        };
+    }
+
+    // false off the board too, so callers can step past the edge without checking
+    boolean isAt(int row, int col, ChessGame.TeamColor color, ChessPiece.PieceType type) {
+        if (row < 1 || row > 8 || col < 1 || col > 8) {
+            return false;
+        }
+        ChessPiece piece = squares[row - 1][col - 1];
+        return piece != null && piece.getTeamColor() == color && piece.getPieceType() == type;
     }
 
+    // the pieces only, two boards that look the same are the same board
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof ChessBoard that)) {
@@ -15,14 +15,22 @@ public class ChessGame {
     private TeamColor turn;
     private ChessBoard board;
 
-    private ArrayList<ChessBoard> history = new ArrayList<ChessBoard>();
+    // plies played so far, the server's move log is keyed by it
+    private int moveCount;
+
+    // for the draw rules. A capture or pawn move can never be undone, so only positions
+    // since the last one can repeat: positions holds their hashes (see PositionHash),
+    // the current one last, and never gets longer than the halfmove clock. Saved with
+    // the game, unlike the counts, which get rebuilt from it after loading
+    private int halfmoveClock;
+    private ArrayList<Long> positions;
+    private transient HashMap<Long, Integer> repetitions;
 
 
     public ChessGame() {
         this.turn = TeamColor.WHITE;
         this.board = new ChessBoard();
         this.board.resetBoard();
-
     }
 
     @Override
@@ -30,12 +38,13 @@ public class ChessGame {
         if (!(o instanceof ChessGame chessGame)) {
             return false;
         }
-        return turn == chessGame.turn && Objects.equals(board, chessGame.board) && Objects.equals(history, chessGame.history);
+        // the position only, so a game reads back equal to itself whenever it was saved
+        return turn == chessGame.turn && Objects.equals(board, chessGame.board);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(turn, board, history);
+        return Objects.hash(turn, board);
     }
 
     /**
@@ -45,11 +54,42 @@ public class ChessGame {
      */
     public void setTeamTurn(TeamColor team) {
         this.turn = team;
+        resetPositions();
     }
     public TeamColor getTeamTurn() {
         return turn;
     }
 
+    /**
+     * @return how many moves (plies) have been made in this game
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @return plies since the last capture or pawn move
+     */
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * @return true if the position on the board, with the same side to move, has come
+     * up three times. The game ends in a draw there, nobody has to claim it
+     */
+    public boolean isDrawByRepetition() {
+        return repetitions().getOrDefault(currentHash(), 0) >= 3;
+    }
+
+    /**
+     * @return true if fifty moves each (100 plies) have gone by without a capture or
+     * a pawn move. A checkmate on the last of them still counts as a checkmate
+     */
+    public boolean isDrawByFiftyMoves() {
+        return halfmoveClock >= 100;
+    }
+
     /**
      * Enum identifying the 2 possible teams in a chess game
      */
@@ -58,6 +98,12 @@ public class ChessGame {
         BLACK
     }
 
+    // {row, column} steps, for isAttacked
+    private static final int[][] KNIGHT_STEPS = {{2, 1}, {1, 2}, {-1, 2}, {-2, 1}, {-2, -1}, {-1, -2}, {1, -2}, {2, -1}};
+    private static final int[][] KING_STEPS = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}};
+    private static final int[][] DIAGONALS = {{1, 1}, {-1, 1}, {-1, -1}, {1, -1}};
+    private static final int[][] STRAIGHTS = {{1, 0}, {0, 1}, {-1, 0}, {0, -1}};
+
     private boolean suicide(ChessMove move, ChessBoard workingBoard) {
         ChessBoard potentialBoard = new ChessBoard(workingBoard);
         ChessPiece piece = potentialBoard.getPiece(move.getStartPosition());
@@ -65,8 +111,7 @@ public class ChessGame {
             return false;
         }
 
-        potentialBoard.removePiece(move.getStartPosition());
-        potentialBoard.addPiece(move.getEndPosition(), piece);
+        play(potentialBoard, move);
 
         return isInCheck(piece.getTeamColor(), potentialBoard);
     }
@@ -81,18 +126,167 @@ public class ChessGame {
     public Collection<ChessMove> validMoves(ChessPosition startPosition, ChessBoard testBoard) {
         ArrayList<ChessMove> finalizedMoves = new ArrayList<>();
 
-        if (testBoard.getPiece(startPosition) == null) {
+        ChessPiece piece = testBoard.getPiece(startPosition);
+        if (piece == null) {
             return null;
         }
 
-        for (ChessMove move : testBoard.getPiece(startPosition).pieceMoves(testBoard, startPosition)) {
+        for (ChessMove move : piece.pieceMoves(testBoard, startPosition)) {
             if (!suicide(move, testBoard)) {
                 finalizedMoves.add(move);
             }
         }
+        // pieceMoves only looks at where the pieces are, these need the board's rights too
+        ChessMove special = null;
+        if (piece.getPieceType() == ChessPiece.PieceType.KING) {
+            addCastling(testBoard, startPosition, piece.getTeamColor(), finalizedMoves);
+        } else if (piece.getPieceType() == ChessPiece.PieceType.PAWN) {
+            special = enPassant(testBoard, startPosition, piece.getTeamColor());
+        }
+        if (special != null && !suicide(special, testBoard)) {
+            finalizedMoves.add(special);
+        }
 
         return finalizedMoves;
     }
+
+    // two squares toward a rook the king still has the right to castle with, if nothing
+    // is in between and the king isn't in check, crossing an attacked square or landing on one
+    private static void addCastling(ChessBoard testBoard, ChessPosition from, TeamColor color,
+                                    Collection<ChessMove> moves) {
+        int row = color == TeamColor.WHITE ? 1 : 8;
+        // black's rights shifted down to where white's are, so the same bits work for both
+        int rights = testBoard.getCastlingRights() >> (color == TeamColor.WHITE ? 0 : 2);
+        if ((rights & (ChessBoard.WHITE_KINGSIDE | ChessBoard.WHITE_QUEENSIDE)) == 0
+                || from.getRow() != row || from.getColumn() != 5) {
+            return;
+        }
+        TeamColor them = color == TeamColor.WHITE ? TeamColor.BLACK : TeamColor.WHITE;
+        if (isAttacked(testBoard, row, 5, them)) {
+            return;
+        }
+        if ((rights & ChessBoard.WHITE_KINGSIDE) != 0
+                && testBoard.getPiece(new ChessPosition(row, 6)) == null
+                && testBoard.getPiece(new ChessPosition(row, 7)) == null
+                && !isAttacked(testBoard, row, 6, them) && !isAttacked(testBoard, row, 7, them)) {
+            moves.add(new ChessMove(from, new ChessPosition(row, 7), null));
+        }
+        if ((rights & ChessBoard.WHITE_QUEENSIDE) != 0
+                && testBoard.getPiece(new ChessPosition(row, 4)) == null
+                && testBoard.getPiece(new ChessPosition(row, 3)) == null
+                && testBoard.getPiece(new ChessPosition(row, 2)) == null
+                && !isAttacked(testBoard, row, 4, them) && !isAttacked(testBoard, row, 3, them)) {
+            moves.add(new ChessMove(from, new ChessPosition(row, 3), null));
+        }
+    }
+
+    // taking the pawn beside this one that just moved two squares, or null
+    private static ChessMove enPassant(ChessBoard testBoard, ChessPosition from, TeamColor color) {
+        int column = testBoard.getEnPassantColumn();
+        int row = color == TeamColor.WHITE ? 5 : 4;
+        TeamColor them = color == TeamColor.WHITE ? TeamColor.BLACK : TeamColor.WHITE;
+        if (column == 0 || from.getRow() != row || Math.abs(from.getColumn() - column) != 1
+                || !testBoard.isAt(row, column, them, ChessPiece.PieceType.PAWN)) {
+            return null;
+        }
+        return new ChessMove(from, new ChessPosition(color == TeamColor.WHITE ? 6 : 3, column), null);
+    }
+
+    /**
+     * Whether any of by's pieces attacks the square. Looks out from the square the ways
+     * each kind of piece could reach it, instead of generating every enemy move the way
+     * isInCheck does, since castling has to ask about three squares at once.
+     */
+    private static boolean isAttacked(ChessBoard testBoard, int row, int col, TeamColor by) {
+        // pawns take diagonally forward, so look diagonally backward from the square
+        int back = by == TeamColor.WHITE ? -1 : 1;
+        if (testBoard.isAt(row + back, col - 1, by, ChessPiece.PieceType.PAWN)
+                || testBoard.isAt(row + back, col + 1, by, ChessPiece.PieceType.PAWN)) {
+            return true;
+        }
+        for (int[] step : KNIGHT_STEPS) {
+            if (testBoard.isAt(row + step[0], col + step[1], by, ChessPiece.PieceType.KNIGHT)) {
+                return true;
+            }
+        }
+        for (int[] step : KING_STEPS) {
+            if (testBoard.isAt(row + step[0], col + step[1], by, ChessPiece.PieceType.KING)) {
+                return true;
+            }
+        }
+        return isAttackedAlong(testBoard, row, col, DIAGONALS, by, ChessPiece.PieceType.BISHOP)
+                || isAttackedAlong(testBoard, row, col, STRAIGHTS, by, ChessPiece.PieceType.ROOK);
+    }
+
+    // the first piece each way from the square, if it's by's slider or queen it attacks the square
+    private static boolean isAttackedAlong(ChessBoard testBoard, int row, int col, int[][] steps, TeamColor by,
+                                           ChessPiece.PieceType slider) {
+        for (int[] step : steps) {
+            for (int r = row + step[0], c = col + step[1]; r >= 1 && r <= 8 && c >= 1 && c <= 8;
+                 r += step[0], c += step[1]) {
+                ChessPiece piece = testBoard.getPiece(new ChessPosition(r, c));
+                if (piece != null) {
+                    if (piece.getTeamColor() == by && (piece.getPieceType() == slider
+                            || piece.getPieceType() == ChessPiece.PieceType.QUEEN)) {
+                        return true;
+                    }
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves move's piece on testBoard, along with the rook when castling and the pawn
+     * taken en passant, and updates the board's castling rights and en passant column.
+     * Returns the change to the pieces' part of the position's hash.
+     */
+    private static long play(ChessBoard testBoard, ChessMove move) {
+        ChessPosition from = move.getStartPosition();
+        ChessPosition to = move.getEndPosition();
+        ChessPiece piece = testBoard.getPiece(from);
+        ChessPiece captured = testBoard.getPiece(to);
+        long change = PositionHash.piece(piece, from);
+        if (captured != null) {
+            change ^= PositionHash.piece(captured, to);
+        }
+        testBoard.removePiece(from);
+
+        boolean pawn = piece.getPieceType() == ChessPiece.PieceType.PAWN;
+        int columns = to.getColumn() - from.getColumn();
+        if (piece.getPieceType() == ChessPiece.PieceType.KING && Math.abs(columns) == 2) {
+            // castling, the rook jumps to the square the king crossed
+            ChessPosition rookFrom = new ChessPosition(from.getRow(), columns > 0 ? 8 : 1);
+            ChessPosition rookTo = new ChessPosition(from.getRow(), from.getColumn() + columns / 2);
+            ChessPiece rook = testBoard.getPiece(rookFrom);
+            testBoard.removePiece(rookFrom);
+            testBoard.addPiece(rookTo, rook);
+            change ^= PositionHash.piece(rook, rookFrom) ^ PositionHash.piece(rook, rookTo);
+        } else if (pawn && columns != 0 && captured == null) {
+            // en passant, the pawn taken is beside this one, not where it lands
+            ChessPosition passed = new ChessPosition(from.getRow(), to.getColumn());
+            change ^= PositionHash.piece(testBoard.getPiece(passed), passed);
+            testBoard.removePiece(passed);
+        }
+
+        //PAWN PROMOTION
+        if (pawn && move.getPromotionPiece() != null) {
+            piece = new ChessPiece(piece.getTeamColor(), move.getPromotionPiece());
+        }
+        testBoard.addPiece(to, piece);
+        change ^= PositionHash.piece(piece, to);
+
+        testBoard.updateCastlingRights(from, to);
+        // only kept when there's a pawn to take it, otherwise the position would look
+        // different from the same one a move later and never count as a repetition
+        TeamColor them = piece.getTeamColor() == TeamColor.WHITE ? TeamColor.BLACK : TeamColor.WHITE;
+        boolean takeable = pawn && Math.abs(to.getRow() - from.getRow()) == 2
+                && (testBoard.isAt(to.getRow(), to.getColumn() - 1, them, ChessPiece.PieceType.PAWN)
+                || testBoard.isAt(to.getRow(), to.getColumn() + 1, them, ChessPiece.PieceType.PAWN));
+        testBoard.setEnPassantColumn(takeable ? to.getColumn() : 0);
+        return change;
+    }
     public Collection<ChessMove> validMoves(ChessPosition startPosition) {
         return validMoves(startPosition, board);
     }
@@ -104,34 +298,85 @@ public class ChessGame {
      * @throws InvalidMoveException if move is invalid
      */
     public void makeMove(ChessMove move) throws InvalidMoveException {
+        // costs next to nothing unless a recording has chess.MoveValidated turned on
+        MoveValidatedEvent event = new MoveValidatedEvent();
+        event.begin();
+        try {
+            applyMove(move, event);
+            event.accepted = true;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.from = String.valueOf(move.getStartPosition());
+                event.to = String.valueOf(move.getEndPosition());
+                event.commit();
+            }
+        }
+    }
 
+    private void applyMove(ChessMove move, MoveValidatedEvent event) throws InvalidMoveException {
         ChessPiece piece = board.getPiece(move.getStartPosition());
         if (piece == null || piece.getTeamColor() != turn) {
             throw new InvalidMoveException();
         }
+        event.piece = piece.getPieceType().name();
 
         Collection<ChessMove> moves = validMoves(move.getStartPosition(), board);
+        event.legalMoves = moves == null ? 0 : moves.size();
         if (moves == null || !moves.contains(move)) {
             throw new InvalidMoveException();
         }
 
         ChessBoard newBoard = new ChessBoard(board);
-        newBoard.removePiece(move.getStartPosition());
+        boolean irreversible = board.getPiece(move.getEndPosition()) != null
+                || piece.getPieceType() == ChessPiece.PieceType.PAWN;
+        long hash = currentHash() ^ PositionHash.SIDE ^ PositionHash.state(board)
+                ^ play(newBoard, move) ^ PositionHash.state(newBoard);
 
-        //PAWN PROMOTION
-        if (piece.getPieceType() == ChessPiece.PieceType.PAWN) {
-            if ((piece.getTeamColor() == TeamColor.WHITE && move.getEndPosition().getRow() == 8) ||
-                    (piece.getTeamColor() == TeamColor.BLACK && move.getEndPosition().getRow() == 1)) {
-                // Promote
-                piece = new ChessPiece(piece.getTeamColor(), move.getPromotionPiece());
-            }
-        }
-        newBoard.addPiece(move.getEndPosition(), piece);
-
-        history.add(board);
         board = newBoard;
+        moveCount++;
 
         turn = (turn == TeamColor.WHITE) ? TeamColor.BLACK : TeamColor.WHITE;
+        HashMap<Long, Integer> counts = repetitions();
+        if (irreversible) {
+            halfmoveClock = 0;
+            positions.clear();
+            counts.clear();
+        } else {
+            halfmoveClock++;
+        }
+        positions.add(hash);
+        counts.merge(hash, 1, Integer::sum);
+    }
+
+    // the board was set from outside, so it starts a history of its own
+    private void resetPositions() {
+        halfmoveClock = 0;
+        positions = null;
+        repetitions = null;
+    }
+
+    // positions is null for a new game, after resetPositions and in games saved before it existed
+    private ArrayList<Long> positions() {
+        if (positions == null) {
+            positions = new ArrayList<>();
+            positions.add(PositionHash.of(board, turn));
+        }
+        return positions;
+    }
+
+    private long currentHash() {
+        return positions().get(positions().size() - 1);
+    }
+
+    private HashMap<Long, Integer> repetitions() {
+        if (repetitions == null) {
+            repetitions = new HashMap<>();
+            for (long hash : positions()) {
+                repetitions.merge(hash, 1, Integer::sum);
+            }
+        }
+        return repetitions;
     }
 
     private ChessPosition findKing(TeamColor teamColor, ChessBoard testBoard) {
@@ -236,6 +481,7 @@ public class ChessGame {
      */
     public void setBoard(ChessBoard board) {
         this.board = board;
+        resetPositions();
     }
 
     /**
@@ -256,6 +502,17 @@ public class ChessGame {
     public boolean isResigned() {
         return resigned;
     }
+
+    // a draw the board can't show by itself, e.g. one the server adjudicated
+    private boolean drawn = false;
+
+    public void setDrawn(boolean drawn) {
+        this.drawn = drawn;
+    }
+
+    public boolean isDrawn() {
+        return drawn;
+    }
     // helper for valid move
     public boolean isValidMove(ChessMove move) {
         ChessPiece piece = board.getPiece(move.getStartPosition());
@@ -0,0 +1,36 @@
+package chess;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one call to ChessGame.makeMove, legal or not. The
+ * duration is the time spent generating and checking moves.
+ */
+@Name("chess.MoveValidated")
+@Label("Move Validated")
+@Category("Chess")
+@Description("A move checked (and applied if legal) by ChessGame.makeMove")
+@StackTrace(false)
+class MoveValidatedEvent extends Event {
+
+    @Label("From")
+    String from;
+
+    @Label("To")
+    String to;
+
+    @Label("Piece")
+    String piece;
+
+    @Label("Legal Moves")
+    @Description("How many legal moves the piece had")
+    int legalMoves;
+
+    @Label("Accepted")
+    boolean accepted;
+}
@@ -0,0 +1,73 @@
+package chess;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist keys for ChessGame's repetition check: a position's hash is the XOR of one
+ * random key per piece on its square, plus SIDE when black is to move, plus one key
+ * per castling right held and one for an en passant column. A move changes it with a
+ * few XORs, so the game never has to look at the whole board to keep it.
+ */
+final class PositionHash {
+
+    // [color * 6 + type][square], squares 0 to 63 from a1
+    private static final long[][] PIECES = new long[12][64];
+    static final long SIDE;
+    private static final long[] CASTLING = new long[4];
+    // [column - 1]
+    private static final long[] EN_PASSANT = new long[8];
+
+    static {
+        // fixed seed, so a saved game's hashes still mean the same thing when it's loaded
+        SplittableRandom random = new SplittableRandom(0xD12A_3F01L);
+        for (long[] keys : PIECES) {
+            for (int square = 0; square < keys.length; square++) {
+                keys[square] = random.nextLong();
+            }
+        }
+        SIDE = random.nextLong();
+        // after the rest, so the keys above are the same as before these existed
+        for (int i = 0; i < CASTLING.length; i++) {
+            CASTLING[i] = random.nextLong();
+        }
+        for (int i = 0; i < EN_PASSANT.length; i++) {
+            EN_PASSANT[i] = random.nextLong();
+        }
+    }
+
+    private PositionHash() {
+    }
+
+    static long piece(ChessPiece piece, ChessPosition position) {
+        int kind = piece.getTeamColor().ordinal() * 6 + piece.getPieceType().ordinal();
+        return PIECES[kind][(position.getRow() - 1) * 8 + position.getColumn() - 1];
+    }
+
+    /** The castling rights and en passant column part of board's hash. */
+    static long state(ChessBoard board) {
+        long hash = 0;
+        int rights = board.getCastlingRights();
+        for (int i = 0; i < CASTLING.length; i++) {
+            if ((rights & 1 << i) != 0) {
+                hash ^= CASTLING[i];
+            }
+        }
+        int column = board.getEnPassantColumn();
+        return column == 0 ? hash : hash ^ EN_PASSANT[column - 1];
+    }
+
+    /** From scratch, when there's no earlier hash to update. */
+    static long of(ChessBoard board, ChessGame.TeamColor turn) {
+        long hash = (turn == ChessGame.TeamColor.BLACK ? SIDE : 0) ^ state(board);
+        for (int row = 1; row <= 8; row++) {
+            for (int col = 1; col <= 8; col++) {
+                ChessPosition position = new ChessPosition(row, col);
+                ChessPiece piece = board.getPiece(position);
+                if (piece != null) {
+                    hash ^= piece(piece, position);
+                }
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,234 @@
+package chess.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One endgame table: a byte for every arrangement of a fixed set of pieces (two kings
+ * and one or two others) with either side to move. The byte is the result for the
+ * side to move: DRAW, ILLEGAL, or plies to mate + 1, so an odd byte is a loss (the
+ * side to move gets mated) and an even one a win.
+ * <p>
+ * Positions are stored once per symmetry class. Without pawns the board can be
+ * mirrored and turned any of 8 ways, so the white king only ever needs to be in the
+ * a1-d1-d4 triangle (10 squares). Pawns only move one way, so with them it's just
+ * the left/right mirror, and the white king stays on files a to d (32 squares). An
+ * arrangement's index is the smallest one any of its symmetries gives, the rest of
+ * the indexes are ILLEGAL and never looked at.
+ * <p>
+ * Squares here are 0 to 63 (rank * 8 + file), not the 0x88 squares Position uses.
+ * The extra pieces are Position piece codes, white ones first and stronger first.
+ */
+final class EndgameTable {
+
+    static final int DRAW = 0;
+    static final int ILLEGAL = 255;
+
+    // material keys count each of the 10 kinds of piece in base 3, see materialKey
+    static final int MATERIAL_KEYS = 59049;
+    private static final int[] POW3 = {1, 3, 9, 27, 81, 243, 729, 2187, 6561, 19683};
+
+    private static final String LETTERS = " PNBRQ";
+
+    // [transform][square], bit 0 mirrors files, bit 1 mirrors ranks, bit 2 swaps them
+    private static final int[][] TRANSFORM = new int[8][64];
+    private static final int[] TRIANGLE = new int[64];
+    private static final int[] HALF = new int[64];
+    private static final int[] TRIANGLE_SQUARES = new int[10];
+    private static final int[] HALF_SQUARES = new int[32];
+
+    static {
+        for (int t = 0; t < 8; t++) {
+            for (int square = 0; square < 64; square++) {
+                int file = square & 7;
+                int rank = square >> 3;
+                if ((t & 1) != 0) {
+                    file = 7 - file;
+                }
+                if ((t & 2) != 0) {
+                    rank = 7 - rank;
+                }
+                TRANSFORM[t][square] = (t & 4) != 0 ? file * 8 + rank : rank * 8 + file;
+            }
+        }
+        int triangle = 0;
+        int half = 0;
+        for (int square = 0; square < 64; square++) {
+            int file = square & 7;
+            int rank = square >> 3;
+            TRIANGLE[square] = -1;
+            HALF[square] = -1;
+            if (file <= 3 && rank <= file) {
+                TRIANGLE_SQUARES[triangle] = square;
+                TRIANGLE[square] = triangle++;
+            }
+            if (file <= 3) {
+                HALF_SQUARES[half] = square;
+                HALF[square] = half++;
+            }
+        }
+    }
+
+    final String name;
+    final int[] pieces;
+    final boolean pawns;
+    final int size;
+    private final int kingSquares;
+    private final int radix1;
+    private final int radix2;
+    // both extra pieces the same, so either order is the same position
+    private final boolean twins;
+    private final ByteBuffer data;
+
+    EndgameTable(int[] pieces, ByteBuffer data) {
+        if (pieces.length < 1 || pieces.length > 2) {
+            throw new IllegalArgumentException("tables are for one or two pieces besides the kings");
+        }
+        this.pieces = pieces.clone();
+        this.name = name(pieces);
+        boolean anyPawn = false;
+        for (int piece : pieces) {
+            anyPawn |= (piece & Position.TYPE) == Position.PAWN;
+        }
+        this.pawns = anyPawn;
+        this.kingSquares = pawns ? 32 : 10;
+        this.radix1 = radix(pieces[0]);
+        this.radix2 = pieces.length > 1 ? radix(pieces[1]) : 1;
+        this.twins = pieces.length > 1 && pieces[0] == pieces[1];
+        this.size = 2 * kingSquares * 64 * radix1 * radix2;
+        this.data = data;
+        if (data != null && data.capacity() != size) {
+            throw new IllegalArgumentException(name + " needs " + size + " bytes but has " + data.capacity());
+        }
+    }
+
+    /** The table's name, e.g. "KQvKR": white's pieces, then black's. */
+    static String name(int[] pieces) {
+        StringBuilder white = new StringBuilder("K");
+        StringBuilder black = new StringBuilder("K");
+        for (int piece : pieces) {
+            ((piece & Position.COLOR) == Position.WHITE ? white : black).append(LETTERS.charAt(piece & Position.TYPE));
+        }
+        return white + "v" + black;
+    }
+
+    /** The pieces for a name like "KQvKR", in table order. */
+    static int[] parse(String name) {
+        String[] sides = name.split("v");
+        if (sides.length != 2 || !sides[0].startsWith("K") || !sides[1].startsWith("K")) {
+            throw new IllegalArgumentException("not a table name: " + name);
+        }
+        String letters = sides[0].substring(1) + sides[1].substring(1);
+        int[] pieces = new int[letters.length()];
+        for (int i = 0; i < letters.length(); i++) {
+            int type = LETTERS.indexOf(letters.charAt(i));
+            if (type < 1) {
+                throw new IllegalArgumentException("not a table name: " + name);
+            }
+            pieces[i] = (i < sides[0].length() - 1 ? Position.WHITE : Position.BLACK) | type;
+        }
+        sortPieces(pieces);
+        return pieces;
+    }
+
+    // white first, then the stronger piece first
+    static int order(int piece) {
+        return (piece & Position.COLOR) + 7 - (piece & Position.TYPE);
+    }
+
+    static void sortPieces(int[] pieces) {
+        if (pieces.length == 2 && order(pieces[1]) < order(pieces[0])) {
+            int swap = pieces[0];
+            pieces[0] = pieces[1];
+            pieces[1] = swap;
+        }
+    }
+
+    // there are never more than 2 of a kind in a table, so base 3 is enough
+    static int materialKey(int[] pieces) {
+        int key = 0;
+        for (int piece : pieces) {
+            key += materialKey(piece);
+        }
+        return key;
+    }
+
+    static int materialKey(int piece) {
+        return POW3[kind(piece)];
+    }
+
+    // pawn to queen for white 0 to 4, then black 5 to 9
+    static int kind(int piece) {
+        return (piece & Position.TYPE) - 1 + ((piece & Position.COLOR) == Position.WHITE ? 0 : 5);
+    }
+
+    private static int radix(int piece) {
+        return (piece & Position.TYPE) == Position.PAWN ? 48 : 64;
+    }
+
+    int get(int index) {
+        return data.get(index) & 0xFF;
+    }
+
+    /**
+     * The index of an arrangement, side being 0 for white to move and 1 for black. s2
+     * is ignored for a table with one extra piece. -1 if a pawn is on the first or last
+     * rank.
+     */
+    int index(int side, int wk, int bk, int s1, int s2) {
+        int best = -1;
+        for (int t = 0; t < (pawns ? 2 : 8); t++) {
+            int[] map = TRANSFORM[t];
+            int k = (pawns ? HALF : TRIANGLE)[map[wk]];
+            if (k < 0) {
+                continue;
+            }
+            int e1 = map[s1];
+            int e2 = pieces.length > 1 ? map[s2] : 0;
+            if (twins && e2 < e1) {
+                int swap = e1;
+                e1 = e2;
+                e2 = swap;
+            }
+            int i1 = slot(pieces[0], e1);
+            int i2 = pieces.length > 1 ? slot(pieces[1], e2) : 0;
+            if (i1 < 0 || i2 < 0) {
+                return -1;
+            }
+            int index = (((side * kingSquares + k) * 64 + map[bk]) * radix1 + i1) * radix2 + i2;
+            if (best < 0 || index < best) {
+                best = index;
+            }
+        }
+        return best;
+    }
+
+    private static int slot(int piece, int square) {
+        if ((piece & Position.TYPE) != Position.PAWN) {
+            return square;
+        }
+        return square >= 8 && square < 56 ? square - 8 : -1;
+    }
+
+    /** Takes an index apart into {side, wk, bk, s1, s2}. */
+    void decode(int index, int[] out) {
+        int i2 = index % radix2;
+        index /= radix2;
+        int i1 = index % radix1;
+        index /= radix1;
+        out[2] = index % 64;
+        index /= 64;
+        int k = index % kingSquares;
+        out[0] = index / kingSquares;
+        out[1] = pawns ? HALF_SQUARES[k] : TRIANGLE_SQUARES[k];
+        out[3] = radix1 == 48 ? i1 + 8 : i1;
+        out[4] = pieces.length > 1 ? (radix2 == 48 ? i2 + 8 : i2) : -1;
+    }
+
+    static int to64(int square88) {
+        return (square88 >> 4) * 8 + (square88 & 7);
+    }
+
+    static int to88(int square64) {
+        return (square64 >> 3) * 16 + (square64 & 7);
+    }
+}
@@ -0,0 +1,43 @@
+package chess.engine;
+
+import chess.ChessGame;
+import chess.ChessMove;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The entry point for anything that wants the computer to pick a move, e.g. server
+ * side bots. Converts the game once and searches on the engine's own board.
+ * <p>
+ * All searches, and all their threads, share one transposition table sized by
+ * chess.hashMb. Different games hash to different positions, so sharing only costs
+ * space. The endgame tablebase is the one in the chess.tablebase directory, if any.
+ */
+public final class Engine {
+
+    private static final TranspositionTable TABLE = TranspositionTable.fromConfig();
+    private static final Tablebase TABLEBASE = Tablebase.fromConfig();
+
+    private Engine() {
+    }
+
+    /** The move the engine likes best, or null if the side to move has no legal moves. */
+    public static ChessMove bestMove(ChessGame game, SearchLimits limits) {
+        return search(game, limits).move();
+    }
+
+    public static SearchResult search(ChessGame game, SearchLimits limits) {
+        return search(game, limits, new AtomicBoolean());
+    }
+
+    /** Like search, but stops early (returning what it has) once stop is set. */
+    public static SearchResult search(ChessGame game, SearchLimits limits, AtomicBoolean stop) {
+        return search(game, limits, 1, stop);
+    }
+
+    /** With threads greater than 1 the search runs Lazy SMP, see ParallelSearch. */
+    public static SearchResult search(ChessGame game, SearchLimits limits, int threads, AtomicBoolean stop) {
+        return new ParallelSearch(Position.of(game), TABLE, TABLEBASE, threads, stop, ParallelSearch.HELPER_THREADS)
+                .run(limits);
+    }
+}
@@ -0,0 +1,165 @@
+package chess.engine;
+
+/**
+ * Static evaluation: material plus piece-square tables, tapered between middlegame and
+ * endgame values by how much material is left. In centipawns from the side to move's
+ * point of view.
+ * <p>
+ * Position keeps the middlegame sum, the endgame sum and the phase up to date itself
+ * as pieces are put down and moves are made and unmade (see add()), so evaluate() is
+ * a few multiplications no matter what's on the board. rescan() works it all out
+ * from scratch, to check against.
+ */
+public final class Evaluator {
+
+    // middlegame and endgame piece values, the endgame ones favor rooks over minor pieces
+    private static final int[] VALUE_MG = {0, 82, 337, 365, 477, 1025, 0};
+    private static final int[] VALUE_EG = {0, 94, 281, 297, 512, 936, 0};
+
+    // how much each piece counts towards "still the middlegame", all of them is MAX_PHASE
+    private static final int[] PHASE_WEIGHT = {0, 0, 1, 1, 2, 4, 0};
+    static final int MAX_PHASE = 24;
+
+    // written the way the board looks from white's side, a8 top left
+    private static final int[][] MIDDLEGAME = {
+            {},
+            { // pawn
+                    0, 0, 0, 0, 0, 0, 0, 0,
+                    50, 50, 50, 50, 50, 50, 50, 50,
+                    10, 10, 20, 30, 30, 20, 10, 10,
+                    5, 5, 10, 25, 25, 10, 5, 5,
+                    0, 0, 0, 20, 20, 0, 0, 0,
+                    5, -5, -10, 0, 0, -10, -5, 5,
+                    5, 10, 10, -20, -20, 10, 10, 5,
+                    0, 0, 0, 0, 0, 0, 0, 0},
+            { // knight
+                    -50, -40, -30, -30, -30, -30, -40, -50,
+                    -40, -20, 0, 0, 0, 0, -20, -40,
+                    -30, 0, 10, 15, 15, 10, 0, -30,
+                    -30, 5, 15, 20, 20, 15, 5, -30,
+                    -30, 0, 15, 20, 20, 15, 0, -30,
+                    -30, 5, 10, 15, 15, 10, 5, -30,
+                    -40, -20, 0, 5, 5, 0, -20, -40,
+                    -50, -40, -30, -30, -30, -30, -40, -50},
+            { // bishop
+                    -20, -10, -10, -10, -10, -10, -10, -20,
+                    -10, 0, 0, 0, 0, 0, 0, -10,
+                    -10, 0, 5, 10, 10, 5, 0, -10,
+                    -10, 5, 5, 10, 10, 5, 5, -10,
+                    -10, 0, 10, 10, 10, 10, 0, -10,
+                    -10, 10, 10, 10, 10, 10, 10, -10,
+                    -10, 5, 0, 0, 0, 0, 5, -10,
+                    -20, -10, -10, -10, -10, -10, -10, -20},
+            { // rook
+                    0, 0, 0, 0, 0, 0, 0, 0,
+                    5, 10, 10, 10, 10, 10, 10, 5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    -5, 0, 0, 0, 0, 0, 0, -5,
+                    0, 0, 0, 5, 5, 0, 0, 0},
+            { // queen
+                    -20, -10, -10, -5, -5, -10, -10, -20,
+                    -10, 0, 0, 0, 0, 0, 0, -10,
+                    -10, 0, 5, 5, 5, 5, 0, -10,
+                    -5, 0, 5, 5, 5, 5, 0, -5,
+                    0, 0, 5, 5, 5, 5, 0, -5,
+                    -10, 5, 5, 5, 5, 5, 0, -10,
+                    -10, 0, 5, 0, 0, 0, 0, -10,
+                    -20, -10, -10, -5, -5, -10, -10, -20},
+            { // king, middlegame
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -30, -40, -40, -50, -50, -40, -40, -30,
+                    -20, -30, -30, -40, -40, -30, -30, -20,
+                    -10, -20, -20, -20, -20, -20, -20, -10,
+                    20, 20, 0, 0, 0, 0, 20, 20,
+                    20, 30, 10, 0, 0, 10, 30, 20},
+    };
+
+    // only pawns and the king change their minds in the endgame: pawns get pushed, the
+    // king comes out to the middle
+    private static final int[] PAWN_EG = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            80, 80, 80, 80, 80, 80, 80, 80,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            30, 30, 30, 30, 30, 30, 30, 30,
+            15, 15, 15, 15, 15, 15, 15, 15,
+            5, 5, 5, 5, 5, 5, 5, 5,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] KING_EG = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10, 0, 0, -10, -20, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -30, 0, 0, 0, 0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50};
+
+    // [piece][0x88 square], material included and negative for black, so keeping the
+    // sums is one lookup per piece moved
+    static final int[][] MG = new int[16][128];
+    static final int[][] EG = new int[16][128];
+    static final int[] PHASE = new int[16];
+
+    static {
+        for (int type = Position.PAWN; type <= Position.KING; type++) {
+            int[] middlegame = MIDDLEGAME[type];
+            int[] endgame = type == Position.PAWN ? PAWN_EG : type == Position.KING ? KING_EG : middlegame;
+            PHASE[Position.WHITE | type] = PHASE_WEIGHT[type];
+            PHASE[Position.BLACK | type] = PHASE_WEIGHT[type];
+            for (int rank = 0; rank < 8; rank++) {
+                for (int file = 0; file < 8; file++) {
+                    int square = rank * 16 + file;
+                    int white = (7 - rank) * 8 + file;
+                    // black reads the tables upside down
+                    int black = rank * 8 + file;
+                    MG[Position.WHITE | type][square] = VALUE_MG[type] + middlegame[white];
+                    EG[Position.WHITE | type][square] = VALUE_EG[type] + endgame[white];
+                    MG[Position.BLACK | type][square] = -(VALUE_MG[type] + middlegame[black]);
+                    EG[Position.BLACK | type][square] = -(VALUE_EG[type] + endgame[black]);
+                }
+            }
+        }
+    }
+
+    private Evaluator() {
+    }
+
+    /** O(1), from the sums Position keeps. */
+    public static int evaluate(Position pos) {
+        return taper(pos.mg, pos.eg, pos.phase, pos.side);
+    }
+
+    /** The same thing the slow way, looking at every square. */
+    public static int rescan(Position pos) {
+        int mg = 0;
+        int eg = 0;
+        int phase = 0;
+        int[] board = pos.board;
+        for (int square = 0; square < 128; square++) {
+            if ((square & 0x88) != 0) {
+                square += 7;
+                continue;
+            }
+            int piece = board[square];
+            if (piece != 0) {
+                mg += MG[piece][square];
+                eg += EG[piece][square];
+                phase += PHASE[piece];
+            }
+        }
+        return taper(mg, eg, phase, pos.side);
+    }
+
+    private static int taper(int mg, int eg, int phase, int side) {
+        // promotions can push it past the starting material
+        int p = Math.min(phase, MAX_PHASE);
+        int score = (mg * p + eg * (MAX_PHASE - p)) / MAX_PHASE;
+        return side == Position.WHITE ? score : -score;
+    }
+}
@@ -0,0 +1,120 @@
+package chess.engine;
+
+/**
+ * Reading and writing positions in Forsyth-Edwards Notation. The move clocks don't
+ * mean anything to this engine, they're ignored when parsing and written as "0 1".
+ * Everything after the side to move is optional. Castling rights whose king and rook
+ * aren't at home are dropped, and so is an en passant square no pawn can take on.
+ */
+public final class Fen {
+
+    public static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private static final String PIECES = " pnbrqk";
+    // in the order of the castling bits
+    private static final String CASTLING = "KQkq";
+
+    private Fen() {
+    }
+
+    public static Position parse(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 2) {
+            throw new IllegalArgumentException("FEN needs at least pieces and side to move: " + fen);
+        }
+        Position pos = new Position();
+        String[] ranks = fields[0].split("/");
+        if (ranks.length != 8) {
+            throw new IllegalArgumentException("FEN needs 8 ranks: " + fen);
+        }
+        boolean[] kingSeen = new boolean[2];
+        for (int i = 0; i < 8; i++) {
+            int rank = 7 - i;
+            int file = 0;
+            for (char c : ranks[i].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    file += c - '0';
+                    continue;
+                }
+                int type = PIECES.indexOf(Character.toLowerCase(c));
+                if (type <= 0 || file > 7) {
+                    throw new IllegalArgumentException("bad rank '" + ranks[i] + "' in FEN: " + fen);
+                }
+                int color = Character.isUpperCase(c) ? Position.WHITE : Position.BLACK;
+                pos.put(rank * 16 + file, color | type);
+                if (type == Position.KING) {
+                    kingSeen[color >> 3] = true;
+                }
+                file++;
+            }
+            if (file != 8) {
+                throw new IllegalArgumentException("rank '" + ranks[i] + "' isn't 8 squares in FEN: " + fen);
+            }
+        }
+        if (!kingSeen[0] || !kingSeen[1]) {
+            throw new IllegalArgumentException("FEN needs a king for each side: " + fen);
+        }
+        pos.setSide(switch (fields[1]) {
+            case "w" -> Position.WHITE;
+            case "b" -> Position.BLACK;
+            default -> throw new IllegalArgumentException("bad side to move in FEN: " + fen);
+        });
+        if (fields.length > 2 && !fields[2].equals("-")) {
+            int rights = 0;
+            for (char c : fields[2].toCharArray()) {
+                int bit = CASTLING.indexOf(c);
+                if (bit < 0) {
+                    throw new IllegalArgumentException("bad castling rights in FEN: " + fen);
+                }
+                rights |= 1 << bit;
+            }
+            pos.setCastling(rights);
+        }
+        if (fields.length > 3 && !fields[3].equals("-")) {
+            String ep = fields[3];
+            int rank = pos.side == Position.WHITE ? '6' : '3';
+            if (ep.length() != 2 || ep.charAt(0) < 'a' || ep.charAt(0) > 'h' || ep.charAt(1) != rank) {
+                throw new IllegalArgumentException("bad en passant square in FEN: " + fen);
+            }
+            pos.setEpSquare((rank - '1') * 16 + ep.charAt(0) - 'a');
+        }
+        return pos;
+    }
+
+    public static String format(Position pos) {
+        StringBuilder sb = new StringBuilder(90);
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int piece = pos.board[rank * 16 + file];
+                if (piece == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    sb.append(empty);
+                    empty = 0;
+                }
+                char c = PIECES.charAt(piece & Position.TYPE);
+                sb.append((piece & Position.COLOR) == Position.WHITE ? Character.toUpperCase(c) : c);
+            }
+            if (empty > 0) {
+                sb.append(empty);
+            }
+            if (rank > 0) {
+                sb.append('/');
+            }
+        }
+        sb.append(pos.side == Position.WHITE ? " w " : " b ");
+        if (pos.castling == 0) {
+            sb.append('-');
+        }
+        for (int bit = 0; bit < 4; bit++) {
+            if ((pos.castling & 1 << bit) != 0) {
+                sb.append(CASTLING.charAt(bit));
+            }
+        }
+        sb.append(' ').append(pos.epSquare == 0 ? "-" : Position.square(pos.epSquare)).append(" 0 1");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,154 @@
+package chess.engine;
+
+import chess.ChessGame;
+import chess.ChessMove;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Moves to play from a book file instead of searching. The file is in Polyglot's
+ * format: 16 byte big-endian entries of key (8 bytes, see BookKey), move (2), weight
+ * (2) and a learn field (4) that's ignored, sorted by key. A position with several
+ * moves has several entries in a row.
+ * <p>
+ * The file is memory-mapped rather than read, so a big book costs no heap and only
+ * the pages a lookup touches are ever loaded. A lookup is a binary search for the
+ * first entry with the key. Reads don't move the buffer's position, so any number of
+ * threads can look things up at once.
+ * <p>
+ * BookBuilder, in the bench module, makes these files out of PGN.
+ */
+public final class OpeningBook {
+
+    static final int ENTRY_BYTES = 16;
+
+    /** A book without any moves, for when there isn't a book file. */
+    public static final OpeningBook EMPTY = new OpeningBook(ByteBuffer.allocate(0));
+
+    public record BookMove(int move, int weight) {
+        public ChessMove chessMove() {
+            return Position.toChessMove(move);
+        }
+    }
+
+    private final ByteBuffer entries;
+    private final int size;
+
+    private OpeningBook(ByteBuffer entries) {
+        this.entries = entries;
+        this.size = entries.capacity() / ENTRY_BYTES;
+    }
+
+    public static OpeningBook open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long bytes = channel.size();
+            if (bytes % ENTRY_BYTES != 0) {
+                throw new IOException(path + " isn't a book, its size isn't a multiple of " + ENTRY_BYTES);
+            }
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too big for one mapping, books up to 2 GB are supported");
+            }
+            // the mapping stays valid after the channel is closed
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes));
+        }
+    }
+
+    /** The book at the chess.book system property, or EMPTY if it isn't set. */
+    public static OpeningBook fromConfig() {
+        String path = System.getProperty("chess.book");
+        if (path == null || path.isBlank()) {
+            return EMPTY;
+        }
+        try {
+            return open(Path.of(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException("can't open opening book " + path, e);
+        }
+    }
+
+    /** How many entries there are, counting each move of each position. */
+    public int size() {
+        return size;
+    }
+
+    /** The book's legal moves for pos, most weight first. Empty if pos isn't in the book. */
+    public List<BookMove> moves(Position pos) {
+        List<BookMove> found = new ArrayList<>();
+        long key = BookKey.of(pos);
+        int i = firstAtLeast(key);
+        if (i == size || key(i) != key) {
+            return found;
+        }
+        int[] legal = new int[Position.MAX_MOVES];
+        int count = pos.legalMoves(legal);
+        for (; i < size && key(i) == key; i++) {
+            int offset = i * ENTRY_BYTES;
+            int weight = Short.toUnsignedInt(entries.getShort(offset + 10));
+            // a move that's illegal here is a key collision or a rule the engine doesn't know
+            int move = BookKey.decode(Short.toUnsignedInt(entries.getShort(offset + 8)), legal, count);
+            if (move != 0 && weight > 0) {
+                found.add(new BookMove(move, weight));
+            }
+        }
+        found.sort(Comparator.comparingInt(BookMove::weight).reversed());
+        return found;
+    }
+
+    public List<BookMove> moves(ChessGame game) {
+        return moves(Position.of(game));
+    }
+
+    /** One of the book's moves for pos picked at random by weight, or 0 if there aren't any. */
+    public int pick(Position pos, RandomGenerator random) {
+        List<BookMove> moves = moves(pos);
+        int total = 0;
+        for (BookMove move : moves) {
+            total += move.weight();
+        }
+        if (total == 0) {
+            return 0;
+        }
+        int r = random.nextInt(total);
+        for (BookMove move : moves) {
+            r -= move.weight();
+            if (r < 0) {
+                return move.move();
+            }
+        }
+        throw new AssertionError();
+    }
+
+    /** Like pick, as a ChessMove, or null if game's position isn't in the book. */
+    public ChessMove pick(ChessGame game, RandomGenerator random) {
+        int move = pick(Position.of(game), random);
+        return move == 0 ? null : Position.toChessMove(move);
+    }
+
+    // the index of the first entry with a key of at least key, keys compared unsigned like Polyglot does
+    private int firstAtLeast(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(key(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long key(int i) {
+        return entries.getLong(i * ENTRY_BYTES);
+    }
+}
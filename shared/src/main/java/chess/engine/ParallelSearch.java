@@ -0,0 +1,96 @@
+package chess.engine;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lazy SMP: the calling thread runs a normal search while helper threads search the
+ * same root on their own copies of the position. Nothing is divided up explicitly.
+ * The helpers fill the shared transposition table, which lets the main search cut off
+ * sooner. They skip different depths (see Search), so they don't just repeat each
+ * other's work.
+ * <p>
+ * Only the main search's limits and result count. When it's done the helpers are
+ * stopped and waited for, so nothing keeps writing to the table after run returns.
+ */
+public final class ParallelSearch {
+
+    private static final ThreadFactory HELPERS = Thread.ofPlatform().daemon().name("chess-search-", 1).factory();
+    static final Executor HELPER_THREADS = task -> HELPERS.newThread(task).start();
+
+    private final Position pos;
+    private final TranspositionTable table;
+    private final Tablebase tablebase;
+    private final int threads;
+    private final AtomicBoolean stop;
+    private final Executor executor;
+
+    /** threads counts the calling thread, so 1 is the same as a plain Search. */
+    public ParallelSearch(Position pos, TranspositionTable table, int threads, AtomicBoolean stop) {
+        this(pos, table, Tablebase.EMPTY, threads, stop, HELPER_THREADS);
+    }
+
+    /** Runs the helpers on executor instead of a new thread each. */
+    public ParallelSearch(Position pos, TranspositionTable table, int threads, AtomicBoolean stop, Executor executor) {
+        this(pos, table, Tablebase.EMPTY, threads, stop, executor);
+    }
+
+    /** Every thread probes tablebase too, see Search. */
+    public ParallelSearch(Position pos, TranspositionTable table, Tablebase tablebase, int threads, AtomicBoolean stop,
+                          Executor executor) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("need at least one search thread");
+        }
+        this.pos = pos;
+        this.table = table;
+        this.tablebase = tablebase;
+        this.threads = threads;
+        this.stop = stop;
+        this.executor = executor;
+    }
+
+    /** A search of its own as far as the table's aging goes, see TranspositionTable.newSearch. */
+    public SearchResult run(SearchLimits limits) {
+        table.newSearch();
+        if (threads == 1) {
+            return new Search(pos, table, tablebase, stop).run(limits);
+        }
+        AtomicBoolean helpersStop = new AtomicBoolean();
+        AtomicLong helperNodes = new AtomicLong();
+        CountDownLatch helpersDone = new CountDownLatch(threads - 1);
+        Search main = new Search(pos, table, tablebase, stop);
+        SearchLimits helperLimits = SearchLimits.depth(limits.maxDepth());
+        SearchResult result;
+        try {
+            for (int i = 1; i < threads; i++) {
+                Search helper = new Search(pos.copy(), table, tablebase, helpersStop, i);
+                try {
+                    executor.execute(() -> {
+                        try {
+                            helperNodes.addAndGet(helper.run(helperLimits).nodes());
+                        } finally {
+                            helpersDone.countDown();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // a busy executor just means fewer helpers
+                    helpersDone.countDown();
+                }
+            }
+            result = main.run(limits);
+        } finally {
+            helpersStop.set(true);
+        }
+        try {
+            helpersDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new SearchResult(result.move(), result.score(), result.depth(),
+                result.nodes() + helperNodes.get(), result.nanos(), result.pv());
+    }
+}
@@ -0,0 +1,34 @@
+package chess.engine;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth. The counts for well
+ * known positions are published, so this is how move generation gets checked, and
+ * it doubles as a raw make/unmake speed test.
+ */
+public final class Perft {
+
+    private Perft() {
+    }
+
+    public static long perft(Position pos, int depth) {
+        return perft(pos, depth, new int[(depth + 1) * Position.MAX_MOVES]);
+    }
+
+    private static long perft(Position pos, int depth, int[] moves) {
+        if (depth == 0) {
+            return 1;
+        }
+        int start = depth * Position.MAX_MOVES;
+        int end = pos.generate(moves, start, false);
+        long nodes = 0;
+        for (int i = start; i < end; i++) {
+            int move = moves[i];
+            pos.makeMove(move);
+            if (!pos.leftKingInCheck()) {
+                nodes += depth == 1 ? 1 : perft(pos, depth - 1, moves);
+            }
+            pos.unmakeMove(move);
+        }
+        return nodes;
+    }
+}
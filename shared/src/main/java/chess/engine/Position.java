@@ -0,0 +1,745 @@
+package chess.engine;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPosition;
+
+import java.util.Arrays;
+
+/**
+ * The engine's own board. ChessGame copies a whole board per move and allocates
+ * ChessPositions everywhere, which is fine for players but far too slow to search
+ * with, so this keeps the pieces as ints in a 0x88 array and makes/unmakes moves in
+ * place.
+ * <p>
+ * Squares are rank * 16 + file with rank and file counted from 0 (a1 is 0, h8 is
+ * 0x77). Anything with a 0x88 bit set is off the board, which makes edge checks one
+ * AND. Pieces are a color (WHITE or BLACK) or'd with a type, 0 is empty.
+ * <p>
+ * Moves are ints as well, see move(). Castling rights and the en passant square are
+ * kept as a few bits next to the board and updated as moves are made. Their old
+ * values go on a stack, so unmakeMove can put them back without the move having to
+ * carry them.
+ */
+public final class Position {
+
+    public static final int WHITE = 0;
+    public static final int BLACK = 8;
+
+    static final int PAWN = 1;
+    static final int KNIGHT = 2;
+    static final int BISHOP = 3;
+    static final int ROOK = 4;
+    static final int QUEEN = 5;
+    static final int KING = 6;
+    static final int TYPE = 7;
+    static final int COLOR = 8;
+
+    static final int[] KNIGHT_STEPS = {33, 31, 18, 14, -14, -18, -31, -33};
+    static final int[] KING_STEPS = {17, 16, 15, 1, -1, -15, -16, -17};
+    static final int[] BISHOP_STEPS = {17, 15, -15, -17};
+    static final int[] ROOK_STEPS = {16, 1, -1, -16};
+
+    // castling rights, the same bits as ChessBoard's
+    static final int WHITE_KINGSIDE = 1;
+    static final int WHITE_QUEENSIDE = 2;
+    static final int BLACK_KINGSIDE = 4;
+    static final int BLACK_QUEENSIDE = 8;
+
+    // the rights a move from or to each square keeps: a king or rook leaving home, or
+    // anything landing on a rook's home square, loses them
+    private static final int[] CASTLING_KEPT = new int[128];
+
+    static {
+        Arrays.fill(CASTLING_KEPT, 15);
+        CASTLING_KEPT[0x04] = ~(WHITE_KINGSIDE | WHITE_QUEENSIDE) & 15;
+        CASTLING_KEPT[0x07] = ~WHITE_KINGSIDE & 15;
+        CASTLING_KEPT[0x00] = ~WHITE_QUEENSIDE & 15;
+        CASTLING_KEPT[0x74] = ~(BLACK_KINGSIDE | BLACK_QUEENSIDE) & 15;
+        CASTLING_KEPT[0x77] = ~BLACK_KINGSIDE & 15;
+        CASTLING_KEPT[0x70] = ~BLACK_QUEENSIDE & 15;
+    }
+
+    // [0x88 difference + 119]: the step from one square toward the other if they share a
+    // rank, file or diagonal, otherwise 0. 0x88 differences are unique, so no two
+    // directions ever land on the same index
+    private static final byte[] DIRECTIONS = new byte[239];
+
+    static {
+        for (int step : KING_STEPS) {
+            for (int i = 1; i < 8; i++) {
+                DIRECTIONS[step * i + 119] = (byte) step;
+            }
+        }
+    }
+
+    // whether the side to move is in check, as far as anyone has worked out yet
+    private static final int CHECK_UNKNOWN = 0;
+    private static final int IN_CHECK = 1;
+    private static final int NOT_IN_CHECK = 2;
+
+    // biggest number of pseudo-legal moves a position can have is 218
+    public static final int MAX_MOVES = 256;
+
+    final int[] board = new int[128];
+    int side = WHITE;
+    // indexed by color >> 3
+    final int[] kings = new int[2];
+    // Zobrist hash, kept up to date by put, setSide and make/unmake
+    long hash;
+    // white minus black material and piece-square sums, and the game phase, see Evaluator
+    int mg;
+    int eg;
+    int phase;
+    // kings included, for telling when a tablebase might have the position
+    int pieces;
+    // a right is only ever set while that king and rook are on their home squares
+    int castling;
+    // where a pawn can take en passant, 0 if nowhere (a1 never could be). Only set when
+    // there's a pawn beside the one that moved two, so it's in the hash exactly when it
+    // makes a difference
+    int epSquare;
+    private int check;
+    // after a move made when the mover wasn't in check, where it came from. Only a piece
+    // leaving a line to its own king can have uncovered a check then, see leftKingInCheck.
+    // -1 when that doesn't hold, e.g. after a king move or en passant
+    private int movedFrom = -1;
+
+    // two per move made: the hash from before it, then castling | epSquare << 4 | check << 11
+    private long[] undo = new long[2 * Search.MAX_PLY];
+    private int undoTop;
+
+    Position() {
+    }
+
+    /** The normal starting position. */
+    public static Position start() {
+        return Fen.parse(Fen.START);
+    }
+
+    /** The position in game, with the same side to move. */
+    public static Position of(ChessGame game) {
+        Position pos = new Position();
+        ChessBoard chessBoard = game.getBoard();
+        for (int rank = 0; rank < 8; rank++) {
+            for (int file = 0; file < 8; file++) {
+                ChessPiece piece = chessBoard.getPiece(new ChessPosition(rank + 1, file + 1));
+                if (piece != null) {
+                    int color = piece.getTeamColor() == ChessGame.TeamColor.WHITE ? WHITE : BLACK;
+                    pos.put(rank * 16 + file, color | typeOf(piece.getPieceType()));
+                }
+            }
+        }
+        pos.setSide(game.getTeamTurn() == ChessGame.TeamColor.WHITE ? WHITE : BLACK);
+        pos.setCastling(chessBoard.getCastlingRights());
+        int column = chessBoard.getEnPassantColumn();
+        if (column != 0) {
+            pos.setEpSquare((pos.side == WHITE ? 0x50 : 0x20) + column - 1);
+        }
+        return pos;
+    }
+
+    /** Only for setting up, the square has to be empty. */
+    void put(int square, int piece) {
+        board[square] = piece;
+        check = CHECK_UNKNOWN;
+        hash ^= Zobrist.PIECES[piece][square];
+        mg += Evaluator.MG[piece][square];
+        eg += Evaluator.EG[piece][square];
+        phase += Evaluator.PHASE[piece];
+        pieces++;
+        if ((piece & TYPE) == KING) {
+            kings[piece >> 3] = square;
+        }
+    }
+
+    /** Back to an empty board with white to move, for setting up another position in the same object. */
+    void clear() {
+        Arrays.fill(board, 0);
+        side = WHITE;
+        hash = 0;
+        mg = 0;
+        eg = 0;
+        phase = 0;
+        pieces = 0;
+        castling = 0;
+        epSquare = 0;
+        check = CHECK_UNKNOWN;
+        movedFrom = -1;
+        undoTop = 0;
+    }
+
+    void setSide(int color) {
+        if (color != side) {
+            side = color;
+            hash ^= Zobrist.SIDE;
+            check = CHECK_UNKNOWN;
+        }
+    }
+
+    /** After the pieces are in place, rights without their king and rook at home are dropped. */
+    void setCastling(int rights) {
+        if (board[0x04] != (WHITE | KING)) {
+            rights &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        }
+        if (board[0x07] != (WHITE | ROOK)) {
+            rights &= ~WHITE_KINGSIDE;
+        }
+        if (board[0x00] != (WHITE | ROOK)) {
+            rights &= ~WHITE_QUEENSIDE;
+        }
+        if (board[0x74] != (BLACK | KING)) {
+            rights &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        }
+        if (board[0x77] != (BLACK | ROOK)) {
+            rights &= ~BLACK_KINGSIDE;
+        }
+        if (board[0x70] != (BLACK | ROOK)) {
+            rights &= ~BLACK_QUEENSIDE;
+        }
+        hash ^= Zobrist.CASTLING[castling] ^ Zobrist.CASTLING[rights];
+        castling = rights;
+    }
+
+    /**
+     * After the pieces and side to move are in place. Dropped unless the side to move
+     * has a pawn that could take there, the way updateEnPassant does it.
+     */
+    void setEpSquare(int square) {
+        hash ^= Zobrist.EN_PASSANT[epSquare];
+        epSquare = 0;
+        int pawn = square + (side == WHITE ? -16 : 16);
+        if (board[pawn] == (side ^ BLACK | PAWN) && board[square] == 0) {
+            updateEnPassant(pawn, square);
+        }
+    }
+
+    /** An independent copy, e.g. for another search thread. */
+    public Position copy() {
+        Position copy = new Position();
+        System.arraycopy(board, 0, copy.board, 0, board.length);
+        copy.kings[0] = kings[0];
+        copy.kings[1] = kings[1];
+        copy.side = side;
+        copy.hash = hash;
+        copy.mg = mg;
+        copy.eg = eg;
+        copy.phase = phase;
+        copy.pieces = pieces;
+        copy.castling = castling;
+        copy.epSquare = epSquare;
+        return copy;
+    }
+
+    public int sideToMove() {
+        return side;
+    }
+
+    public long hash() {
+        return hash;
+    }
+
+    /** How many pieces are on the board, kings included. */
+    public int pieceCount() {
+        return pieces;
+    }
+
+    // ---- moves: from | to << 7 | promotion type << 14 | captured piece << 17, and
+    // SPECIAL for castling (a king move) or en passant (a pawn move)
+
+    static final int SPECIAL = 1 << 21;
+
+    static int move(int from, int to, int promotion, int captured) {
+        return from | to << 7 | promotion << 14 | captured << 17;
+    }
+
+    static int from(int move) {
+        return move & 0x7F;
+    }
+
+    static int to(int move) {
+        return move >>> 7 & 0x7F;
+    }
+
+    static int promotion(int move) {
+        return move >>> 14 & 7;
+    }
+
+    static int captured(int move) {
+        return move >>> 17 & 0xF;
+    }
+
+    // castling counts, en passant doesn't since it captures
+    static boolean isQuiet(int move) {
+        return (move >>> 14 & 0x7F) == 0;
+    }
+
+    // makeMove, unmakeMove and the helpers they call are kept small enough for the JIT
+    // to inline into the search and perft loops, which is worth more than it looks
+
+    public void makeMove(int move) {
+        pushUndo();
+        int from = from(move);
+        int to = to(move);
+        int piece = board[from];
+        int promotion = promotion(move);
+        int placed = promotion != 0 ? side | promotion : piece;
+        board[from] = 0;
+        board[to] = placed;
+        if ((piece & TYPE) == KING) {
+            kings[side >> 3] = to;
+        }
+        hash ^= Zobrist.PIECES[piece][from] ^ Zobrist.PIECES[placed][to] ^ Zobrist.SIDE;
+        mg += Evaluator.MG[placed][to] - Evaluator.MG[piece][from];
+        eg += Evaluator.EG[placed][to] - Evaluator.EG[piece][from];
+        // a promotion brings a piece back into the phase count, a capture takes one out
+        phase += Evaluator.PHASE[placed] - Evaluator.PHASE[piece];
+        int captured = captured(move);
+        if ((move & SPECIAL) != 0) {
+            makeSpecial(from, to, captured);
+        } else if (captured != 0) {
+            hash ^= Zobrist.PIECES[captured][to];
+            mg -= Evaluator.MG[captured][to];
+            eg -= Evaluator.EG[captured][to];
+            phase -= Evaluator.PHASE[captured];
+            pieces--;
+        }
+        side ^= BLACK;
+        updateState(move, piece);
+    }
+
+    private void pushUndo() {
+        if (undoTop == undo.length) {
+            undo = Arrays.copyOf(undo, undoTop * 2);
+        }
+        undo[undoTop++] = hash;
+        undo[undoTop++] = castling | epSquare << 4 | check << 11;
+    }
+
+    // castling rights, the en passant square and what's known about check after piece
+    // made move, with side already switched to the one moving next
+    private void updateState(int move, int piece) {
+        int from = from(move);
+        int to = to(move);
+        movedFrom = check == NOT_IN_CHECK && (piece & TYPE) != KING && (move & SPECIAL) == 0 ? from : -1;
+        check = CHECK_UNKNOWN;
+        if (epSquare != 0) {
+            hash ^= Zobrist.EN_PASSANT[epSquare];
+            epSquare = 0;
+        }
+        if (castling != 0) {
+            int rights = castling & CASTLING_KEPT[from] & CASTLING_KEPT[to];
+            hash ^= Zobrist.CASTLING[castling] ^ Zobrist.CASTLING[rights];
+            castling = rights;
+        }
+        if ((piece & TYPE) == PAWN && (to - from == 32 || from - to == 32)) {
+            updateEnPassant(to, (from + to) >> 1);
+        }
+    }
+
+    // castling moves the rook too, en passant takes the pawn beside from rather than one on to
+    private void makeSpecial(int from, int to, int captured) {
+        if (captured == 0) {
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = (from + to) >> 1;
+            int rook = board[rookFrom];
+            board[rookFrom] = 0;
+            board[rookTo] = rook;
+            hash ^= Zobrist.PIECES[rook][rookFrom] ^ Zobrist.PIECES[rook][rookTo];
+            mg += Evaluator.MG[rook][rookTo] - Evaluator.MG[rook][rookFrom];
+            eg += Evaluator.EG[rook][rookTo] - Evaluator.EG[rook][rookFrom];
+        } else {
+            // one rank back from to, whichever way the pawn was going
+            int square = to ^ 16;
+            board[square] = 0;
+            hash ^= Zobrist.PIECES[captured][square];
+            mg -= Evaluator.MG[captured][square];
+            eg -= Evaluator.EG[captured][square];
+            phase -= Evaluator.PHASE[captured];
+            pieces--;
+        }
+    }
+
+    // pawn just moved two squares to square, so passed can be taken en passant if the
+    // side to move has a pawn beside it
+    private void updateEnPassant(int square, int passed) {
+        int pawn = side | PAWN;
+        if (((square - 1) & 0x88) == 0 && board[square - 1] == pawn
+                || ((square + 1) & 0x88) == 0 && board[square + 1] == pawn) {
+            epSquare = passed;
+            hash ^= Zobrist.EN_PASSANT[passed];
+        }
+    }
+
+    public void unmakeMove(int move) {
+        side ^= BLACK;
+        popUndo();
+
+        int from = from(move);
+        int to = to(move);
+        int placed = board[to];
+        int piece = promotion(move) != 0 ? side | PAWN : placed;
+        int captured = captured(move);
+        board[from] = piece;
+        board[to] = captured;
+        if ((piece & TYPE) == KING) {
+            kings[side >> 3] = from;
+        }
+        mg -= Evaluator.MG[placed][to] - Evaluator.MG[piece][from];
+        eg -= Evaluator.EG[placed][to] - Evaluator.EG[piece][from];
+        phase -= Evaluator.PHASE[placed] - Evaluator.PHASE[piece];
+        if ((move & SPECIAL) != 0) {
+            unmakeSpecial(from, to, captured);
+        } else if (captured != 0) {
+            mg += Evaluator.MG[captured][to];
+            eg += Evaluator.EG[captured][to];
+            phase += Evaluator.PHASE[captured];
+            pieces++;
+        }
+    }
+
+    private void popUndo() {
+        int state = (int) undo[--undoTop];
+        hash = undo[--undoTop];
+        castling = state & 15;
+        epSquare = state >> 4 & 0x7F;
+        check = state >> 11;
+        movedFrom = -1;
+    }
+
+    private void unmakeSpecial(int from, int to, int captured) {
+        if (captured == 0) {
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = (from + to) >> 1;
+            int rook = board[rookTo];
+            board[rookTo] = 0;
+            board[rookFrom] = rook;
+            mg -= Evaluator.MG[rook][rookTo] - Evaluator.MG[rook][rookFrom];
+            eg -= Evaluator.EG[rook][rookTo] - Evaluator.EG[rook][rookFrom];
+        } else {
+            int square = to ^ 16;
+            board[to] = 0;
+            board[square] = captured;
+            mg += Evaluator.MG[captured][square];
+            eg += Evaluator.EG[captured][square];
+            phase += Evaluator.PHASE[captured];
+            pieces++;
+        }
+    }
+
+    /** Whether the side to move is in check. */
+    public boolean inCheck() {
+        if (check == CHECK_UNKNOWN) {
+            check = isAttacked(kings[side >> 3], side ^ BLACK) ? IN_CHECK : NOT_IN_CHECK;
+        }
+        return check == IN_CHECK;
+    }
+
+    /** After makeMove: whether that move left its own king attacked, i.e. wasn't legal. */
+    boolean leftKingInCheck() {
+        int king = kings[(side ^ BLACK) >> 3];
+        if (movedFrom < 0) {
+            return isAttacked(king, side);
+        }
+        // the only way in is a slider behind where the piece was, on the line from the king
+        int step = DIRECTIONS[movedFrom - king + 119];
+        if (step == 0) {
+            return false;
+        }
+        for (int s = king + step; (s & 0x88) == 0; s += step) {
+            int piece = board[s];
+            if (piece != 0) {
+                if ((piece & COLOR) != side) {
+                    return false;
+                }
+                int type = piece & TYPE;
+                boolean straight = step == 1 || step == -1 || step == 16 || step == -16;
+                return type == QUEEN || type == (straight ? ROOK : BISHOP);
+            }
+        }
+        return false;
+    }
+
+    boolean isAttacked(int square, int by) {
+        // pawns attack diagonally forward, so look diagonally backward from the square
+        int pawn = by | PAWN;
+        int back = by == WHITE ? -16 : 16;
+        int s = square + back - 1;
+        if ((s & 0x88) == 0 && board[s] == pawn) {
+            return true;
+        }
+        s = square + back + 1;
+        if ((s & 0x88) == 0 && board[s] == pawn) {
+            return true;
+        }
+        int knight = by | KNIGHT;
+        for (int step : KNIGHT_STEPS) {
+            s = square + step;
+            if ((s & 0x88) == 0 && board[s] == knight) {
+                return true;
+            }
+        }
+        int king = by | KING;
+        for (int step : KING_STEPS) {
+            s = square + step;
+            if ((s & 0x88) == 0 && board[s] == king) {
+                return true;
+            }
+        }
+        int queen = by | QUEEN;
+        int bishop = by | BISHOP;
+        for (int step : BISHOP_STEPS) {
+            for (s = square + step; (s & 0x88) == 0; s += step) {
+                int piece = board[s];
+                if (piece != 0) {
+                    if (piece == bishop || piece == queen) {
+                        return true;
+                    }
+                    break;
+                }
+            }
+        }
+        int rook = by | ROOK;
+        for (int step : ROOK_STEPS) {
+            for (s = square + step; (s & 0x88) == 0; s += step) {
+                int piece = board[s];
+                if (piece != 0) {
+                    if (piece == rook || piece == queen) {
+                        return true;
+                    }
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the side to move's pseudo-legal moves into moves from index start and
+     * returns the index after the last one. Moves that leave the king in check are
+     * included, callers make them and check leftKingInCheck(). With noisyOnly it's just
+     * captures and queen promotions, for quiescence search.
+     */
+    int generate(int[] moves, int start, boolean noisyOnly) {
+        if (!noisyOnly) {
+            // one attack test here saves one for most of the moves, see leftKingInCheck
+            inCheck();
+        }
+        int n = start;
+        int us = side;
+        int them = side ^ BLACK;
+        for (int from = 0; from < 128; from++) {
+            if ((from & 0x88) != 0) {
+                from += 7;
+                continue;
+            }
+            int piece = board[from];
+            if (piece == 0 || (piece & COLOR) != us) {
+                continue;
+            }
+            switch (piece & TYPE) {
+                case PAWN -> n = generatePawn(moves, n, from, noisyOnly);
+                case KNIGHT -> n = generateSteps(moves, n, from, KNIGHT_STEPS, them, noisyOnly);
+                case BISHOP -> n = generateSlides(moves, n, from, BISHOP_STEPS, them, noisyOnly);
+                case ROOK -> n = generateSlides(moves, n, from, ROOK_STEPS, them, noisyOnly);
+                case QUEEN -> {
+                    n = generateSlides(moves, n, from, BISHOP_STEPS, them, noisyOnly);
+                    n = generateSlides(moves, n, from, ROOK_STEPS, them, noisyOnly);
+                }
+                case KING -> {
+                    n = generateSteps(moves, n, from, KING_STEPS, them, noisyOnly);
+                    if (!noisyOnly && castling != 0) {
+                        n = generateCastling(moves, n, from, them);
+                    }
+                }
+                default -> throw new IllegalStateException("bad piece " + piece + " on " + from);
+            }
+        }
+        return n;
+    }
+
+    private int generatePawn(int[] moves, int n, int from, boolean noisyOnly) {
+        int forward = side == WHITE ? 16 : -16;
+        int startRank = side == WHITE ? 1 : 6;
+        int lastRank = side == WHITE ? 7 : 0;
+
+        int to = from + forward;
+        if ((to & 0x88) == 0 && board[to] == 0) {
+            if (to >> 4 == lastRank) {
+                n = addPromotions(moves, n, from, to, 0, noisyOnly);
+            } else if (!noisyOnly) {
+                moves[n++] = move(from, to, 0, 0);
+                int two = to + forward;
+                if (from >> 4 == startRank && board[two] == 0) {
+                    moves[n++] = move(from, two, 0, 0);
+                }
+            }
+        }
+        for (int dx = -1; dx <= 1; dx += 2) {
+            to = from + forward + dx;
+            if ((to & 0x88) != 0) {
+                continue;
+            }
+            int target = board[to];
+            if (target != 0 && (target & COLOR) != side) {
+                if (to >> 4 == lastRank) {
+                    n = addPromotions(moves, n, from, to, target, noisyOnly);
+                } else {
+                    moves[n++] = move(from, to, 0, target);
+                }
+            } else if (to == epSquare && epSquare != 0) {
+                moves[n++] = move(from, to, 0, side ^ BLACK | PAWN) | SPECIAL;
+            }
+        }
+        return n;
+    }
+
+    // the king is on its home square if it has any rights left. Like the other moves it
+    // can still land in check, only the squares before that are checked here. Attacks
+    // cost the most, so they're looked at last
+    private int generateCastling(int[] moves, int n, int from, int them) {
+        // black's rights shifted down to where white's are
+        int rights = side == WHITE ? castling & 3 : castling >> 2;
+        boolean kingside = (rights & WHITE_KINGSIDE) != 0 && board[from + 1] == 0 && board[from + 2] == 0;
+        boolean queenside = (rights & WHITE_QUEENSIDE) != 0
+                && board[from - 1] == 0 && board[from - 2] == 0 && board[from - 3] == 0;
+        if (!kingside && !queenside || inCheck()) {
+            return n;
+        }
+        if (kingside && !isAttacked(from + 1, them)) {
+            moves[n++] = move(from, from + 2, 0, 0) | SPECIAL;
+        }
+        if (queenside && !isAttacked(from - 1, them)) {
+            moves[n++] = move(from, from - 2, 0, 0) | SPECIAL;
+        }
+        return n;
+    }
+
+    private static int addPromotions(int[] moves, int n, int from, int to, int captured, boolean queenOnly) {
+        moves[n++] = move(from, to, QUEEN, captured);
+        if (!queenOnly) {
+            moves[n++] = move(from, to, ROOK, captured);
+            moves[n++] = move(from, to, BISHOP, captured);
+            moves[n++] = move(from, to, KNIGHT, captured);
+        }
+        return n;
+    }
+
+    private int generateSteps(int[] moves, int n, int from, int[] steps, int them, boolean noisyOnly) {
+        for (int step : steps) {
+            int to = from + step;
+            if ((to & 0x88) != 0) {
+                continue;
+            }
+            int target = board[to];
+            if (target == 0) {
+                if (!noisyOnly) {
+                    moves[n++] = move(from, to, 0, 0);
+                }
+            } else if ((target & COLOR) == them) {
+                moves[n++] = move(from, to, 0, target);
+            }
+        }
+        return n;
+    }
+
+    private int generateSlides(int[] moves, int n, int from, int[] steps, int them, boolean noisyOnly) {
+        for (int step : steps) {
+            for (int to = from + step; (to & 0x88) == 0; to += step) {
+                int target = board[to];
+                if (target == 0) {
+                    if (!noisyOnly) {
+                        moves[n++] = move(from, to, 0, 0);
+                    }
+                    continue;
+                }
+                if ((target & COLOR) == them) {
+                    moves[n++] = move(from, to, 0, target);
+                }
+                break;
+            }
+        }
+        return n;
+    }
+
+    /** Fills moves with the legal moves and returns how many there are. */
+    public int legalMoves(int[] moves) {
+        int end = generate(moves, 0, false);
+        int legal = 0;
+        for (int i = 0; i < end; i++) {
+            int move = moves[i];
+            makeMove(move);
+            if (!leftKingInCheck()) {
+                moves[legal++] = move;
+            }
+            unmakeMove(move);
+        }
+        return legal;
+    }
+
+    // ---- converting to and from the rest of the chess package
+
+    public static ChessMove toChessMove(int move) {
+        return new ChessMove(toPosition(from(move)), toPosition(to(move)), pieceType(promotion(move)));
+    }
+
+    /** The legal move matching chessMove, or 0 if there isn't one. */
+    public int fromChessMove(ChessMove chessMove) {
+        int[] moves = new int[MAX_MOVES];
+        int count = legalMoves(moves);
+        for (int i = 0; i < count; i++) {
+            if (toChessMove(moves[i]).equals(chessMove)) {
+                return moves[i];
+            }
+        }
+        return 0;
+    }
+
+    private static ChessPosition toPosition(int square) {
+        return new ChessPosition((square >> 4) + 1, (square & 7) + 1);
+    }
+
+    static int typeOf(ChessPiece.PieceType type) {
+        return switch (type) {
+            case PAWN -> PAWN;
+            case KNIGHT -> KNIGHT;
+            case BISHOP -> BISHOP;
+            case ROOK -> ROOK;
+            case QUEEN -> QUEEN;
+            case KING -> KING;
+        };
+    }
+
+    static ChessPiece.PieceType pieceType(int type) {
+        return switch (type) {
+            case PAWN -> ChessPiece.PieceType.PAWN;
+            case KNIGHT -> ChessPiece.PieceType.KNIGHT;
+            case BISHOP -> ChessPiece.PieceType.BISHOP;
+            case ROOK -> ChessPiece.PieceType.ROOK;
+            case QUEEN -> ChessPiece.PieceType.QUEEN;
+            case KING -> ChessPiece.PieceType.KING;
+            default -> null;
+        };
+    }
+
+    /** Long algebraic, e.g. "e2e4" or "e7e8q". */
+    public static String toUci(int move) {
+        StringBuilder sb = new StringBuilder(5);
+        sb.append(square(from(move))).append(square(to(move)));
+        if (promotion(move) != 0) {
+            sb.append(" pnbrqk".charAt(promotion(move)));
+        }
+        return sb.toString();
+    }
+
+    static String square(int square) {
+        return "" + (char) ('a' + (square & 7)) + (char) ('1' + (square >> 4));
+    }
+
+    @Override
+    public String toString() {
+        return Fen.format(this);
+    }
+}
@@ -0,0 +1,101 @@
+package chess.engine;
+
+/**
+ * Standard algebraic notation, the way PGN writes moves ("e4", "Nbd7", "exd8=Q+").
+ * Parsing is lenient about the decorations: check and mate signs, annotations like
+ * "!?" and a missing "=" before a promotion are all fine.
+ */
+public final class San {
+
+    private static final String PIECES = " PNBRQK";
+
+    private San() {
+    }
+
+    /** The legal move in pos that san means, or 0 if there isn't exactly one. */
+    public static int parse(Position pos, String san) {
+        String s = san.replaceAll("[+#!?]+$", "");
+        if (s.startsWith("O-O") || s.startsWith("0-0")) {
+            return castle(pos, s.length() == 3);
+        }
+        int promotion = 0;
+        int eq = s.length() - 1;
+        if (eq >= 2 && PIECES.indexOf(s.charAt(eq)) >= Position.KNIGHT && Character.isDigit(s.charAt(eq - 1))
+                || eq >= 3 && s.charAt(eq - 1) == '=') {
+            promotion = PIECES.indexOf(s.charAt(eq));
+            s = s.substring(0, s.charAt(eq - 1) == '=' ? eq - 1 : eq);
+            if (promotion < Position.KNIGHT || promotion > Position.QUEEN) {
+                return 0;
+            }
+        }
+        if (s.length() < 2) {
+            return 0;
+        }
+        int type = Position.PAWN;
+        int start = 0;
+        if (Character.isUpperCase(s.charAt(0))) {
+            type = PIECES.indexOf(s.charAt(0));
+            start = 1;
+            if (type <= Position.PAWN) {
+                return 0;
+            }
+        }
+        int to = square(s.charAt(s.length() - 2), s.charAt(s.length() - 1));
+        if (to < 0) {
+            return 0;
+        }
+        // whatever is between the piece and the target square: a file, a rank or both, and maybe an x
+        int fromFile = -1;
+        int fromRank = -1;
+        for (char c : s.substring(start, s.length() - 2).toCharArray()) {
+            if (c >= 'a' && c <= 'h') {
+                fromFile = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRank = c - '1';
+            } else if (c != 'x') {
+                return 0;
+            }
+        }
+        if (type == Position.PAWN && fromFile < 0) {
+            // a pawn move without a file is a push
+            fromFile = to & 7;
+        }
+
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = pos.legalMoves(moves);
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int from = Position.from(move);
+            if (Position.to(move) == to && (pos.board[from] & Position.TYPE) == type
+                    && Position.promotion(move) == promotion
+                    && (fromFile < 0 || (from & 7) == fromFile) && (fromRank < 0 || from >> 4 == fromRank)) {
+                if (found != 0) {
+                    return 0;
+                }
+                found = move;
+            }
+        }
+        return found;
+    }
+
+    private static int castle(Position pos, boolean kingside) {
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = pos.legalMoves(moves);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if ((move & Position.SPECIAL) != 0 && Position.captured(move) == 0
+                    && Position.to(move) > Position.from(move) == kingside) {
+                return move;
+            }
+        }
+        return 0;
+    }
+
+    private static int square(char file, char rank) {
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            return -1;
+        }
+        return (rank - '1') * 16 + (file - 'a');
+    }
+}
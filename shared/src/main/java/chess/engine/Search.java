@@ -0,0 +1,437 @@
+package chess.engine;
+
+import chess.ChessMove;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Alpha-beta (negamax, principal variation search) with iterative deepening and a
+ * quiescence search on captures. One Search owns its position and its move ordering
+ * tables, so it's not thread safe, but it also never allocates once it's going. The
+ * transposition table is the exception, that can be shared with other searches.
+ * <p>
+ * Move ordering is the usual cheap stuff: the transposition table's move, captures by
+ * most valuable victim / least valuable attacker, killer moves, then the history
+ * heuristic for the rest.
+ * <p>
+ * With a Tablebase, any position below the root with few enough pieces is looked up
+ * instead of searched, and scores as a mate (or a draw) at the table's distance. So
+ * trading down into a won ending counts as the win it is, and the root picks the
+ * quickest mate straight from the table.
+ */
+public final class Search {
+
+    public static final int MAX_PLY = 128;
+    static final int INFINITE = 30000;
+    static final int MATE = 29000;
+
+    // how often (in nodes) to look at the clock and the stop flag
+    private static final int CHECK_EVERY = 2048;
+
+    private static final int HASH_MOVE_SCORE = 20_000_000;
+    private static final int CAPTURE_SCORE = 10_000_000;
+    private static final int PROMOTION_SCORE = 9_000_000;
+    private static final int KILLER_SCORE = 8_000_000;
+
+    // Lazy SMP helpers skip some depths so they don't all search the same thing in step
+    private static final int[] SKIP_SIZE = {1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4};
+    private static final int[] SKIP_PHASE = {0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7};
+
+    private final Position pos;
+    private final TranspositionTable table;
+    private final Tablebase tablebase;
+    private final AtomicBoolean stop;
+    // 0 for a normal search, otherwise which Lazy SMP helper this is
+    private final int helper;
+
+    // a slice of MAX_MOVES per ply, so nothing gets allocated while searching
+    private final int[] moves = new int[MAX_PLY * Position.MAX_MOVES];
+    private final int[] order = new int[MAX_PLY * Position.MAX_MOVES];
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[16][128];
+    // triangular PV table, row ply is the best line found from ply on
+    private final int[][] pv = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+
+    private long nodes;
+    private long maxNodes;
+    private long deadline;
+    private boolean aborted;
+
+    public Search(Position pos, TranspositionTable table) {
+        this(pos, table, new AtomicBoolean());
+    }
+
+    /** Setting stop makes a running search return what it has as soon as it notices. */
+    public Search(Position pos, TranspositionTable table, AtomicBoolean stop) {
+        this(pos, table, Tablebase.EMPTY, stop, 0);
+    }
+
+    public Search(Position pos, TranspositionTable table, Tablebase tablebase, AtomicBoolean stop) {
+        this(pos, table, tablebase, stop, 0);
+    }
+
+    Search(Position pos, TranspositionTable table, Tablebase tablebase, AtomicBoolean stop, int helper) {
+        this.pos = pos;
+        this.table = table;
+        this.tablebase = tablebase;
+        this.stop = stop;
+        this.helper = helper;
+    }
+
+    public SearchResult run(SearchLimits limits) {
+        long started = System.nanoTime();
+        nodes = 0;
+        aborted = false;
+        maxNodes = limits.maxNodes() == 0 ? Long.MAX_VALUE : limits.maxNodes();
+        deadline = limits.timeMillis() == 0 ? Long.MAX_VALUE : started + limits.timeMillis() * 1_000_000L;
+        for (int[] row : history) {
+            Arrays.fill(row, 0);
+        }
+        for (int[] row : killers) {
+            row[0] = 0;
+            row[1] = 0;
+        }
+
+        int[] rootMoves = new int[Position.MAX_MOVES];
+        int count = pos.legalMoves(rootMoves);
+        if (count == 0) {
+            int score = pos.inCheck() ? -MATE : 0;
+            return new SearchResult(null, score, 0, 0, System.nanoTime() - started, List.of());
+        }
+
+        int bestMove = rootMoves[0];
+        int bestScore = 0;
+        int[] bestLine = {bestMove};
+        int completed = 0;
+        if (count > 1) {
+            for (int depth = 1; depth <= limits.maxDepth(); depth++) {
+                if (skipDepth(depth)) {
+                    continue;
+                }
+                int score = searchRoot(rootMoves, count, depth);
+                // an unfinished iteration still counts if its best move beat the old one
+                if (aborted && pvLength[0] == 0) {
+                    break;
+                }
+                bestMove = pv[0][0];
+                bestScore = score;
+                bestLine = Arrays.copyOf(pv[0], pvLength[0]);
+                if (aborted) {
+                    break;
+                }
+                completed = depth;
+                if (Math.abs(score) >= MATE - MAX_PLY) {
+                    break;
+                }
+                // another iteration takes longer than all the ones before, don't start what can't finish
+                if (limits.timeMillis() != 0 && System.nanoTime() - started > limits.timeMillis() * 500_000L) {
+                    break;
+                }
+            }
+        }
+
+        List<ChessMove> line = new ArrayList<>(bestLine.length);
+        for (int move : bestLine) {
+            line.add(Position.toChessMove(move));
+        }
+        return new SearchResult(Position.toChessMove(bestMove), bestScore, completed, nodes,
+                System.nanoTime() - started, List.copyOf(line));
+    }
+
+    public long nodes() {
+        return nodes;
+    }
+
+    private boolean skipDepth(int depth) {
+        if (helper == 0) {
+            return false;
+        }
+        int i = (helper - 1) % SKIP_SIZE.length;
+        return (depth + SKIP_PHASE[i]) / SKIP_SIZE[i] % 2 != 0;
+    }
+
+    /**
+     * One iteration over the root moves. Leaves the best move at the front of rootMoves
+     * so the next iteration searches it first, and returns its score. If the search is
+     * aborted part way pvLength[0] is 0 unless some move had already beaten alpha.
+     */
+    private int searchRoot(int[] rootMoves, int count, int depth) {
+        int alpha = -INFINITE;
+        int beta = INFINITE;
+        pvLength[0] = 0;
+        for (int i = 0; i < count; i++) {
+            int move = rootMoves[i];
+            pos.makeMove(move);
+            nodes++;
+            int score;
+            if (i == 0) {
+                score = -negamax(depth - 1, 1, -beta, -alpha);
+            } else {
+                score = -negamax(depth - 1, 1, -alpha - 1, -alpha);
+                if (score > alpha && !aborted) {
+                    score = -negamax(depth - 1, 1, -beta, -alpha);
+                }
+            }
+            pos.unmakeMove(move);
+            if (aborted) {
+                break;
+            }
+            if (score > alpha) {
+                alpha = score;
+                updatePv(0, move);
+                // move to the front, keeping the rest in order
+                System.arraycopy(rootMoves, 0, rootMoves, 1, i);
+                rootMoves[0] = move;
+            }
+        }
+        if (!aborted) {
+            table.store(pos.hash, rootMoves[0], toTable(alpha, 0), depth, TranspositionTable.EXACT);
+        }
+        return alpha;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        pvLength[ply] = 0;
+        boolean inCheck = pos.inCheck();
+        // look one ply further at checks, they're forcing and cheap to resolve
+        if (inCheck) {
+            depth++;
+        }
+        // before dropping into quiescence too, a probe is cheaper than searching captures and exact
+        if (pos.pieces <= tablebase.maxPieces()) {
+            int value = tablebase.probeValue(pos);
+            if (value >= 0) {
+                return tablebaseScore(value, ply);
+            }
+        }
+        if (depth <= 0) {
+            return quiesce(ply, alpha, beta);
+        }
+        if (ply >= MAX_PLY - 1) {
+            return Evaluator.evaluate(pos);
+        }
+
+        long hash = pos.hash;
+        long entry = table.probe(hash);
+        int hashMove = 0;
+        if (entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            // not in PV nodes (open window), cutting there would chop the PV short
+            if (beta - alpha == 1 && TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || bound == TranspositionTable.LOWER && score >= beta
+                        || bound == TranspositionTable.UPPER && score <= alpha) {
+                    return score >= beta ? beta : Math.max(score, alpha);
+                }
+            }
+        }
+
+        int base = ply * Position.MAX_MOVES;
+        int end = pos.generate(moves, base, false);
+        scoreMoves(base, end, ply, hashMove);
+
+        int legal = 0;
+        int bestMove = 0;
+        int bound = TranspositionTable.UPPER;
+        for (int i = base; i < end; i++) {
+            int move = pickBest(i, end);
+            pos.makeMove(move);
+            if (pos.leftKingInCheck()) {
+                pos.unmakeMove(move);
+                continue;
+            }
+            legal++;
+            if (++nodes % CHECK_EVERY == 0) {
+                checkLimits();
+            }
+            int score;
+            if (legal == 1) {
+                score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            } else {
+                score = -negamax(depth - 1, ply + 1, -alpha - 1, -alpha);
+                if (score > alpha && score < beta && !aborted) {
+                    score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+                }
+            }
+            pos.unmakeMove(move);
+            if (aborted) {
+                return 0;
+            }
+            if (score > alpha) {
+                if (score >= beta) {
+                    if (Position.isQuiet(move)) {
+                        storeKiller(ply, move);
+                        addHistory(pos.board[Position.from(move)], Position.to(move), depth);
+                    }
+                    table.store(hash, move, toTable(beta, ply), depth, TranspositionTable.LOWER);
+                    return beta;
+                }
+                alpha = score;
+                bestMove = move;
+                bound = TranspositionTable.EXACT;
+                updatePv(ply, move);
+            }
+        }
+        if (legal == 0) {
+            // the nearer the mate the better (or the worse), so the search goes for the quickest one
+            return inCheck ? -MATE + ply : 0;
+        }
+        table.store(hash, bestMove, toTable(alpha, ply), depth, bound);
+        return alpha;
+    }
+
+    // the table counts plies to mate from here, the search counts them from the root
+    private static int tablebaseScore(int value, int ply) {
+        if (value == EndgameTable.DRAW || value == EndgameTable.ILLEGAL) {
+            return 0;
+        }
+        int plies = value - 1;
+        return plies % 2 == 0 ? -MATE + ply + plies : MATE - ply - plies;
+    }
+
+    // mate scores are stored as distance from this node rather than from the root
+    private static int toTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) {
+            return score + ply;
+        }
+        if (score <= -MATE + MAX_PLY) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) {
+            return score - ply;
+        }
+        if (score <= -MATE + MAX_PLY) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    private int quiesce(int ply, int alpha, int beta) {
+        pvLength[ply] = 0;
+        int standPat = Evaluator.evaluate(pos);
+        if (standPat >= beta) {
+            return beta;
+        }
+        if (ply >= MAX_PLY - 1) {
+            return standPat;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+
+        int base = ply * Position.MAX_MOVES;
+        int end = pos.generate(moves, base, true);
+        scoreMoves(base, end, ply, 0);
+        for (int i = base; i < end; i++) {
+            int move = pickBest(i, end);
+            pos.makeMove(move);
+            if (pos.leftKingInCheck()) {
+                pos.unmakeMove(move);
+                continue;
+            }
+            if (++nodes % CHECK_EVERY == 0) {
+                checkLimits();
+            }
+            int score = -quiesce(ply + 1, -beta, -alpha);
+            pos.unmakeMove(move);
+            if (aborted) {
+                return 0;
+            }
+            if (score > alpha) {
+                if (score >= beta) {
+                    return beta;
+                }
+                alpha = score;
+                updatePv(ply, move);
+            }
+        }
+        return alpha;
+    }
+
+    private void scoreMoves(int start, int end, int ply, int hashMove) {
+        int killer0 = killers[ply][0];
+        int killer1 = killers[ply][1];
+        for (int i = start; i < end; i++) {
+            int move = moves[i];
+            int captured = Position.captured(move);
+            int score;
+            if (move == hashMove) {
+                score = HASH_MOVE_SCORE;
+            } else if (captured != 0) {
+                // most valuable victim first, then least valuable attacker
+                score = CAPTURE_SCORE + (captured & Position.TYPE) * 16 - (pos.board[Position.from(move)] & Position.TYPE);
+            } else if (Position.promotion(move) == Position.QUEEN) {
+                score = PROMOTION_SCORE;
+            } else if (move == killer0) {
+                score = KILLER_SCORE;
+            } else if (move == killer1) {
+                score = KILLER_SCORE - 1;
+            } else {
+                score = history[pos.board[Position.from(move)]][Position.to(move)];
+            }
+            order[i] = score;
+        }
+    }
+
+    // selection sort one step at a time, most nodes cut off after a move or two anyway
+    private int pickBest(int i, int end) {
+        int best = i;
+        for (int j = i + 1; j < end; j++) {
+            if (order[j] > order[best]) {
+                best = j;
+            }
+        }
+        if (best != i) {
+            int move = moves[best];
+            int score = order[best];
+            moves[best] = moves[i];
+            order[best] = order[i];
+            moves[i] = move;
+            order[i] = score;
+        }
+        return moves[i];
+    }
+
+    private void storeKiller(int ply, int move) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+    }
+
+    private void addHistory(int piece, int to, int depth) {
+        history[piece][to] += depth * depth;
+        // keep it well under the killer scores, and let old successes fade
+        if (history[piece][to] > KILLER_SCORE / 8) {
+            for (int[] row : history) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+        }
+    }
+
+    // the search never calls this at the last ply, so ply + 1 is always in range
+    private void updatePv(int ply, int move) {
+        pv[ply][0] = move;
+        int length = pvLength[ply + 1];
+        System.arraycopy(pv[ply + 1], 0, pv[ply], 1, length);
+        pvLength[ply] = length + 1;
+    }
+
+    private void checkLimits() {
+        if (stop.get() || nodes >= maxNodes || System.nanoTime() >= deadline) {
+            aborted = true;
+        }
+    }
+}
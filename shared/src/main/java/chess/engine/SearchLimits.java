@@ -0,0 +1,34 @@
+package chess.engine;
+
+/**
+ * When a search has to stop. Whichever limit is hit first wins, 0 means no limit for
+ * nodes and time. The search always finishes depth 1 unless it's stopped from outside,
+ * so even a tiny budget gives back a legal move.
+ *
+ * @param maxDepth   deepest iteration to start, in plies
+ * @param maxNodes   nodes to visit before giving up, 0 for no limit
+ * @param timeMillis wall clock budget, 0 for no limit
+ */
+public record SearchLimits(int maxDepth, long maxNodes, long timeMillis) {
+
+    public SearchLimits {
+        if (maxDepth < 1 || maxDepth >= Search.MAX_PLY) {
+            throw new IllegalArgumentException("maxDepth must be between 1 and " + (Search.MAX_PLY - 1));
+        }
+        if (maxNodes < 0 || timeMillis < 0) {
+            throw new IllegalArgumentException("limits can't be negative");
+        }
+    }
+
+    public static SearchLimits depth(int plies) {
+        return new SearchLimits(plies, 0, 0);
+    }
+
+    public static SearchLimits nodes(long nodes) {
+        return new SearchLimits(Search.MAX_PLY - 1, nodes, 0);
+    }
+
+    public static SearchLimits time(long millis) {
+        return new SearchLimits(Search.MAX_PLY - 1, 0, millis);
+    }
+}
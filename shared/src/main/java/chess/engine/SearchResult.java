@@ -0,0 +1,32 @@
+package chess.engine;
+
+import chess.ChessMove;
+
+import java.util.List;
+
+/**
+ * What a search came up with.
+ *
+ * @param move  the best move, null if the side to move has none (mate or stalemate)
+ * @param score centipawns for the side to move, or a mate score (see isMate)
+ * @param depth deepest iteration that finished
+ * @param nodes positions visited, quiescence included
+ * @param nanos how long it took
+ * @param pv    the line the engine expects, starting with move
+ */
+public record SearchResult(ChessMove move, int score, int depth, long nodes, long nanos, List<ChessMove> pv) {
+
+    public boolean isMate() {
+        return Math.abs(score) >= Search.MATE - Search.MAX_PLY;
+    }
+
+    /** Moves until mate, positive when the side to move is mating. Only meaningful if isMate(). */
+    public int mateIn() {
+        int plies = Search.MATE - Math.abs(score);
+        return Integer.signum(score) * (plies + 1) / 2;
+    }
+
+    public long nodesPerSecond() {
+        return nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos;
+    }
+}
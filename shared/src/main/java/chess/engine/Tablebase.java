@@ -0,0 +1,245 @@
+package chess.engine;
+
+import chess.ChessGame;
+import chess.ChessMove;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Perfect play for endgames with up to four pieces, kings included: whether the side
+ * to move wins, draws or loses, and how many plies until mate. The tables come from
+ * TablebaseGenerator (in the bench module), one file per set of pieces (KQvKR.tb
+ * etc.), and are memory-mapped, so only the parts that get probed are ever read.
+ * <p>
+ * A table only exists for one color's point of view (KQvKR, not KRvKQ), a position
+ * with the colors the other way round is mirrored top to bottom before looking it up.
+ * Two bare kings is always a draw. Probing doesn't allocate, so the search can do it.
+ */
+public final class Tablebase {
+
+    static final int MAGIC = 0x43544231; // "CTB1"
+    static final String SUFFIX = ".tb";
+
+    /** From the side to move's point of view. */
+    public enum Outcome { WIN, DRAW, LOSS }
+
+    /** plies is how long until mate with best play on both sides, 0 for a draw. */
+    public record Result(Outcome outcome, int plies) {
+        /** Moves (not plies) until mate, counting the side to move's move if it's winning. */
+        public int mateIn() {
+            return (plies + 1) / 2;
+        }
+    }
+
+    /** A tablebase with no tables, all it knows is that two bare kings is a draw. */
+    public static final Tablebase EMPTY = new Tablebase(List.of());
+
+    // by material key, both for the table's own colors and the other way round
+    private final EndgameTable[] byMaterial = new EndgameTable[EndgameTable.MATERIAL_KEYS];
+    private final boolean[] flipped = new boolean[EndgameTable.MATERIAL_KEYS];
+    private final Set<String> names = new TreeSet<>();
+    private final int maxPieces;
+
+    Tablebase(Collection<EndgameTable> tables) {
+        int most = 0;
+        for (EndgameTable table : tables) {
+            int[] other = new int[table.pieces.length];
+            for (int i = 0; i < other.length; i++) {
+                other[i] = table.pieces[i] ^ Position.COLOR;
+            }
+            int otherKey = EndgameTable.materialKey(other);
+            byMaterial[otherKey] = table;
+            flipped[otherKey] = true;
+            // for KRvKR and such both keys are the same, and no flip is needed
+            int key = EndgameTable.materialKey(table.pieces);
+            byMaterial[key] = table;
+            flipped[key] = false;
+            names.add(table.name);
+            most = Math.max(most, table.pieces.length + 2);
+        }
+        maxPieces = most;
+    }
+
+    /** Maps every table file in dir. */
+    public static Tablebase open(Path dir) throws IOException {
+        List<EndgameTable> tables = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                tables.add(map(file));
+            }
+        }
+        return new Tablebase(tables);
+    }
+
+    /** The tables in the directory at the chess.tablebase system property, or EMPTY if it isn't set. */
+    public static Tablebase fromConfig() {
+        String dir = System.getProperty("chess.tablebase");
+        if (dir == null || dir.isBlank()) {
+            return EMPTY;
+        }
+        try {
+            return open(Path.of(dir));
+        } catch (IOException e) {
+            throw new UncheckedIOException("can't open tablebase " + dir, e);
+        }
+    }
+
+    // a file is the magic number, the table's size, then the table
+    static EndgameTable map(Path file) throws IOException {
+        String fileName = file.getFileName().toString();
+        int[] pieces;
+        try {
+            pieces = EndgameTable.parse(fileName.substring(0, fileName.length() - SUFFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + " isn't a tablebase file", e);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var header = new DataInputStream(Channels.newInputStream(channel));
+            int magic = header.readInt();
+            int size = header.readInt();
+            if (magic != MAGIC || size != channel.size() - 8) {
+                throw new IOException(file + " isn't a tablebase file");
+            }
+            try {
+                return new EndgameTable(pieces, channel.map(FileChannel.MapMode.READ_ONLY, 8, size));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file + " is the wrong size for " + fileName, e);
+            }
+        }
+    }
+
+    /** Which tables there are, e.g. [KPvK, KQvK]. */
+    public Set<String> tables() {
+        return names;
+    }
+
+    /** The most pieces, kings included, of any position this tablebase knows about. 0 if it's empty. */
+    public int maxPieces() {
+        return maxPieces;
+    }
+
+    /** The result for pos's side to move, or null if there's no table for it. */
+    public Result probe(Position pos) {
+        int value = probeValue(pos);
+        if (value < 0) {
+            return null;
+        }
+        if (value == EndgameTable.DRAW || value == EndgameTable.ILLEGAL) {
+            return new Result(Outcome.DRAW, 0);
+        }
+        int plies = value - 1;
+        return new Result(plies % 2 == 0 ? Outcome.LOSS : Outcome.WIN, plies);
+    }
+
+    public Result probe(ChessGame game) {
+        return probe(Position.of(game));
+    }
+
+    /**
+     * Perfect play: the quickest win if there is one, otherwise a move that holds the
+     * draw, otherwise the slowest loss. 0 if pos isn't in the tablebase or has no moves.
+     */
+    public int bestMove(Position pos) {
+        if (probeValue(pos) < 0) {
+            return 0;
+        }
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = pos.legalMoves(moves);
+        int best = 0;
+        int bestScore = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            pos.makeMove(moves[i]);
+            int value = probeValue(pos);
+            pos.unmakeMove(moves[i]);
+            if (value < 0) {
+                // a promotion into a table that isn't there
+                continue;
+            }
+            // the child's value is from the other side's point of view
+            int score = value == EndgameTable.DRAW || value == EndgameTable.ILLEGAL ? 0
+                    : value % 2 == 1 ? 1000 - value : -1000 + value;
+            if (score > bestScore) {
+                best = moves[i];
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /** Like bestMove, as a ChessMove, or null if game's position isn't in the tablebase. */
+    public ChessMove bestMove(ChessGame game) {
+        int move = bestMove(Position.of(game));
+        return move == 0 ? null : Position.toChessMove(move);
+    }
+
+    /**
+     * The table's byte for pos (see EndgameTable), or -1 if there's no table for it.
+     * pos has to be a legal position, with the side that just moved not in check.
+     */
+    int probeValue(Position pos) {
+        if (pos.pieces == 2) {
+            return EndgameTable.DRAW;
+        }
+        // the tables were made without castling or en passant, either could change the answer
+        if (pos.pieces > maxPieces || pos.castling != 0 || pos.epSquare != 0) {
+            return -1;
+        }
+        int piece1 = 0;
+        int square1 = 0;
+        int piece2 = 0;
+        int square2 = 0;
+        int key = 0;
+        for (int square = 0; square < 64; square++) {
+            int piece = pos.board[EndgameTable.to88(square)];
+            if (piece == 0 || (piece & Position.TYPE) == Position.KING) {
+                continue;
+            }
+            if (piece1 == 0) {
+                piece1 = piece;
+                square1 = square;
+            } else {
+                piece2 = piece;
+                square2 = square;
+            }
+            key += EndgameTable.materialKey(piece);
+        }
+        EndgameTable table = byMaterial[key];
+        if (table == null) {
+            return -1;
+        }
+        int side = pos.side >> 3;
+        int wk = EndgameTable.to64(pos.kings[0]);
+        int bk = EndgameTable.to64(pos.kings[1]);
+        if (flipped[key]) {
+            // black's pieces become white's, mirrored top to bottom, and the other side is to move
+            int swap = wk ^ 56;
+            wk = bk ^ 56;
+            bk = swap;
+            piece1 ^= Position.COLOR;
+            piece2 = piece2 == 0 ? 0 : piece2 ^ Position.COLOR;
+            square1 ^= 56;
+            square2 ^= 56;
+            side ^= 1;
+        }
+        if (piece2 != 0 && EndgameTable.order(piece2) < EndgameTable.order(piece1)) {
+            int swap = square1;
+            square1 = square2;
+            square2 = swap;
+        }
+        int index = table.index(side, wk, bk, square1, square2);
+        return index < 0 ? -1 : table.get(index);
+    }
+}
@@ -0,0 +1,174 @@
+package chess.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Remembers what the search found out about positions, keyed by Zobrist hash, so a
+ * position reached again (by another move order, the next iteration, or another
+ * thread) is a lookup instead of a whole subtree.
+ * <p>
+ * It's a flat long[] with no locks. Each entry is two longs, the data and the hash
+ * XOR'd with the data. Two threads writing the same entry at once can leave one's
+ * key next to the other's data, but then key ^ data won't give back the hash and the
+ * probe just misses, so a torn entry is never believed (Hyatt's lockless hashing).
+ * Every element is read and written with opaque access, which can't tear a long.
+ * <p>
+ * Entries come in buckets of four, 64 bytes, so a probe touches one cache line. When
+ * a bucket is full the entry replaced is the shallowest, counting entries from older
+ * searches (see newSearch) as shallower the older they are.
+ * <p>
+ * Data layout, low bits first: move (22), score + 32768 (16), depth (8), bound (2),
+ * age (6). The bound is never 0, so 0 is free to mean "miss".
+ */
+public final class TranspositionTable {
+
+    public static final int EXACT = 1;
+    /** The score is at least this (it failed high). */
+    public static final int LOWER = 2;
+    /** The score is at most this (it failed low). */
+    public static final int UPPER = 3;
+
+    public static final int DEFAULT_MB = 16;
+
+    private static final int BUCKET = 4;
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final int MOVE_BITS = 22;
+    private static final int SCORE_SHIFT = MOVE_BITS;
+    private static final int DEPTH_SHIFT = SCORE_SHIFT + 16;
+    private static final int BOUND_SHIFT = DEPTH_SHIFT + 8;
+    private static final int AGE_SHIFT = BOUND_SHIFT + 2;
+    private static final int AGE_MASK = 63;
+
+    private final long[] slots;
+    private final long bucketMask;
+    // bumped once per search, racing increments just lose one, which doesn't matter
+    private volatile int age;
+
+    /** The biggest power of two entries that fits in megabytes. */
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1 || megabytes > 16384) {
+            throw new IllegalArgumentException("transposition table size must be 1 to 16384 MB");
+        }
+        long entries = Long.highestOneBit((long) megabytes * 1024 * 1024 / ENTRY_BYTES);
+        // a long[] can't go past 2^31 elements
+        entries = Math.min(entries, 1L << 29);
+        slots = new long[(int) entries * 2];
+        bucketMask = entries / BUCKET - 1;
+    }
+
+    /** Sized from the chess.hashMb system property, DEFAULT_MB if it isn't set. */
+    public static TranspositionTable fromConfig() {
+        return new TranspositionTable(Integer.getInteger("chess.hashMb", DEFAULT_MB));
+    }
+
+    public long entries() {
+        return slots.length / 2;
+    }
+
+    /** Marks everything stored so far as older, so it's the first to go when space is short. */
+    public void newSearch() {
+        age = (age + 1) & AGE_MASK;
+    }
+
+    public void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            SLOTS.setOpaque(slots, i, 0L);
+        }
+    }
+
+    /** The data stored for hash, or 0 if there isn't any. Take it apart with move(), score() etc. */
+    public long probe(long hash) {
+        int base = bucketStart(hash);
+        for (int i = base; i < base + BUCKET * 2; i += 2) {
+            long data = (long) SLOTS.getOpaque(slots, i + 1);
+            if (data != 0 && ((long) SLOTS.getOpaque(slots, i) ^ data) == hash) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores what a search of depth found. move is 0 if there wasn't a best move (it
+     * failed low), in which case a move already stored for the same position is kept.
+     */
+    public void store(long hash, int move, int score, int depth, int bound) {
+        int base = bucketStart(hash);
+        int current = age;
+        int target = base;
+        int worst = Integer.MAX_VALUE;
+        for (int i = base; i < base + BUCKET * 2; i += 2) {
+            long data = (long) SLOTS.getOpaque(slots, i + 1);
+            if (data != 0 && ((long) SLOTS.getOpaque(slots, i) ^ data) == hash) {
+                // same position: only a shallower result from this same search is worth keeping over it
+                if (depth < depth(data) && bound != EXACT && age(data) == current) {
+                    return;
+                }
+                if (move == 0) {
+                    move = move(data);
+                }
+                target = i;
+                break;
+            }
+            // empty slots first, but keep looking in case the position is further along
+            int value = data == 0 ? Integer.MIN_VALUE : depth(data) - 8 * ((current - age(data)) & AGE_MASK);
+            if (value < worst) {
+                target = i;
+                worst = value;
+            }
+        }
+        long data = pack(move, score, depth, bound, current);
+        SLOTS.setOpaque(slots, target + 1, data);
+        SLOTS.setOpaque(slots, target, hash ^ data);
+    }
+
+    /** Roughly how full the table is, in permille, from a sample of this search's entries. */
+    public int hashfull() {
+        int sample = Math.min(1000, slots.length / 2);
+        int used = 0;
+        int current = age;
+        for (int i = 0; i < sample; i++) {
+            long data = (long) SLOTS.getOpaque(slots, i * 2 + 1);
+            if (data != 0 && age(data) == current) {
+                used++;
+            }
+        }
+        return used * 1000 / sample;
+    }
+
+    private int bucketStart(long hash) {
+        // low bits pick the bucket, the whole hash is still checked on a probe
+        return (int) (hash & bucketMask) * BUCKET * 2;
+    }
+
+    static long pack(int move, int score, int depth, int bound, int age) {
+        return (long) move & ((1L << MOVE_BITS) - 1)
+                | (long) (score + 32768) << SCORE_SHIFT
+                | (long) Math.min(Math.max(depth, 0), 255) << DEPTH_SHIFT
+                | (long) bound << BOUND_SHIFT
+                | (long) age << AGE_SHIFT;
+    }
+
+    public static int move(long data) {
+        return (int) (data & ((1L << MOVE_BITS) - 1));
+    }
+
+    public static int score(long data) {
+        return (int) (data >>> SCORE_SHIFT & 0xFFFF) - 32768;
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT & 0xFF);
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT & 3);
+    }
+
+    static int age(long data) {
+        return (int) (data >>> AGE_SHIFT & AGE_MASK);
+    }
+}
@@ -0,0 +1,53 @@
+package chess.engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random keys for Zobrist hashing: a position's hash is the XOR of one key per piece
+ * on its square, plus SIDE when black is to move, plus the keys for its castling
+ * rights and en passant square. Moving a piece is two XORs, so Position keeps its
+ * hash up to date as it goes instead of ever recomputing it.
+ */
+final class Zobrist {
+
+    // [piece][0x88 square]
+    static final long[][] PIECES = new long[16][128];
+    static final long SIDE;
+    // one per combination of rights, so a change is one XOR out and one in. None is 0
+    static final long[] CASTLING = new long[16];
+    // [0x88 square], 0 where en passant can't happen, which includes 0 for none
+    static final long[] EN_PASSANT = new long[128];
+
+    static {
+        // fixed seed, so hashes are the same from run to run and easy to compare
+        SplittableRandom random = new SplittableRandom(0x5EED_C4E55L);
+        for (long[] keys : PIECES) {
+            for (int square = 0; square < keys.length; square++) {
+                keys[square] = random.nextLong();
+            }
+        }
+        SIDE = random.nextLong();
+        for (int rights = 1; rights < CASTLING.length; rights++) {
+            CASTLING[rights] = random.nextLong();
+        }
+        for (int file = 0; file < 8; file++) {
+            EN_PASSANT[0x20 + file] = random.nextLong();
+            EN_PASSANT[0x50 + file] = random.nextLong();
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    /** From scratch, for checking the incremental one. */
+    static long hash(Position pos) {
+        long hash = (pos.side == Position.BLACK ? SIDE : 0) ^ CASTLING[pos.castling] ^ EN_PASSANT[pos.epSquare];
+        for (int square = 0; square < 128; square++) {
+            int piece = pos.board[square];
+            if ((square & 0x88) == 0 && piece != 0) {
+                hash ^= PIECES[piece][square];
+            }
+        }
+        return hash;
+    }
+}
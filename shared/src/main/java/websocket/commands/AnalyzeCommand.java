@@ -0,0 +1,16 @@
+package websocket.commands;
+
+// asks for the engine's take on the game's current position, only the sender gets the answer
+public class AnalyzeCommand extends UserGameCommand {
+    // plies to search, null for the server's default
+    private final Integer depth;
+
+    public AnalyzeCommand(String authToken, Integer gameID, Integer depth) {
+        super(CommandType.ANALYZE, authToken, gameID);
+        this.depth = depth;
+    }
+
+    public Integer getDepth() {
+        return depth;
+    }
+}
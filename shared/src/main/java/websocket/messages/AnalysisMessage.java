@@ -0,0 +1,23 @@
+package websocket.messages;
+
+import chess.engine.SearchResult;
+
+public class AnalysisMessage extends ServerMessage {
+    // how many moves had been played when it was asked for, the game may have moved on since
+    private final int moveCount;
+    private final SearchResult analysis;
+
+    public AnalysisMessage(int moveCount, SearchResult analysis) {
+        super(ServerMessageType.ANALYSIS);
+        this.moveCount = moveCount;
+        this.analysis = analysis;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public SearchResult getAnalysis() {
+        return analysis;
+    }
+}
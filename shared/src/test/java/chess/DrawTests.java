@@ -0,0 +1,102 @@
+package chess;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DrawTests {
+
+    private static ChessMove move(String from, String to) {
+        return new ChessMove(square(from), square(to), null);
+    }
+
+    private static ChessPosition square(String name) {
+        return new ChessPosition(name.charAt(1) - '0', name.charAt(0) - 'a' + 1);
+    }
+
+    // both knights out and back, which brings back the position from before
+    private static void shuffleKnights(ChessGame game) throws InvalidMoveException {
+        game.makeMove(move("g1", "f3"));
+        game.makeMove(move("g8", "f6"));
+        game.makeMove(move("f3", "g1"));
+        game.makeMove(move("f6", "g8"));
+    }
+
+    @Test
+    void repetitionPositive() throws InvalidMoveException {
+        var game = new ChessGame();
+        shuffleKnights(game);
+        // twice isn't enough
+        assertFalse(game.isDrawByRepetition());
+        shuffleKnights(game);
+        assertTrue(game.isDrawByRepetition());
+        assertEquals(8, game.getHalfmoveClock());
+    }
+
+    @Test
+    void repetitionNegative() throws InvalidMoveException {
+        // positions from before a pawn move never come back, so they don't count
+        var game = new ChessGame();
+        shuffleKnights(game);
+        game.makeMove(move("e2", "e4"));
+        game.makeMove(move("e7", "e5"));
+        shuffleKnights(game);
+        assertFalse(game.isDrawByRepetition());
+        shuffleKnights(game);
+        assertTrue(game.isDrawByRepetition());
+    }
+
+    @Test
+    void repetitionSavedPositive() throws InvalidMoveException {
+        // the server saves the game between moves, the count has to survive that
+        var gson = new Gson();
+        var game = new ChessGame();
+        shuffleKnights(game);
+        game.makeMove(move("g1", "f3"));
+        game.makeMove(move("g8", "f6"));
+        game.makeMove(move("f3", "g1"));
+        var saved = gson.fromJson(gson.toJson(game), ChessGame.class);
+        // however many moves in it was saved, it's still the same game
+        assertEquals(game, saved);
+        assertEquals(game.hashCode(), saved.hashCode());
+        game = saved;
+        assertFalse(game.isDrawByRepetition());
+        game.makeMove(move("f6", "g8"));
+        assertTrue(game.isDrawByRepetition());
+    }
+
+    @Test
+    void fiftyMovesPositive() throws InvalidMoveException {
+        var game = new ChessGame();
+        game.makeMove(move("e2", "e4"));
+        game.makeMove(move("e7", "e5"));
+        // the game would be over by repetition long before, but that's not what the clock looks at
+        for (int i = 0; i < 24; i++) {
+            shuffleKnights(game);
+        }
+        game.makeMove(move("g1", "f3"));
+        game.makeMove(move("g8", "f6"));
+        game.makeMove(move("f3", "g1"));
+        assertEquals(99, game.getHalfmoveClock());
+        assertFalse(game.isDrawByFiftyMoves());
+        game.makeMove(move("f6", "g8"));
+        assertTrue(game.isDrawByFiftyMoves());
+    }
+
+    @Test
+    void fiftyMovesNegative() throws InvalidMoveException {
+        var game = new ChessGame();
+        shuffleKnights(game);
+        assertEquals(4, game.getHalfmoveClock());
+        game.makeMove(move("e2", "e4"));
+        assertEquals(0, game.getHalfmoveClock());
+        game.makeMove(move("d7", "d5"));
+        game.makeMove(move("g1", "f3"));
+        assertEquals(1, game.getHalfmoveClock());
+        // a capture starts it over too
+        game.makeMove(move("d5", "e4"));
+        assertEquals(0, game.getHalfmoveClock());
+        assertFalse(game.isDrawByFiftyMoves());
+    }
+}
@@ -0,0 +1,60 @@
+package chess.engine;
+
+import org.junit.jupiter.api.*;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EvaluatorTests {
+
+    @Test
+    void incrementalPositive() {
+        // random games, checking the kept sums against a rescan after every make and unmake
+        SplittableRandom random = new SplittableRandom(240);
+        int[] moves = new int[Position.MAX_MOVES];
+        for (int game = 0; game < 20; game++) {
+            Position pos = Position.start();
+            int[] played = new int[200];
+            int plies = 0;
+            while (plies < played.length) {
+                int count = pos.legalMoves(moves);
+                if (count == 0) {
+                    break;
+                }
+                played[plies++] = moves[random.nextInt(count)];
+                pos.makeMove(played[plies - 1]);
+                assertEquals(Evaluator.rescan(pos), Evaluator.evaluate(pos), pos.toString());
+            }
+            while (plies > 0) {
+                pos.unmakeMove(played[--plies]);
+                assertEquals(Evaluator.rescan(pos), Evaluator.evaluate(pos), pos.toString());
+            }
+            assertEquals(Fen.START, pos.toString());
+        }
+    }
+
+    @Test
+    void taperPositive() {
+        // the start position is even, whoever is to move
+        assertEquals(0, Evaluator.evaluate(Position.start()));
+        // with only pawns left it's all endgame values, where a pawn about to promote is worth a lot more
+        int advanced = Evaluator.evaluate(Fen.parse("4k3/P7/8/8/8/8/8/4K3 w - - 0 1"));
+        int home = Evaluator.evaluate(Fen.parse("4k3/8/8/8/8/8/P7/4K3 w - - 0 1"));
+        assertTrue(advanced > home + 50, advanced + " vs " + home);
+        // and a centralized king is better there, unlike in the middlegame
+        assertTrue(Evaluator.evaluate(Fen.parse("k7/8/8/8/3K4/8/8/8 w - - 0 1"))
+                > Evaluator.evaluate(Fen.parse("k7/8/8/8/8/8/8/K7 w - - 0 1")));
+    }
+
+    @Test
+    void evaluateNegative() {
+        // same position, other side to move, other sign
+        Position white = Fen.parse("4k3/8/8/8/8/8/8/3QK3 w - - 0 1");
+        Position black = Fen.parse("4k3/8/8/8/8/8/8/3QK3 b - - 0 1");
+        assertTrue(Evaluator.evaluate(white) > 800);
+        assertEquals(-Evaluator.evaluate(white), Evaluator.evaluate(black));
+        // and colors flipped over is the same for the other side
+        assertEquals(Evaluator.evaluate(white), Evaluator.evaluate(Fen.parse("3qk3/8/8/8/8/8/8/4K3 b - - 0 1")));
+    }
+}
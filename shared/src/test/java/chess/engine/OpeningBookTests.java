@@ -0,0 +1,92 @@
+package chess.engine;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OpeningBookTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void bookNegative() throws IOException {
+        Path notABook = dir.resolve("nope.bin");
+        Files.write(notABook, new byte[17]);
+        assertThrows(IOException.class, () -> OpeningBook.open(notABook));
+        assertThrows(IOException.class, () -> OpeningBook.open(dir.resolve("missing.bin")));
+        assertTrue(OpeningBook.EMPTY.moves(Position.start()).isEmpty());
+    }
+
+    @Test
+    void keyPositive() {
+        // the same pieces with the other side to move, or without a castling rook, are other positions
+        Position pos = Position.start();
+        long start = BookKey.of(pos);
+        pos.setSide(Position.BLACK);
+        assertNotEquals(start, BookKey.of(pos));
+        assertNotEquals(start, BookKey.of(Fen.parse("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBN1 w - - 0 1")));
+        // and the move encoding goes both ways
+        int[] moves = new int[Position.MAX_MOVES];
+        pos = Fen.parse("4k3/1P6/8/8/8/8/8/4K3 w - - 0 1");
+        int count = pos.legalMoves(moves);
+        for (int i = 0; i < count; i++) {
+            assertEquals(moves[i], BookKey.decode(BookKey.encode(moves[i]), moves, count));
+        }
+    }
+
+    @Test
+    void polyglotKeyPositive() {
+        // the keys Polyglot's book format description gives, so real .bin books line up
+        Position pos = Position.start();
+        assertEquals(0x463b96181691fc9cL, BookKey.of(pos));
+        long[] keys = {0x823c9b50fd114196L, 0x0756b94461c50fb0L, 0x662fafb965db29d4L, 0x22a48b5a8e47ff78L,
+                0x652a607ca3f242c1L, 0x00fdd303c946bdd9L};
+        String[] moves = {"e4", "d5", "e5", "f5", "Ke2", "Kf7"};
+        for (int i = 0; i < moves.length; i++) {
+            pos.makeMove(San.parse(pos, moves[i]));
+            assertEquals(keys[i], BookKey.of(pos), moves[i]);
+        }
+
+        // en passant counts when there's a pawn to take with, and castling rights go
+        pos = Position.start();
+        for (String move : new String[]{"a4", "b5", "h4", "b4", "c4"}) {
+            pos.makeMove(San.parse(pos, move));
+        }
+        assertEquals(0x3c8123ea7b067637L, BookKey.of(pos));
+        pos.makeMove(San.parse(pos, "bxc3"));
+        pos.makeMove(San.parse(pos, "Ra3"));
+        assertEquals(0x5c3f9b829b279560L, BookKey.of(pos));
+    }
+
+    @Test
+    void sanPositive() {
+        Position pos = Fen.parse("r3k3/1P6/8/8/8/2N3N1/8/4K3 w - - 0 1");
+        assertEquals("c3e4", Position.toUci(San.parse(pos, "Nce4")));
+        assertEquals("g3e4", Position.toUci(San.parse(pos, "Nge4+")));
+        assertEquals("b7a8q", Position.toUci(San.parse(pos, "bxa8=Q#")));
+        assertEquals("b7b8n", Position.toUci(San.parse(pos, "b8N")));
+        assertEquals("e1d2", Position.toUci(San.parse(pos, "Kd2!?")));
+        pos = Fen.parse("r3k2r/8/8/8/8/8/8/R3K2R b KQkq - 0 1");
+        assertEquals("e8c8", Position.toUci(San.parse(pos, "O-O-O")));
+        assertEquals("e8g8", Position.toUci(San.parse(pos, "0-0+")));
+    }
+
+    @Test
+    void sanNegative() {
+        Position pos = Fen.parse("r3k3/1P6/8/8/8/2N3N1/8/4K3 w - - 0 1");
+        // two knights can go there
+        assertEquals(0, San.parse(pos, "Ne4"));
+        // a promotion has to say what to
+        assertEquals(0, San.parse(pos, "b8"));
+        assertEquals(0, San.parse(pos, "O-O"));
+        assertEquals(0, San.parse(pos, "Qd1"));
+        assertEquals(0, San.parse(pos, "z9"));
+        assertEquals(0, San.parse(pos, ""));
+    }
+}
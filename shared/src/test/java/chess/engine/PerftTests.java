@@ -0,0 +1,151 @@
+package chess.engine;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.InvalidMoveException;
+import org.junit.jupiter.api.*;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PerftTests {
+
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    @Test
+    void startPositionPositive() {
+        Position pos = Position.start();
+        assertEquals(20, Perft.perft(pos, 1));
+        assertEquals(400, Perft.perft(pos, 2));
+        assertEquals(8902, Perft.perft(pos, 3));
+        assertEquals(197281, Perft.perft(pos, 4));
+        // make/unmake has to leave it exactly as it was
+        assertEquals(Fen.START, pos.toString());
+    }
+
+    @Test
+    void dividePositive() {
+        // the counts under each root move, the usual way to hunt down a bad total
+        Map<String, Long> counts = divide(Position.start(), 3);
+        assertEquals(20, counts.size());
+        assertEquals(8902, counts.values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(600, counts.get("e2e4"));
+        assertEquals(380, counts.get("a2a3"));
+        assertEquals(440, counts.get("g1f3"));
+    }
+
+    private static Map<String, Long> divide(Position pos, int depth) {
+        int[] root = new int[Position.MAX_MOVES];
+        int count = pos.legalMoves(root);
+        Map<String, Long> counts = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            pos.makeMove(root[i]);
+            counts.put(Position.toUci(root[i]), Perft.perft(pos, depth - 1));
+            pos.unmakeMove(root[i]);
+        }
+        return counts;
+    }
+
+    @Test
+    void promotionPositive() {
+        // every promotion piece counts, with and without a capture
+        Position pos = Fen.parse("1n5k/P7/8/8/8/8/8/7K w - - 0 1");
+        assertEquals(11, Perft.perft(pos, 1));
+    }
+
+    @Test
+    void kiwipetePositive() {
+        // castling every way, en passant and promotions, and lots of pins to get wrong
+        Position pos = Fen.parse(KIWIPETE);
+        assertEquals(48, Perft.perft(pos, 1));
+        assertEquals(2039, Perft.perft(pos, 2));
+        assertEquals(97862, Perft.perft(pos, 3));
+        assertEquals(KIWIPETE, pos.toString());
+    }
+
+    @Test
+    void enPassantPositive() {
+        // en passant that uncovers a check along the rank, which isn't legal
+        Position pos = Fen.parse("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1");
+        assertEquals(14, Perft.perft(pos, 1));
+        assertEquals(191, Perft.perft(pos, 2));
+        assertEquals(2812, Perft.perft(pos, 3));
+        assertEquals(43238, Perft.perft(pos, 4));
+        // and straight after the double move, read from the FEN
+        pos = Fen.parse("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3");
+        assertEquals(31, Perft.perft(pos, 1));
+        assertEquals("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 1", pos.toString());
+    }
+
+    @Test
+    void gamePositive() throws InvalidMoveException {
+        // the castling rights and en passant square come over from the game, and both
+        // sides agree on the moves
+        var game = new ChessGame();
+        play(game, "e2e4", "g8f6", "e4e5", "d7d5");
+        Position pos = Position.of(game);
+        assertEquals("rnbqkb1r/ppp1pppp/5n2/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 1", pos.toString());
+        assertEquals(Fen.parse(pos.toString()).hash(), pos.hash());
+        assertEquals(countValidMoves(game), pos.legalMoves(new int[Position.MAX_MOVES]));
+
+        play(game, "e5d6", "e7d6", "e1e2");
+        pos = Position.of(game);
+        assertEquals("rnbqkb1r/ppp2ppp/3p1n2/8/8/8/PPPPKPPP/RNBQ1BNR b kq - 0 1", pos.toString());
+        assertEquals(countValidMoves(game), pos.legalMoves(new int[Position.MAX_MOVES]));
+    }
+
+    private static void play(ChessGame game, String... moves) throws InvalidMoveException {
+        for (String move : moves) {
+            game.makeMove(new ChessMove(square(move.substring(0, 2)), square(move.substring(2)), null));
+        }
+    }
+
+    private static ChessPosition square(String name) {
+        return new ChessPosition(name.charAt(1) - '0', name.charAt(0) - 'a' + 1);
+    }
+
+    private static int countValidMoves(ChessGame game) {
+        int count = 0;
+        for (int row = 1; row <= 8; row++) {
+            for (int col = 1; col <= 8; col++) {
+                var position = new ChessPosition(row, col);
+                var piece = game.getBoard().getPiece(position);
+                if (piece != null && piece.getTeamColor() == game.getTeamTurn()) {
+                    count += game.validMoves(position).size();
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    void hashPositive() {
+        Position pos = Fen.parse(KIWIPETE);
+        long before = pos.hash();
+        assertEquals(Zobrist.hash(pos), before);
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = pos.legalMoves(moves);
+        for (int i = 0; i < count; i++) {
+            pos.makeMove(moves[i]);
+            assertEquals(Zobrist.hash(pos), pos.hash(), Position.toUci(moves[i]));
+            assertNotEquals(before, pos.hash());
+            pos.unmakeMove(moves[i]);
+        }
+        assertEquals(before, pos.hash());
+        // same position by another route, same hash
+        assertEquals(Position.start().hash(), Fen.parse(Fen.START).hash());
+    }
+
+    @Test
+    void fenNegative() {
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("8/8/8/8/8/8/8/8 w - - 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP w"));
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("k7/8/8/8/8/8/8/7K x"));
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("k8/8/8/8/8/8/8/7K w"));
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("k7/8/8/8/8/8/8/7K w X"));
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("k7/8/8/8/8/8/8/7K w - e3"));
+    }
+}
@@ -0,0 +1,113 @@
+package chess.engine;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchTests {
+
+    private static Search search(Position pos) {
+        return new Search(pos, new TranspositionTable(1));
+    }
+
+    @Test
+    void mateInOnePositive() {
+        // back rank, Ra8#
+        SearchResult result = search(Fen.parse("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1")).run(SearchLimits.depth(4));
+        assertEquals(new ChessMove(new ChessPosition(1, 1), new ChessPosition(8, 1), null), result.move());
+        assertTrue(result.isMate());
+        assertEquals(1, result.mateIn());
+    }
+
+    @Test
+    void hangingQueenPositive() {
+        Position pos = Fen.parse("4k3/8/8/3q4/8/8/8/3RK3 w - - 0 1");
+        SearchResult result = search(pos).run(SearchLimits.depth(4));
+        assertEquals(new ChessMove(new ChessPosition(1, 4), new ChessPosition(5, 4), null), result.move());
+        assertTrue(result.score() > 300);
+        // the search has to put everything back
+        assertEquals("4k3/8/8/3q4/8/8/8/3RK3 w - - 0 1", pos.toString());
+    }
+
+    @Test
+    void bestMovePositive() {
+        ChessMove move = Engine.bestMove(new ChessGame(), SearchLimits.depth(3));
+        assertNotNull(move);
+        assertDoesNotThrow(() -> new ChessGame().makeMove(move));
+    }
+
+    @Test
+    void nodeBudgetNegative() {
+        SearchResult result = search(Position.start()).run(SearchLimits.nodes(20_000));
+        assertNotNull(result.move());
+        // limits are checked every couple of thousand nodes
+        assertTrue(result.nodes() < 20_000 + 4096, "searched " + result.nodes());
+        assertTrue(result.depth() < SearchLimits.nodes(1).maxDepth());
+    }
+
+    @Test
+    void stoppedNegative() {
+        AtomicBoolean stop = new AtomicBoolean(true);
+        SearchResult result = Engine.search(new ChessGame(), SearchLimits.depth(50), stop);
+        // gives up at the first check, but there's still a legal move to play
+        assertNotNull(result.move());
+        assertTrue(result.nodes() <= 4096, "searched " + result.nodes());
+    }
+
+    @Test
+    void transpositionTablePositive() {
+        TranspositionTable table = new TranspositionTable(4);
+        Position pos = Fen.parse("r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w - - 0 1");
+        SearchResult first = new Search(pos, table).run(SearchLimits.depth(5));
+        // the same search again mostly comes straight out of the table
+        SearchResult second = new Search(pos, table).run(SearchLimits.depth(5));
+        assertEquals(first.move(), second.move());
+        assertTrue(second.nodes() < first.nodes() / 2, first.nodes() + " then " + second.nodes());
+    }
+
+    @Test
+    void parallelPositive() {
+        TranspositionTable table = new TranspositionTable(4);
+        Position pos = Fen.parse("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1");
+        SearchResult result = new ParallelSearch(pos, table, 4, new AtomicBoolean()).run(SearchLimits.depth(4));
+        assertEquals(new ChessMove(new ChessPosition(1, 1), new ChessPosition(8, 1), null), result.move());
+        // helpers work on copies, the caller's position is untouched
+        assertEquals("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1", pos.toString());
+
+        SearchResult fromStart = new ParallelSearch(Position.start(), table, 3, new AtomicBoolean())
+                .run(SearchLimits.depth(5));
+        assertEquals(5, fromStart.depth());
+        assertDoesNotThrow(() -> new ChessGame().makeMove(fromStart.move()));
+    }
+
+    @Test
+    void parallelNegative() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ParallelSearch(Position.start(), new TranspositionTable(1), 0, new AtomicBoolean()));
+        // with nowhere to run helpers it's just a normal search
+        SearchResult result = new ParallelSearch(Position.start(), new TranspositionTable(1), 4, new AtomicBoolean(),
+                task -> {
+                    throw new RejectedExecutionException();
+                }).run(SearchLimits.depth(3));
+        assertEquals(3, result.depth());
+    }
+
+    @Test
+    void noMovesNegative() {
+        // black is mated
+        SearchResult mated = search(Fen.parse("R5k1/5ppp/8/8/8/8/8/6K1 b - - 0 1")).run(SearchLimits.depth(3));
+        assertNull(mated.move());
+        assertTrue(mated.isMate());
+        // black is stalemated
+        SearchResult stalemate = search(Fen.parse("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1")).run(SearchLimits.depth(3));
+        assertNull(stalemate.move());
+        assertEquals(0, stalemate.score());
+        assertThrows(IllegalArgumentException.class, () -> SearchLimits.depth(0));
+    }
+}
@@ -0,0 +1,112 @@
+package chess.engine;
+
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TranspositionTableTests {
+
+    @Test
+    void storePositive() {
+        TranspositionTable table = new TranspositionTable(1);
+        assertEquals(65536, table.entries());
+        int move = Position.move(0x14, 0x34, 0, 0);
+        table.store(42, move, -123, 7, TranspositionTable.LOWER);
+
+        long data = table.probe(42);
+        assertEquals(move, TranspositionTable.move(data));
+        assertEquals(-123, TranspositionTable.score(data));
+        assertEquals(7, TranspositionTable.depth(data));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(data));
+
+        // no best move this time, the old one stays
+        table.store(42, 0, 50, 8, TranspositionTable.UPPER);
+        assertEquals(move, TranspositionTable.move(table.probe(42)));
+        assertEquals(50, TranspositionTable.score(table.probe(42)));
+    }
+
+    @Test
+    void replacementPositive() {
+        TranspositionTable table = new TranspositionTable(1);
+        // same low bits, so all in one bucket
+        long stride = table.entries();
+        for (int i = 0; i < 4; i++) {
+            table.store(1 + i * stride, 0, 0, 10 + i, TranspositionTable.EXACT);
+        }
+        // the bucket is full, the shallowest goes
+        table.store(1 + 4 * stride, 0, 0, 5, TranspositionTable.EXACT);
+        assertEquals(0, table.probe(1));
+        assertNotEquals(0, table.probe(1 + stride));
+        assertNotEquals(0, table.probe(1 + 4 * stride));
+
+        // a shallower result for the same position doesn't wipe out a deeper one
+        table.store(1 + stride, 0, 99, 3, TranspositionTable.LOWER);
+        assertEquals(11, TranspositionTable.depth(table.probe(1 + stride)));
+    }
+
+    @Test
+    void agingPositive() {
+        TranspositionTable table = new TranspositionTable(1);
+        long stride = table.entries();
+        table.store(1, 0, 0, 20, TranspositionTable.EXACT);
+        // a few searches later that deep entry is stale
+        for (int i = 0; i < 3; i++) {
+            table.newSearch();
+        }
+        for (int i = 1; i < 4; i++) {
+            table.store(1 + i * stride, 0, 0, 2, TranspositionTable.EXACT);
+        }
+        table.store(1 + 4 * stride, 0, 0, 1, TranspositionTable.EXACT);
+        assertEquals(0, table.probe(1));
+        for (int i = 1; i < 5; i++) {
+            assertNotEquals(0, table.probe(1 + i * stride));
+        }
+    }
+
+    @Test
+    void probeNegative() {
+        TranspositionTable table = new TranspositionTable(1);
+        assertEquals(0, table.probe(42));
+        table.store(42, 0, 0, 1, TranspositionTable.EXACT);
+        // same bucket, different position
+        assertEquals(0, table.probe(42 + table.entries()));
+        table.clear();
+        assertEquals(0, table.probe(42));
+        assertThrows(IllegalArgumentException.class, () -> new TranspositionTable(0));
+    }
+
+    @Test
+    void concurrentNegative() throws InterruptedException {
+        // everyone hammers the same few buckets, a probe must never mix up two entries
+        TranspositionTable table = new TranspositionTable(1);
+        long stride = table.entries();
+        AtomicInteger torn = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 200_000; i++) {
+                    long hash = 3 + (i % 8) * stride;
+                    // the score is derived from the hash, so a torn entry would show
+                    int expected = (int) (hash / stride);
+                    if ((i + thread) % 2 == 0) {
+                        table.store(hash, 0, expected, thread, TranspositionTable.EXACT);
+                    } else {
+                        long data = table.probe(hash);
+                        if (data != 0 && TranspositionTable.score(data) != expected) {
+                            torn.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, torn.get());
+    }
+}